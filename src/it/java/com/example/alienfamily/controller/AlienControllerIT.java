@@ -14,10 +14,13 @@ import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -109,6 +112,14 @@ public class AlienControllerIT {
         String proxi = getProxigord.getBody();
         assertTrue(proxi.contains("Proxigord") && proxi.contains("BETA") && proxi.contains("Omicron") && proxi.contains("Vexorg"));
 
+        // Get alien as JSON
+        HttpHeaders jsonHeaders = new HttpHeaders();
+        jsonHeaders.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        ResponseEntity<String> getProxigordJson = restTemplate.exchange(uriGetAlien.build().toUri(), HttpMethod.GET, new HttpEntity<String>(null, jsonHeaders), String.class);
+        assertEquals(200, getProxigordJson.getStatusCodeValue());
+        assertEquals(MediaType.APPLICATION_JSON, getProxigordJson.getHeaders().getContentType());
+        assertEquals("{\"name\":\"Proxigord\",\"type\":\"BETA\",\"homePlanet\":\"Omicron\",\"parent\":\"Vexorg\",\"children\":[]}", getProxigordJson.getBody());
+
         // Update alien
         UriComponentsBuilder uriUpdateAlien = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/updateAlien")
                 .queryParam("oldName", "Proxigord")
@@ -130,7 +141,7 @@ public class AlienControllerIT {
                 .queryParam("name", "Proxigord");
         ResponseEntity<String> dontGetProxigord = restTemplate.exchange(uriGetAlien3.build().toUri(), HttpMethod.GET, entity, String.class);
         assertEquals(404, dontGetProxigord.getStatusCodeValue());
-        assertEquals("Alien Proxigord not found", dontGetProxigord.getBody());
+        assertEquals("{\"code\":\"ALIEN_NOT_FOUND\",\"message\":\"Alien Proxigord not found\"}", dontGetProxigord.getBody());
 
         // Delete alien
         UriComponentsBuilder uriDeleteAlien = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/deleteAlien")
@@ -143,7 +154,7 @@ public class AlienControllerIT {
                 .queryParam("name", "Braxtarg");
         ResponseEntity<String> dontGetBraxtarg = restTemplate.exchange(uriGetAlien4.build().toUri(), HttpMethod.GET, entity, String.class);
         assertEquals(404, dontGetBraxtarg.getStatusCodeValue());
-        assertEquals("Alien Braxtarg not found", dontGetBraxtarg.getBody());
+        assertEquals("{\"code\":\"ALIEN_NOT_FOUND\",\"message\":\"Alien Braxtarg not found\"}", dontGetBraxtarg.getBody());
     }
 
     /**
@@ -163,8 +174,8 @@ public class AlienControllerIT {
         UriComponentsBuilder uriGetAlienBeforeStart = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/getAlien")
                 .queryParam("name", "Braxtarg");
         ResponseEntity<String> getNonExistent = restTemplate.exchange(uriGetAlienBeforeStart.build().toUri(), HttpMethod.GET, entity, String.class);
-        assertEquals(400, getNonExistent.getStatusCodeValue());
-        assertEquals("No aliens! Please start a new colony.", getNonExistent.getBody());
+        assertEquals(409, getNonExistent.getStatusCodeValue());
+        assertEquals("{\"code\":\"COLONY_NOT_STARTED\",\"message\":\"No aliens! Please start a new colony.\"}", getNonExistent.getBody());
 
         // Start a new colony
         UriComponentsBuilder uriStartColony = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/start")
@@ -181,7 +192,7 @@ public class AlienControllerIT {
                 .queryParam("homePlanet", "Persei");
         ResponseEntity<String> addBraxtarg = restTemplate.exchange(uriAddAlien.build().toUri(), HttpMethod.POST, entity,String.class);
         assertEquals(404, addBraxtarg.getStatusCodeValue());
-        assertEquals("Alien Mr Pants does not exist, Child not added.", addBraxtarg.getBody());
+        assertEquals("{\"code\":\"PARENT_NOT_FOUND\",\"message\":\"Alien Mr Pants does not exist, Child not added.\"}", addBraxtarg.getBody());
 
         // Try to update alien that doesn't exist
         UriComponentsBuilder uriUpdateAlien = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/updateAlien")
@@ -190,20 +201,115 @@ public class AlienControllerIT {
                 .queryParam("newPlanet", "Grimsby");
         ResponseEntity<String> updateMrPants = restTemplate.exchange(uriUpdateAlien.build().toUri(), HttpMethod.POST, entity, String.class);
         assertEquals(404, updateMrPants.getStatusCodeValue());
-        assertEquals("Alien Mr Pants not updated as they do not exist", updateMrPants.getBody());
+        assertEquals("{\"code\":\"ALIEN_NOT_FOUND\",\"message\":\"Alien Mr Pants not updated as they do not exist\"}", updateMrPants.getBody());
 
         // Try to delete an alien that doesn't exist
         UriComponentsBuilder uriDeleteAlien = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/deleteAlien")
                 .queryParam("name", "Mr Pants");
         ResponseEntity<String> deleteMrPants = restTemplate.exchange(uriDeleteAlien.build().toUri(), HttpMethod.DELETE, entity, String.class);
         assertEquals(404, deleteMrPants.getStatusCodeValue());
-        assertEquals("Alien Mr Pants not removed as it does not exist.", deleteMrPants.getBody());
+        assertEquals("{\"code\":\"ALIEN_NOT_FOUND\",\"message\":\"Alien Mr Pants not removed as it does not exist.\"}", deleteMrPants.getBody());
 
         // Try to get an alien that doesn't exist
         UriComponentsBuilder uriGetAlien = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/getAlien")
                 .queryParam("name", "Mr Pants");
         ResponseEntity<String> getMrPants = restTemplate.exchange(uriGetAlien.build().toUri(), HttpMethod.GET, entity, String.class);
         assertEquals(404, getMrPants.getStatusCodeValue());
-        assertEquals("Alien Mr Pants not found", getMrPants.getBody());
+        assertEquals("{\"code\":\"ALIEN_NOT_FOUND\",\"message\":\"Alien Mr Pants not found\"}", getMrPants.getBody());
+    }
+
+    /**
+     * Test lineages are streamed one alien per line
+     */
+    @Test
+    @DisplayName("Hit the ancestors and descendants endpoints")
+    public void eLineageIT() {
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Persei");
+        alienService.addAlien("Braxtarg", "Proxigord", AlienType.BETA, null);
+        TestRestTemplate restTemplate = new TestRestTemplate();
+        String url = "http://localhost:" + localServerPort;
+        HttpEntity<String> entity = new HttpEntity<String>(null, new HttpHeaders());
+
+        UriComponentsBuilder uriAncestors = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/ancestors")
+                .queryParam("name", "Proxigord");
+        ResponseEntity<String> ancestors = restTemplate.exchange(uriAncestors.build().toUri(), HttpMethod.GET, entity, String.class);
+        assertEquals(200, ancestors.getStatusCodeValue());
+        assertEquals("{\"name\":\"Braxtarg\",\"type\":\"ALPHA\",\"homePlanet\":\"Persei\",\"depth\":1}\n"
+                + "{\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"homePlanet\":\"Omicron\",\"depth\":2}\n", ancestors.getBody());
+
+        UriComponentsBuilder uriDescendants = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/descendants")
+                .queryParam("name", "Vexorg")
+                .queryParam("after", "Braxtarg");
+        ResponseEntity<String> descendants = restTemplate.exchange(uriDescendants.build().toUri(), HttpMethod.GET, entity, String.class);
+        assertEquals(200, descendants.getStatusCodeValue());
+        assertEquals("{\"name\":\"Proxigord\",\"type\":\"BETA\",\"homePlanet\":null,\"depth\":2}\n", descendants.getBody());
+
+        UriComponentsBuilder uriMrPants = UriComponentsBuilder.fromHttpUrl(url + "/aliencolony/descendants")
+                .queryParam("name", "Mr Pants");
+        ResponseEntity<String> mrPants = restTemplate.exchange(uriMrPants.build().toUri(), HttpMethod.GET, entity, String.class);
+        assertEquals(404, mrPants.getStatusCodeValue());
+    }
+
+    /**
+     * Test a colony exported and imported again is unchanged, and a bad import is refused
+     */
+    @Test
+    @DisplayName("Hit the export and import endpoints")
+    public void fTransferIT() {
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Persei");
+        alienService.addAlien("Braxtarg", "Proxigord", AlienType.BETA, null);
+        TestRestTemplate restTemplate = new TestRestTemplate();
+        String url = "http://localhost:" + localServerPort;
+        HttpEntity<String> entity = new HttpEntity<String>(null, new HttpHeaders());
+
+        ResponseEntity<String> export = restTemplate.exchange(url + "/aliencolony/export", HttpMethod.GET, entity, String.class);
+        assertEquals(200, export.getStatusCodeValue());
+        // Ids carry on from the colonies the earlier tests started
+        int vexorg = alienService.getAlienId("Vexorg");
+        assertEquals("{\"id\":" + vexorg + ",\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"homePlanet\":\"Omicron\",\"childrenHad\":1}\n"
+                + "{\"id\":" + (vexorg + 1) + ",\"name\":\"Braxtarg\",\"type\":\"ALPHA\",\"homePlanet\":\"Persei\",\"childrenHad\":1,\"parent\":\"Vexorg\",\"slot\":1}\n"
+                + "{\"id\":" + (vexorg + 2) + ",\"name\":\"Proxigord\",\"type\":\"BETA\",\"childrenHad\":0,\"parent\":\"Braxtarg\",\"slot\":1}\n"
+                + "{\"nextId\":" + (vexorg + 3) + "}\n", export.getBody());
+
+        alienService.startColony("Mork", "Ork");
+        HttpHeaders ndjson = new HttpHeaders();
+        ndjson.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+        ResponseEntity<String> imported = restTemplate.exchange(url + "/aliencolony/import", HttpMethod.POST,
+                new HttpEntity<String>(export.getBody(), ndjson), String.class);
+        assertEquals(200, imported.getStatusCodeValue());
+        assertEquals("3", imported.getBody());
+        assertEquals("Braxtarg", alienService.getCommonAncestor("Braxtarg", "Proxigord"));
+        assertEquals(vexorg + 2, alienService.getAlienId("Proxigord"));
+
+        ResponseEntity<String> bad = restTemplate.exchange(url + "/aliencolony/import", HttpMethod.POST,
+                new HttpEntity<String>("{\"name\":", ndjson), String.class);
+        assertEquals(400, bad.getStatusCodeValue());
+        assertTrue(bad.getBody().contains("\"code\":\"INVALID_IMPORT\""));
+    }
+
+    /**
+     * Test a named colony is kept apart from the default one, and a bad colony id is refused
+     */
+    @Test
+    @DisplayName("Hit the endpoints for a named colony")
+    public void gColonyIT() {
+        alienService.startColony("Vexorg", "Omicron");
+        TestRestTemplate restTemplate = new TestRestTemplate();
+        String url = "http://localhost:" + localServerPort;
+        HttpEntity<String> entity = new HttpEntity<String>(null, new HttpHeaders());
+
+        ResponseEntity<String> start = restTemplate.exchange(url + "/aliencolony/start?name=Mork&homePlanet=Ork&colonyId=ork-1", HttpMethod.POST, entity, String.class);
+        assertEquals(200, start.getStatusCodeValue());
+        ResponseEntity<String> mork = restTemplate.exchange(url + "/aliencolony/getAlien?name=Mork&colonyId=ork-1", HttpMethod.GET, entity, String.class);
+        assertEquals(200, mork.getStatusCodeValue());
+        ResponseEntity<String> noMork = restTemplate.exchange(url + "/aliencolony/getAlien?name=Mork", HttpMethod.GET, entity, String.class);
+        assertEquals(404, noMork.getStatusCodeValue());
+        assertEquals(1, alienService.getColonySize());
+
+        ResponseEntity<String> bad = restTemplate.exchange(url + "/aliencolony/getAlien?name=Mork&colonyId=ork.1", HttpMethod.GET, entity, String.class);
+        assertEquals(400, bad.getStatusCodeValue());
+        assertTrue(bad.getBody().contains("\"code\":\"INVALID_COLONY\""));
     }
 }
@@ -0,0 +1,101 @@
+package com.example.alienfamily.benchmark;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmarks for a single Alien, independent of any colony
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlienBenchmark {
+
+    /**
+     * An alpha with two children
+     */
+    private Alien vexorg;
+
+    private Alien proxigord;
+
+    /**
+     * Children visited by forEachChild, counted by a visitor made once so visits allocate nothing
+     */
+    private int visited;
+
+    private final Consumer<Alien> visitor = child -> visited++;
+
+    @Setup
+    public void setup() {
+        vexorg = Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+        vexorg.addChild("Braxtarg", AlienType.BETA, "Persei");
+        proxigord = vexorg.addChild("Proxigord", AlienType.ALPHA, "Omicron");
+    }
+
+    /**
+     * Baseline for addChild, which needs a new parent each time
+     */
+    @Benchmark
+    public Alien initialise() {
+        return Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+    }
+
+    /**
+     * A new parent and both its children, subtract initialise for the cost of the children
+     */
+    @Benchmark
+    public Alien addChild() {
+        Alien alien = Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+        alien.addChild("Braxtarg", AlienType.BETA, "Persei");
+        alien.addChild("Proxigord", AlienType.ALPHA, "Omicron");
+        return alien;
+    }
+
+    /**
+     * Allocates a list per call, compare getChild and forEachChild, which should show 0 B/op
+     * with -prof gc
+     */
+    @Benchmark
+    public List<Alien> getChildren() {
+        return vexorg.getChildren();
+    }
+
+    @Benchmark
+    public Alien getChild() {
+        return vexorg.getChild(2);
+    }
+
+    @Benchmark
+    public int forEachChild() {
+        visited = 0;
+        vexorg.forEachChild(visitor);
+        return visited;
+    }
+
+    @Benchmark
+    public boolean hasChild() {
+        return vexorg.hasChild(proxigord);
+    }
+
+    @Benchmark
+    public String alienToString() {
+        return vexorg.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.alienfamily.benchmark;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.store.CompactColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A colony shared by all benchmark threads.
+ *
+ * Built as a complete binary tree of alphas named A0, A1... where the parent of Ai is A((i-1)/2),
+ * so the last half of the colony are leaves with both child slots free.
+ */
+@State(Scope.Benchmark)
+public class Colony {
+
+    /**
+     * Names looked up by read and update benchmarks, picked at random up front
+     * so that benchmarks do not allocate names
+     */
+    private static final int SAMPLE_SIZE = 4096;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int colonySize;
+
+    @Param({"hash", "compact"})
+    public String store;
+
+    AlienService alienService;
+
+    String[] sample;
+
+    private final AtomicInteger leavesTaken = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void build() {
+        alienService = new AlienService("compact".equals(store) ? new CompactColonyStore(colonySize) : new HashColonyStore());
+        alienService.startColony(name(0), "Omicron");
+        for (int i = 1; i < colonySize; i++) {
+            alienService.addAlien(name((i - 1) / 2), name(i), AlienType.ALPHA, "Omicron");
+        }
+        Random random = new Random(42);
+        sample = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sample[i] = name(random.nextInt(colonySize));
+        }
+    }
+
+    /**
+     * @return a leaf no other thread has taken, to grow a lineage from
+     */
+    String takeLeaf() {
+        return name(colonySize - 1 - leavesTaken.getAndIncrement());
+    }
+
+    static String name(int i) {
+        return "A" + i;
+    }
+}
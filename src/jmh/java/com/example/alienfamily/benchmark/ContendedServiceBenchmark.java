@@ -0,0 +1,10 @@
+package com.example.alienfamily.benchmark;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Alien Service benchmarks with a thread per core, all working on the same colony
+ */
+@Threads(Threads.MAX)
+public class ContendedServiceBenchmark extends ServiceBenchmark {
+}
@@ -0,0 +1,78 @@
+package com.example.alienfamily.benchmark;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.service.AlienService;
+
+/**
+ * A benchmark thread's own line of descent, so adds and deletes keep the colony the same size
+ * and threads do not use up each other's child slots.
+ *
+ * Each invocation works on a chain of aliens, each the child of the one before, grown under
+ * an anchor. The first alien of the chain is added outside the measurement and kept as the
+ * next anchor, as the current anchor's child quota is used up by then. The rest are deleted
+ * again, leaves first, so no alien outlives its parent.
+ */
+public abstract class Lineage {
+
+    /**
+     * Aliens added or deleted per invocation, not counting the kept first alien
+     */
+    static final int CHAIN = 1000;
+
+    final String[] chain = new String[CHAIN + 1];
+
+    /**
+     * The leaf the first chain was grown under, which names every chain, so names stay short
+     */
+    private String leaf;
+
+    private String anchor;
+
+    AlienService alienService;
+
+    private int born;
+
+    /**
+     * Name the next chain and add its first alien.
+     *
+     * JMH cannot give the colony to more than one of a state's setup and teardown methods, so it
+     * is given to the setup that calls this, which claims a leaf as the first anchor and keeps the
+     * colony's service for the other methods.
+     */
+    void startChain(Colony colony) {
+        if (anchor == null) {
+            leaf = colony.takeLeaf();
+            anchor = leaf;
+            alienService = colony.alienService;
+        }
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = leaf + "-" + born++;
+        }
+        alienService.addAlien(anchor, chain[0], AlienType.ALPHA, "Persei");
+    }
+
+    /**
+     * Add all but the first alien of the chain
+     */
+    void addChain() {
+        for (int i = 1; i < chain.length; i++) {
+            alienService.addAlien(chain[i - 1], chain[i], AlienType.ALPHA, "Persei");
+        }
+    }
+
+    /**
+     * Delete all but the first alien of the chain, leaves first
+     */
+    void deleteChain() {
+        for (int i = chain.length - 1; i > 0; i--) {
+            alienService.deleteAlien(chain[i]);
+        }
+    }
+
+    /**
+     * Keep the first alien of the chain as the next anchor
+     */
+    void endChain() {
+        anchor = chain[0];
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.alienfamily.benchmark;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.service.AlienPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Alien Service against colonies of each size and store.
+ *
+ * Subclasses choose the number of threads. Results are per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public abstract class ServiceBenchmark {
+
+    @Benchmark
+    public String getAlien(Colony colony, Reader reader) {
+        return colony.alienService.getAlien(reader.next(colony));
+    }
+
+    @Benchmark
+    public byte[] getAlienJson(Colony colony, Reader reader) {
+        return colony.alienService.getAlienJson(reader.next(colony));
+    }
+
+    /**
+     * Moves a random alien between two planets
+     */
+    @Benchmark
+    public void updateAlien(Colony colony, Reader reader) {
+        colony.alienService.updateAlien(reader.next(colony), null, reader.planet());
+    }
+
+    /**
+     * A page of 100 alphas on one planet that can still have children, from a random cursor
+     */
+    @Benchmark
+    public AlienPage listAliens(Colony colony, Reader reader) {
+        return colony.alienService.listAliens(AlienType.ALPHA, "Omicron", true, null, reader.next(colony), 100);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Lineage.CHAIN)
+    public void addAlien(AddLineage lineage) {
+        lineage.addChain();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Lineage.CHAIN)
+    public void deleteAlien(DeleteLineage lineage) {
+        lineage.deleteChain();
+    }
+
+    /**
+     * A thread's position in the colony's sample of names
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+
+        private int cursor;
+
+        @Setup(Level.Trial)
+        public void start(Colony colony) {
+            // Spread the threads across the sample
+            cursor = System.identityHashCode(this);
+        }
+
+        String next(Colony colony) {
+            return colony.sample[cursor++ & (colony.sample.length - 1)];
+        }
+
+        String planet() {
+            return (cursor & 1) == 0 ? "Omicron" : "Persei";
+        }
+    }
+
+    /**
+     * Each invocation adds a chain, then deletes it again unmeasured
+     */
+    @State(Scope.Thread)
+    public static class AddLineage extends Lineage {
+
+        @Setup(Level.Invocation)
+        public void start(Colony colony) {
+            startChain(colony);
+        }
+
+        @TearDown(Level.Invocation)
+        public void end() {
+            deleteChain();
+            endChain();
+        }
+    }
+
+    /**
+     * Each invocation deletes a chain added unmeasured
+     */
+    @State(Scope.Thread)
+    public static class DeleteLineage extends Lineage {
+
+        @Setup(Level.Invocation)
+        public void start(Colony colony) {
+            startChain(colony);
+            addChain();
+        }
+
+        @TearDown(Level.Invocation)
+        public void end() {
+            endChain();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.alienfamily.benchmark;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Alien Service benchmarks on one thread
+ */
+@Threads(1)
+public class SingleThreadedServiceBenchmark extends ServiceBenchmark {
+}
@@ -0,0 +1,115 @@
+package com.example.alienfamily.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for the colony endpoints, to compare the Spring MVC and reactive stacks.
+ *
+ * Seeds a colony of aliens, then holds the given number of connections open, each sending
+ * getAlien requests for random aliens one after another, the fan-out read traffic the
+ * colony mostly serves. After a warm up, prints throughput and latency percentiles.
+ *
+ * Run against each stack in turn, on the same machine and with the same settings:
+ *
+ *     java -jar target/alien-family-1.0-SNAPSHOT.jar --server.tomcat.max-connections=10000
+ *     java -jar target/alien-family-1.0-SNAPSHOT.jar --spring.profiles.active=reactive
+ *     mvn -P alien-family-reactive test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=com.example.alienfamily.loadtest.AlienLoadRunner \
+ *         -Dexec.args="http://localhost:8080 10000 60 15"
+ *
+ * Arguments are the base URL, connections, seconds measured and seconds of warm up. Both the
+ * client and server need a file descriptor limit above the number of connections.
+ */
+public final class AlienLoadRunner {
+
+    private static final String COLONY = "loadtest";
+
+    private static final int ALIENS = 1023;
+
+    private AlienLoadRunner() {
+    }
+
+    public static void main(String[] args) {
+        String url = args.length > 0 ? args[0] : "http://localhost:8080";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int warmUp = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+
+        ConnectionProvider pool = ConnectionProvider.fixed("alien-load", connections, TimeUnit.MINUTES.toMillis(1));
+        HttpClient client = HttpClient.create(pool).baseUrl(url);
+        seed(client);
+
+        Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+        AtomicLong errors = new AtomicLong();
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmUp);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+        System.out.println("Loading " + url + " with " + connections + " connections for " + warmUp + "s warm up and " + seconds + "s measured");
+        Flux.range(0, connections)
+                .flatMap(connection -> Mono.defer(() -> getAlien(client, latencies, errors, measureFrom))
+                        .repeat(() -> System.nanoTime() < end), connections)
+                .blockLast();
+
+        long requests = latencies.getTotalCount();
+        System.out.println("Requests:   " + requests + " (" + errors.get() + " errors)");
+        System.out.println("Throughput: " + requests / seconds + " requests/s");
+        System.out.println("p50:        " + millis(latencies.getValueAtPercentile(50)) + " ms");
+        System.out.println("p99:        " + millis(latencies.getValueAtPercentile(99)) + " ms");
+        System.out.println("p99.9:      " + millis(latencies.getValueAtPercentile(99.9)) + " ms");
+        System.out.println("max:        " + millis(latencies.getMaxValue()) + " ms");
+        pool.dispose();
+    }
+
+    /**
+     * Start the colony, a full binary tree of alphas, A0 to A1022
+     */
+    private static void seed(HttpClient client) {
+        post(client, "/aliencolony/start?name=A0&homePlanet=Omicron&colonyId=" + COLONY);
+        for (int i = 1; i < ALIENS; i++) {
+            post(client, "/aliencolony/addAlien?parentName=A" + (i - 1) / 2 + "&childName=A" + i
+                    + "&type=ALPHA&homePlanet=Omicron&colonyId=" + COLONY);
+        }
+    }
+
+    private static void post(HttpClient client, String uri) {
+        int status = client.post().uri(uri)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                .block(Duration.ofSeconds(10));
+        if (status != 200) {
+            throw new IllegalStateException("Seeding the colony failed, " + uri + " returned " + status);
+        }
+    }
+
+    /**
+     * Get a random alien, recording its latency once warmed up
+     */
+    private static Mono<Integer> getAlien(HttpClient client, Histogram latencies, AtomicLong errors, long measureFrom) {
+        long start = System.nanoTime();
+        String uri = "/aliencolony/getAlien?name=A" + ThreadLocalRandom.current().nextInt(ALIENS) + "&colonyId=" + COLONY;
+        return client.get().uri(uri)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                .onErrorReturn(-1)
+                .doOnNext(status -> {
+                    if (start >= measureFrom) {
+                        latencies.recordValue(Math.min(System.nanoTime() - start, latencies.getHighestTrackableValue()));
+                        if (status != 200) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                });
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+}
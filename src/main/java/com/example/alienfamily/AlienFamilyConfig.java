@@ -1,9 +1,132 @@
 package com.example.alienfamily;
 
+import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.service.ColonyRegistry;
+import com.example.alienfamily.store.CachingColonyStore;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.CompactColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import com.example.alienfamily.store.MappedColonyStore;
+import com.example.alienfamily.wal.ColonyLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 @Configuration
 @ComponentScan(basePackages = "com.example.alienfamily")
 public class AlienFamilyConfig {
+
+    /**
+     * Storage used by the Alien Service, selected by alienfamily.colony.store:
+     *  - hash: Alien objects indexed by name (default)
+     *  - compact: primitive array columns, for very large colonies
+     *  - mapped: memory mapped files in alienfamily.colony.dir, kept across restarts
+     *
+     * With alienfamily.cache.bytes set, the aliens most used are cached in front of the store,
+     * see CachingColonyStore.
+     *
+     * @param store
+     * @param directory
+     * @param cacheBytes - estimated bytes of aliens to cache, 0 for no cache
+     * @param meterRegistry
+     * @return
+     */
+    @Bean
+    public ColonyStore colonyStore(@Value("${alienfamily.colony.store:hash}") String store,
+                                   @Value("${alienfamily.colony.dir:colony}") String directory,
+                                   @Value("${alienfamily.cache.bytes:0}") long cacheBytes,
+                                   MeterRegistry meterRegistry) {
+        ColonyStore colonyStore = cached(newStore(store, Paths.get(directory)), cacheBytes);
+        if (colonyStore instanceof CachingColonyStore) {
+            ((CachingColonyStore) colonyStore).registerMetrics(meterRegistry);
+        }
+        return colonyStore;
+    }
+
+    private static ColonyStore newStore(String store, Path directory) {
+        switch (store) {
+            case "hash":
+                return new HashColonyStore();
+            case "compact":
+                return new CompactColonyStore();
+            case "mapped":
+                return new MappedColonyStore(directory);
+            default:
+                throw new IllegalArgumentException("Unknown colony store: " + store);
+        }
+    }
+
+    private static ColonyStore cached(ColonyStore store, long cacheBytes) {
+        return cacheBytes > 0 ? new CachingColonyStore(store, cacheBytes) : store;
+    }
+
+    /**
+     * Write-ahead log of colony changes, only when alienfamily.wal.dir is set
+     *
+     * @param directory - where the log and checkpoints are kept
+     * @param window - milliseconds a sync waits for more writes to join it
+     * @param checkpointInterval - changes logged between checkpoints
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty("alienfamily.wal.dir")
+    public ColonyLog colonyLog(@Value("${alienfamily.wal.dir}") String directory,
+                               @Value("${alienfamily.wal.window:0}") long window,
+                               @Value("${alienfamily.wal.checkpoint-interval:100000}") int checkpointInterval) {
+        return new ColonyLog(Paths.get(directory), window, checkpointInterval);
+    }
+
+    /**
+     * Colonies by colony id. The default colony is the Alien Service, any other is created with
+     * a store of the same kind, and a log if alienfamily.wal.dir is set, under
+     * alienfamily.colonies.dir. Colonies idle for alienfamily.colonies.idle-timeout seconds are
+     * evicted to that directory, 0 to keep them in memory. Each has its own cache of
+     * alienfamily.cache.bytes, whose meters are not registered.
+     *
+     * @param alienService
+     * @param meterRegistry
+     * @param store
+     * @param directory
+     * @param walDir
+     * @param window
+     * @param checkpointInterval
+     * @param idleTimeout
+     * @param cacheBytes
+     * @param versions - earlier versions of each colony to keep
+     * @param events - change events of each colony to keep
+     * @return
+     */
+    @Bean
+    public ColonyRegistry colonyRegistry(AlienService alienService, MeterRegistry meterRegistry,
+                                         @Value("${alienfamily.colony.store:hash}") String store,
+                                         @Value("${alienfamily.colonies.dir:colonies}") String directory,
+                                         @Value("${alienfamily.wal.dir:}") String walDir,
+                                         @Value("${alienfamily.wal.window:0}") long window,
+                                         @Value("${alienfamily.wal.checkpoint-interval:100000}") int checkpointInterval,
+                                         @Value("${alienfamily.colonies.idle-timeout:0}") long idleTimeout,
+                                         @Value("${alienfamily.cache.bytes:0}") long cacheBytes,
+                                         @Value("${alienfamily.colony.versions:" + AlienService.DEFAULT_VERSIONS + "}") int versions,
+                                         @Value("${alienfamily.events.buffer:" + AlienService.DEFAULT_EVENTS + "}") int events) {
+        Path colonies = Paths.get(directory);
+        return new ColonyRegistry(alienService, (colonyId, resources) -> {
+            Path colony = colonies.resolve(colonyId);
+            ColonyStore colonyStore = newStore(store, colony.resolve("store"));
+            if (colonyStore instanceof MappedColonyStore) {
+                resources.add((MappedColonyStore) colonyStore);
+            }
+            colonyStore = cached(colonyStore, cacheBytes);
+            ColonyLog log = null;
+            if (!walDir.isEmpty()) {
+                log = new ColonyLog(colony.resolve("wal"), window, checkpointInterval);
+                resources.add(log);
+            }
+            return new AlienService(colonyStore, log, meterRegistry, versions, events, colonyId);
+        }, colonies, idleTimeout * 1000, meterRegistry);
+    }
 }
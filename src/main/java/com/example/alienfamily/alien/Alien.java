@@ -1,22 +1,33 @@
 package com.example.alienfamily.alien;
 
 import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.exception.QuotaExceededException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Object class to represent an alien being.
  *
  * An instance of this class is one alien, including its children.
  *
+ * Fields are volatile so that aliens can be read without locking while they are being updated.
+ * The two child quota is claimed atomically, so concurrent adds can never take the same slot.
+ *
+ * Children can be read by slot or visited with forEachChild without allocating, getChildren
+ * builds a new list on every call.
+ *
  */
 public class Alien {
 
     /**
      * Name of the Alien, max 50 chars
      */
-    private String name;
+    private volatile String name;
 
     /**
      * Type of the Alien, Alpha, Beta or Gamma
@@ -26,45 +37,44 @@ public class Alien {
     /**
      * Home planet, max 50 chars
      */
-    private String homePlanet;
+    private volatile String homePlanet;
 
     /**
      * The parent of this alien.
      */
-    private Alien parent;
+    private volatile Alien parent;
 
     /**
      * The first child of this alien.
      *
      * (Alphas only)
      */
-    private Alien childOne;
+    private volatile Alien childOne;
 
     /**
      * The second child of this alien.
      *
      * (Alphas only)
      */
-    private Alien childTwo;
+    private volatile Alien childTwo;
 
     /**
-     * Private boolean flag to indicate whether this alien has had one child.
+     * Number of children this alien has ever had, 0, 1 or 2.
      * (Aliens can be deleted, but an alpha alien can only have 2 children)
      */
-    private boolean hasChildOne = false;
+    private final AtomicInteger childrenHad = new AtomicInteger();
 
     /**
-     * Private boolean flag to indicate whether this alien has had two children.
-     * (Aliens can be deleted, but an alpha alien can only have 2 children)
+     * Id given to this alien by the colony store, -1 until it is in one. Ids are never reused.
      */
-    private boolean hasChildTwo = false;
+    private volatile int id = -1;
 
     /**
      * Constructor - throws exception, use initialise
      * @throws AlienException
      */
     public Alien() throws AlienException {
-        throw new AlienException("Aliens cannot appear out of the ether!");
+        throw new AlienValidationException(ErrorCode.INVALID_ALIEN, "Aliens cannot appear out of the ether!");
     }
 
     /**
@@ -79,6 +89,39 @@ public class Alien {
         return new Alien(name, type, homePlanet);
     }
 
+    /**
+     * Rebuild an alien that is already part of a colony, e.g. from a compact or persistent store.
+     *
+     * Unlike initialise this does not create a new alien, it recreates one with the given
+     * relatives and lifetime child count. Details are still checked.
+     *
+     * @param name
+     * @param type
+     * @param homePlanet
+     * @param parent - may be null
+     * @param childOne - may be null
+     * @param childTwo - may be null
+     * @param childrenHad - children this alien has had in its lifetime, 0 to 2
+     * @return
+     */
+    public static Alien restore(String name, AlienType type, String homePlanet, Alien parent, Alien childOne, Alien childTwo, int childrenHad) {
+        Alien alien = new Alien(name, type, homePlanet);
+        alien.parent = parent;
+        alien.childOne = childOne;
+        alien.childTwo = childTwo;
+        alien.childrenHad.set(childrenHad);
+        return alien;
+    }
+
+    /**
+     * Number of children this alien has had in its lifetime, including any since deleted
+     *
+     * @return 0, 1 or 2
+     */
+    public int getChildrenHad() {
+        return childrenHad.get();
+    }
+
     /**
      * private constructor for creating aliens through initialise and addChild
      *
@@ -87,19 +130,35 @@ public class Alien {
      * @param homePlanet
      */
     private Alien(String name, AlienType type, String homePlanet) throws AlienException {
-        if (name == null || type == null) {
-            throw new AlienException("Aliens must have a name and a type");
-        }
-        checkLength(name);
+        checkDetails(name, type, homePlanet);
         // Don't set if home planet is null
         if (homePlanet != null) {
-            checkLength(homePlanet);
             this.homePlanet = homePlanet;
         }
         this.name = name;
         this.type = type;
     }
 
+    /**
+     * Check the details of a new alien without creating it.
+     *
+     * Applies the same rules as initialise and addChild.
+     *
+     * @param name
+     * @param type
+     * @param homePlanet
+     * @throws AlienException
+     */
+    public static void checkDetails(String name, AlienType type, String homePlanet) {
+        if (name == null || type == null) {
+            throw new AlienValidationException(ErrorCode.INVALID_ALIEN, "Aliens must have a name and a type");
+        }
+        checkLength(name);
+        if (homePlanet != null) {
+            checkLength(homePlanet);
+        }
+    }
+
     public String getName() {
         return name;
     }
@@ -113,6 +172,22 @@ public class Alien {
         return type;
     }
 
+    /**
+     * @return the alien's id in its colony, -1 if it is not in one yet
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Set by colony stores as the alien is added or restored, see ColonyStore#add
+     *
+     * @param id
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public String getHomePlanet() {
         return homePlanet;
     }
@@ -133,25 +208,73 @@ public class Alien {
     /**
      * Method to return children.
      *
-     * Returns all children or an empty list
+     * Returns all children or an empty list, in a new list on every call, see getChild and
+     * forEachChild
      *
      * @return
      * @throws AlienException - if this alien is not an alpha
      */
     public List<Alien> getChildren() {
         if (!AlienType.ALPHA.equals(this.type)) {
-            throw new AlienException("Only alphas have children");
+            throw new AlienValidationException(ErrorCode.NOT_AN_ALPHA, "Only alphas have children");
         }
         List<Alien> children = new ArrayList<>();
-        if (this.childOne != null) {
-            children.add(this.childOne);
+        Alien one = this.childOne;
+        if (one != null) {
+            children.add(one);
         }
-        if (this.childTwo != null) {
-            children.add(this.childTwo);
+        Alien two = this.childTwo;
+        if (two != null) {
+            children.add(two);
         }
         return children;
     }
 
+    /**
+     * The child in a slot, without the alpha check or allocating
+     *
+     * @param slot - 1 or 2, the slot the child was born into
+     * @return the child, or null if the slot is empty
+     */
+    public Alien getChild(int slot) {
+        switch (slot) {
+            case 1:
+                return childOne;
+            case 2:
+                return childTwo;
+            default:
+                throw new IllegalArgumentException("Aliens have child slots 1 and 2, not " + slot);
+        }
+    }
+
+    /**
+     * Visit each child, first slot first, without allocating. Betas and gammas have none.
+     *
+     * @param action - called once per child
+     */
+    public void forEachChild(Consumer<Alien> action) {
+        Alien one = this.childOne;
+        if (one != null) {
+            action.accept(one);
+        }
+        Alien two = this.childTwo;
+        if (two != null) {
+            action.accept(two);
+        }
+    }
+
+    /**
+     * Number of children this alien can still have in its lifetime.
+     *
+     * @return 0, 1 or 2. Always 0 for betas and gammas.
+     */
+    public int getRemainingChildSlots() {
+        if (!AlienType.ALPHA.equals(this.type)) {
+            return 0;
+        }
+        return 2 - childrenHad.get();
+    }
+
     /**
      * Method to add a child. Only supported for Alpha type aliens.
      *
@@ -164,56 +287,147 @@ public class Alien {
      * @param name
      * @param type
      * @param homePlanet
+     * @return the new child
      * @throws AlienException
      */
-    public void addChild(String name, AlienType type, String homePlanet) {
+    public Alien addChild(String name, AlienType type, String homePlanet) {
         if (!AlienType.ALPHA.equals(this.type)) {
             // Not an alpha, can't have children
-            throw new AlienException("Only Alpha aliens can reproduce. " + this.name + " is of type " + this.type);
+            throw new AlienValidationException(ErrorCode.NOT_AN_ALPHA, "Only Alpha aliens can reproduce. " + this.name + " is of type " + this.type);
         }
 
         Alien child = new Alien(name, type, homePlanet);
         child.setParent(this);
-        if (!hasChildOne) {
+        if (claimChildSlot() == 0) {
             // never had a first child, add as first child
             this.childOne = child;
-            hasChildOne = true;
-        } else if (!hasChildTwo) {
+        } else {
             // has a first child, but never a second, add as second child
             this.childTwo = child;
-            hasChildTwo = true;
+        }
+        return child;
+    }
+
+    /**
+     * Put a restored child back in the slot it was born into, for stores restoring a colony.
+     *
+     * @param child - already linked to this alien as its parent
+     * @param slot - 1 or 2
+     * @throws AlienException - see checkRestoredSlot
+     */
+    public void restoreChild(Alien child, int slot) {
+        checkRestoredSlot(this.name, this.type, childrenHad.get(), slot == 1 ? childOne != null : childTwo != null, slot);
+        if (slot == 1) {
+            this.childOne = child;
         } else {
-            // This alien has already had two children
-            throw new AlienException("Alien " + this.name + " has already had two children");
+            this.childTwo = child;
+        }
+    }
+
+    /**
+     * Check that a restored child can go back into a parent's child slot.
+     *
+     * The parent must be an alpha that has had a child in that slot, which must still be empty.
+     *
+     * @param parentName
+     * @param parentType
+     * @param childrenHad - the parent's lifetime child count
+     * @param filled - whether the slot already holds a child
+     * @param slot - 1 or 2
+     * @throws AlienException
+     */
+    public static void checkRestoredSlot(String parentName, AlienType parentType, int childrenHad, boolean filled, int slot) {
+        if (!AlienType.ALPHA.equals(parentType)) {
+            throw new AlienValidationException(ErrorCode.NOT_AN_ALPHA, "Only alphas have children. " + parentName + " is of type " + parentType);
+        }
+        if (slot < 1 || slot > childrenHad) {
+            throw new AlienValidationException(ErrorCode.INVALID_IMPORT, "Alien " + parentName + " has had " + childrenHad + " children, not a child " + slot);
+        }
+        if (filled) {
+            throw new AlienValidationException(ErrorCode.INVALID_IMPORT, "Alien " + parentName + " already has a child " + slot);
+        }
+    }
+
+    /**
+     * Atomically claim the next child slot.
+     *
+     * @return 0 for the first child, 1 for the second
+     * @throws AlienException - if this alien has already had two children
+     */
+    private int claimChildSlot() {
+        int slot;
+        do {
+            slot = childrenHad.get();
+            if (slot >= 2) {
+                // This alien has already had two children
+                throw new QuotaExceededException("Alien " + this.name + " has already had two children");
+            }
+        } while (!childrenHad.compareAndSet(slot, slot + 1));
+        return slot;
+    }
+
+    /**
+     * Method to remove a child.
+     *
+     * Removes it by setting its slot to null. The child is matched by reference, so a
+     * different alien that has since taken its name is left alone.
+     *
+     * @param child
+     */
+    public void removeChild(Alien child) {
+        if (child == null) return;
+        if (childOne == child) {
+            childOne = null;
+        }
+        if (childTwo == child) {
+            childTwo = null;
         }
     }
 
     /**
      * Method to remove children by name.
      *
-     * Removes them by setting them to null
+     * Removes them by setting them to null. Prefer removeChild(Alien) where the colony's own
+     * alien is to hand.
      *
      * @param childName
      */
     public void removeChild(String childName) {
-        if (childOne != null && childOne.getName().equals(childName)) {
+        Alien one = childOne;
+        if (one != null && one.getName().equals(childName)) {
             childOne = null;
         }
-        if (childTwo != null && childTwo.getName().equals(childName)) {
+        Alien two = childTwo;
+        if (two != null && two.getName().equals(childName)) {
             childTwo = null;
         }
     }
 
     /**
-     * Simple method to check if this alien has the given child.
+     * Simple method to check if this alien has the given child, by reference
+     *
+     * @param child
+     * @return
+     */
+    public boolean hasChild(Alien child) {
+        return child != null && (childOne == child || childTwo == child);
+    }
+
+    /**
+     * Simple method to check if this alien has a child of the given name.
+     *
+     * For aliens rebuilt by a store, which are not the colony's own objects and can only be
+     * matched by name.
      *
      * @param childName
      * @return
      */
     public boolean hasChild(String childName) {
         if (childName == null) return false;
-        if (childOne != null && (childOne.getName().equals(childName))) return true;
-        if (childTwo != null && (childTwo.getName().equals(childName))) return true;
+        Alien one = childOne;
+        if (one != null && (one.getName().equals(childName))) return true;
+        Alien two = childTwo;
+        if (two != null && (two.getName().equals(childName))) return true;
         return false;
     }
 
@@ -224,20 +438,36 @@ public class Alien {
      * @return
      */
     public String toString() {
-        String alien = "Details of Alien: \n" +
-                "\tName: " + name + "\n" +
-                "\tType: " + type + "\n" +
-                "\tHome: " + homePlanet + "\n";
+        Alien parent = this.parent;
+        Alien one = this.childOne;
+        Alien two = this.childTwo;
+        return describe(name, type, homePlanet, parent == null ? null : parent.getName(),
+                one == null ? null : one.getName(), two == null ? null : two.getName());
+    }
+
+    /**
+     * Text description of an alien, as given by toString
+     *
+     * @param parent - parent's name, may be null
+     * @param childOne - first child's name, may be null
+     * @param childTwo - second child's name, may be null
+     */
+    static String describe(String name, AlienType type, String homePlanet, String parent, String childOne, String childTwo) {
+        StringBuilder alien = new StringBuilder(128)
+                .append("Details of Alien: \n")
+                .append("\tName: ").append(name).append('\n')
+                .append("\tType: ").append(type).append('\n')
+                .append("\tHome: ").append(homePlanet).append('\n');
         if (parent != null) {
-            alien += "\tParent: " + parent.getName() + "\n";
+            alien.append("\tParent: ").append(parent).append('\n');
         }
         if (childOne != null) {
-            alien += "\tChild1: " + childOne.getName() + "\n";
+            alien.append("\tChild1: ").append(childOne).append('\n');
         }
         if (childTwo != null) {
-            alien += "\tChild2: " + childTwo.getName() + "\n";
+            alien.append("\tChild2: ").append(childTwo).append('\n');
         }
-        return alien;
+        return alien.toString();
     }
 
     /**
@@ -249,9 +479,9 @@ public class Alien {
      * @return
      * @throws AlienException
      */
-    private void checkLength(String string) {
+    public static void checkLength(String string) {
         if (string.length() > 50) {
-            throw new AlienException("Name and home planet cannot be over 50 characters");
+            throw new AlienValidationException(ErrorCode.INVALID_ALIEN, "Name and home planet cannot be over 50 characters");
         }
     }
 
@@ -262,4 +492,20 @@ public class Alien {
         this.childOne = null;
         this.childTwo = null;
     }
+
+    /**
+     * First child slot, without the alpha check. Null if empty.
+     *
+     * Unlike getChildren this keeps the slot each child is in, for stores and checkpoints.
+     */
+    public Alien getChildOne() {
+        return childOne;
+    }
+
+    /**
+     * Second child slot, without the alpha check. Null if empty.
+     */
+    public Alien getChildTwo() {
+        return childTwo;
+    }
 }
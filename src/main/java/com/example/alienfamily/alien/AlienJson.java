@@ -0,0 +1,50 @@
+package com.example.alienfamily.alien;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the JSON view of an alien.
+ *
+ * {"name":"Vexorg","type":"ALPHA","homePlanet":"Omicron","parent":null,"children":["Braxtarg"]}
+ */
+final class AlienJson {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private AlienJson() {
+    }
+
+    /**
+     * @param parent - parent's name, may be null
+     * @param childOne - first child's name, may be null
+     * @param childTwo - second child's name, may be null
+     */
+    static byte[] write(String name, AlienType type, String homePlanet, String parent, String childOne, String childTwo) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("name", name);
+            json.writeStringField("type", type.name());
+            json.writeStringField("homePlanet", homePlanet);
+            json.writeStringField("parent", parent);
+            json.writeArrayFieldStart("children");
+            if (childOne != null) {
+                json.writeString(childOne);
+            }
+            if (childTwo != null) {
+                json.writeString(childTwo);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            // Cannot happen writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
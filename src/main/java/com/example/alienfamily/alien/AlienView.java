@@ -0,0 +1,252 @@
+package com.example.alienfamily.alien;
+
+import java.util.Objects;
+
+/**
+ * Immutable copy of an alien's details at one moment, for reads that must never see an alien
+ * part way through a change.
+ *
+ * Relatives are held by name rather than by reference, so a view never changes when its
+ * relatives do; a change to an alien's lineage gives new views of each alien it shows in.
+ * The text form is the same as the alien's own, and the text and JSON are built once per view.
+ *
+ * Each view carries its alien's id, which stays the same through renames, so the views of one
+ * alien can be matched across changes whatever it is called.
+ */
+public final class AlienView {
+
+    private final int id;
+
+    private final String name;
+
+    private final AlienType type;
+
+    private final String homePlanet;
+
+    /**
+     * Parent's name, null for the first alien. The parent may since have been deleted.
+     */
+    private final String parent;
+
+    private final String childOne;
+
+    private final String childTwo;
+
+    private final int childrenHad;
+
+    /**
+     * Type and home planet of the parent once it has been deleted, for exports, see ColonyRecord.
+     * Only read when the parent is deleted, so they may be out of date while it is live.
+     */
+    private final AlienType parentType;
+
+    private final String parentHomePlanet;
+
+    private volatile String text;
+
+    private volatile byte[] json;
+
+    private AlienView(int id, String name, AlienType type, String homePlanet, String parent, String childOne, String childTwo, int childrenHad,
+                      AlienType parentType, String parentHomePlanet) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.homePlanet = homePlanet;
+        this.parent = parent;
+        this.childOne = childOne;
+        this.childTwo = childTwo;
+        this.childrenHad = childrenHad;
+        this.parentType = parentType;
+        this.parentHomePlanet = parentHomePlanet;
+    }
+
+    /**
+     * View of an alien as it is now. The caller must make sure it is not changing meanwhile.
+     *
+     * @param id - the alien's id in its colony
+     * @param alien
+     * @return
+     */
+    public static AlienView of(int id, Alien alien) {
+        Alien parent = alien.getParent();
+        Alien one = alien.getChildOne();
+        Alien two = alien.getChildTwo();
+        return new AlienView(id, alien.getName(), alien.getType(), alien.getHomePlanet(), parent == null ? null : parent.getName(),
+                one == null ? null : one.getName(), two == null ? null : two.getName(), alien.getChildrenHad(),
+                parent == null ? null : parent.getType(), parent == null ? null : parent.getHomePlanet());
+    }
+
+    /**
+     * View of an alien just born or started, with no children
+     *
+     * @param id - the alien's id in its colony
+     * @param name
+     * @param type
+     * @param homePlanet
+     * @param parent - null for the first alien
+     * @return
+     */
+    public static AlienView born(int id, String name, AlienType type, String homePlanet, String parent) {
+        return new AlienView(id, name, type, homePlanet, parent, null, null, 0, null, null);
+    }
+
+    /**
+     * @return a view with the new name, or this view if the name is null
+     */
+    public AlienView renamed(String newName) {
+        return newName == null ? this : new AlienView(id, newName, type, homePlanet, parent, childOne, childTwo, childrenHad, parentType, parentHomePlanet);
+    }
+
+    /**
+     * @return a view with the new home planet, or this view if the planet is null
+     */
+    public AlienView movedTo(String newPlanet) {
+        return newPlanet == null ? this : new AlienView(id, name, type, newPlanet, parent, childOne, childTwo, childrenHad, parentType, parentHomePlanet);
+    }
+
+    /**
+     * @return a view whose parent has the new name
+     */
+    public AlienView withParent(String newParent) {
+        return new AlienView(id, name, type, homePlanet, newParent, childOne, childTwo, childrenHad, parentType, parentHomePlanet);
+    }
+
+    /**
+     * @return a view whose parent has been deleted, keeping the parent's details as they were
+     */
+    public AlienView withParentDeleted(AlienType deletedType, String deletedHomePlanet) {
+        return new AlienView(id, name, type, homePlanet, parent, childOne, childTwo, childrenHad, deletedType, deletedHomePlanet);
+    }
+
+    /**
+     * @param slot - the child slot the child was born into, 1 or 2
+     * @return a view with a newly born child, counted as one of the children it has had
+     */
+    public AlienView withChild(int slot, String child) {
+        return slot == 1
+                ? new AlienView(id, name, type, homePlanet, parent, child, childTwo, Math.max(childrenHad, 1), parentType, parentHomePlanet)
+                : new AlienView(id, name, type, homePlanet, parent, childOne, child, 2, parentType, parentHomePlanet);
+    }
+
+    /**
+     * @return a view with the child renamed, or without it if newName is null
+     */
+    public AlienView withChildRenamed(String oldName, String newName) {
+        return new AlienView(id, name, type, homePlanet, parent, oldName.equals(childOne) ? newName : childOne,
+                oldName.equals(childTwo) ? newName : childTwo, childrenHad, parentType, parentHomePlanet);
+    }
+
+    /**
+     * @return whether the child is in one of this alien's child slots
+     */
+    public boolean hasChild(String child) {
+        return child.equals(childOne) || child.equals(childTwo);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AlienType getType() {
+        return type;
+    }
+
+    public String getHomePlanet() {
+        return homePlanet;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public String getChildOne() {
+        return childOne;
+    }
+
+    public String getChildTwo() {
+        return childTwo;
+    }
+
+    /**
+     * @return 0, 1 or 2. Always 0 for betas and gammas.
+     */
+    public int getRemainingChildSlots() {
+        return AlienType.ALPHA.equals(type) ? 2 - childrenHad : 0;
+    }
+
+    /**
+     * @return children this alien has had in its lifetime, 0 to 2
+     */
+    public int getChildrenHad() {
+        return childrenHad;
+    }
+
+    /**
+     * @return the type of the parent, if it has been deleted
+     */
+    public AlienType getParentType() {
+        return parentType;
+    }
+
+    /**
+     * @return the home planet of the parent, if it has been deleted
+     */
+    public String getParentHomePlanet() {
+        return parentHomePlanet;
+    }
+
+    /**
+     * Views are equal if they are of the same alien and show the same details, whichever
+     * change made them. A deleted parent's details are not shown, so are not compared.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AlienView)) {
+            return false;
+        }
+        AlienView other = (AlienView) o;
+        return id == other.id && name.equals(other.name) && type == other.type && Objects.equals(homePlanet, other.homePlanet)
+                && Objects.equals(parent, other.parent) && Objects.equals(childOne, other.childOne)
+                && Objects.equals(childTwo, other.childTwo) && childrenHad == other.childrenHad;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, type, homePlanet, parent, childOne, childTwo, childrenHad, parentType, parentHomePlanet);
+    }
+
+    /**
+     * JSON for the alien: name, type, home planet, parent name and child names, see AlienJson.
+     * Callers must not modify the returned array.
+     *
+     * @return UTF-8 encoded JSON
+     */
+    public byte[] toJson() {
+        byte[] bytes = json;
+        if (bytes == null) {
+            bytes = AlienJson.write(name, type, homePlanet, parent, childOne, childTwo);
+            json = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @see Alien#toString()
+     */
+    @Override
+    public String toString() {
+        String description = text;
+        if (description == null) {
+            description = Alien.describe(name, type, homePlanet, parent, childOne, childTwo);
+            text = description;
+        }
+        return description;
+    }
+}
@@ -1,71 +1,250 @@
 package com.example.alienfamily.controller;
 
 import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.service.AlienPage;
 import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.service.ColonyDiff;
+import com.example.alienfamily.service.ColonyOp;
+import com.example.alienfamily.service.ColonyOpResult;
+import com.example.alienfamily.service.ColonyRegistry;
+import com.example.alienfamily.service.Lineage;
+import com.example.alienfamily.service.ParentReservation;
+import com.example.alienfamily.transfer.ColonyFormat;
+import com.example.alienfamily.transfer.ColonyReader;
+import com.example.alienfamily.transfer.ColonyWriter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * REST controller to expose Alien Colony functionality as an HTTP API
+ *
+ * Every endpoint takes an optional colonyId, and calls the default colony without one.
+ *
+ * Not used with the reactive profile, which serves the colony from AlienRouter instead.
  */
 @RestController
+@Profile("!reactive")
 public class AlienController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AlienController.class);
 
     /**
-     * Alien Service
+     * Logged for a read without asOf
      */
-    private AlienService alienService;
+    private static final String LATEST = "latest";
 
     /**
-     * Constructor for Spring autowiring
+     * Newline delimited JSON, one alien per line
+     */
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    /**
+     * Lines are separated by hand, and the response stream is left for Spring to close
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .setRootValueSeparator(null);
+
+    /**
+     * Colonies, each with its own Alien Service
+     */
+    private final ColonyRegistry colonies;
+
+    /**
+     * Logs a sample of the requests, see RequestLog
+     */
+    private final RequestLog requestLog;
+
+    /**
+     * Constructor for a single in memory colony
      *
-     * @param alienService
+     * @param alienService - the default colony
      */
     public AlienController(AlienService alienService) {
-        this.alienService = alienService;
+        this(new ColonyRegistry(alienService));
+    }
+
+    /**
+     * Constructor logging every request
+     *
+     * @param colonies
+     */
+    public AlienController(ColonyRegistry colonies) {
+        this(colonies, 1);
+    }
+
+    /**
+     * Constructor for Spring autowiring
+     *
+     * @param colonies
+     * @param sampleRate - fraction of requests logged, from alienfamily.logging.request-sample-rate
+     */
+    @Autowired
+    public AlienController(ColonyRegistry colonies, @Value(RequestLog.SAMPLE_RATE) double sampleRate) {
+        this.colonies = colonies;
+        this.requestLog = new RequestLog(LOGGER, sampleRate);
     }
 
     /**
      * @see com.example.alienfamily.service.AlienService#startColony(String, String)
      */
     @PostMapping("/aliencolony/start")
-    public ResponseEntity<Void> start(@RequestParam String name, @RequestParam String homePlanet) {
-        LOGGER.info("Colony starting with alien " + name);
-        alienService.startColony(name, homePlanet);
+    public ResponseEntity<Void> start(@RequestParam String name, @RequestParam String homePlanet, @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Colony {} starting with alien {}", colonyId, name);
+        colonies.run(colonyId, alienService -> alienService.startColony(name, homePlanet));
         return new ResponseEntity<Void>(HttpStatus.OK);
     }
 
     /**
-     * @see com.example.alienfamily.service.AlienService#addAlien(String, String, AlienType, String)
+     * Adds a child, to a reserved parent if given the reservation's token.
+     *
+     * @see com.example.alienfamily.service.AlienService#addAlien(String, String, AlienType, String, String)
      */
     @PostMapping("/aliencolony/addAlien")
-    public ResponseEntity<Void> addAlien(@RequestParam String parentName, @RequestParam String childName, @RequestParam AlienType type, @RequestParam String homePlanet) {
-        LOGGER.info("Adding alien " + childName + " as child of " + parentName);
-        alienService.addAlien(parentName, childName, type, homePlanet);
+    public ResponseEntity<Void> addAlien(@RequestParam String parentName, @RequestParam String childName, @RequestParam AlienType type, @RequestParam String homePlanet,
+                                         @RequestParam(required = false) String reservation,
+                                         @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Adding alien {} as child of {}", childName, parentName);
+        colonies.run(colonyId, alienService -> alienService.addAlien(parentName, childName, type, homePlanet, reservation));
         return new ResponseEntity<Void>(HttpStatus.OK);
     }
 
     /**
+     * Lists alphas that can still have children and are not reserved, for example:
+     *
+     * ["Braxtarg","Proxigord"]
+     *
+     * @see com.example.alienfamily.service.AlienService#findFreeParents(int)
+     */
+    @GetMapping("/aliencolony/freeParents")
+    public List<String> findFreeParents(@RequestParam(defaultValue = "1") int count,
+                                        @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Finding {} free parents", count);
+        return colonies.call(colonyId, alienService -> alienService.findFreeParents(count));
+    }
+
+    /**
+     * Reserves alphas that can still have children for 'ttl' seconds, for example:
+     *
+     * {"token":"4f0c..","expiresAt":1546300800000,"parents":["Braxtarg","Proxigord"]}
+     *
+     * @see com.example.alienfamily.service.AlienService#reserveParents(int, long)
+     */
+    @PostMapping("/aliencolony/reserveParents")
+    public ParentReservation reserveParents(@RequestParam(defaultValue = "1") int count, @RequestParam(defaultValue = "30") long ttl,
+                                            @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Reserving {} parents for {} seconds", count, ttl);
+        return colonies.call(colonyId, alienService -> alienService.reserveParents(count, TimeUnit.SECONDS.toMillis(ttl)));
+    }
+
+    /**
+     * Gets an alien as it is now, or as of an earlier version of the colony.
+     *
      * @see com.example.alienfamily.service.AlienService#getAlien(String)
+     * @see com.example.alienfamily.service.AlienService#getAlien(String, long)
      */
     @GetMapping("/aliencolony/getAlien")
-    public String getAlien(@RequestParam String name) {
-        LOGGER.info("Getting alien " + name);
-        return alienService.getAlien(name);
+    public String getAlien(@RequestParam String name, @RequestParam(required = false) Long asOf,
+                           @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting alien {} as of version {}", name, asOf == null ? LATEST : asOf);
+        return colonies.call(colonyId, alienService -> asOf == null ? alienService.getAlien(name) : alienService.getAlien(name, asOf));
+    }
+
+    /**
+     * JSON form of getAlien, for clients that ask for application/json.
+     *
+     * @see com.example.alienfamily.service.AlienService#getAlienJson(String)
+     * @see com.example.alienfamily.service.AlienService#getAlienJson(String, long)
+     */
+    @GetMapping(value = "/aliencolony/getAlien", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getAlienJson(@RequestParam String name, @RequestParam(required = false) Long asOf,
+                                               @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting alien {} as JSON as of version {}", name, asOf == null ? LATEST : asOf);
+        byte[] json = colonies.call(colonyId, alienService -> asOf == null ? alienService.getAlienJson(name) : alienService.getAlienJson(name, asOf));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#getAlienId(String)
+     */
+    @GetMapping("/aliencolony/alienId")
+    public int getAlienId(@RequestParam String name, @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting id of alien {}", name);
+        return colonies.call(colonyId, alienService -> alienService.getAlienId(name));
+    }
+
+    /**
+     * Gets an alien by id, as it is now or as of an earlier version of the colony.
+     *
+     * @see com.example.alienfamily.service.AlienService#getAlienById(int)
+     * @see com.example.alienfamily.service.AlienService#getAlienById(int, long)
+     */
+    @GetMapping("/aliencolony/getAlienById")
+    public String getAlienById(@RequestParam int id, @RequestParam(required = false) Long asOf,
+                               @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting alien {} as of version {}", id, asOf == null ? LATEST : asOf);
+        return colonies.call(colonyId, alienService -> asOf == null ? alienService.getAlienById(id) : alienService.getAlienById(id, asOf));
+    }
+
+    /**
+     * JSON form of getAlienById, for clients that ask for application/json.
+     *
+     * @see com.example.alienfamily.service.AlienService#getAlienJsonById(int)
+     * @see com.example.alienfamily.service.AlienService#getAlienJsonById(int, long)
+     */
+    @GetMapping(value = "/aliencolony/getAlienById", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getAlienJsonById(@RequestParam int id, @RequestParam(required = false) Long asOf,
+                                                   @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting alien {} as JSON as of version {}", id, asOf == null ? LATEST : asOf);
+        byte[] json = colonies.call(colonyId, alienService -> asOf == null ? alienService.getAlienJsonById(id) : alienService.getAlienJsonById(id, asOf));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#getVersion()
+     */
+    @GetMapping("/aliencolony/version")
+    public long getVersion(@RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        return colonies.call(colonyId, AlienService::getVersion);
+    }
+
+    /**
+     * Lists the aliens that differ between two versions of the colony, as JSON:
+     * {"from":3,"to":4,"changes":[{"id":0,"name":"Vexorg","before":{..},"after":{..}}]}
+     *
+     * @see com.example.alienfamily.service.AlienService#diff(long, long)
+     */
+    @GetMapping("/aliencolony/diff")
+    public ColonyDiff diff(@RequestParam long from, @RequestParam long to, @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Comparing colony versions {} and {}", from, to);
+        return colonies.call(colonyId, alienService -> alienService.diff(from, to));
     }
 
     /**
      * @see com.example.alienfamily.service.AlienService#updateAlien(String, String, String)
      */
     @PostMapping("/aliencolony/updateAlien")
-    public ResponseEntity<Void> updateAlien(@RequestParam String oldName, @RequestParam String newName, @RequestParam String newPlanet) {
-        LOGGER.info("Updating alien " + oldName + " with new name " + newName + " and new planet " + newPlanet);
-        alienService.updateAlien(oldName, newName, newPlanet);
+    public ResponseEntity<Void> updateAlien(@RequestParam String oldName, @RequestParam String newName, @RequestParam String newPlanet,
+                                            @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Updating alien {} with new name {} and new planet {}", oldName, newName, newPlanet);
+        colonies.run(colonyId, alienService -> alienService.updateAlien(oldName, newName, newPlanet));
         return new ResponseEntity<Void>(HttpStatus.OK);
     }
 
@@ -73,9 +252,190 @@ public class AlienController {
      * @see com.example.alienfamily.service.AlienService#deleteAlien(String)
      */
     @DeleteMapping("/aliencolony/deleteAlien")
-    public ResponseEntity<Void> deleteAlien(@RequestParam String name) {
-        LOGGER.info("Deleting alien " + name);
-        alienService.deleteAlien(name);
+    public ResponseEntity<Void> deleteAlien(@RequestParam String name, @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Deleting alien {}", name);
+        colonies.run(colonyId, alienService -> alienService.deleteAlien(name));
         return new ResponseEntity<Void>(HttpStatus.OK);
     }
+
+    /**
+     * Applies a JSON array of operations, read one at a time as the body arrives, and streams
+     * back a JSON array of their results:
+     * [{"index":0,"success":true,"error":null}]
+     *
+     * A batch has at most AlienService.MAX_BATCH operations. One with more is refused as
+     * INVALID_BATCH once the operation over the limit is read.
+     *
+     * @see com.example.alienfamily.service.AlienService#applyBatch(List, boolean)
+     */
+    @PostMapping(value = "/aliencolony/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> batch(InputStream body, @RequestParam(defaultValue = "false") boolean atomic,
+                                                       @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) throws IOException {
+        List<ColonyOp> ops = BatchReader.read(body, AlienService.MAX_BATCH);
+        requestLog.info("Applying batch of {} operations, atomic {}", ops.size(), atomic);
+        List<ColonyOpResult> results = colonies.call(colonyId, alienService -> alienService.applyBatch(ops, atomic));
+        // Nothing was applied from a failed atomic batch
+        HttpStatus status = atomic && !results.isEmpty() && !results.get(0).isSuccess() ? HttpStatus.BAD_REQUEST : HttpStatus.OK;
+        StreamingResponseBody out = stream -> writeResults(results, stream);
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(out);
+    }
+
+    /**
+     * Streams a page of ancestors as newline delimited JSON, one per line, parent first:
+     * {"name":"Vexorg","type":"ALPHA","homePlanet":"Omicron","depth":1}
+     *
+     * For the next page, pass the last name as after. A page shorter than the limit is the last.
+     *
+     * @see com.example.alienfamily.service.AlienService#getAncestors(String, String, int, int)
+     */
+    @GetMapping("/aliencolony/ancestors")
+    public ResponseEntity<StreamingResponseBody> ancestors(@RequestParam String name, @RequestParam(required = false) String after,
+                                                           @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int maxDepth,
+                                                           @RequestParam(defaultValue = "100") int limit,
+                                                           @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting ancestors of alien {}", name);
+        ColonyRegistry.Pin pin = colonies.pin(colonyId);
+        try {
+            return stream(pin, pin.service().getAncestors(name, after, maxDepth, limit));
+        } catch (RuntimeException e) {
+            pin.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Streams a page of descendants as newline delimited JSON, one per line, depth first.
+     *
+     * For the next page, pass the last name as after. A page shorter than the limit is the last.
+     *
+     * @see com.example.alienfamily.service.AlienService#getDescendants(String, String, int, int)
+     */
+    @GetMapping("/aliencolony/descendants")
+    public ResponseEntity<StreamingResponseBody> descendants(@RequestParam String name, @RequestParam(required = false) String after,
+                                                             @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int maxDepth,
+                                                             @RequestParam(defaultValue = "100") int limit,
+                                                             @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting descendants of alien {}", name);
+        ColonyRegistry.Pin pin = colonies.pin(colonyId);
+        try {
+            return stream(pin, pin.service().getDescendants(name, after, maxDepth, limit));
+        } catch (RuntimeException e) {
+            pin.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lists a page of the colony as JSON, with the cursor for the next page:
+     * {"aliens":[{"name":"Vexorg","type":"ALPHA","homePlanet":"Omicron","parent":null,"remainingChildSlots":1}],"next":"Vexorg"}
+     *
+     * @see com.example.alienfamily.service.AlienService#listAliens(AlienType, String, Boolean, String, String, int)
+     */
+    @GetMapping("/aliencolony/aliens")
+    public AlienPage listAliens(@RequestParam(required = false) AlienType type, @RequestParam(required = false) String homePlanet,
+                                @RequestParam(required = false) Boolean freeSlots, @RequestParam(required = false) String parent,
+                                @RequestParam(required = false) String after, @RequestParam(defaultValue = "100") int limit,
+                                @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Listing aliens");
+        return colonies.call(colonyId, alienService -> alienService.listAliens(type, homePlanet, freeSlots, parent, after, limit));
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#isDescendant(String, String)
+     */
+    @GetMapping("/aliencolony/isDescendant")
+    public boolean isDescendant(@RequestParam String name, @RequestParam String ancestor, @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Checking whether alien {} is descended from {}", name, ancestor);
+        return colonies.call(colonyId, alienService -> alienService.isDescendant(name, ancestor));
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#getCommonAncestor(String, String)
+     */
+    @GetMapping("/aliencolony/commonAncestor")
+    public String commonAncestor(@RequestParam String first, @RequestParam String second, @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Getting common ancestor of aliens {} and {}", first, second);
+        return colonies.call(colonyId, alienService -> alienService.getCommonAncestor(first, second));
+    }
+
+    /**
+     * Streams the whole colony, each alien after its live parent, in the given format.
+     *
+     * @see com.example.alienfamily.service.AlienService#exportColony(ColonyWriter)
+     * @see ColonyFormat
+     */
+    @GetMapping("/aliencolony/export")
+    public ResponseEntity<StreamingResponseBody> exportColony(@RequestParam(defaultValue = "NDJSON") ColonyFormat format,
+                                                              @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) {
+        requestLog.info("Exporting colony {} as {}", colonyId, format);
+        ColonyRegistry.Pin pin = colonies.pin(colonyId);
+        StreamingResponseBody body = out -> {
+            try (ColonyRegistry.Pin colony = pin) {
+                colony.service().exportColony(format.writer(out));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(format.getContentType())).body(body);
+    }
+
+    /**
+     * Replaces the colony with one streamed from the request body, in the given format.
+     *
+     * @return the number of aliens imported
+     * @see com.example.alienfamily.service.AlienService#importColony(ColonyReader)
+     */
+    @PostMapping("/aliencolony/import")
+    public int importColony(@RequestParam(defaultValue = "NDJSON") ColonyFormat format, InputStream body,
+                            @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId) throws IOException {
+        requestLog.info("Importing colony {} as {}", colonyId, format);
+        ColonyReader reader = format.reader(body);
+        return colonies.call(colonyId, alienService -> alienService.importColony(reader));
+    }
+
+    /**
+     * Write a lineage as it is walked. Errors have been checked by now, the status is sent first.
+     * The colony stays pinned until the lineage is written.
+     */
+    private static ResponseEntity<StreamingResponseBody> stream(ColonyRegistry.Pin pin, Lineage lineage) {
+        StreamingResponseBody body = out -> {
+            try (ColonyRegistry.Pin colony = pin) {
+                writeLineage(lineage, out);
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private static void writeResults(List<ColonyOpResult> results, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartArray();
+            for (ColonyOpResult result : results) {
+                json.writeStartObject();
+                json.writeNumberField("index", result.getIndex());
+                json.writeBooleanField("success", result.isSuccess());
+                json.writeStringField("error", result.getError());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static void writeLineage(Lineage lineage, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            lineage.forEach((name, type, homePlanet, depth) -> {
+                try {
+                    json.writeStartObject();
+                    json.writeStringField("name", name);
+                    json.writeStringField("type", type.name());
+                    json.writeStringField("homePlanet", homePlanet);
+                    json.writeNumberField("depth", depth);
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 }
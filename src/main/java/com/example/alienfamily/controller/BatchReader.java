@@ -0,0 +1,128 @@
+package com.example.alienfamily.controller;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.service.ColonyOp;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a batch of operations, a JSON array of ColonyOp objects, one object at a time from a
+ * streaming parser. Unknown fields are skipped.
+ *
+ * A batch with more than the most operations allowed is refused as soon as the one over is
+ * read, rather than after the whole body has been bound.
+ */
+final class BatchReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private BatchReader() {
+    }
+
+    /**
+     * @param in
+     * @param max - most operations allowed
+     * @return the operations, in order
+     * @throws AlienValidationException - INVALID_BATCH if the body is not an array of
+     *                                   operations, or has more than max
+     */
+    static List<ColonyOp> read(InputStream in, int max) throws IOException {
+        try (JsonParser json = JSON_FACTORY.createParser(in)) {
+            if (json.nextToken() != JsonToken.START_ARRAY) {
+                throw new AlienValidationException(ErrorCode.INVALID_BATCH, "A batch must be a JSON array of operations");
+            }
+            List<ColonyOp> ops = new ArrayList<>();
+            JsonToken token;
+            while ((token = json.nextToken()) == JsonToken.START_OBJECT) {
+                if (ops.size() == max) {
+                    throw new AlienValidationException(ErrorCode.INVALID_BATCH, "A batch can have at most " + max + " operations");
+                }
+                ops.add(op(json));
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new AlienValidationException(ErrorCode.INVALID_BATCH, "Expected an operation, found " + token);
+            }
+            return ops;
+        } catch (JsonParseException e) {
+            throw new AlienValidationException(ErrorCode.INVALID_BATCH, "Batch is not valid JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private static ColonyOp op(JsonParser json) throws IOException {
+        ColonyOp op = new ColonyOp();
+        JsonToken token;
+        while ((token = json.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            json.nextToken();
+            switch (field) {
+                case "op":
+                    String name = text(json);
+                    op.setOp(name == null ? null : valueOf(ColonyOp.Op.class, name));
+                    break;
+                case "parentName":
+                    op.setParentName(text(json));
+                    break;
+                case "childName":
+                    op.setChildName(text(json));
+                    break;
+                case "type":
+                    String type = text(json);
+                    op.setType(type == null ? null : valueOf(AlienType.class, type));
+                    break;
+                case "homePlanet":
+                    op.setHomePlanet(text(json));
+                    break;
+                case "oldName":
+                    op.setOldName(text(json));
+                    break;
+                case "newName":
+                    op.setNewName(text(json));
+                    break;
+                case "newPlanet":
+                    op.setNewPlanet(text(json));
+                    break;
+                case "name":
+                    op.setName(text(json));
+                    break;
+                case "reservation":
+                    op.setReservation(text(json));
+                    break;
+                default:
+                    json.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(json, "Unexpected end of operation");
+        }
+        return op;
+    }
+
+    private static String text(JsonParser json) throws IOException {
+        JsonToken token = json.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new JsonParseException(json, "Expected a value for " + json.getCurrentName() + ", found " + token);
+        }
+        return json.getValueAsString();
+    }
+
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String name) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new AlienValidationException(ErrorCode.INVALID_BATCH, "Unknown " + type.getSimpleName() + " " + name);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.example.alienfamily.controller;
+
+import com.example.alienfamily.events.ColonyEvent;
+import com.example.alienfamily.events.ColonyEvents;
+import com.example.alienfamily.service.ColonyRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams changes to a colony as Server-Sent Events, for consumers that follow the colony
+ * instead of polling it.
+ *
+ * Each consumer has its own position in the colony's event buffer, see ColonyEvents, and is
+ * sent events from there by a small pool of sender threads, a batch at a time, when there are
+ * new ones. Nothing is queued per consumer: a consumer only moves on as fast as its events
+ * are written, so one that reads slowly holds back nothing but itself. If it falls so far
+ * behind that the buffer has dropped events it has not been sent, it is sent a RESYNC event
+ * and disconnected, and should read the colony again before following it from the RESYNC
+ * event's id.
+ *
+ * Events are written with the servlet container's non-blocking I/O: when a consumer's
+ * connection cannot take more, its sender moves on to other consumers, and the consumer is
+ * sent more once the connection drains. A consumer that does not read holds no thread. One
+ * whose connection has not drained for the write timeout is disconnected the next time there
+ * is an event for it.
+ *
+ * A followed colony is pinned, so it is not evicted while it has consumers.
+ */
+@RestController
+@Profile("!reactive")
+public class ColonyEventController implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColonyEventController.class);
+
+    /**
+     * Sent to a consumer that has missed events, with the id to follow from once it has read
+     * the colony again
+     */
+    static final String RESYNC = "RESYNC";
+
+    /**
+     * Most events sent to one consumer before the others get a turn
+     */
+    private static final int BATCH = 256;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ColonyRegistry colonies;
+
+    private final ExecutorService senders;
+
+    /**
+     * Milliseconds before a stream is closed, for the consumer to reconnect
+     */
+    private final long timeout;
+
+    /**
+     * Nanoseconds a consumer's connection may stay unable to take more before it is disconnected
+     */
+    private final long writeTimeout;
+
+    private final AtomicInteger consumers = new AtomicInteger();
+
+    private final Counter resyncs;
+
+    private final Counter writeTimeouts;
+
+    /**
+     * Constructor for Spring autowiring
+     *
+     * @param colonies
+     * @param meterRegistry
+     * @param threads - sender threads, shared by every consumer, from alienfamily.events.threads
+     * @param timeout - seconds before a stream is closed, from alienfamily.events.timeout
+     * @param writeTimeout - seconds a consumer's connection may be unable to take more before
+     *                     it is disconnected, from alienfamily.events.write-timeout
+     */
+    @Autowired
+    public ColonyEventController(ColonyRegistry colonies, MeterRegistry meterRegistry,
+                                 @Value("${alienfamily.events.threads:4}") int threads,
+                                 @Value("${alienfamily.events.timeout:1800}") long timeout,
+                                 @Value("${alienfamily.events.write-timeout:30}") long writeTimeout) {
+        this(colonies, meterRegistry, threads, timeout, writeTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param colonies
+     * @param meterRegistry
+     * @param threads - sender threads, shared by every consumer
+     * @param timeout - seconds before a stream is closed
+     * @param writeTimeout - time a consumer's connection may be unable to take more before it is disconnected
+     * @param writeTimeoutUnit
+     */
+    ColonyEventController(ColonyRegistry colonies, MeterRegistry meterRegistry, int threads, long timeout,
+                          long writeTimeout, TimeUnit writeTimeoutUnit) {
+        this.colonies = colonies;
+        this.timeout = timeout * 1000;
+        this.writeTimeout = writeTimeoutUnit.toNanos(writeTimeout);
+        AtomicInteger count = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "colony-events-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("alienfamily.events.consumers", consumers, AtomicInteger::get)
+                .description("Consumers following colony events")
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("alienfamily.events.resyncs")
+                .description("Consumers disconnected for falling behind the event buffer")
+                .register(meterRegistry);
+        this.writeTimeouts = Counter.builder("alienfamily.events.write.timeouts")
+                .description("Consumers disconnected for not reading their events")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Follows a colony's changes as Server-Sent Events, named by event type, each with the
+     * event as JSON and an id to resume from:
+     *
+     *     id:1550000000000-42
+     *     event:ALIEN_RENAMED
+     *     data:{"sequence":42,"type":"ALIEN_RENAMED","name":"Frank","oldName":"Braxtarg",...}
+     *
+     * Consumers reconnecting send the last id they saw as Last-Event-ID, and carry on after it.
+     * Otherwise 'after' is the sequence number to follow from, and without either the stream
+     * starts with the next change.
+     *
+     * @param after - sequence number of the last event already seen
+     * @param lastEventId - id of the last event already seen, from a reconnecting consumer
+     * @param colonyId
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping(value = "/aliencolony/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void events(@RequestParam(required = false) Long after,
+                       @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                       @RequestParam(defaultValue = ColonyRegistry.DEFAULT) String colonyId,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ColonyRegistry.Pin pin = colonies.pin(colonyId);
+        ColonyEvents events = pin.service().getEvents();
+        long from = position(events, after, lastEventId);
+        LOGGER.info("Following colony {} from event {}", colonyId, from);
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("Cache-Control", "no-cache");
+        AsyncContext async = request.startAsync();
+        async.setTimeout(timeout);
+        try {
+            follow(new ServletEventStream(async), pin, events, from);
+        } catch (IOException | RuntimeException e) {
+            pin.close();
+            async.complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Start sending a colony's events to a consumer
+     */
+    void follow(EventStream stream, ColonyRegistry.Pin pin, ColonyEvents events, long from) {
+        Consumer consumer = new Consumer(stream, pin, events, from);
+        consumers.incrementAndGet();
+        stream.start(consumer);
+        events.addListener(consumer.listener);
+        // Send anything the consumer has missed since its position
+        consumer.wake();
+    }
+
+    /**
+     * The sequence number to follow from, or -1 if the consumer's position is from an earlier
+     * event buffer and it must read the colony again
+     */
+    private static long position(ColonyEvents events, Long after, String lastEventId) {
+        if (lastEventId != null) {
+            int dash = lastEventId.indexOf('-');
+            try {
+                if (dash > 0 && Long.parseLong(lastEventId.substring(0, dash)) == events.getEpoch()) {
+                    return Long.parseLong(lastEventId.substring(dash + 1));
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Unreadable Last-Event-ID {}", lastEventId);
+            }
+            return -1;
+        }
+        return after == null ? events.getLastSequence() : after;
+    }
+
+    private static String id(ColonyEvents events, long sequence) {
+        return events.getEpoch() + "-" + sequence;
+    }
+
+    /**
+     * An event as sent to a consumer, named by its type with the event as JSON:
+     *
+     *     id:1550000000000-42
+     *     event:ALIEN_RENAMED
+     *     data:{"sequence":42,"type":"ALIEN_RENAMED","name":"Frank","oldName":"Braxtarg",...}
+     */
+    static byte[] frame(ColonyEvents events, ColonyEvent event) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            out.write(("id:" + id(events, event.getSequence()) + "\nevent:" + event.getType().name() + "\ndata:")
+                    .getBytes(StandardCharsets.UTF_8));
+            try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeNumberField("sequence", event.getSequence());
+                json.writeStringField("type", event.getType().name());
+                json.writeStringField("name", event.getName());
+                json.writeStringField("oldName", event.getOldName());
+                json.writeStringField("parent", event.getParent());
+                json.writeStringField("alienType", event.getAlienType() == null ? null : event.getAlienType().name());
+                json.writeStringField("homePlanet", event.getHomePlanet());
+                json.writeEndObject();
+            }
+            out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Cannot happen writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The RESYNC event, with the id to follow from once the colony has been read again
+     */
+    static byte[] resyncFrame(ColonyEvents events, long last) {
+        return ("id:" + id(events, last) + "\nevent:" + RESYNC + "\ndata:{\"sequence\":" + last + "}\n\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of consumers following a colony
+     */
+    public int getConsumerCount() {
+        return consumers.get();
+    }
+
+    /**
+     * Stop sending events, consumers still connected stop hearing about changes
+     */
+    @Override
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * One consumer's position in the event buffer.
+     *
+     * At most one sender thread works for a consumer at a time, which the scheduled flag
+     * hands from one to the next, so the position needs no other locking.
+     */
+    private final class Consumer implements Runnable, EventStream.Listener {
+
+        private final EventStream stream;
+
+        private final ColonyRegistry.Pin pin;
+
+        private final ColonyEvents events;
+
+        /**
+         * Sequence number of the last event sent
+         */
+        private long position;
+
+        /**
+         * Whether there are events written but not yet flushed. True to begin with, so the
+         * response headers are sent straight away.
+         */
+        private boolean unflushed = true;
+
+        /**
+         * System.nanoTime when the stream was first found unable to take more, 0 while it can
+         */
+        private long stalledSince;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * Registered with the event buffer, and removed again on close
+         */
+        private final Runnable listener = this::wake;
+
+        private Consumer(EventStream stream, ColonyRegistry.Pin pin, ColonyEvents events, long position) {
+            this.stream = stream;
+            this.pin = pin;
+            this.events = events;
+            this.position = position;
+        }
+
+        /**
+         * Have a sender send new events, unless one already is. Called on the writer's thread.
+         */
+        void wake() {
+            if (!closed.get() && scheduled.compareAndSet(false, true)) {
+                submit();
+            }
+        }
+
+        @Override
+        public void onWritable() {
+            wake();
+        }
+
+        @Override
+        public void onClosed() {
+            close();
+        }
+
+        private void submit() {
+            try {
+                senders.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                close();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (closed.get()) {
+                return;
+            }
+            List<ColonyEvent> batch = position < 0 ? null : events.read(position, BATCH);
+            try {
+                if (batch == null) {
+                    resync();
+                    return;
+                }
+                for (ColonyEvent event : batch) {
+                    if (!ready()) {
+                        waitForStream();
+                        return;
+                    }
+                    stream.write(frame(events, event));
+                    position = event.getSequence();
+                    unflushed = true;
+                }
+                if (unflushed) {
+                    if (!ready()) {
+                        waitForStream();
+                        return;
+                    }
+                    stream.flush();
+                    unflushed = false;
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The consumer has gone
+                LOGGER.debug("Event consumer disconnected: {}", e.getMessage());
+                disconnect();
+                return;
+            }
+            if (batch.size() == BATCH) {
+                // More to send, after the other consumers have had a turn
+                submit();
+                return;
+            }
+            scheduled.set(false);
+            // An event appended since the read found this consumer still scheduled
+            if (events.getLastSequence() != position && scheduled.compareAndSet(false, true)) {
+                submit();
+            }
+        }
+
+        private boolean ready() {
+            if (stream.isReady()) {
+                stalledSince = 0;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Leave the consumer until its stream can take more and calls back, or disconnect it if
+         * it has been unable to for the write timeout
+         */
+        private void waitForStream() {
+            long now = System.nanoTime();
+            if (stalledSince == 0) {
+                stalledSince = now;
+            } else if (now - stalledSince > writeTimeout) {
+                LOGGER.warn("Event consumer at {} has not read for {}ms, disconnecting", position,
+                        TimeUnit.NANOSECONDS.toMillis(now - stalledSince));
+                writeTimeouts.increment();
+                disconnect();
+                return;
+            }
+            scheduled.set(false);
+            // Able to take more since it was asked, with the call back already made
+            if (stream.isReady() && scheduled.compareAndSet(false, true)) {
+                submit();
+            }
+        }
+
+        /**
+         * Tell the consumer it has missed events and where to follow from once it has read the
+         * colony again, then disconnect it. Waits for the stream to take the RESYNC event, as
+         * for any other.
+         */
+        private void resync() throws IOException {
+            if (!ready()) {
+                waitForStream();
+                return;
+            }
+            long last = events.getLastSequence();
+            LOGGER.warn("Event consumer at {} fell behind the event buffer, now at {}, disconnecting", position, last);
+            resyncs.increment();
+            stream.write(resyncFrame(events, last));
+            stream.flush();
+            disconnect();
+        }
+
+        private void disconnect() {
+            close();
+            stream.close();
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                events.removeListener(listener);
+                consumers.decrementAndGet();
+                pin.close();
+            }
+        }
+    }
+}
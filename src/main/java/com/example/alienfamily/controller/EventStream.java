@@ -0,0 +1,57 @@
+package com.example.alienfamily.controller;
+
+import java.io.IOException;
+
+/**
+ * A consumer's connection, that events are written to without blocking.
+ *
+ * Writes are only made while isReady is true. Once it has returned false, the stream calls
+ * back onWritable when it can take more, so a consumer that is not reading holds no thread.
+ */
+interface EventStream {
+
+    /**
+     * Start calling back the listener. Nothing is written before this.
+     *
+     * @param listener
+     */
+    void start(Listener listener);
+
+    /**
+     * @return true if write or flush can be called without blocking
+     */
+    boolean isReady();
+
+    /**
+     * Write bytes, or buffer them to be written once the connection can take them
+     *
+     * @param bytes
+     * @throws IOException - if the consumer has gone
+     */
+    void write(byte[] bytes) throws IOException;
+
+    /**
+     * Send what has been written
+     *
+     * @throws IOException - if the consumer has gone
+     */
+    void flush() throws IOException;
+
+    /**
+     * End the stream, if it has not ended already
+     */
+    void close();
+
+    interface Listener {
+
+        /**
+         * The stream can take more, after isReady returned false. Called on the stream's thread.
+         */
+        void onWritable();
+
+        /**
+         * The stream has ended, for any reason other than close
+         */
+        void onClosed();
+    }
+}
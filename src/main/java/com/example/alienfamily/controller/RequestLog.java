@@ -0,0 +1,69 @@
+package com.example.alienfamily.controller;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs requests at INFO for a sample of them, so logging each request stays affordable at high
+ * request rates.
+ *
+ * Each request is logged with probability alienfamily.logging.request-sample-rate, 1 for every
+ * request, decided afresh for each so there is no counter shared between threads. Messages are
+ * parameterised, see Logger, and nothing is formatted for a request that is not sampled or when
+ * INFO is off. Only the request log is sampled, warnings and errors are always logged.
+ */
+public final class RequestLog {
+
+    /**
+     * Sample rate property, for Spring autowiring
+     */
+    public static final String SAMPLE_RATE = "${alienfamily.logging.request-sample-rate:1}";
+
+    private final Logger logger;
+
+    private final double sampleRate;
+
+    /**
+     * @param logger
+     * @param sampleRate - fraction of requests to log, from 0 for none to 1 for all
+     */
+    public RequestLog(Logger logger, double sampleRate) {
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("Request sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.logger = logger;
+        this.sampleRate = sampleRate;
+    }
+
+    public void info(String message) {
+        if (logger.isInfoEnabled() && sampled()) {
+            logger.info(message);
+        }
+    }
+
+    public void info(String format, Object arg) {
+        if (logger.isInfoEnabled() && sampled()) {
+            logger.info(format, arg);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (logger.isInfoEnabled() && sampled()) {
+            logger.info(format, arg1, arg2);
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (logger.isInfoEnabled() && sampled()) {
+            logger.info(format, args);
+        }
+    }
+
+    /**
+     * @return true if this request is to be logged
+     */
+    boolean sampled() {
+        return sampleRate >= 1 || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
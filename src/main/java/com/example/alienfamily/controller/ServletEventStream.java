@@ -0,0 +1,95 @@
+package com.example.alienfamily.controller;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An event stream on an asynchronous servlet response, written with non-blocking I/O
+ */
+final class ServletEventStream implements EventStream {
+
+    private final AsyncContext async;
+
+    private final ServletOutputStream out;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param async - started, with the response headers set
+     * @throws IOException
+     */
+    ServletEventStream(AsyncContext async) throws IOException {
+        this.async = async;
+        this.out = async.getResponse().getOutputStream();
+    }
+
+    @Override
+    public void start(Listener listener) {
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                listener.onClosed();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                listener.onClosed();
+                close();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                listener.onClosed();
+                close();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        // Called back straight away once the response can be written
+        out.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                listener.onWritable();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                listener.onClosed();
+                close();
+            }
+        });
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    @Override
+    public void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.alienfamily.events;
+
+import com.example.alienfamily.alien.AlienType;
+
+/**
+ * One change to a colony, numbered in the order changes were made.
+ *
+ * Fields that do not apply to the type of change are null.
+ */
+public class ColonyEvent {
+
+    private final long sequence;
+
+    private final ColonyEventType type;
+
+    /**
+     * The alien changed, by its name after the change. Null for an import.
+     */
+    private final String name;
+
+    /**
+     * The alien's name before a rename
+     */
+    private final String oldName;
+
+    /**
+     * The parent of an added alien
+     */
+    private final String parent;
+
+    /**
+     * The type of a started or added alien
+     */
+    private final AlienType alienType;
+
+    /**
+     * The home planet of a started or added alien, or the new planet
+     */
+    private final String homePlanet;
+
+    ColonyEvent(long sequence, ColonyEventType type, String name, String oldName, String parent, AlienType alienType, String homePlanet) {
+        this.sequence = sequence;
+        this.type = type;
+        this.name = name;
+        this.oldName = oldName;
+        this.parent = parent;
+        this.alienType = alienType;
+        this.homePlanet = homePlanet;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public ColonyEventType getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOldName() {
+        return oldName;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public AlienType getAlienType() {
+        return alienType;
+    }
+
+    public String getHomePlanet() {
+        return homePlanet;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.alienfamily.events;
+
+/**
+ * Kinds of change to a colony
+ */
+public enum ColonyEventType {
+
+    /**
+     * The colony was started with its first alien, replacing any aliens it had
+     */
+    COLONY_STARTED,
+
+    /**
+     * The colony was replaced by an import, or emptied or restored by one that failed.
+     * Consumers should read the colony again.
+     */
+    COLONY_IMPORTED,
+
+    /**
+     * An alien was born to a parent
+     */
+    ALIEN_ADDED,
+
+    /**
+     * An alien's name changed
+     */
+    ALIEN_RENAMED,
+
+    /**
+     * An alien's home planet changed
+     */
+    PLANET_CHANGED,
+
+    /**
+     * An alien was deleted
+     */
+    ALIEN_DELETED
+}
@@ -0,0 +1,145 @@
+package com.example.alienfamily.events;
+
+import com.example.alienfamily.alien.AlienType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded buffer of the latest changes to a colony, for consumers that follow the colony
+ * rather than poll it.
+ *
+ * Events are numbered from 1 in the order they are appended, and the last `capacity` are kept
+ * in a ring, so memory is fixed however fast the colony changes. Consumers read from their own
+ * position at their own pace; one that falls a whole ring behind has missed events, and must
+ * read the colony again before following it.
+ *
+ * Numbering starts again with each instance, so each has an epoch to tell them apart.
+ *
+ * Appends are serialised, reads take the same monitor briefly and never wait for consumers.
+ */
+public final class ColonyEvents {
+
+    /**
+     * Last epoch given out, so buffers made in the same millisecond still differ
+     */
+    private static final AtomicLong EPOCHS = new AtomicLong();
+
+    private final ColonyEvent[] ring;
+
+    /**
+     * Sequence number of the last event, 0 before the first
+     */
+    private long last;
+
+    private final long epoch = EPOCHS.updateAndGet(previous -> Math.max(previous + 1, System.currentTimeMillis()));
+
+    /**
+     * Called after each append, outside the monitor
+     */
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param capacity - events kept
+     */
+    public ColonyEvents(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Event buffer must hold at least one event: " + capacity);
+        }
+        ring = new ColonyEvent[capacity];
+    }
+
+    public void started(String name, String homePlanet) {
+        append(ColonyEventType.COLONY_STARTED, name, null, null, AlienType.ALPHA, homePlanet);
+    }
+
+    public void imported() {
+        append(ColonyEventType.COLONY_IMPORTED, null, null, null, null, null);
+    }
+
+    public void added(String parent, String name, AlienType type, String homePlanet) {
+        append(ColonyEventType.ALIEN_ADDED, name, null, parent, type, homePlanet);
+    }
+
+    public void renamed(String oldName, String newName) {
+        append(ColonyEventType.ALIEN_RENAMED, newName, oldName, null, null, null);
+    }
+
+    public void planetChanged(String name, String homePlanet) {
+        append(ColonyEventType.PLANET_CHANGED, name, null, null, null, homePlanet);
+    }
+
+    public void deleted(String name) {
+        append(ColonyEventType.ALIEN_DELETED, name, null, null, null, null);
+    }
+
+    private void append(ColonyEventType type, String name, String oldName, String parent, AlienType alienType, String homePlanet) {
+        synchronized (this) {
+            long sequence = ++last;
+            ring[(int) (sequence % ring.length)] = new ColonyEvent(sequence, type, name, oldName, parent, alienType, homePlanet);
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Events after a position, oldest first
+     *
+     * @param after - sequence number of the last event already seen, 0 for all
+     * @param max - most events to return
+     * @return the events, empty if there are none yet, or null if some have already been
+     * dropped from the ring or the position is past the last event
+     */
+    public synchronized List<ColonyEvent> read(long after, int max) {
+        if (after < last - ring.length || after > last) {
+            return null;
+        }
+        int count = (int) Math.min(last - after, max);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<ColonyEvent> events = new ArrayList<>(count);
+        for (long sequence = after + 1; sequence <= after + count; sequence++) {
+            events.add(ring[(int) (sequence % ring.length)]);
+        }
+        return events;
+    }
+
+    /**
+     * @return the sequence number of the last event, 0 if there are none
+     */
+    public synchronized long getLastSequence() {
+        return last;
+    }
+
+    /**
+     * @return about when this buffer was created, distinguishing its sequence numbers from
+     * those of earlier buffers for the same colony
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Call a listener after every append, on the appending thread. Listeners must not block,
+     * and are called while the change is still locked.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the number of listeners, one per consumer following the colony
+     */
+    public int getListenerCount() {
+        return listeners.size();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.alienfamily.exception;
+
+/**
+ * The request conflicts with the current state of the colony, e.g. a duplicate name
+ */
+public class AlienConflictException extends AlienException {
+
+    public AlienConflictException(ErrorCode code, String errorMessage) {
+        super(code, errorMessage);
+    }
+}
@@ -1,8 +1,21 @@
 package com.example.alienfamily.exception;
 
-public class AlienException extends RuntimeException {
+/**
+ * Base class for errors in the colony, with a stable error code for clients.
+ *
+ * These are routine outcomes of client requests (a missing alien, a duplicate name) rather than
+ * bugs, so no stack trace is captured. That keeps them cheap however many bad requests arrive.
+ */
+public abstract class AlienException extends RuntimeException {
 
-    public AlienException(String errorMessage) {
-        super(errorMessage);
+    private final ErrorCode code;
+
+    protected AlienException(ErrorCode code, String errorMessage) {
+        super(errorMessage, null, false, false);
+        this.code = code;
+    }
+
+    public ErrorCode getCode() {
+        return code;
     }
 }
@@ -0,0 +1,11 @@
+package com.example.alienfamily.exception;
+
+/**
+ * An alien the request refers to is not in the colony
+ */
+public class AlienNotFoundException extends AlienException {
+
+    public AlienNotFoundException(ErrorCode code, String errorMessage) {
+        super(code, errorMessage);
+    }
+}
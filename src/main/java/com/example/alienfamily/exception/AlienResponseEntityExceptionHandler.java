@@ -1,35 +1,98 @@
 package com.example.alienfamily.exception;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Exception Handler - map exceptions to HTTP code
+ *
+ * Each type of Alien Exception has its own status, and the body is an ErrorResponse with the
+ * error code and message. Each Alien Exception is also counted by code, in alienfamily.errors.
  */
 @ControllerAdvice
 @RestController
 public class AlienResponseEntityExceptionHandler extends ResponseEntityExceptionHandler {
 
+    private final Map<ErrorCode, Counter> errors = new EnumMap<>(ErrorCode.class);
+
+    /**
+     * Constructor for Spring autowiring
+     *
+     * @param meterRegistry
+     */
+    public AlienResponseEntityExceptionHandler(MeterRegistry meterRegistry) {
+        for (ErrorCode code : ErrorCode.values()) {
+            errors.put(code, Counter.builder("alienfamily.errors")
+                    .description("Alien Exceptions returned to clients")
+                    .tag("cause", code.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * An alien the request refers to does not exist, send 404
+     *
+     * @param ae
+     * @return
+     */
+    @ExceptionHandler(AlienNotFoundException.class)
+    public final ResponseEntity<ErrorResponse> handleNotFound(AlienNotFoundException ae) {
+        return respond(ae, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * The request conflicts with the colony, send 409
+     *
+     * @param ae
+     * @return
+     */
+    @ExceptionHandler({AlienConflictException.class, QuotaExceededException.class})
+    public final ResponseEntity<ErrorResponse> handleConflict(AlienException ae) {
+        return respond(ae, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * The request is invalid, send 400
+     *
+     * @param ae
+     * @return
+     */
+    @ExceptionHandler(AlienValidationException.class)
+    public final ResponseEntity<ErrorResponse> handleInvalid(AlienValidationException ae) {
+        return respond(ae, HttpStatus.BAD_REQUEST);
+    }
+
     /**
-     * Exception Handler for Alien Exceptions
+     * Map any Alien Exception to its status and body, for endpoints outside Spring MVC
      *
      * @param ae
      * @return
      */
-    @ExceptionHandler(AlienException.class)
-    public final ResponseEntity<String> handleAlienException(AlienException ae) {
-        String msg = ae.getMessage();
-        // Switching on message content, bit mucky, but meh!
-        // TODO: Future enhancement, create a different Exception for 'not found' errors
-        if (msg != null && (msg.contains("not exist") || msg.contains("not found"))) {
-            // Error relates to not finding an alien, send 404
-            return new ResponseEntity<String>(msg, HttpStatus.NOT_FOUND);
+    public ResponseEntity<ErrorResponse> handle(AlienException ae) {
+        if (ae instanceof AlienNotFoundException) {
+            return respond(ae, HttpStatus.NOT_FOUND);
+        }
+        if (ae instanceof AlienValidationException) {
+            return respond(ae, HttpStatus.BAD_REQUEST);
         }
-        // Error is a result of a Bad Request
-        return new ResponseEntity<String>(msg, HttpStatus.BAD_REQUEST);
+        return respond(ae, HttpStatus.CONFLICT);
+    }
+
+    private ResponseEntity<ErrorResponse> respond(AlienException ae, HttpStatus status) {
+        errors.get(ae.getCode()).increment();
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new ErrorResponse(ae.getCode(), ae.getMessage()));
     }
 }
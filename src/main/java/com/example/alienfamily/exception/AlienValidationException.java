@@ -0,0 +1,11 @@
+package com.example.alienfamily.exception;
+
+/**
+ * The request is invalid whatever the state of the colony, e.g. a name that is too long
+ */
+public class AlienValidationException extends AlienException {
+
+    public AlienValidationException(ErrorCode code, String errorMessage) {
+        super(code, errorMessage);
+    }
+}
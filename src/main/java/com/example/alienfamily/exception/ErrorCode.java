@@ -0,0 +1,92 @@
+package com.example.alienfamily.exception;
+
+/**
+ * Stable error codes returned to clients. Never rename or reuse a code.
+ */
+public enum ErrorCode {
+
+    /**
+     * The named alien is not in the colony
+     */
+    ALIEN_NOT_FOUND,
+
+    /**
+     * The parent of a new alien is not in the colony
+     */
+    PARENT_NOT_FOUND,
+
+    /**
+     * Two aliens are not in the same lineage
+     */
+    NO_COMMON_ANCESTOR,
+
+    /**
+     * An alien with that name is already in the colony
+     */
+    ALIEN_ALREADY_EXISTS,
+
+    /**
+     * No colony has been started
+     */
+    COLONY_NOT_STARTED,
+
+    /**
+     * The parent has already had two children
+     */
+    CHILD_QUOTA_EXCEEDED,
+
+    /**
+     * Only alphas can have children
+     */
+    NOT_AN_ALPHA,
+
+    /**
+     * A new alien needs a parent
+     */
+    PARENT_REQUIRED,
+
+    /**
+     * A name or type is missing, or a name or planet is too long
+     */
+    INVALID_ALIEN,
+
+    /**
+     * A batch operation has no known type
+     */
+    UNKNOWN_OPERATION,
+
+    /**
+     * A page limit, depth or cursor is not valid
+     */
+    INVALID_PAGE,
+
+    /**
+     * A colony import is malformed or breaks the colony's rules
+     */
+    INVALID_IMPORT,
+
+    /**
+     * A colony id is not valid
+     */
+    INVALID_COLONY,
+
+    /**
+     * A colony version is later than the colony, or no longer kept
+     */
+    VERSION_NOT_FOUND,
+
+    /**
+     * The parent of a new alien is reserved for another grower of the colony
+     */
+    PARENT_RESERVED,
+
+    /**
+     * A reservation's length is not valid
+     */
+    INVALID_RESERVATION,
+
+    /**
+     * A batch is not a JSON array of operations, or has too many
+     */
+    INVALID_BATCH
+}
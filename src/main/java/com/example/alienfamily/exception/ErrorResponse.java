@@ -0,0 +1,23 @@
+package com.example.alienfamily.exception;
+
+/**
+ * JSON error body, e.g. {"code":"ALIEN_NOT_FOUND","message":"Alien Vexorg not found"}
+ */
+public class ErrorResponse {
+
+    private final ErrorCode code;
+    private final String message;
+
+    public ErrorResponse(ErrorCode code, String message) {
+        this.code = code;
+        this.message = message;
+    }
+
+    public ErrorCode getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.alienfamily.exception;
+
+/**
+ * An alien has already had as many children as it ever can
+ */
+public class QuotaExceededException extends AlienException {
+
+    public QuotaExceededException(String errorMessage) {
+        super(ErrorCode.CHILD_QUOTA_EXCEEDED, errorMessage);
+    }
+}
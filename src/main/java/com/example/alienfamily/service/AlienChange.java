@@ -0,0 +1,50 @@
+package com.example.alienfamily.service;
+
+/**
+ * An alien that differs between two versions of the colony
+ */
+public class AlienChange {
+
+    /**
+     * The alien's id, the same in both versions
+     */
+    private final int id;
+
+    /**
+     * The alien's name as of the later version, or the earlier one if it was deleted since
+     */
+    private final String name;
+
+    /**
+     * The alien as of the earlier version, null if it was added since
+     */
+    private final AlienSummary before;
+
+    /**
+     * The alien as of the later version, null if it was deleted since
+     */
+    private final AlienSummary after;
+
+    public AlienChange(int id, String name, AlienSummary before, AlienSummary after) {
+        this.id = id;
+        this.name = name;
+        this.before = before;
+        this.after = after;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AlienSummary getBefore() {
+        return before;
+    }
+
+    public AlienSummary getAfter() {
+        return after;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.alienfamily.service;
+
+import java.util.List;
+
+/**
+ * One page of a colony listing
+ */
+public class AlienPage {
+
+    private final List<AlienSummary> aliens;
+
+    /**
+     * Cursor for the next page, null if this is the last
+     */
+    private final String next;
+
+    public AlienPage(List<AlienSummary> aliens, String next) {
+        this.aliens = aliens;
+        this.next = next;
+    }
+
+    public List<AlienSummary> getAliens() {
+        return aliens;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
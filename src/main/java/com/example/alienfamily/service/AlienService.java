@@ -2,30 +2,270 @@ package com.example.alienfamily.service;
 
 import com.example.alienfamily.alien.Alien;
 import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.alien.AlienView;
+import com.example.alienfamily.events.ColonyEvents;
+import com.example.alienfamily.exception.AlienConflictException;
 import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.exception.QuotaExceededException;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import com.example.alienfamily.transfer.ColonyReader;
+import com.example.alienfamily.transfer.ColonyRecord;
+import com.example.alienfamily.transfer.ColonyWriter;
+import com.example.alienfamily.wal.ColonyLog;
+import com.example.alienfamily.wal.LogRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Alien Service
  *
  * Models a colony of Aliens and CRUD operations to support it
  *
+ * The service is thread safe. Reads take no locks. Writes lock the stripes of the aliens
+ * they touch (parent and child, or old and new name) so writes to unrelated lineages run
+ * in parallel. Starting or importing a colony replaces every alien, so it locks the whole colony.
+ * An export is written from a snapshot, so it is consistent without a lock.
+ *
+ * Aliens are read from an immutable snapshot of the colony, see ColonySnapshot, which each
+ * write replaces once its change is complete. A reader sees every alien as it was before a
+ * change or after it, never part way through. The snapshot of a hash store holds every alien,
+ * so a reader never waits for a writer. The snapshot of a compact store reads the store and
+ * holds only what changed, so the colony is not copied onto the heap, and each write holds it
+ * in a section while it changes the store, see ColonySnapshot#change.
+ *
+ * Each alien has a numeric id, given out by the store from 0 up as aliens are born and never
+ * given to another alien, which stays the same when it is renamed. The snapshot holds the
+ * aliens by id with a dictionary of ids by name, and the lineage index holds ids only, so a
+ * rename moves one dictionary entry and reads by id need no name lookup. Ids are kept by the
+ * store, logged, checkpointed and exported with the aliens, so an alien keeps its id through
+ * a restart, an export and import, or its colony being evicted and reloaded.
+ *
+ * Each change is a new version of the colony, numbered from 0 for the empty colony. The last
+ * few versions are kept, sharing all but what changed, so aliens can be read as of an earlier
+ * version and two versions compared. Versions are counted afresh each time the service starts.
+ *
+ * Each change is also appended to a bounded buffer of events while its locks are held, so
+ * consumers can follow the colony in the order its aliens changed, see ColonyEvents.
+ *
+ * Growers of the colony can reserve alphas that can still have children, see reserveParents,
+ * so growers working at once add children to different parents rather than racing for the
+ * same slots.
+ *
+ * With a colony log, every successful change is logged before the call returns, and the
+ * colony is recovered from the log on startup. Changes are appended while their locks are
+ * held, once they have been checked and before they are made, so changes to the same aliens
+ * are logged in order and a change that cannot be logged is never seen. They are synced after
+ * the locks are released so concurrent writers share syncs. Checkpoints are written in the background from
+ * a snapshot, see commit.
+ *
+ * The store keeps the colony's counts, and the snapshot and indexes of a recovered colony are
+ * built when it is first used, so a colony in a persistent store is not read on startup.
+ *
+ * Every public method is timed, see ServiceMetrics.
+ *
  */
 @Service
 public class AlienService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AlienService.class);
 
+    private static final AtomicReferenceFieldUpdater<AlienService, ColonySnapshot> SNAPSHOT =
+            AtomicReferenceFieldUpdater.newUpdater(AlienService.class, ColonySnapshot.class, "snapshot");
+
+    /**
+     * Most aliens in one page of a lineage
+     */
+    public static final int MAX_PAGE = 10000;
+
+    /**
+     * Most operations in one batch, which is applied under the colony write lock and answered
+     * with a result per operation
+     */
+    public static final int MAX_BATCH = 10000;
+
+    /**
+     * Earlier versions of the colony kept for reads as of a version, unless configured
+     */
+    public static final int DEFAULT_VERSIONS = 1000;
+
+    /**
+     * Change events kept for consumers following the colony, unless configured
+     */
+    public static final int DEFAULT_EVENTS = 65536;
+
+    /**
+     * Longest a parent can be reserved for, in milliseconds
+     */
+    public static final long MAX_RESERVATION = 3_600_000;
+
+    /**
+     * Aliens in the Colony, indexed by name
+     */
+    private final ColonyStore alienColony;
+
+    /**
+     * Colony wide lock. Held shared by lineage writes and exclusively by whole colony operations.
+     */
+    private final ReadWriteLock colonyLock = new ReentrantReadWriteLock();
+
+    /**
+     * Per-lineage write locks, striped by alien name
+     */
+    private final StripedLocks lineageLocks = new StripedLocks(64);
+
+    /**
+     * Write-ahead log of changes, null if changes are not logged
+     */
+    private final ColonyLog colonyLog;
+
+    private final ServiceMetrics metrics;
+
+    /**
+     * Lineage index for ancestry and common ancestor queries
+     */
+    private final LineageIndex lineageIndex = new LineageIndex();
+
+    /**
+     * Indexes by type, free child slots and home planet for listings
+     */
+    private final AttributeIndex attributeIndex = new AttributeIndex();
+
+    /**
+     * False while the colony is recovered from its log, when the indexes are rebuilt from the
+     * recovered colony afterwards rather than kept up to date by each change
+     */
+    private boolean indexing;
+
+    /**
+     * False until the snapshot and indexes have been built for a recovered colony, which is
+     * left to the first call that needs them, see ensureBuilt
+     */
+    private volatile boolean built;
+
+    /**
+     * Latest snapshot of the colony, which aliens are read from. Replaced by each change, kept
+     * by the recovered colony rather than each change while recovering, as the indexes are.
+     * Starting, importing and building the colony replace it in a section, see
+     * ColonySnapshot#replace, and exports and checkpoints hold their version, see
+     * ColonySnapshot#hold.
+     */
+    private volatile ColonySnapshot snapshot;
+
+    /**
+     * Parents reserved by growers of the colony
+     */
+    private final ParentReservations reservations = new ParentReservations(System::currentTimeMillis);
+
+    /**
+     * Last name found by the last search for free parents, so the next carries on after it
+     */
+    private volatile String freeParentsCursor;
+
+    /**
+     * Latest changes, for consumers following the colony
+     */
+    private final ColonyEvents events;
+
+    /**
+     * Default constructor, uses a hash indexed colony store
+     */
+    public AlienService() {
+        this(new HashColonyStore());
+    }
+
+    /**
+     * Constructor for a colony without a log
+     *
+     * @param alienColony
+     */
+    public AlienService(ColonyStore alienColony) {
+        this(alienColony, null);
+    }
+
+    /**
+     * Constructor for a colony without metrics
+     *
+     * @param alienColony
+     * @param colonyLog - may be null
+     */
+    public AlienService(ColonyStore alienColony, ColonyLog colonyLog) {
+        // A composite with no registries discards everything
+        this(alienColony, colonyLog, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Constructor keeping the default number of earlier versions
+     *
+     * @param alienColony
+     * @param colonyLog - may be null
+     * @param meterRegistry
+     */
+    public AlienService(ColonyStore alienColony, ColonyLog colonyLog, MeterRegistry meterRegistry) {
+        this(alienColony, colonyLog, meterRegistry, DEFAULT_VERSIONS, DEFAULT_EVENTS);
+    }
+
+    /**
+     * Constructor for Spring autowiring
+     *
+     * Recovers the colony from the log, if there is one.
+     *
+     * @param alienColony
+     * @param colonyLog - may be null
+     * @param meterRegistry
+     * @param versions - earlier versions of the colony to keep, from alienfamily.colony.versions
+     * @param events - change events to keep, from alienfamily.events.buffer
+     */
+    @Autowired
+    public AlienService(ColonyStore alienColony, @Nullable ColonyLog colonyLog, MeterRegistry meterRegistry,
+                        @Value("${alienfamily.colony.versions:" + DEFAULT_VERSIONS + "}") int versions,
+                        @Value("${alienfamily.events.buffer:" + DEFAULT_EVENTS + "}") int events) {
+        this(alienColony, colonyLog, meterRegistry, versions, events, ColonyRegistry.DEFAULT);
+    }
+
     /**
-     * List of Aliens in the Colony
+     * Constructor for a colony of a Colony Registry
+     *
+     * Recovers the colony from the log, if there is one.
+     *
+     * @param alienColony
+     * @param colonyLog - may be null
+     * @param meterRegistry
+     * @param versions - earlier versions of the colony to keep
+     * @param events - change events to keep
+     * @param colonyId - tagged on the colony's meters, so they are kept apart from other colonies' in the same registry
      */
-    private List<Alien> alienColony;
+    public AlienService(ColonyStore alienColony, @Nullable ColonyLog colonyLog, MeterRegistry meterRegistry,
+                        int versions, int events, String colonyId) {
+        this.alienColony = alienColony;
+        this.colonyLog = colonyLog;
+        this.events = new ColonyEvents(events);
+        this.snapshot = ColonySnapshot.of(alienColony, versions);
+        recover();
+        this.metrics = new ServiceMetrics(meterRegistry, this, colonyId);
+    }
 
     /**
      * Start Colony method.
@@ -39,10 +279,47 @@ public class AlienService {
      * @throws AlienException
      */
     public void startColony(String name, String birthPlanet) {
-        LOGGER.debug("Starting Colony...");
-        Alien adam = Alien.initialise(name, AlienType.ALPHA, birthPlanet);
-        alienColony = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            LOGGER.debug("Starting Colony...");
+            Alien adam = Alien.initialise(name, AlienType.ALPHA, birthPlanet);
+            long lsn;
+            colonyLock.writeLock().lock();
+            try (ColonySnapshot.Section replacing = snapshot.replace()) {
+                lsn = start(adam);
+            } finally {
+                colonyLock.writeLock().unlock();
+            }
+            commit(lsn);
+        } finally {
+            ServiceMetrics.stop(metrics.startColony, start);
+        }
+    }
+
+    /**
+     * Replace the colony with its first alien, the caller must hold the colony lock
+     *
+     * @param adam - with the id it was logged with, or -1 to give it the next id
+     * @return the change's log sequence number, or 0 if it was not logged
+     */
+    private long start(Alien adam) {
+        if (adam.getId() < 0) {
+            adam.setId(alienColony.takeId());
+        }
+        long lsn = log(LogRecord.start(adam.getName(), adam.getHomePlanet(), adam.getId()));
+        alienColony.clear();
         alienColony.add(adam);
+        if (indexing) {
+            ColonySnapshot colony = snapshot.rebuild().put(AlienView.of(adam.getId(), adam)).done();
+            lineageIndex.start(adam.getId());
+            attributeIndex.clear();
+            attributeIndex.add(adam.getName(), AlienType.ALPHA, adam.getHomePlanet(), true);
+            reservations.clear();
+            snapshot = colony;
+            events.started(adam.getName(), adam.getHomePlanet());
+        }
+        return lsn;
     }
 
     /**
@@ -57,36 +334,102 @@ public class AlienService {
      * @throws AlienException
      */
     public void addAlien(String parentName, String childName, AlienType type, String homePlanet) {
+        addAlien(parentName, childName, type, homePlanet, null);
+    }
+
+    /**
+     * Adds a new alien to a parent that may be reserved, see reserveParents.
+     *
+     * @param parentName
+     * @param childName
+     * @param type
+     * @param homePlanet
+     * @param reservation - token of the reservation holding the parent, null for none
+     * @throws AlienException - PARENT_RESERVED if another reservation holds the parent
+     */
+    public void addAlien(String parentName, String childName, AlienType type, String homePlanet, String reservation) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            long lsn;
+            lockLineage(parentName, childName);
+            try {
+                lsn = add(parentName, childName, type, homePlanet, reservation, -1);
+            } finally {
+                unlockLineage(parentName, childName);
+            }
+            commit(lsn);
+        } finally {
+            ServiceMetrics.stop(metrics.addAlien, start);
+        }
+    }
+
+    /**
+     * Add an alien, the caller must hold the lineage locks or the colony lock
+     *
+     * @param id - the id the alien was logged with, or -1 to give it the next id
+     * @return the change's log sequence number, or 0 if it was not logged
+     */
+    private long add(String parentName, String childName, AlienType type, String homePlanet, String reservation, int id) {
         checkColonyExists();
         if (parentName == null) {
-            LOGGER.error("Alien " + childName + " not added due to null parent.");
+            LOGGER.error("Alien {} not added due to null parent.", childName);
             // No parent specified, throw exception
-            throw new AlienException("Please specify a parent for this alien.");
+            throw new AlienValidationException(ErrorCode.PARENT_REQUIRED, "Please specify a parent for this alien.");
         }
-        if (alienColony.stream()
-                .filter(alien -> alien.getName().equals(childName))
-                .collect(Collectors.toList()).size() > 0) {
+        if (alienColony.contains(childName)) {
             // Alien must be unique
-            LOGGER.error("Alien " + childName + " already exists.");
-            throw new AlienException("Alien " + childName + " already exists. Aliens must have unique names.");
-        }
-        boolean parentFound = false;
-        for (Alien alien : alienColony) {
-            if (alien.getName().equals(parentName)) {
-                LOGGER.debug("Parent alien " + parentName + " found for child " + childName);
-                // add child to parent
-                alien.addChild(childName, type, homePlanet);
-                // add child to colony - seems a weird way to do it, but the Alien constructor is private for a good reason
-                alienColony.addAll(alien.getChildren().stream()
-                        .filter(child -> child.getName().equals(childName))
-                        .collect(Collectors.toList()));
-                parentFound = true;
-                break;
+            LOGGER.error("Alien {} already exists.", childName);
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + childName + " already exists. Aliens must have unique names.");
+        }
+        Alien parent = alienColony.get(parentName);
+        if (parent == null) {
+            LOGGER.error("Alien {} does not exist", parentName);
+            throw new AlienNotFoundException(ErrorCode.PARENT_NOT_FOUND, "Alien " + parentName + " does not exist, Child not added.");
+        }
+        LOGGER.debug("Parent alien {} found for child {}", parentName, childName);
+        if (indexing) {
+            reservations.check(parentName, reservation);
+        }
+        checkChild(parent, childName, type, homePlanet);
+        int childId = id >= 0 ? id : alienColony.takeId();
+        long lsn = log(LogRecord.add(parentName, childName, type, homePlanet, childId));
+        try (ColonySnapshot.Section changing = changing(parentName, childName)) {
+            // add child to parent, then to colony - the Alien constructor is private for a good reason
+            Alien child = parent.addChild(childName, type, homePlanet);
+            child.setId(childId);
+            boolean parentFull = parent.getRemainingChildSlots() == 0;
+            alienColony.add(child);
+            if (indexing) {
+                lineageIndex.add(snapshot.id(parentName), childId);
+                attributeIndex.add(childName, type, homePlanet, AlienType.ALPHA.equals(type));
+                if (parentFull) {
+                    attributeIndex.slotsFull(parentName, parent.getHomePlanet());
+                    reservations.release(parentName);
+                }
+                // Writers to the same parent hold its stripe, so this is the slot the child took
+                int slot = parent.getChildrenHad();
+                publish(edit -> {
+                    edit.put(edit.get(parentName).withChild(slot, childName));
+                    edit.put(AlienView.born(childId, childName, type, homePlanet, parentName));
+                });
+                events.added(parentName, childName, type, homePlanet);
             }
+            return lsn;
         }
-        if (!parentFound) {
-            LOGGER.error("Alien " + parentName + " does not exist");
-            throw new AlienException("Alien " + parentName + " does not exist, Child not added.");
+    }
+
+    /**
+     * Check a parent can have the child, as Alien#addChild does, so the child can be logged
+     * before it is added
+     */
+    private static void checkChild(Alien parent, String childName, AlienType type, String homePlanet) {
+        if (!AlienType.ALPHA.equals(parent.getType())) {
+            throw new AlienValidationException(ErrorCode.NOT_AN_ALPHA, "Only Alpha aliens can reproduce. " + parent.getName() + " is of type " + parent.getType());
+        }
+        Alien.checkDetails(childName, type, homePlanet);
+        if (parent.getRemainingChildSlots() == 0) {
+            throw new QuotaExceededException("Alien " + parent.getName() + " has already had two children");
         }
     }
 
@@ -97,102 +440,1334 @@ public class AlienService {
      * @return
      */
     public String getAlien(String name) {
-        checkColonyExists();
-        for (Alien alien : alienColony) {
-            if (alien.getName().equals(name)) {
-                return alien.toString();
-            }
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(name).toString();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlien, start);
         }
-        LOGGER.error("Get Alien call failed for " + name);
-        throw new AlienException("Alien " + name + " not found");
     }
 
     /**
-     * Method to update an alien's name and/or home planet
+     * Method to retrieve an Alien as JSON
      *
-     * Fields are only updated for non-null arguments
-     *
-     * @param oldName
-     * @param newName
-     * @param newPlanet
+     * @param name
+     * @return UTF-8 encoded JSON, cached by the snapshot until the alien changes
+     * @see AlienView#toJson()
      */
-    public void updateAlien(String oldName, String newName, String newPlanet) {
-        checkColonyExists();
-        boolean alienFound = false;
-        for (Alien alien : alienColony) {
-            if (alien.getName().equals(oldName)) {
-                if (newName != null) {
-                    LOGGER.debug("Name changing from " + oldName + " to " + newName);
-                    alien.setName(newName);
-                }
-                if (newPlanet != null) {
-                    LOGGER.debug("Home planet of alien " + newName + " changing to " + newPlanet);
-                    alien.setHomePlanet(newPlanet);
-                }
-                alienFound = true;
-                break;
-            }
+    public byte[] getAlienJson(String name) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(name).toJson();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlienJson, start);
         }
-        if (!alienFound) {
-            LOGGER.error("Update alien call failed as alien does not exist: " + oldName);
-            throw new AlienException("Alien " + oldName + " not updated as they do not exist");
+    }
+
+    /**
+     * Method to retrieve an Alien as it was at an earlier version of the colony
+     *
+     * @param name
+     * @param asOf - a version from getOldestVersion to getVersion
+     * @return
+     * @throws AlienException - if the version is not kept, or the alien was not in it
+     */
+    public String getAlien(String name, long asOf) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(name, snapshotAsOf(asOf)).toString();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlien, start);
         }
     }
 
     /**
-     * Method to delete an alien from the colony
+     * Method to retrieve an Alien as JSON as it was at an earlier version of the colony
      *
-     * Deletes the Alien and removes it from its parent
+     * @param name
+     * @param asOf - a version from getOldestVersion to getVersion
+     * @return UTF-8 encoded JSON
+     * @throws AlienException - if the version is not kept, or the alien was not in it
+     */
+    public byte[] getAlienJson(String name, long asOf) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(name, snapshotAsOf(asOf)).toJson();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlienJson, start);
+        }
+    }
+
+    /**
+     * Method to find an alien's id, which stays the same if the alien is renamed
      *
      * @param name
+     * @return
+     * @throws AlienException - if the alien does not exist
      */
-    public void deleteAlien(String name) {
-        checkColonyExists();
-        // Check alien exists & remove if it does
-        int oldSize = alienColony.size();
-        List<Alien> newAlienColony = alienColony.stream()
-                .filter(alien -> !alien.getName().equals(name))
-                .collect(Collectors.toList());
-
-        if (newAlienColony.size() == oldSize) {
-            LOGGER.error("Delete call failed, alien does not exist: " + name);
-            throw new AlienException("Alien " + name + " not removed as it does not exist.");
-        }
-
-        // Check to see if this is 'Adam' (first) alien, if it is, no need to remove it s a child
-        List<Alien> adam = alienColony.stream()
-                .filter(alien -> alien.getName().equals(name) && alien.getParent() == null)
-                .collect(Collectors.toList());
-        if (adam.size() > 0) {
-            LOGGER.debug("Removing Adam alien: " + name);
-            alienColony.removeAll(adam);
-            return;
+    public int getAlienId(String name) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(name).getId();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlienId, start);
+        }
+    }
+
+    /**
+     * Method to retrieve an Alien by id, without looking up its name
+     *
+     * @param id
+     * @return
+     * @throws AlienException - if there is no alien with that id
+     */
+    public String getAlienById(int id) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(id, started()).toString();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlien, start);
+        }
+    }
+
+    /**
+     * Method to retrieve an Alien by id as JSON
+     *
+     * @param id
+     * @return UTF-8 encoded JSON, cached by the snapshot until the alien changes
+     * @throws AlienException - if there is no alien with that id
+     */
+    public byte[] getAlienJsonById(int id) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(id, started()).toJson();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlienJson, start);
         }
+    }
 
+    /**
+     * Method to retrieve an Alien by id as it was at an earlier version of the colony
+     *
+     * @param id
+     * @param asOf - a version from getOldestVersion to getVersion
+     * @return
+     * @throws AlienException - if the version is not kept, or the alien was not in it
+     */
+    public String getAlienById(int id, long asOf) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(id, snapshotAsOf(asOf)).toString();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlien, start);
+        }
+    }
 
-        // Traverse the colony and find the parent
-        alienColony.stream()
-                .filter(alien -> alien.hasChild(name))
-                .reduce((a, b) -> {
-                    throw new IllegalStateException("This alien exists multiple times!");
-                })
-                .get()
-                .removeChild(name);
+    /**
+     * Method to retrieve an Alien by id as JSON as it was at an earlier version of the colony
+     *
+     * @param id
+     * @param asOf - a version from getOldestVersion to getVersion
+     * @return UTF-8 encoded JSON
+     * @throws AlienException - if the version is not kept, or the alien was not in it
+     */
+    public byte[] getAlienJsonById(int id, long asOf) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            return findView(id, snapshotAsOf(asOf)).toJson();
+        } finally {
+            ServiceMetrics.stop(metrics.getAlienJson, start);
+        }
+    }
 
-        // Remove the alien
-        alienColony = alienColony.stream()
-                .filter(alien -> !alien.getName().equals(name))
-                .collect(Collectors.toList());
+    /**
+     * Find an alien in the latest snapshot, or throw if it does not exist
+     */
+    private AlienView findView(String name) {
+        ColonySnapshot colony = started();
+        AlienView alien = colony.get(name);
+        if (alien == null) {
+            LOGGER.error("Get Alien call failed for {}", name);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + name + " not found");
+        }
+        return alien;
     }
 
     /**
-     * Private method to throw an exception if the colony has not been started.
+     * The latest snapshot, or throw if the colony has not been started
      */
-    private void checkColonyExists() {
-        if (alienColony == null || alienColony.isEmpty()) {
+    private ColonySnapshot started() {
+        ColonySnapshot colony = snapshot;
+        if (colony.isEmpty()) {
             LOGGER.error("Colony not started");
-            throw new AlienException("No aliens! Please start a new colony.");
+            throw new AlienConflictException(ErrorCode.COLONY_NOT_STARTED, "No aliens! Please start a new colony.");
+        }
+        return colony;
+    }
+
+    /**
+     * Find an alien in an earlier version of the colony, or throw if it was not there
+     */
+    private static AlienView findView(String name, ColonySnapshot colony) {
+        if (colony.isEmpty()) {
+            throw new AlienConflictException(ErrorCode.COLONY_NOT_STARTED, "No aliens at that version of the colony");
+        }
+        AlienView alien = colony.get(name);
+        if (alien == null) {
+            LOGGER.error("Get Alien call failed for {}", name);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + name + " not found");
+        }
+        return alien;
+    }
+
+    /**
+     * Find an alien by id in a version of the colony, or throw if it was not there
+     */
+    private static AlienView findView(int id, ColonySnapshot colony) {
+        if (colony.isEmpty()) {
+            throw new AlienConflictException(ErrorCode.COLONY_NOT_STARTED, "No aliens at that version of the colony");
+        }
+        AlienView alien = colony.get(id);
+        if (alien == null) {
+            LOGGER.error("Get Alien call failed for id {}", id);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien with id " + id + " not found");
+        }
+        return alien;
+    }
+
+    /**
+     * The colony as of a version, or throw if it is not kept
+     */
+    private ColonySnapshot snapshotAsOf(long asOf) {
+        ColonySnapshot colony = snapshot;
+        ColonySnapshot version = colony.asOf(asOf);
+        if (version == null) {
+            LOGGER.error("Colony version {} not found", asOf);
+            throw new AlienNotFoundException(ErrorCode.VERSION_NOT_FOUND, "Colony version " + asOf + " not found, versions "
+                    + colony.getOldestVersion() + " to " + colony.getVersion() + " are kept");
+        }
+        return version;
+    }
+
+    /**
+     * Method to compare two versions of the colony
+     *
+     * Versions share everything that did not change between them, which is skipped, so the
+     * comparison costs time for the changes rather than the size of the colony.
+     *
+     * @param from - a version from getOldestVersion to getVersion
+     * @param to - a version from getOldestVersion to getVersion, before or after from
+     * @return every alien that differs between the versions, in name order. Aliens are matched
+     * by id, so a renamed alien is one change, under its later name.
+     * @throws AlienException - if either version is not kept
+     */
+    public ColonyDiff diff(long from, long to) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            ColonySnapshot before = snapshotAsOf(from);
+            ColonySnapshot after = snapshotAsOf(to);
+            List<AlienChange> changes = new ArrayList<>();
+            before.diff(after, (id, was, now) -> {
+                // A change may put back an alien as it was
+                if (was == null || !was.equals(now)) {
+                    changes.add(new AlienChange(id, now == null ? was.getName() : now.getName(),
+                            was == null ? null : AlienSummary.of(was), now == null ? null : AlienSummary.of(now)));
+                }
+            });
+            changes.sort(Comparator.comparing(AlienChange::getName));
+            return new ColonyDiff(from, to, changes);
+        } finally {
+            ServiceMetrics.stop(metrics.diff, start);
+        }
+    }
+
+    /**
+     * Method to get a page of an alien's ancestors, parent first.
+     *
+     * Ancestors are numbered by depth, the parent is 1. The lineage ends at the first deleted
+     * ancestor, whose own lineage is not kept.
+     *
+     * The page is checked here, with the previous page's last ancestor found in the lineage
+     * index, and walked through the colony's snapshot when it is visited, see LineageWalk.
+     *
+     * @param name
+     * @param after - the last ancestor of the previous page, or null for the first page
+     * @param maxDepth - generations to go up
+     * @param limit - most ancestors in the page, up to MAX_PAGE
+     * @return
+     * @throws AlienException
+     */
+    public Lineage getAncestors(String name, String after, int maxDepth, int limit) {
+        ensureBuilt();
+        checkPage(name, maxDepth, limit);
+        int depth = 0;
+        if (after != null) {
+            depth = generations(name, after);
+            if (depth < 0 || depth > maxDepth) {
+                throw new AlienValidationException(ErrorCode.INVALID_PAGE, "Alien " + after + " is not an ancestor of " + name);
+            }
+        }
+        return new LineageWalk(() -> snapshot.hold(), true, after == null ? name : after, depth, maxDepth, limit, metrics.ancestors);
+    }
+
+    /**
+     * Method to get a page of an alien's descendants, depth first with child one before child two.
+     *
+     * Descendants are numbered by depth, children are 1. Children of a deleted descendant are no
+     * longer reached.
+     *
+     * The page is checked and walked as for getAncestors.
+     *
+     * @param name
+     * @param after - the last descendant of the previous page, or null for the first page
+     * @param maxDepth - generations to go down
+     * @param limit - most descendants in the page, up to MAX_PAGE
+     * @return
+     * @throws AlienException
+     */
+    public Lineage getDescendants(String name, String after, int maxDepth, int limit) {
+        ensureBuilt();
+        checkPage(name, maxDepth, limit);
+        int depth = 0;
+        if (after != null) {
+            depth = generations(after, name);
+            if (depth < 0) {
+                throw new AlienValidationException(ErrorCode.INVALID_PAGE, "Alien " + after + " is not a descendant of " + name);
+            }
+        }
+        return new LineageWalk(() -> snapshot.hold(), false, after == null ? name : after, depth, maxDepth, limit, metrics.descendants);
+    }
+
+    /**
+     * Method to list the colony a page at a time, in name order, filtered by any of type,
+     * home planet, free child slots and parent.
+     *
+     * Served from secondary indexes rather than by scanning the colony, see AttributeIndex, so
+     * a page costs the same however large the colony. Listings take no locks, an alien changed
+     * while a page is listed may or may not be in it.
+     *
+     * @param type - null for any
+     * @param homePlanet - null for any
+     * @param freeSlots - true for aliens that can still have children, false for those that cannot, null for any
+     * @param parent - only this alien's children, null for any
+     * @param after - the next cursor of the previous page, null for the first page
+     * @param limit - most aliens in the page, up to MAX_PAGE
+     * @return
+     * @throws AlienException
+     */
+    public AlienPage listAliens(AlienType type, String homePlanet, Boolean freeSlots, String parent, String after, int limit) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            checkColonyExists();
+            if (limit < 1 || limit > MAX_PAGE) {
+                throw new AlienValidationException(ErrorCode.INVALID_PAGE, "Limit must be between 1 and " + MAX_PAGE);
+            }
+            List<String> names;
+            if (parent != null) {
+                names = childNames(parent, after);
+            } else {
+                // One more than the page, to know whether there is another
+                names = attributeIndex.find(AttributeIndex.categories(type, freeSlots), homePlanet, homePlanet == null, after, limit + 1);
+            }
+            int count = Math.min(names.size(), limit);
+            List<AlienSummary> aliens = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Alien alien = alienColony.get(names.get(i));
+                // The index may be a moment behind the colony
+                if (alien != null && matches(alien, type, homePlanet, freeSlots)) {
+                    aliens.add(AlienSummary.of(alien));
+                }
+            }
+            return new AlienPage(aliens, names.size() > limit ? names.get(limit - 1) : null);
+        } finally {
+            ServiceMetrics.stop(metrics.listAliens, start);
+        }
+    }
+
+    /**
+     * Names of a parent's children after the cursor, in name order
+     */
+    private List<String> childNames(String parentName, String after) {
+        Alien parent = alienColony.get(parentName);
+        if (parent == null) {
+            LOGGER.error("List aliens call failed, parent does not exist: {}", parentName);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + parentName + " not found");
         }
+        List<String> names = new ArrayList<>(2);
+        for (Alien child : new Alien[]{parent.getChildOne(), parent.getChildTwo()}) {
+            if (child != null && (after == null || child.getName().compareTo(after) > 0)) {
+                names.add(child.getName());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static boolean matches(Alien alien, AlienType type, String homePlanet, Boolean freeSlots) {
+        return (type == null || type == alien.getType())
+                && (homePlanet == null || homePlanet.equals(alien.getHomePlanet()))
+                && (freeSlots == null || freeSlots == alien.getRemainingChildSlots() > 0);
+    }
+
+    /**
+     * Find alphas that can still have children and are not reserved, without reserving them.
+     *
+     * Each search carries on from where the last one stopped, round to the start of the colony,
+     * so growers asking at once are mostly shown different parents.
+     *
+     * @param count - most parents to find, up to MAX_PAGE
+     * @return the parents' names, fewer than count if there are no more
+     * @throws AlienException
+     */
+    public List<String> findFreeParents(int count) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            checkColonyExists();
+            checkCount(count);
+            return freeParents(count, name -> !reservations.isReserved(name, null));
+        } finally {
+            ServiceMetrics.stop(metrics.findFreeParents, start);
+        }
+    }
+
+    /**
+     * Reserve alphas that can still have children, for one grower of the colony.
+     *
+     * Until the reservation expires, children can only be added to the parents with its token,
+     * see addAlien(String, String, AlienType, String, String). A parent is released early once
+     * it has used its last slot, or if it is renamed or deleted. Parents are found from the
+     * free slot index, see AttributeIndex, carrying on from where the last search stopped, so
+     * reserving n parents costs O(n + log n) plus any reserved parents passed over.
+     *
+     * @param count - most parents to reserve, up to MAX_PAGE
+     * @param ttl - milliseconds the reservation lasts, up to MAX_RESERVATION
+     * @return the reservation, with fewer than count parents if there are no more free
+     * @throws AlienException
+     */
+    public ParentReservation reserveParents(int count, long ttl) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            checkColonyExists();
+            checkCount(count);
+            if (ttl < 1 || ttl > MAX_RESERVATION) {
+                throw new AlienValidationException(ErrorCode.INVALID_RESERVATION, "Reservations must last between 1 and " + MAX_RESERVATION + " milliseconds");
+            }
+            List<String> parents = new ArrayList<>(Math.min(count, 1024));
+            ParentReservation reservation = new ParentReservation(UUID.randomUUID().toString(), reservations.now() + ttl, parents);
+            parents.addAll(freeParents(count, name -> reservations.reserve(name, reservation)));
+            return reservation;
+        } finally {
+            ServiceMetrics.stop(metrics.reserveParents, start);
+        }
+    }
+
+    private static void checkCount(int count) {
+        if (count < 1 || count > MAX_PAGE) {
+            throw new AlienValidationException(ErrorCode.INVALID_PAGE, "Count must be between 1 and " + MAX_PAGE);
+        }
+    }
+
+    /**
+     * Alphas that can still have children and that a filter takes, from where the last search
+     * stopped
+     */
+    private List<String> freeParents(int count, Predicate<String> take) {
+        ColonySnapshot colony = snapshot;
+        List<String> names = new ArrayList<>(Math.min(count, 1024));
+        attributeIndex.visitFreeAlphas(freeParentsCursor, name -> {
+            AlienView alien = colony.get(name);
+            // The index may be a moment behind the snapshot
+            if (alien != null && alien.getRemainingChildSlots() > 0 && take.test(name)) {
+                names.add(name);
+            }
+            return names.size() < count;
+        });
+        if (!names.isEmpty()) {
+            // Only a hint, a search racing with this one may move it back
+            freeParentsCursor = names.get(names.size() - 1);
+        }
+        return names;
+    }
+
+    /**
+     * Method to check whether an alien is descended from another.
+     *
+     * Lineages are cut at deleted aliens, as for getAncestors. Answered from the lineage index
+     * however deep the lineage, in time logarithmic in the number of deleted aliens, which the
+     * index counts to find a cut.
+     *
+     * @param name
+     * @param ancestorName
+     * @return true if ancestorName is a parent, grandparent and so on of name
+     * @throws AlienException
+     */
+    public boolean isDescendant(String name, String ancestorName) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            checkExists(name);
+            checkExists(ancestorName);
+            ColonySnapshot colony = snapshot;
+            return lineageIndex.isDescendant(colony.id(name), colony.id(ancestorName));
+        } finally {
+            ServiceMetrics.stop(metrics.isDescendant, start);
+        }
+    }
+
+    /**
+     * Method to find the nearest common ancestor of two aliens.
+     *
+     * If one alien is descended from the other, the other is their common ancestor. Lineages are
+     * cut at deleted aliens, as for getAncestors. Answered from the lineage index in logarithmic
+     * time.
+     *
+     * @param first
+     * @param second
+     * @return the name of the common ancestor
+     * @throws AlienException - if either alien does not exist, or they have no common ancestor
+     */
+    public String getCommonAncestor(String first, String second) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            checkExists(first);
+            checkExists(second);
+            // The ancestor is older than both aliens, so it is in any snapshot they are in
+            ColonySnapshot colony = snapshot;
+            AlienView ancestor = colony.get(lineageIndex.commonAncestor(colony.id(first), colony.id(second)));
+            if (ancestor == null) {
+                throw new AlienNotFoundException(ErrorCode.NO_COMMON_ANCESTOR, "Aliens " + first + " and " + second + " have no common ancestor");
+            }
+            return ancestor.getName();
+        } finally {
+            ServiceMetrics.stop(metrics.commonAncestor, start);
+        }
+    }
+
+    /**
+     * Throw if an alien does not exist
+     */
+    private void checkExists(String name) {
+        checkColonyExists();
+        if (!alienColony.contains(name)) {
+            LOGGER.error("Lineage call failed for {}", name);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + name + " not found");
+        }
+    }
+
+    /**
+     * Check the alien and the page size for a lineage request
+     */
+    private void checkPage(String name, int maxDepth, int limit) {
+        checkExists(name);
+        if (limit < 1 || limit > MAX_PAGE) {
+            throw new AlienValidationException(ErrorCode.INVALID_PAGE, "Limit must be between 1 and " + MAX_PAGE);
+        }
+        if (maxDepth < 1) {
+            throw new AlienValidationException(ErrorCode.INVALID_PAGE, "Depth must be at least 1");
+        }
+    }
+
+    /**
+     * Find how many generations an ancestor is above an alien, from the lineage index
+     *
+     * @return the depth, or -1 if it is not an ancestor
+     */
+    private int generations(String alien, String ancestor) {
+        ColonySnapshot colony = snapshot;
+        return lineageIndex.generations(colony.id(alien), colony.id(ancestor));
+    }
+
+    /**
+     * Method to update an alien's name and/or home planet
+     *
+     * Fields are only updated for non-null arguments
+     *
+     * @param oldName
+     * @param newName
+     * @param newPlanet
+     */
+    public void updateAlien(String oldName, String newName, String newPlanet) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            long lsn;
+            lockLineage(oldName, newName);
+            try {
+                lsn = update(oldName, newName, newPlanet);
+            } finally {
+                unlockLineage(oldName, newName);
+            }
+            commit(lsn);
+        } finally {
+            ServiceMetrics.stop(metrics.updateAlien, start);
+        }
+    }
+
+    /**
+     * Update an alien, the caller must hold the lineage locks or the colony lock
+     *
+     * @return the change's log sequence number, or 0 if it was not logged
+     */
+    private long update(String oldName, String newName, String newPlanet) {
+        checkColonyExists();
+        Alien alien = alienColony.get(oldName);
+        if (alien == null) {
+            LOGGER.error("Update alien call failed as alien does not exist: {}", oldName);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + oldName + " not updated as they do not exist");
+        }
+        if (newPlanet != null) {
+            // Check the planet before renaming, so a bad planet leaves the alien unchanged
+            Alien.checkLength(newPlanet);
+        }
+        if (newName != null && !newName.equals(oldName)) {
+            // As the store would on rename
+            if (alienColony.contains(newName)) {
+                throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + newName + " already exists. Aliens must have unique names.");
+            }
+            Alien.checkLength(newName);
+        }
+        long lsn = log(LogRecord.update(oldName, newName, newPlanet));
+        try (ColonySnapshot.Section changing = changing(oldName, newName)) {
+            if (newName != null) {
+                LOGGER.debug("Name changing from {} to {}", oldName, newName);
+                // Rename through the store so the name index stays consistent
+                alienColony.rename(alien, newName);
+            }
+            String oldPlanet = alien.getHomePlanet();
+            if (newPlanet != null) {
+                LOGGER.debug("Home planet of alien {} changing to {}", newName, newPlanet);
+                alienColony.setHomePlanet(alien, newPlanet);
+            }
+            if (indexing) {
+                attributeIndex.move(alien.getType(), alien.getRemainingChildSlots() > 0,
+                        oldName, oldPlanet, newName == null ? oldName : newName, newPlanet == null ? oldPlanet : newPlanet);
+                publish(edit -> rename(edit, oldName, newName, newPlanet));
+                if (newName != null && !newName.equals(oldName)) {
+                    reservations.release(oldName);
+                    events.renamed(oldName, newName);
+                }
+                if (newPlanet != null && !newPlanet.equals(oldPlanet)) {
+                    events.planetChanged(alien.getName(), newPlanet);
+                }
+            }
+        }
+        return lsn;
+    }
+
+    /**
+     * Rename and move an alien in a snapshot, along with the names its parent and children
+     * know it by. The alien keeps its id.
+     */
+    private static void rename(ColonySnapshot.Edit edit, String oldName, String newName, String newPlanet) {
+        AlienView alien = edit.get(oldName);
+        if (newName == null || newName.equals(oldName)) {
+            edit.put(alien.movedTo(newPlanet));
+            return;
+        }
+        edit.put(alien.renamed(newName).movedTo(newPlanet));
+        AlienView parent = edit.get(alien.getParent());
+        if (parent != null && parent.hasChild(oldName)) {
+            edit.put(parent.withChildRenamed(oldName, newName));
+        }
+        for (String childName : new String[]{alien.getChildOne(), alien.getChildTwo()}) {
+            AlienView child = edit.get(childName);
+            if (child != null) {
+                edit.put(child.withParent(newName));
+            }
+        }
+    }
+
+    /**
+     * Method to delete an alien from the colony
+     *
+     * Deletes the Alien and removes it from its parent.
+     *
+     * The parent is found through the alien's own parent reference, so this does not depend on colony size.
+     *
+     * @param name
+     */
+    public void deleteAlien(String name) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            long lsn;
+            lockLineage(name, name);
+            try {
+                lsn = delete(name);
+            } finally {
+                unlockLineage(name, name);
+            }
+            commit(lsn);
+        } finally {
+            ServiceMetrics.stop(metrics.deleteAlien, start);
+        }
+    }
+
+    /**
+     * Delete an alien, the caller must hold the lineage locks or the colony lock
+     *
+     * @return the change's log sequence number, or 0 if it was not logged
+     */
+    private long delete(String name) {
+        checkColonyExists();
+        // Check alien exists
+        Alien alien = alienColony.get(name);
+        if (alien == null) {
+            LOGGER.error("Delete call failed, alien does not exist: {}", name);
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + name + " not removed as it does not exist.");
+        }
+
+        // 'Adam' (first) alien has no parent
+        if (alien.getParent() == null) {
+            LOGGER.debug("Removing Adam alien: {}", name);
+        }
+        long lsn = log(LogRecord.delete(name));
+
+        try (ColonySnapshot.Section changing = changing(name, name)) {
+            // Remove the alien, the store unlinks it from its parent.
+            // Children of the deleted alien keep their reference to it.
+            alienColony.remove(name);
+            if (indexing) {
+                lineageIndex.remove(snapshot.id(name));
+                attributeIndex.remove(name, alien.getType(), alien.getHomePlanet(), alien.getRemainingChildSlots() > 0);
+                reservations.release(name);
+                publish(edit -> {
+                    AlienView deleted = edit.remove(name);
+                    AlienView parent = edit.get(deleted.getParent());
+                    if (parent != null && parent.hasChild(name)) {
+                        edit.put(parent.withChildRenamed(name, null));
+                    }
+                    // Its children keep its details, to be exported with them
+                    for (String child : new String[]{deleted.getChildOne(), deleted.getChildTwo()}) {
+                        if (child != null) {
+                            edit.put(edit.get(child).withParentDeleted(deleted.getType(), deleted.getHomePlanet()));
+                        }
+                    }
+                });
+                events.deleted(name);
+            }
+        }
+        return lsn;
+    }
+
+    /**
+     * Start the snapshot's section for a change to the named aliens, once the change has been
+     * checked and before the store is changed. Nothing is held while recovering.
+     */
+    private ColonySnapshot.Section changing(String first, String second) {
+        return indexing ? snapshot.change(first, second) : ColonySnapshot.Section.NONE;
+    }
+
+    /**
+     * Method to export the whole colony, each alien after its live parent, see ColonyRecord.
+     *
+     * The export is written from the snapshot as it was when the export started, so it is
+     * consistent without holding a lock, and writes and reads carry on as normal however long it
+     * takes to stream. Aliens are written one at a time in id order, which puts every alien after
+     * its parent, so the export is never held in memory. The export ends with the colony's next
+     * id, so ids are not given again after it is imported.
+     *
+     * @param writer
+     * @return the number of aliens exported
+     * @throws IOException - if the export could not be written
+     */
+    public int exportColony(ColonyWriter writer) throws IOException {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            try (ColonySnapshot.Held colony = snapshot.hold()) {
+                // Ids only go up, so every alien in the snapshot has one below the next
+                int count = export(colony.snapshot(), alienColony.nextId(), writer);
+                LOGGER.debug("Exported {} aliens", count);
+                return count;
+            }
+        } finally {
+            ServiceMetrics.stop(metrics.exportColony, start);
+        }
+    }
+
+    /**
+     * Write the aliens in a snapshot in id order, each after its live parent
+     *
+     * @param colony
+     * @param nextId - above the id of every alien in the snapshot
+     * @param writer
+     * @return the number of aliens written
+     */
+    private static int export(ColonySnapshot colony, int nextId, ColonyWriter writer) throws IOException {
+        int count = 0;
+        for (int id = 0; id < nextId; id++) {
+            AlienView alien = colony.get(id);
+            if (alien != null) {
+                writer.write(record(colony, alien));
+                count++;
+            }
+        }
+        writer.end(nextId);
+        return count;
+    }
+
+    /**
+     * Export record for an alien, with its child slot if its parent is live
+     */
+    private static ColonyRecord record(ColonySnapshot colony, AlienView alien) {
+        String parentName = alien.getParent();
+        if (parentName == null) {
+            return new ColonyRecord(alien.getName(), alien.getType(), alien.getHomePlanet(), alien.getChildrenHad(), null, 0, null, null, alien.getId());
+        }
+        // A deleted parent no longer has the alien as a child, but a new alien may have its name
+        AlienView parent = colony.get(parentName);
+        int slot = 0;
+        if (parent != null) {
+            slot = alien.getName().equals(parent.getChildOne()) ? 1 : alien.getName().equals(parent.getChildTwo()) ? 2 : 0;
+        }
+        return new ColonyRecord(alien.getName(), alien.getType(), alien.getHomePlanet(), alien.getChildrenHad(), parentName, slot,
+                slot == 0 ? alien.getParentType() : null, slot == 0 ? alien.getParentHomePlanet() : null, alien.getId());
+    }
+
+    /**
+     * Method to replace the colony with an exported one.
+     *
+     * Aliens are read and restored one at a time, so the import is never held in memory. Each
+     * alien goes straight into the store, which checks its name is unique and its child slot is
+     * one its parent has had and left empty, instead of the checks addAlien makes. The counts,
+     * indexes and next snapshot are built up as it goes, and the snapshot is published once all
+     * the aliens are in. Aliens keep the ids they were exported with, each after its live
+     * parent's, and aliens from an export without ids are given new ones. With a colony log the
+     * aliens are not logged one by one. The import is logged before it starts, and the colony is
+     * checkpointed once it is complete, which is what keeps it. Recovery drops an import that was
+     * logged but not checkpointed, so the colony comes back either with the whole import or as it
+     * was before it.
+     *
+     * If a record is malformed or breaks the colony's rules, or the checkpoint cannot be written,
+     * the import stops, and the colony goes back to its last durable state from the log, or is
+     * left empty if there is no log.
+     *
+     * @param reader
+     * @return the number of aliens imported
+     * @throws AlienException
+     */
+    public int importColony(ColonyReader reader) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            colonyLock.writeLock().lock();
+            try {
+                int count;
+                try (ColonySnapshot.Section replacing = snapshot.replace()) {
+                    log(LogRecord.imported());
+                    count = load(reader);
+                    if (colonyLog != null) {
+                        checkpointImport();
+                    }
+                }
+                events.imported();
+                LOGGER.debug("Imported {} aliens", count);
+                return count;
+            } finally {
+                colonyLock.writeLock().unlock();
+            }
+        } finally {
+            ServiceMetrics.stop(metrics.importColony, start);
+        }
+    }
+
+    /**
+     * Replace the colony with the aliens from a reader, the caller must hold the colony lock
+     *
+     * @return the number of aliens loaded
+     */
+    private int load(ColonyReader reader) {
+        alienColony.clear();
+        lineageIndex.clear();
+        attributeIndex.clear();
+        reservations.clear();
+        int count = 0;
+        BitSet ids = new BitSet();
+        ColonySnapshot.Edit colony = snapshot.rebuild();
+        try {
+            for (ColonyRecord record = reader.read(); record != null; record = reader.read()) {
+                restore(record, ids, colony);
+                count++;
+            }
+            alienColony.advanceIds(reader.getNextId());
+            // Readers have seen the colony from before the import until now
+            snapshot = colony.done();
+            return count;
+        } catch (IOException e) {
+            LOGGER.error("Import failed after {} aliens: {}", count, e.getMessage());
+            undoLoad();
+            throw new AlienValidationException(ErrorCode.INVALID_IMPORT, "Import failed after " + count + " aliens: " + e.getMessage());
+        } catch (AlienException ae) {
+            LOGGER.error("Import failed after {} aliens: {}", count, ae.getMessage());
+            undoLoad();
+            throw ae;
+        }
+    }
+
+    /**
+     * Restore one imported alien, the caller must hold the colony lock
+     *
+     * @param ids - the ids restored so far
+     * @param colony - the snapshot of the aliens restored so far
+     */
+    private void restore(ColonyRecord record, BitSet ids, ColonySnapshot.Edit colony) {
+        String name = record.getName();
+        AlienType type = record.getType();
+        int childrenHad = record.getChildrenHad();
+        if (childrenHad < 0 || childrenHad > 2 || (childrenHad > 0 && !AlienType.ALPHA.equals(type))) {
+            throw new AlienValidationException(ErrorCode.INVALID_IMPORT, "Alien " + name + " of type " + type + " cannot have had " + childrenHad + " children");
+        }
+        int slot = record.getSlot();
+        if (slot < 0 || slot > 2 || (slot != 0 && record.getParent() == null)) {
+            throw new AlienValidationException(ErrorCode.INVALID_IMPORT, "Alien " + name + " has no parent's child slot " + slot);
+        }
+        AlienView liveParent = slot != 0 ? colony.get(record.getParent()) : null;
+        int id = record.getId();
+        if (id < 0 || ids.get(id) || (liveParent != null && liveParent.getId() >= id)) {
+            throw new AlienValidationException(ErrorCode.INVALID_IMPORT, "Alien " + name + " cannot have id " + id);
+        }
+        ids.set(id);
+        Alien alien = record.toAlien();
+        alienColony.restore(alien, slot);
+        attributeIndex.add(name, type, alien.getHomePlanet(), alien.getRemainingChildSlots() > 0);
+        // The store has checked the slot, so a live parent is in the snapshot
+        lineageIndex.add(liveParent == null ? ColonySnapshot.NONE : liveParent.getId(), alien.getId());
+        colony.put(AlienView.of(alien.getId(), alien));
+        if (liveParent != null) {
+            colony.put(liveParent.withChild(slot, name));
+        }
+    }
+
+    /**
+     * Checkpoint an imported colony, or go back to the colony in the log if it cannot be, as the
+     * log alone does not keep the import. The caller must hold the colony lock.
+     */
+    private void checkpointImport() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            LOGGER.error("Import could not be checkpointed: {}", e.getMessage());
+            undoLoad();
+            throw e;
+        }
+    }
+
+    /**
+     * Drop a partly loaded colony, going back to the colony in the log if there is one
+     */
+    private void undoLoad() {
+        alienColony.clear();
+        recover();
+        events.imported();
+    }
+
+    /**
+     * Apply a batch of operations in order, carrying on past any that fail.
+     *
+     * @see #applyBatch(List, boolean)
+     */
+    public List<ColonyOpResult> applyBatch(List<ColonyOp> ops) {
+        return applyBatch(ops, false);
+    }
+
+    /**
+     * Apply a batch of operations in order under a single colony lock.
+     *
+     * Each operation behaves as the matching addAlien, updateAlien or deleteAlien call would.
+     *
+     * If atomic, the whole batch is checked first and nothing is applied unless every
+     * operation would succeed. Otherwise operations that fail are reported and skipped.
+     *
+     * @param ops - at most MAX_BATCH
+     * @param atomic
+     * @return the result of each operation, in order
+     * @throws AlienValidationException - INVALID_BATCH if there are more than MAX_BATCH operations
+     */
+    public List<ColonyOpResult> applyBatch(List<ColonyOp> ops, boolean atomic) {
+        long start = System.nanoTime();
+        try {
+            ensureBuilt();
+            if (ops.size() > MAX_BATCH) {
+                throw new AlienValidationException(ErrorCode.INVALID_BATCH, "A batch can have at most " + MAX_BATCH + " operations");
+            }
+            return batch(ops, atomic);
+        } finally {
+            ServiceMetrics.stop(metrics.applyBatch, start);
+        }
+    }
+
+    /**
+     * Apply a batch of operations
+     */
+    private List<ColonyOpResult> batch(List<ColonyOp> ops, boolean atomic) {
+        LOGGER.debug("Applying batch of {} operations", ops.size());
+        List<ColonyOpResult> results = new ArrayList<>(ops.size());
+        long lsn = 0;
+        colonyLock.writeLock().lock();
+        try {
+            if (atomic) {
+                int failed = checkBatch(ops, results);
+                if (failed >= 0) {
+                    LOGGER.error("Batch not applied, operation {} would fail", failed);
+                    return results;
+                }
+                results.clear();
+            }
+            for (int i = 0; i < ops.size(); i++) {
+                try {
+                    lsn = apply(ops.get(i));
+                    results.add(new ColonyOpResult(i, true, null));
+                } catch (AlienException ae) {
+                    results.add(new ColonyOpResult(i, false, ae.getMessage()));
+                }
+            }
+        } finally {
+            colonyLock.writeLock().unlock();
+        }
+        commit(lsn);
+        return results;
+    }
+
+    /**
+     * Dry run a batch, the caller must hold the colony lock
+     *
+     * @return the index of the first operation that would fail, or -1 if they would all succeed
+     */
+    private int checkBatch(List<ColonyOp> ops, List<ColonyOpResult> results) {
+        BatchCheck batchCheck = new BatchCheck(alienColony);
+        int failed = -1;
+        String error = null;
+        for (int i = 0; i < ops.size() && failed < 0; i++) {
+            try {
+                ColonyOp op = ops.get(i);
+                if (op.getOp() == ColonyOp.Op.ADD && op.getParentName() != null) {
+                    reservations.check(op.getParentName(), op.getReservation());
+                }
+                batchCheck.check(op);
+            } catch (AlienException ae) {
+                failed = i;
+                error = ae.getMessage();
+            }
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            if (i == failed) {
+                results.add(new ColonyOpResult(i, false, error));
+            } else {
+                results.add(new ColonyOpResult(i, failed < 0, failed < 0 ? null : "Not applied, operation " + failed + " failed"));
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Apply and log one batch operation, the caller must hold the colony lock
+     *
+     * @return the operation's log sequence number
+     */
+    private long apply(ColonyOp op) {
+        if (op.getOp() == null) {
+            throw new AlienValidationException(ErrorCode.UNKNOWN_OPERATION, "Unknown batch operation");
+        }
+        switch (op.getOp()) {
+            case ADD:
+                return add(op.getParentName(), op.getChildName(), op.getType(), op.getHomePlanet(), op.getReservation(), -1);
+            case UPDATE:
+                return update(op.getOldName(), op.getNewName(), op.getNewPlanet());
+            default:
+                return delete(op.getName());
+        }
+    }
+
+    /**
+     * Recover the colony from its log, if there is one, leaving the snapshot and indexes to be
+     * built when they are first needed. Nothing else may change the colony meanwhile.
+     */
+    private void recover() {
+        indexing = false;
+        built = false;
+        if (colonyLog != null && colonyLog.recover(alienColony, this::replay)) {
+            // The log is new, so the colony in the store is only kept by a checkpoint
+            ensureBuilt();
+            checkpoint();
+        }
+    }
+
+    /**
+     * Checkpoint the colony as it is now and wait for it to be written. The caller must hold the
+     * colony write lock, or be recovering the colony.
+     */
+    private void checkpoint() {
+        ColonySnapshot colony = snapshot;
+        int nextId = alienColony.nextId();
+        colonyLog.checkpoint(colonyLog.rotate(), writer -> export(colony, nextId, writer));
+    }
+
+    /**
+     * Build the snapshot and indexes of a recovered colony, if they have not been built yet.
+     *
+     * A store that persists the colony opens without reading it, so the aliens are only read
+     * when the colony is first used rather than on startup. Called at the start of each public
+     * method that needs them, before any lock is taken.
+     */
+    private void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        colonyLock.writeLock().lock();
+        try {
+            if (!built) {
+                build();
+            }
+        } finally {
+            colonyLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build the snapshot and indexes from the store, the caller must hold the colony lock
+     */
+    private void build() {
+        try (ColonySnapshot.Section replacing = snapshot.replace()) {
+            // One alien at a time, so a store that rebuilds aliens never holds them all
+            attributeIndex.clear();
+            BitSet ids = new BitSet();
+            ColonySnapshot.Edit edit = snapshot.rebuild();
+            alienColony.forEachAlien(alien -> {
+                attributeIndex.add(alien.getName(), alien.getType(), alien.getHomePlanet(), alien.getRemainingChildSlots() > 0);
+                edit.put(AlienView.of(alien.getId(), alien));
+                ids.set(alien.getId());
+            });
+            ColonySnapshot colony = edit.done();
+            lineageIndex.reload(ids, id -> liveParent(colony, colony.get(id)));
+            snapshot = colony;
+            indexing = true;
+            built = true;
+        }
+    }
+
+    /**
+     * @return the id of the alien's parent if it is live, or NONE. A deleted parent no longer has
+     * the alien as a child, but a new alien may have its name.
+     */
+    private static int liveParent(ColonySnapshot colony, AlienView alien) {
+        AlienView parent = colony.get(alien.getParent());
+        return parent != null && parent.hasChild(alien.getName()) ? parent.getId() : ColonySnapshot.NONE;
+    }
+
+    /**
+     * Publish a change to the colony as a new snapshot.
+     *
+     * The change is made to the latest snapshot, and made again to a later one if another writer
+     * publishes first, so it must depend only on the snapshot. Writers to unrelated lineages
+     * only touch different aliens, so each one's change holds whichever order they publish in.
+     * The caller must hold the locks for the change, and have made it to the colony already.
+     *
+     * @param change
+     */
+    private void publish(Consumer<ColonySnapshot.Edit> change) {
+        ColonySnapshot base;
+        ColonySnapshot next;
+        do {
+            base = snapshot;
+            ColonySnapshot.Edit edit = base.edit();
+            change.accept(edit);
+            next = edit.done();
+        } while (!SNAPSHOT.compareAndSet(this, base, next));
+    }
+
+    /**
+     * Apply a logged change while recovering the colony, nothing else can change it meanwhile
+     */
+    private void replay(LogRecord record) {
+        switch (record.getOp()) {
+            case START:
+                Alien adam = Alien.initialise(record.getName(), AlienType.ALPHA, record.getHomePlanet());
+                adam.setId(record.getId());
+                start(adam);
+                break;
+            case ADD:
+                add(record.getParentName(), record.getName(), record.getType(), record.getHomePlanet(), null, record.getId());
+                break;
+            case UPDATE:
+                update(record.getName(), record.getNewName(), record.getHomePlanet());
+                break;
+            case IMPORT:
+                // An import is kept by the checkpoint taken once it is loaded, which would have
+                // skipped this record, so it never finished and the colony stays as it was
+                LOGGER.warn("Dropping an import that was not checkpointed");
+                break;
+            default:
+                delete(record.getName());
+        }
+    }
+
+    /**
+     * Append a change to the colony log, once it has been checked and before it is made, so a
+     * change that cannot be logged is not made. The caller must hold the locks for the change.
+     * Changes replayed from the log, while indexing is off, are not logged again.
+     *
+     * @return the change's log sequence number, or 0 if there is no log or it was not logged
+     */
+    private long log(LogRecord record) {
+        return colonyLog == null || !indexing ? 0 : colonyLog.append(record);
+    }
+
+    /**
+     * Wait for logged changes to be durable, then checkpoint if one is due.
+     * The caller must not hold any locks, so that syncs are shared between writers.
+     *
+     * The colony lock is only held while the log is rotated and the snapshot taken. The
+     * checkpoint is written from the snapshot in the background, while writes carry on.
+     *
+     * @param lsn - the last change to wait for, 0 for none
+     */
+    private void commit(long lsn) {
+        if (colonyLog == null || lsn == 0) {
+            return;
+        }
+        colonyLog.awaitDurable(lsn);
+        if (colonyLog.isCheckpointDue()) {
+            long sealed;
+            ColonySnapshot.Held colony;
+            int nextId;
+            colonyLock.writeLock().lock();
+            try {
+                // Another writer may have just taken one
+                if (!colonyLog.isCheckpointDue()) {
+                    return;
+                }
+                // A failed import leaves the colony to be built again
+                ensureBuilt();
+                sealed = colonyLog.rotate();
+                colony = snapshot.hold();
+                nextId = alienColony.nextId();
+            } finally {
+                colonyLock.writeLock().unlock();
+            }
+            colonyLog.checkpointInBackground(sealed, checkpointOf(colony, nextId));
+        }
+    }
+
+    /**
+     * Checkpoint of a held version, let go once it has been written
+     */
+    private static ColonyLog.Snapshot checkpointOf(ColonySnapshot.Held colony, int nextId) {
+        return new ColonyLog.Snapshot() {
+            @Override
+            public void writeTo(ColonyWriter writer) throws IOException {
+                export(colony.snapshot(), nextId, writer);
+            }
+
+            @Override
+            public void release() {
+                colony.close();
+            }
+        };
+    }
+
+    /**
+     * Lock the lineage stripes for the aliens touched by a write
+     *
+     * @param first
+     * @param second
+     */
+    private void lockLineage(String first, String second) {
+        colonyLock.readLock().lock();
+        lineageLocks.lock(first, second);
+    }
+
+    /**
+     * Unlock the lineage stripes taken by {@link #lockLineage(String, String)}
+     *
+     * @param first
+     * @param second
+     */
+    private void unlockLineage(String first, String second) {
+        lineageLocks.unlock(first, second);
+        colonyLock.readLock().unlock();
+    }
+
+    /**
+     * Private method to throw an exception if the colony has not been started.
+     */
+    private void checkColonyExists() {
+        if (alienColony.isEmpty()) {
+            LOGGER.error("Colony not started");
+            throw new AlienConflictException(ErrorCode.COLONY_NOT_STARTED, "No aliens! Please start a new colony.");
+        }
+    }
+
+    /**
+     * @return the number of aliens in the colony
+     */
+    public int getColonySize() {
+        return alienColony.size();
+    }
+
+    /**
+     * @return the latest version of the colony, the number of changes since the service started
+     */
+    public long getVersion() {
+        ensureBuilt();
+        return snapshot.getVersion();
+    }
+
+    /**
+     * @return the earliest version of the colony that can still be read
+     */
+    public long getOldestVersion() {
+        ensureBuilt();
+        return snapshot.getOldestVersion();
+    }
+
+    /**
+     * @return the latest changes to the colony, for consumers following it
+     */
+    public ColonyEvents getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the number of alpha aliens in the colony
+     */
+    public long getAlphaCount() {
+        return alienColony.alphaCount();
+    }
+
+    /**
+     * @return the number of children the aliens in the colony can still have
+     */
+    public long getRemainingChildSlots() {
+        return alienColony.remainingChildSlots();
+    }
+
+    /**
+     * Remove the colony's meters from the registry, once the colony has been dropped
+     */
+    void removeMeters() {
+        metrics.remove();
+    }
+
+    /**
+     * @return the latest snapshot, for testing
+     */
+    ColonySnapshot getSnapshot() {
+        return snapshot;
     }
 
     /**
@@ -201,6 +1776,7 @@ public class AlienService {
      * @return
      */
     protected List<Alien> getAlienColony() {
-        return alienColony;
+        ensureBuilt();
+        return new ArrayList<>(alienColony.aliens());
     }
 }
@@ -0,0 +1,65 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.alien.AlienView;
+
+/**
+ * An alien's details in a colony listing
+ */
+public class AlienSummary {
+
+    private final String name;
+
+    private final AlienType type;
+
+    private final String homePlanet;
+
+    /**
+     * Name of the parent, null for the first alien
+     */
+    private final String parent;
+
+    /**
+     * Children the alien can still have
+     */
+    private final int remainingChildSlots;
+
+    public AlienSummary(String name, AlienType type, String homePlanet, String parent, int remainingChildSlots) {
+        this.name = name;
+        this.type = type;
+        this.homePlanet = homePlanet;
+        this.parent = parent;
+        this.remainingChildSlots = remainingChildSlots;
+    }
+
+    static AlienSummary of(Alien alien) {
+        Alien parent = alien.getParent();
+        return new AlienSummary(alien.getName(), alien.getType(), alien.getHomePlanet(),
+                parent == null ? null : parent.getName(), alien.getRemainingChildSlots());
+    }
+
+    static AlienSummary of(AlienView alien) {
+        return new AlienSummary(alien.getName(), alien.getType(), alien.getHomePlanet(), alien.getParent(), alien.getRemainingChildSlots());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AlienType getType() {
+        return type;
+    }
+
+    public String getHomePlanet() {
+        return homePlanet;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public int getRemainingChildSlots() {
+        return remainingChildSlots;
+    }
+}
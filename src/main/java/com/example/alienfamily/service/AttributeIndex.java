@@ -0,0 +1,299 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * Secondary indexes over the colony by type, free child slots and home planet, kept up to
+ * date as aliens change so listings never scan the colony.
+ *
+ * Aliens fall into one of four categories: alphas that can still have children, alphas that
+ * cannot, betas and gammas. Each category has a set of names for the whole colony and a set
+ * per home planet, sorted by name so a page carries on from the last name of the one before.
+ * A listing merges the sets for the categories it wants, at most four, so a page of k aliens
+ * costs O(k + log n) however large the colony.
+ *
+ * Sets are concurrent, so listings take no locks. Each change updates the sets one at a time,
+ * adding before removing, so a listing running alongside may see an alien in both its old and
+ * new place. Callers check the aliens they list, see AlienService#listAliens.
+ *
+ * A planet's sets are dropped once its last alien leaves, so planets passed through by renames
+ * and moves do not build up. Names are added to and removed from a planet's sets inside the
+ * map's compute for that planet, so an alien is never added to sets just being dropped.
+ */
+final class AttributeIndex {
+
+    static final int ALPHA_FREE = 1;
+    static final int ALPHA_FULL = 1 << 1;
+    static final int BETA = 1 << 2;
+    static final int GAMMA = 1 << 3;
+    static final int ALL = ALPHA_FREE | ALPHA_FULL | BETA | GAMMA;
+
+    private static final int CATEGORIES = 4;
+
+    /**
+     * Names in each category, across the colony
+     */
+    private final Categories colony = new Categories();
+
+    /**
+     * Names in each category, by home planet
+     */
+    private final Map<String, Categories> byPlanet = new ConcurrentHashMap<>();
+
+    /**
+     * Names in each category with no home planet
+     */
+    private final Categories noPlanet = new Categories();
+
+    /**
+     * @return the category of an alien, one of ALPHA_FREE, ALPHA_FULL, BETA or GAMMA
+     */
+    static int category(AlienType type, boolean freeSlots) {
+        switch (type) {
+            case ALPHA:
+                return freeSlots ? ALPHA_FREE : ALPHA_FULL;
+            case BETA:
+                return BETA;
+            default:
+                return GAMMA;
+        }
+    }
+
+    /**
+     * Categories matching a filter on type and free child slots
+     *
+     * @param type - null for any type
+     * @param freeSlots - null for either
+     * @return the categories as a mask, 0 if none can match
+     */
+    static int categories(AlienType type, Boolean freeSlots) {
+        int categories = type == null ? ALL : type == AlienType.ALPHA ? ALPHA_FREE | ALPHA_FULL : category(type, false);
+        if (freeSlots != null) {
+            categories &= freeSlots ? ALPHA_FREE : ALL & ~ALPHA_FREE;
+        }
+        return categories;
+    }
+
+    /**
+     * Empty the indexes
+     */
+    void clear() {
+        colony.clear();
+        noPlanet.clear();
+        byPlanet.clear();
+    }
+
+    /**
+     * Index an alien
+     *
+     * @param name
+     * @param type
+     * @param homePlanet
+     * @param freeSlots - whether it can still have children
+     */
+    void add(String name, AlienType type, String homePlanet, boolean freeSlots) {
+        int category = category(type, freeSlots);
+        colony.get(category).add(name);
+        addToPlanet(homePlanet, category, name);
+    }
+
+    /**
+     * Drop an alien from the indexes, with its details as they were indexed
+     *
+     * @param name
+     * @param type
+     * @param homePlanet
+     * @param freeSlots
+     */
+    void remove(String name, AlienType type, String homePlanet, boolean freeSlots) {
+        int category = category(type, freeSlots);
+        colony.get(category).remove(name);
+        removeFromPlanet(homePlanet, category, name);
+    }
+
+    /**
+     * Move an alien whose name or home planet has changed
+     *
+     * @param type
+     * @param freeSlots
+     * @param oldName
+     * @param oldPlanet
+     * @param newName
+     * @param newPlanet
+     */
+    void move(AlienType type, boolean freeSlots, String oldName, String oldPlanet, String newName, String newPlanet) {
+        boolean renamed = !oldName.equals(newName);
+        if (!renamed && Objects.equals(oldPlanet, newPlanet)) {
+            return;
+        }
+        int category = category(type, freeSlots);
+        if (renamed) {
+            colony.get(category).add(newName);
+        }
+        addToPlanet(newPlanet, category, newName);
+        removeFromPlanet(oldPlanet, category, oldName);
+        if (renamed) {
+            colony.get(category).remove(oldName);
+        }
+    }
+
+    /**
+     * Move an alpha that has just used its last child slot
+     *
+     * @param name
+     * @param homePlanet
+     */
+    void slotsFull(String name, String homePlanet) {
+        add(name, AlienType.ALPHA, homePlanet, false);
+        remove(name, AlienType.ALPHA, homePlanet, true);
+    }
+
+    /**
+     * Names in the given categories, in name order
+     *
+     * @param categories - mask of categories
+     * @param homePlanet - only aliens from this planet
+     * @param anyPlanet - true to ignore homePlanet
+     * @param after - only names after this one, null for the first page
+     * @param count - most names to return
+     * @return
+     */
+    List<String> find(int categories, String homePlanet, boolean anyPlanet, String after, int count) {
+        Categories sets = anyPlanet ? colony : homePlanet == null ? noPlanet : byPlanet.get(homePlanet);
+        List<String> names = new ArrayList<>(Math.min(count, 1024));
+        if (sets == null || categories == 0) {
+            return names;
+        }
+        // Merge the sorted sets for each category, there are at most four
+        List<Iterator<String>> iterators = new ArrayList<>(CATEGORIES);
+        List<String> heads = new ArrayList<>(CATEGORIES);
+        for (int i = 0; i < CATEGORIES; i++) {
+            if ((categories & (1 << i)) != 0) {
+                NavigableSet<String> set = sets.get(1 << i);
+                Iterator<String> iterator = (after == null ? set : set.tailSet(after, false)).iterator();
+                if (iterator.hasNext()) {
+                    iterators.add(iterator);
+                    heads.add(iterator.next());
+                }
+            }
+        }
+        String last = null;
+        while (names.size() < count && !heads.isEmpty()) {
+            int least = 0;
+            for (int i = 1; i < heads.size(); i++) {
+                if (heads.get(i).compareTo(heads.get(least)) < 0) {
+                    least = i;
+                }
+            }
+            String name = heads.get(least);
+            // An alien part way through a move can be in two categories
+            if (!name.equals(last)) {
+                names.add(name);
+                last = name;
+            }
+            if (iterators.get(least).hasNext()) {
+                heads.set(least, iterators.get(least).next());
+            } else {
+                iterators.remove(least);
+                heads.remove(least);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Visit the alphas that can still have children, in name order from after the given name
+     * round to that name. Seeking the name is O(log n), each alien visited after it O(1).
+     *
+     * @param after - the name to start after, null to start at the first
+     * @param visitor - returns false to stop
+     */
+    void visitFreeAlphas(String after, Predicate<String> visitor) {
+        NavigableSet<String> free = colony.get(ALPHA_FREE);
+        List<NavigableSet<String>> parts = after == null
+                ? Collections.singletonList(free)
+                : Arrays.asList(free.tailSet(after, false), free.headSet(after, true));
+        for (NavigableSet<String> part : parts) {
+            for (String name : part) {
+                if (!visitor.test(name)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void addToPlanet(String homePlanet, int category, String name) {
+        if (homePlanet == null) {
+            noPlanet.get(category).add(name);
+            return;
+        }
+        byPlanet.compute(homePlanet, (planet, sets) -> {
+            Categories planetSets = sets == null ? new Categories() : sets;
+            planetSets.get(category).add(name);
+            return planetSets;
+        });
+    }
+
+    private void removeFromPlanet(String homePlanet, int category, String name) {
+        if (homePlanet == null) {
+            noPlanet.get(category).remove(name);
+            return;
+        }
+        byPlanet.computeIfPresent(homePlanet, (planet, sets) -> {
+            sets.get(category).remove(name);
+            return sets.isEmpty() ? null : sets;
+        });
+    }
+
+    /**
+     * @return the number of home planets with aliens indexed, for testing
+     */
+    int planetCount() {
+        return byPlanet.size();
+    }
+
+    /**
+     * A sorted set of names for each category
+     */
+    private static final class Categories {
+
+        private final List<NavigableSet<String>> sets = new ArrayList<>(CATEGORIES);
+
+        private Categories() {
+            for (int i = 0; i < CATEGORIES; i++) {
+                sets.add(new ConcurrentSkipListSet<>());
+            }
+        }
+
+        private NavigableSet<String> get(int category) {
+            return sets.get(Integer.numberOfTrailingZeros(category));
+        }
+
+        private void clear() {
+            for (NavigableSet<String> set : sets) {
+                set.clear();
+            }
+        }
+
+        private boolean isEmpty() {
+            for (NavigableSet<String> set : sets) {
+                if (!set.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienConflictException;
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.exception.QuotaExceededException;
+import com.example.alienfamily.store.ColonyStore;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Dry run of a batch against a colony, used for all-or-nothing batches.
+ *
+ * The effect of each checked operation is recorded in an overlay, so later operations are
+ * checked against the colony as it would be, without touching it. The rules and messages
+ * mirror those of AlienService, so a batch that passes the check can be applied in full
+ * as long as the colony does not change in between.
+ */
+class BatchCheck {
+
+    /**
+     * Marks a name removed by an earlier operation in the batch
+     */
+    private static final Object REMOVED = new Object();
+
+    private final ColonyStore colony;
+
+    /**
+     * Names seen or changed by the batch, mapped to the existing Alien or a PendingAlien, or REMOVED
+     */
+    private final Map<String, Object> overlay = new HashMap<>();
+
+    /**
+     * Child slots used by the batch, per existing or pending alien
+     */
+    private final Map<Object, Integer> slotsUsed = new IdentityHashMap<>();
+
+    private int size;
+
+    BatchCheck(ColonyStore colony) {
+        this.colony = colony;
+        this.size = colony.size();
+    }
+
+    /**
+     * Check one operation and record its effect
+     *
+     * @param op
+     * @throws AlienException - with the message the operation would fail with
+     */
+    void check(ColonyOp op) {
+        if (op.getOp() == null) {
+            throw new AlienValidationException(ErrorCode.UNKNOWN_OPERATION, "Unknown batch operation");
+        }
+        if (size == 0) {
+            throw new AlienConflictException(ErrorCode.COLONY_NOT_STARTED, "No aliens! Please start a new colony.");
+        }
+        switch (op.getOp()) {
+            case ADD:
+                checkAdd(op.getParentName(), op.getChildName(), op.getType(), op.getHomePlanet());
+                break;
+            case UPDATE:
+                checkUpdate(op.getOldName(), op.getNewName(), op.getNewPlanet());
+                break;
+            default:
+                checkDelete(op.getName());
+        }
+    }
+
+    private void checkAdd(String parentName, String childName, AlienType type, String homePlanet) {
+        if (parentName == null) {
+            throw new AlienValidationException(ErrorCode.PARENT_REQUIRED, "Please specify a parent for this alien.");
+        }
+        if (lookup(childName) != null) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + childName + " already exists. Aliens must have unique names.");
+        }
+        Object parent = lookup(parentName);
+        if (parent == null) {
+            throw new AlienNotFoundException(ErrorCode.PARENT_NOT_FOUND, "Alien " + parentName + " does not exist, Child not added.");
+        }
+        AlienType parentType = typeOf(parent);
+        if (!AlienType.ALPHA.equals(parentType)) {
+            throw new AlienValidationException(ErrorCode.NOT_AN_ALPHA, "Only Alpha aliens can reproduce. " + parentName + " is of type " + parentType);
+        }
+        Alien.checkDetails(childName, type, homePlanet);
+        int used = slotsUsed.getOrDefault(parent, 0);
+        if (remainingSlots(parent) - used <= 0) {
+            throw new QuotaExceededException("Alien " + parentName + " has already had two children");
+        }
+        slotsUsed.put(parent, used + 1);
+        overlay.put(childName, new PendingAlien(type));
+        size++;
+    }
+
+    private void checkUpdate(String oldName, String newName, String newPlanet) {
+        Object alien = lookup(oldName);
+        if (alien == null) {
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + oldName + " not updated as they do not exist");
+        }
+        if (newName != null && !newName.equals(oldName)) {
+            if (lookup(newName) != null) {
+                throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + newName + " already exists. Aliens must have unique names.");
+            }
+            Alien.checkLength(newName);
+            overlay.put(oldName, REMOVED);
+            overlay.put(newName, alien);
+        }
+        if (newPlanet != null) {
+            Alien.checkLength(newPlanet);
+        }
+    }
+
+    private void checkDelete(String name) {
+        if (lookup(name) == null) {
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + name + " not removed as it does not exist.");
+        }
+        overlay.put(name, REMOVED);
+        size--;
+    }
+
+    /**
+     * @return the Alien or PendingAlien with this name, or null if there is none
+     */
+    private Object lookup(String name) {
+        if (name == null) {
+            return null;
+        }
+        Object alien = overlay.get(name);
+        if (alien == null) {
+            // Remember the alien, so later operations count child slots against the same object
+            // even if the store rebuilds aliens on every get
+            Alien existing = colony.get(name);
+            if (existing != null) {
+                overlay.put(name, existing);
+            }
+            return existing;
+        }
+        return alien == REMOVED ? null : alien;
+    }
+
+    private AlienType typeOf(Object alien) {
+        return alien instanceof Alien ? ((Alien) alien).getType() : ((PendingAlien) alien).type;
+    }
+
+    private int remainingSlots(Object alien) {
+        if (alien instanceof Alien) {
+            return ((Alien) alien).getRemainingChildSlots();
+        }
+        return AlienType.ALPHA.equals(((PendingAlien) alien).type) ? 2 : 0;
+    }
+
+    /**
+     * An alien added earlier in the batch
+     */
+    private static class PendingAlien {
+        private final AlienType type;
+
+        PendingAlien(AlienType type) {
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.alienfamily.service;
+
+import java.util.List;
+
+/**
+ * The aliens that differ between two versions of the colony
+ */
+public class ColonyDiff {
+
+    private final long from;
+
+    private final long to;
+
+    /**
+     * In name order
+     */
+    private final List<AlienChange> changes;
+
+    public ColonyDiff(long from, long to, List<AlienChange> changes) {
+        this.from = from;
+        this.to = to;
+        this.changes = changes;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public List<AlienChange> getChanges() {
+        return changes;
+    }
+}
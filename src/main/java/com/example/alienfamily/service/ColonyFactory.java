@@ -0,0 +1,20 @@
+package com.example.alienfamily.service;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Creates the Alien Service for a colony in the colony registry, see ColonyRegistry
+ */
+@FunctionalInterface
+public interface ColonyFactory {
+
+    /**
+     * Create a colony, recovering it from any storage kept for it
+     *
+     * @param colonyId - a valid colony id, see ColonyRegistry
+     * @param resources - the factory adds anything the colony holds open, such as its log, to be closed when it is evicted
+     * @return
+     */
+    AlienService create(String colonyId, List<Closeable> resources);
+}
@@ -0,0 +1,157 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+
+/**
+ * A single colony mutation, as submitted in a batch.
+ *
+ * Which fields are used depends on the operation:
+ *  - ADD uses parentName, childName, type and homePlanet, and reservation if the parent is reserved
+ *  - UPDATE uses oldName, newName and newPlanet
+ *  - DELETE uses name
+ */
+public class ColonyOp {
+
+    /**
+     * Supported batch operations
+     */
+    public enum Op {
+        ADD, UPDATE, DELETE
+    }
+
+    private Op op;
+    private String parentName;
+    private String childName;
+    private AlienType type;
+    private String homePlanet;
+    private String oldName;
+    private String newName;
+    private String newPlanet;
+    private String name;
+
+    /**
+     * Token of the reservation holding the parent, see AlienService#reserveParents
+     */
+    private String reservation;
+
+    /**
+     * Constructor for JSON deserialisation
+     */
+    public ColonyOp() {
+    }
+
+    /**
+     * @see AlienService#addAlien(String, String, AlienType, String)
+     */
+    public static ColonyOp add(String parentName, String childName, AlienType type, String homePlanet) {
+        ColonyOp colonyOp = new ColonyOp();
+        colonyOp.op = Op.ADD;
+        colonyOp.parentName = parentName;
+        colonyOp.childName = childName;
+        colonyOp.type = type;
+        colonyOp.homePlanet = homePlanet;
+        return colonyOp;
+    }
+
+    /**
+     * @see AlienService#updateAlien(String, String, String)
+     */
+    public static ColonyOp update(String oldName, String newName, String newPlanet) {
+        ColonyOp colonyOp = new ColonyOp();
+        colonyOp.op = Op.UPDATE;
+        colonyOp.oldName = oldName;
+        colonyOp.newName = newName;
+        colonyOp.newPlanet = newPlanet;
+        return colonyOp;
+    }
+
+    /**
+     * @see AlienService#deleteAlien(String)
+     */
+    public static ColonyOp delete(String name) {
+        ColonyOp colonyOp = new ColonyOp();
+        colonyOp.op = Op.DELETE;
+        colonyOp.name = name;
+        return colonyOp;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public void setOp(Op op) {
+        this.op = op;
+    }
+
+    public String getParentName() {
+        return parentName;
+    }
+
+    public void setParentName(String parentName) {
+        this.parentName = parentName;
+    }
+
+    public String getChildName() {
+        return childName;
+    }
+
+    public void setChildName(String childName) {
+        this.childName = childName;
+    }
+
+    public AlienType getType() {
+        return type;
+    }
+
+    public void setType(AlienType type) {
+        this.type = type;
+    }
+
+    public String getHomePlanet() {
+        return homePlanet;
+    }
+
+    public void setHomePlanet(String homePlanet) {
+        this.homePlanet = homePlanet;
+    }
+
+    public String getOldName() {
+        return oldName;
+    }
+
+    public void setOldName(String oldName) {
+        this.oldName = oldName;
+    }
+
+    public String getNewName() {
+        return newName;
+    }
+
+    public void setNewName(String newName) {
+        this.newName = newName;
+    }
+
+    public String getNewPlanet() {
+        return newPlanet;
+    }
+
+    public void setNewPlanet(String newPlanet) {
+        this.newPlanet = newPlanet;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getReservation() {
+        return reservation;
+    }
+
+    public void setReservation(String reservation) {
+        this.reservation = reservation;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.alienfamily.service;
+
+/**
+ * Outcome of a single operation in a batch
+ */
+public class ColonyOpResult {
+
+    /**
+     * Position of the operation in the batch
+     */
+    private final int index;
+
+    /**
+     * Whether the operation was applied
+     */
+    private final boolean success;
+
+    /**
+     * Why the operation was not applied, null on success
+     */
+    private final String error;
+
+    public ColonyOpResult(int index, boolean success, String error) {
+        this.index = index;
+        this.success = success;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.transfer.ColonyFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of isolated colonies, by colony id.
+ *
+ * Each colony is an Alien Service of its own, with its own store, locks, indexes and log, so
+ * calls to one colony never wait for another. The default colony is the configured Alien
+ * Service. Any other colony is created by the colony factory the first time it is called.
+ *
+ * With a colony directory and an idle timeout, colonies other than the default that have not
+ * been called for that long are evicted: exported to a file in the directory and dropped, then
+ * imported again when they are next called. Closing the registry evicts every colony, so they
+ * are kept across restarts. A colony is pinned while a call is running and is never evicted
+ * part way through one.
+ *
+ * Colony ids are 1 to 64 letters, digits, '-' or '_', so they can name files.
+ */
+public class ColonyRegistry implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColonyRegistry.class);
+
+    /**
+     * Id of the colony used when a call does not name one
+     */
+    public static final String DEFAULT = "default";
+
+    private static final Pattern COLONY_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final String EVICTED_FILE = "evicted.colony";
+
+    /**
+     * Pin count of a colony that has been evicted and can no longer be called
+     */
+    private static final int EVICTED = -1;
+
+    private final Map<String, Colony> colonies = new ConcurrentHashMap<>();
+
+    private final ColonyFactory factory;
+
+    /**
+     * Where colonies are evicted to, null if they are never evicted
+     */
+    private final Path directory;
+
+    private final long idleTimeoutNanos;
+
+    private final ScheduledExecutorService evictor;
+
+    private final Counter evictions;
+
+    /**
+     * Constructor for a registry of in memory colonies, that are never evicted
+     *
+     * @param defaultColony
+     */
+    public ColonyRegistry(AlienService defaultColony) {
+        this(defaultColony, (colonyId, resources) -> new AlienService(), null, 0, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param defaultColony
+     * @param factory - creates every other colony
+     * @param directory - where colonies are evicted to, may be null for none
+     * @param idleTimeoutMillis - how long a colony may go uncalled before it is evicted, 0 for never
+     * @param meterRegistry
+     */
+    public ColonyRegistry(AlienService defaultColony, ColonyFactory factory, Path directory, long idleTimeoutMillis, MeterRegistry meterRegistry) {
+        this.factory = factory;
+        this.directory = directory;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        Colony colony = new Colony(DEFAULT);
+        colony.service = defaultColony;
+        colonies.put(DEFAULT, colony);
+        Gauge.builder("alienfamily.colonies", colonies, Map::size)
+                .description("Colonies in memory")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("alienfamily.colonies.evictions")
+                .description("Idle colonies evicted to disk")
+                .register(meterRegistry);
+        if (directory != null && idleTimeoutMillis > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "colony-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, idleTimeoutMillis / 2);
+            evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * Make a call to a colony, creating it or bringing it back from disk if need be
+     *
+     * @param colonyId
+     * @param call
+     * @return what the call returns
+     * @throws com.example.alienfamily.exception.AlienException - if the colony id is not valid, or the call fails
+     */
+    public <T> T call(String colonyId, Function<AlienService, T> call) {
+        try (Pin pin = pin(colonyId)) {
+            return call.apply(pin.service());
+        }
+    }
+
+    /**
+     * Make a call to a colony that returns nothing
+     *
+     * @see #call(String, Function)
+     */
+    public void run(String colonyId, Consumer<AlienService> call) {
+        call(colonyId, colony -> {
+            call.accept(colony);
+            return null;
+        });
+    }
+
+    /**
+     * Whether a call to a colony would find it in memory, rather than create it or bring it back
+     * from disk, for callers that must not block
+     *
+     * @param colonyId
+     * @return
+     */
+    public boolean isLoaded(String colonyId) {
+        Colony colony = colonyId == null ? null : colonies.get(colonyId);
+        return colony != null && colony.service != null && colony.pins.get() != EVICTED;
+    }
+
+    /**
+     * @return the number of colonies in memory, including the default
+     */
+    public int size() {
+        return colonies.size();
+    }
+
+    /**
+     * Pin a colony so it is not evicted until the pin is closed, for calls whose results are
+     * used after they return, such as a lineage walked as it is streamed
+     *
+     * @param colonyId
+     * @return the pin, to be closed once
+     * @throws com.example.alienfamily.exception.AlienException - if the colony id is not valid
+     */
+    public Pin pin(String colonyId) {
+        Colony colony = find(colonyId);
+        try {
+            return new Pin(colony, colony.service());
+        } catch (RuntimeException e) {
+            colony.unpin();
+            throw e;
+        }
+    }
+
+    /**
+     * Find a colony and pin it, waiting for it if it is being evicted
+     */
+    private Colony find(String colonyId) {
+        if (colonyId == null || !COLONY_ID.matcher(colonyId).matches()) {
+            throw new AlienValidationException(ErrorCode.INVALID_COLONY, "Colony ids are 1 to 64 letters, digits, '-' or '_'");
+        }
+        while (true) {
+            Colony colony = colonies.computeIfAbsent(colonyId, Colony::new);
+            if (colony.pin()) {
+                return colony;
+            }
+            // Being evicted, it is dropped from the registry once it is on disk
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Evict every colony other than the default that has been idle for longer than the timeout
+     */
+    void evictIdle() {
+        long now = System.nanoTime();
+        for (Colony colony : colonies.values()) {
+            if (!DEFAULT.equals(colony.id) && now - colony.lastCalled > idleTimeoutNanos) {
+                evict(colony);
+            }
+        }
+    }
+
+    /**
+     * Export a colony to disk and drop it, unless a call has it pinned
+     */
+    private void evict(Colony colony) {
+        if (!colony.pins.compareAndSet(0, EVICTED)) {
+            return;
+        }
+        AlienService service = colony.service;
+        try {
+            if (service != null) {
+                Path file = evictedFile(colony.id);
+                Files.createDirectories(file.getParent());
+                Path temp = file.resolveSibling(EVICTED_FILE + ".tmp");
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                    service.exportColony(ColonyFormat.BINARY.writer(out));
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                closeResources(colony);
+                service.removeMeters();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Colony {} not evicted: {}", colony.id, e.getMessage());
+            colony.pins.set(0);
+            return;
+        }
+        colonies.remove(colony.id, colony);
+        evictions.increment();
+        LOGGER.debug("Colony {} evicted", colony.id);
+    }
+
+    /**
+     * Create a colony, importing it if it was evicted
+     */
+    private AlienService open(Colony colony) {
+        AlienService service = null;
+        try {
+            service = factory.create(colony.id, colony.resources);
+            Path file = directory == null ? null : evictedFile(colony.id);
+            if (file != null && Files.exists(file)) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+                    service.importColony(ColonyFormat.BINARY.reader(in));
+                }
+                // From here on the colony's own storage, if it has any, is more recent
+                Files.delete(file);
+                LOGGER.debug("Colony {} brought back from disk", colony.id);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeResources(colony);
+            if (service != null) {
+                service.removeMeters();
+            }
+            LOGGER.error("Colony {} could not be opened: {}", colony.id, e.getMessage());
+            throw new IllegalStateException("Colony " + colony.id + " could not be opened", e);
+        }
+        return service;
+    }
+
+    private Path evictedFile(String colonyId) {
+        return directory.resolve(colonyId).resolve(EVICTED_FILE);
+    }
+
+    private static void closeResources(Colony colony) {
+        for (Closeable resource : colony.resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close {} of colony {}: {}", resource, colony.id, e.getMessage());
+            }
+        }
+        colony.resources.clear();
+    }
+
+    /**
+     * Stop evicting, then evict every colony other than the default so they are kept on disk
+     */
+    @Override
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (Colony colony : new ArrayList<>(colonies.values())) {
+            if (DEFAULT.equals(colony.id)) {
+                continue;
+            }
+            if (directory != null) {
+                evict(colony);
+            } else {
+                closeResources(colony);
+            }
+        }
+    }
+
+    /**
+     * A colony pinned in memory
+     */
+    public static final class Pin implements AutoCloseable {
+
+        private final Colony colony;
+
+        private final AlienService service;
+
+        private Pin(Colony colony, AlienService service) {
+            this.colony = colony;
+            this.service = service;
+        }
+
+        public AlienService service() {
+            return service;
+        }
+
+        @Override
+        public void close() {
+            colony.unpin();
+        }
+    }
+
+    /**
+     * A colony in the registry, created when it is first called
+     */
+    private final class Colony {
+
+        private final String id;
+
+        /**
+         * Calls running, or EVICTED
+         */
+        private final AtomicInteger pins = new AtomicInteger();
+
+        private final List<Closeable> resources = new ArrayList<>();
+
+        private volatile AlienService service;
+
+        private volatile long lastCalled = System.nanoTime();
+
+        private Colony(String id) {
+            this.id = id;
+        }
+
+        private boolean pin() {
+            int count;
+            do {
+                count = pins.get();
+                if (count == EVICTED) {
+                    return false;
+                }
+            } while (!pins.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private void unpin() {
+            lastCalled = System.nanoTime();
+            pins.decrementAndGet();
+        }
+
+        private AlienService service() {
+            AlienService current = service;
+            if (current == null) {
+                synchronized (this) {
+                    if (service == null) {
+                        service = open(this);
+                    }
+                    current = service;
+                }
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienView;
+import com.example.alienfamily.store.ColonyStore;
+
+/**
+ * Immutable version of the colony, for reads that must never see a change part way through.
+ *
+ * Aliens are read as views by name or by id, with a dictionary of ids by name, so a rename
+ * keeps the alien's id. Versions are numbered from 0, the empty colony, and each change is one
+ * version. The last few versions are kept with the latest by version number, for reads as of
+ * an earlier version, and two versions can be compared in time for the changes between them.
+ *
+ * A colony is kept one of two ways, see of:
+ *  - whole, for a store whose aliens are objects on the heap anyway, see FullSnapshot. Every
+ *    version holds a view of every alien, sharing all but what changed, and reads never wait.
+ *  - as changes to a compact store, see LazySnapshot. Aliens are read from the store as they
+ *    are asked for, and only the aliens changed within the versions kept are held, so the
+ *    colony is not copied onto the heap. Reads wait while a change is made to the store.
+ *
+ * A change is made in a section, see change, started before the store is changed and ended
+ * once the next version has been made, see edit. Starting or importing a colony replaces it,
+ * see replace and rebuild.
+ */
+abstract class ColonySnapshot {
+
+    /**
+     * Id of no alien
+     */
+    static final int NONE = -1;
+
+    /**
+     * The empty colony, version 0
+     *
+     * @param store - the colony's store, read by the snapshot if it is compact
+     * @param retained - earlier versions to keep, 0 for none
+     * @return
+     */
+    static ColonySnapshot of(ColonyStore store, int retained) {
+        if (retained < 0) {
+            throw new IllegalArgumentException("Versions kept cannot be negative: " + retained);
+        }
+        return store.isCompact() ? LazySnapshot.empty(store, retained) : FullSnapshot.empty(retained);
+    }
+
+    /**
+     * @return the view of an alien, or null if it is not in this version
+     */
+    abstract AlienView get(String name);
+
+    /**
+     * @return the view of an alien, or null if it is not in this version
+     */
+    abstract AlienView get(int id);
+
+    /**
+     * @return the alien's id, or NONE if it is not in this version
+     */
+    int id(String name) {
+        AlienView alien = get(name);
+        return alien == null ? NONE : alien.getId();
+    }
+
+    abstract int size();
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    abstract long getVersion();
+
+    /**
+     * @return the earliest version that can still be read
+     */
+    abstract long getOldestVersion();
+
+    /**
+     * This or an earlier version
+     *
+     * @param asOf
+     * @return the version, or null if it is later than this one or no longer kept
+     */
+    abstract ColonySnapshot asOf(long asOf);
+
+    /**
+     * Compare the aliens in this version with another, by id, so a renamed alien is one change
+     *
+     * @param to
+     * @param changes - called for each id whose view differs, with null for an alien not in a version
+     */
+    abstract void diff(ColonySnapshot to, PersistentMap.Changes<Integer, AlienView> changes);
+
+    /**
+     * Start making the next version, in a section for the change, see change
+     */
+    abstract Edit edit();
+
+    /**
+     * Start making the next version afresh, for a colony loaded or rebuilt from elsewhere, in a
+     * section replacing the colony, see replace. The aliens are put in one at a time as they are
+     * read, so the colony is never held anywhere but in the store and the snapshot.
+     */
+    abstract Edit rebuild();
+
+    /**
+     * Start a change to the aliens with the given names, their parents and their children, which
+     * is held until the next version has been made or the change has failed. The caller must
+     * hold the locks for the change, and start the section before it changes the store.
+     *
+     * @param first
+     * @param second - may be the same as the first, or null
+     * @return the section, to close once the change is done
+     */
+    Section change(String first, String second) {
+        return Section.NONE;
+    }
+
+    /**
+     * Start replacing every alien in the colony, which is held until the colony has been rebuilt.
+     * The caller must hold the colony lock, and start the section before it changes the store.
+     * Sections may be nested.
+     *
+     * @return the section, to close once the colony is replaced
+     */
+    Section replace() {
+        return Section.NONE;
+    }
+
+    /**
+     * Hold the latest version for a long read, such as an export or a checkpoint, so it stays
+     * as it is however long the read takes
+     *
+     * @return the version held, to close once it has been read
+     */
+    Held hold() {
+        return new Held(this, () -> {
+        });
+    }
+
+    /**
+     * Changes to make the next version, which is only seen by readers once it is published
+     */
+    abstract static class Edit {
+
+        /**
+         * @return the view of an alien with the changes so far, or null
+         */
+        abstract AlienView get(String name);
+
+        /**
+         * Add or replace the view with the alien's id. A view with a new name renames the alien.
+         */
+        abstract Edit put(AlienView alien);
+
+        /**
+         * @return the view removed, or null if there was none
+         */
+        abstract AlienView remove(String name);
+
+        /**
+         * @return the new version
+         */
+        abstract ColonySnapshot done();
+    }
+
+    /**
+     * Held while the colony is changed, see change and replace
+     */
+    @FunctionalInterface
+    interface Section extends AutoCloseable {
+
+        /**
+         * A section with nothing to hold
+         */
+        Section NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+
+    /**
+     * A version held for a long read, see hold
+     */
+    static final class Held implements AutoCloseable {
+
+        private final ColonySnapshot snapshot;
+
+        private final Runnable release;
+
+        Held(ColonySnapshot snapshot, Runnable release) {
+            this.snapshot = snapshot;
+            this.release = release;
+        }
+
+        ColonySnapshot snapshot() {
+            return snapshot;
+        }
+
+        @Override
+        public void close() {
+            release.run();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienView;
+
+/**
+ * Version of the colony holding a view of every alien, for a store whose aliens are objects on
+ * the heap, see ColonySnapshot. Reads never block.
+ *
+ * Holds a view of each live alien by id in a persistent map, see PersistentMap, and a
+ * dictionary of ids by name. A change makes a new version from the last by replacing the
+ * views it touches, at most four for a rename, and shares the rest, so publishing a version
+ * costs O(log n) per changed alien however large the colony. A rename keeps the alien's id, so
+ * it moves one dictionary entry rather than the alien.
+ *
+ * The last few versions are kept with it by version number. As they share all but what
+ * changed, keeping them costs memory for the changes rather than for copies of the colony.
+ */
+final class FullSnapshot extends ColonySnapshot {
+
+    /**
+     * Live aliens by id
+     */
+    private final PersistentMap<Integer, AlienView> aliens;
+
+    /**
+     * Id of each live alien by name
+     */
+    private final PersistentMap<String, Integer> ids;
+
+    private final long version;
+
+    /**
+     * Earlier versions kept, by version, each without a history of its own
+     */
+    private final PersistentMap<Long, FullSnapshot> history;
+
+    /**
+     * Earlier versions to keep
+     */
+    private final int retained;
+
+    private FullSnapshot(PersistentMap<Integer, AlienView> aliens, PersistentMap<String, Integer> ids, long version,
+                         PersistentMap<Long, FullSnapshot> history, int retained) {
+        this.aliens = aliens;
+        this.ids = ids;
+        this.version = version;
+        this.history = history;
+        this.retained = retained;
+    }
+
+    /**
+     * The empty colony, version 0
+     *
+     * @param retained - earlier versions to keep, 0 for none
+     * @return
+     */
+    static FullSnapshot empty(int retained) {
+        return new FullSnapshot(PersistentMap.empty(), PersistentMap.empty(), 0, PersistentMap.empty(), retained);
+    }
+
+    /**
+     * Without this version's aliens
+     */
+    @Override
+    Edit rebuild() {
+        return new FullEdit(PersistentMap.empty(), PersistentMap.empty());
+    }
+
+    /**
+     * The next version with the given aliens, keeping this one in its history
+     */
+    private FullSnapshot next(PersistentMap<Integer, AlienView> views, PersistentMap<String, Integer> names) {
+        PersistentMap<Long, FullSnapshot> kept = history;
+        if (retained > 0) {
+            // Without its own history, so versions do not hold on to ever older ones
+            kept = kept.put(version, new FullSnapshot(aliens, ids, version, PersistentMap.empty(), 0))
+                    .remove(version - retained);
+        }
+        return new FullSnapshot(views, names, version + 1, kept, retained);
+    }
+
+    @Override
+    AlienView get(String name) {
+        if (name == null) {
+            return null;
+        }
+        Integer id = ids.get(name);
+        return id == null ? null : aliens.get(id);
+    }
+
+    @Override
+    AlienView get(int id) {
+        return aliens.get(id);
+    }
+
+    @Override
+    int id(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    @Override
+    int size() {
+        return aliens.size();
+    }
+
+    @Override
+    long getVersion() {
+        return version;
+    }
+
+    @Override
+    long getOldestVersion() {
+        return Math.max(0, version - retained);
+    }
+
+    @Override
+    ColonySnapshot asOf(long asOf) {
+        return asOf == version ? this : history.get(asOf);
+    }
+
+    /**
+     * The versions share everything that did not change between them, which is skipped
+     */
+    @Override
+    void diff(ColonySnapshot to, PersistentMap.Changes<Integer, AlienView> changes) {
+        aliens.diff(((FullSnapshot) to).aliens, changes);
+    }
+
+    @Override
+    Edit edit() {
+        return new FullEdit(aliens, ids);
+    }
+
+    private final class FullEdit extends Edit {
+
+        private PersistentMap<Integer, AlienView> edited;
+
+        private PersistentMap<String, Integer> names;
+
+        private FullEdit(PersistentMap<Integer, AlienView> edited, PersistentMap<String, Integer> names) {
+            this.edited = edited;
+            this.names = names;
+        }
+
+        @Override
+        AlienView get(String name) {
+            if (name == null) {
+                return null;
+            }
+            Integer id = names.get(name);
+            return id == null ? null : edited.get(id);
+        }
+
+        @Override
+        Edit put(AlienView alien) {
+            AlienView old = edited.get(alien.getId());
+            edited = edited.put(alien.getId(), alien);
+            if (old == null || !old.getName().equals(alien.getName())) {
+                if (old != null) {
+                    names = names.remove(old.getName());
+                }
+                names = names.put(alien.getName(), alien.getId());
+            }
+            return this;
+        }
+
+        @Override
+        AlienView remove(String name) {
+            AlienView alien = get(name);
+            if (alien != null) {
+                edited = edited.remove(alien.getId());
+                names = names.remove(name);
+            }
+            return alien;
+        }
+
+        @Override
+        ColonySnapshot done() {
+            return next(edited, names);
+        }
+    }
+}
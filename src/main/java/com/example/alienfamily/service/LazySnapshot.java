@@ -0,0 +1,689 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienView;
+import com.example.alienfamily.store.ColonyStore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Version of a colony in a compact store, see ColonyStore#isCompact, which reads each alien from
+ * the store as it is asked for rather than holding a copy of the colony.
+ *
+ * Only what changed within the versions kept is held: for each alien changed, a chain of its
+ * views newest first, ending with the view it had before its first change, and likewise the id
+ * of each name changed. A read as of a version takes the newest entry in the chain no later than
+ * it, and reads an alien without a chain from the store, as it has not changed since. A change
+ * pins the views it is about to replace by reading them from the store before it changes the
+ * store, see change, so the heap holds a few views per change rather than one per alien. Chains
+ * are dropped once no version kept reads them.
+ *
+ * Reads take no locks. The store is only changed inside a section holding a gate, a
+ * StampedLock, and a read that ran alongside one is made again under the gate, so a read sees
+ * each change whole. Starting or importing a colony replaces the store's aliens, and holds the
+ * gate until it is done, so reads wait for it, and the versions before it are no longer kept.
+ * A version from before a replacement reads as the latest version. Exports and checkpoints hold
+ * their version, see hold, so its changes are kept however many more are made while it is
+ * read, and replacing the colony waits for them.
+ */
+final class LazySnapshot extends ColonySnapshot {
+
+    /**
+     * Version of a view or id pinned before a change replaced it, which every version since the
+     * colony was read from the store sees
+     */
+    private static final long BEFORE = -1;
+
+    private final State state;
+
+    private final long version;
+
+    private final int size;
+
+    /**
+     * First version since the colony was last replaced, earlier ones are not kept
+     */
+    private final long since;
+
+    private LazySnapshot(State state, long version, int size, long since) {
+        this.state = state;
+        this.version = version;
+        this.size = size;
+        this.since = since;
+    }
+
+    /**
+     * The empty colony, version 0
+     *
+     * @param store
+     * @param retained - earlier versions to keep, 0 for none
+     * @return
+     */
+    static LazySnapshot empty(ColonyStore store, int retained) {
+        State state = new State(store, retained);
+        return state.started(new LazySnapshot(state, 0, 0, 0));
+    }
+
+    @Override
+    AlienView get(String name) {
+        return name == null ? null : state.read(() -> state.find(name, at()));
+    }
+
+    @Override
+    AlienView get(int id) {
+        return state.read(() -> state.view(id, at()));
+    }
+
+    /**
+     * @return the version to read, the latest if the colony has been replaced since this one
+     */
+    private long at() {
+        return since == state.since ? version : state.latest.version;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    long getVersion() {
+        return version;
+    }
+
+    @Override
+    long getOldestVersion() {
+        return Math.max(since, version - state.retained);
+    }
+
+    @Override
+    ColonySnapshot asOf(long asOf) {
+        if (asOf == version) {
+            return this;
+        }
+        return asOf > version || asOf < getOldestVersion() ? null : state.versions.get(asOf);
+    }
+
+    /**
+     * Only aliens with a chain can differ, so this takes time for the changes kept rather than the
+     * size of the colony
+     */
+    @Override
+    void diff(ColonySnapshot to, PersistentMap.Changes<Integer, AlienView> changes) {
+        LazySnapshot other = (LazySnapshot) to;
+        // Collected first, a read made again would report its changes twice
+        List<AlienView[]> changed = state.read(() -> state.diff(at(), other.at()));
+        for (AlienView[] change : changed) {
+            changes.changed((change[0] != null ? change[0] : change[1]).getId(), change[0], change[1]);
+        }
+    }
+
+    @Override
+    Edit edit() {
+        state.checkOwner();
+        return new LazyEdit();
+    }
+
+    /**
+     * The store already holds the colony being rebuilt, so the aliens put in are not kept
+     */
+    @Override
+    Edit rebuild() {
+        state.checkOwner();
+        return new Rebuild();
+    }
+
+    /**
+     * Holds the gate, and pins the views and ids of the named aliens, their parents and their
+     * children. The change must only replace those, or add new aliens.
+     */
+    @Override
+    Section change(String first, String second) {
+        return state.change(first, second);
+    }
+
+    /**
+     * Waits for held versions to be let go, then holds the gate
+     */
+    @Override
+    Section replace() {
+        return state.replace();
+    }
+
+    @Override
+    Held hold() {
+        return state.hold();
+    }
+
+    /**
+     * @return views and ids held for the changes kept, for testing
+     */
+    int changesHeld() {
+        return state.views.size() + state.ids.size();
+    }
+
+    /**
+     * Changes on top of the views in the chains and the store
+     */
+    private final class LazyEdit extends Edit {
+
+        /**
+         * Views changed by id, null for an alien removed
+         */
+        private final Map<Integer, AlienView> edited = new LinkedHashMap<>();
+
+        /**
+         * Ids by name for names changed, null for a name no longer used
+         */
+        private final Map<String, Integer> names = new LinkedHashMap<>();
+
+        private int count = size;
+
+        @Override
+        AlienView get(String name) {
+            if (name == null) {
+                return null;
+            }
+            Integer id;
+            if (names.containsKey(name)) {
+                id = names.get(name);
+            } else {
+                Chain<Integer> chain = state.ids.get(name);
+                Alien alien = chain == null ? state.store.get(name) : null;
+                id = chain != null ? chain.value : alien == null ? null : alien.getId();
+            }
+            return id == null ? null : view(id);
+        }
+
+        private AlienView view(int id) {
+            if (edited.containsKey(id)) {
+                return edited.get(id);
+            }
+            return state.view(id, Long.MAX_VALUE);
+        }
+
+        @Override
+        Edit put(AlienView alien) {
+            int id = alien.getId();
+            // Every alien a change replaces is pinned, so one without a chain is new
+            Chain<AlienView> chain = state.views.get(id);
+            AlienView old = edited.containsKey(id) ? edited.get(id) : chain == null ? null : chain.value;
+            edited.put(id, alien);
+            if (old == null) {
+                count++;
+                names.put(alien.getName(), id);
+            } else if (!old.getName().equals(alien.getName())) {
+                names.put(old.getName(), null);
+                names.put(alien.getName(), id);
+            }
+            return this;
+        }
+
+        @Override
+        AlienView remove(String name) {
+            AlienView alien = get(name);
+            if (alien != null) {
+                edited.put(alien.getId(), null);
+                names.put(name, null);
+                count--;
+            }
+            return alien;
+        }
+
+        @Override
+        ColonySnapshot done() {
+            return state.publish(new LazySnapshot(state, version + 1, count, since), edited, names);
+        }
+    }
+
+    /**
+     * Reads the aliens rebuilt so far from the store
+     */
+    private final class Rebuild extends Edit {
+
+        @Override
+        AlienView get(String name) {
+            Alien alien = state.store.get(name);
+            return alien == null ? null : AlienView.of(alien.getId(), alien);
+        }
+
+        @Override
+        Edit put(AlienView alien) {
+            return this;
+        }
+
+        @Override
+        AlienView remove(String name) {
+            return get(name);
+        }
+
+        @Override
+        ColonySnapshot done() {
+            state.checkOwner();
+            return state.started(new LazySnapshot(state, version + 1, state.store.size(), version + 1));
+        }
+    }
+
+    /**
+     * Views or ids of one alien or name, newest first
+     */
+    private static final class Chain<V> {
+
+        private final long version;
+
+        /**
+         * Null for an alien or name not in the colony as of the version
+         */
+        private final V value;
+
+        private final Chain<V> older;
+
+        private Chain(long version, V value, Chain<V> older) {
+            this.version = version;
+            this.value = value;
+            this.older = older;
+        }
+
+        /**
+         * @return the value as of a version, null if the chain starts after it
+         */
+        V valueAt(long at) {
+            for (Chain<V> chain = this; chain != null; chain = chain.older) {
+                if (chain.version <= at) {
+                    return chain.value;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the chain without the entries before the one an oldest version reads
+         */
+        Chain<V> cut(long oldest) {
+            List<Chain<V>> newer = new ArrayList<>();
+            Chain<V> last = this;
+            while (last.version > oldest && last.older != null) {
+                newer.add(last);
+                last = last.older;
+            }
+            if (last.older == null) {
+                return this;
+            }
+            Chain<V> cut = new Chain<>(last.version, last.value, null);
+            for (int i = newer.size() - 1; i >= 0; i--) {
+                cut = new Chain<>(newer.get(i).version, newer.get(i).value, cut);
+            }
+            return cut;
+        }
+    }
+
+    /**
+     * Ids and names a version changed, whose chains may be trimmed once it is no longer kept
+     */
+    private static final class Changed {
+
+        private final long version;
+
+        private final List<Integer> ids;
+
+        private final List<String> names;
+
+        private Changed(long version, List<Integer> ids, List<String> names) {
+            this.version = version;
+            this.ids = ids;
+            this.names = names;
+        }
+    }
+
+    /**
+     * What the versions of a colony share
+     */
+    private static final class State {
+
+        private final ColonyStore store;
+
+        private final int retained;
+
+        /**
+         * Held for writing while the store is changed, so reads alongside are made again
+         */
+        private final StampedLock gate = new StampedLock();
+
+        /**
+         * Thread holding the gate for writing, whose own reads go straight through
+         */
+        private volatile Thread owner;
+
+        /**
+         * The owner's stamp and nested sections
+         */
+        private long stamp;
+
+        private int depth;
+
+        /**
+         * Views of the aliens changed in the versions kept, by id
+         */
+        private final Map<Integer, Chain<AlienView>> views = new ConcurrentHashMap<>();
+
+        /**
+         * Ids of the names changed in the versions kept, by name
+         */
+        private final Map<String, Chain<Integer>> ids = new ConcurrentHashMap<>();
+
+        /**
+         * Versions kept, by version
+         */
+        private final Map<Long, LazySnapshot> versions = new ConcurrentHashMap<>();
+
+        /**
+         * What each version kept changed, oldest first, only used by the owner
+         */
+        private final ArrayDeque<Changed> changed = new ArrayDeque<>();
+
+        /**
+         * Chains started by the pins of the current section, only used by the owner
+         */
+        private final List<Integer> pinnedIds = new ArrayList<>();
+
+        private final List<String> pinnedNames = new ArrayList<>();
+
+        private volatile long since;
+
+        private volatile LazySnapshot latest;
+
+        /**
+         * Versions held for long reads, with how many hold each, guarded by this
+         */
+        private final TreeMap<Long, Integer> held = new TreeMap<>();
+
+        /**
+         * Replacements under way, guarded by this
+         */
+        private int replacing;
+
+        private State(ColonyStore store, int retained) {
+            this.store = store;
+            this.retained = retained;
+        }
+
+        /**
+         * Read without a lock, or again under the gate if a change ran alongside
+         */
+        private <T> T read(Supplier<T> read) {
+            long stamp = gate.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    T value = read.get();
+                    if (gate.validate(stamp)) {
+                        return value;
+                    }
+                } catch (RuntimeException e) {
+                    // The store may refuse a read part way through a change
+                    if (gate.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            } else if (owner == Thread.currentThread()) {
+                return read.get();
+            }
+            stamp = gate.readLock();
+            try {
+                return read.get();
+            } finally {
+                gate.unlockRead(stamp);
+            }
+        }
+
+        private AlienView find(String name, long at) {
+            Chain<Integer> chain = ids.get(name);
+            if (chain != null) {
+                Integer id = chain.valueAt(at);
+                return id == null ? null : view(id, at);
+            }
+            Alien alien = store.get(name);
+            if (alien == null) {
+                return null;
+            }
+            Chain<AlienView> alienViews = views.get(alien.getId());
+            return alienViews == null ? AlienView.of(alien.getId(), alien) : alienViews.valueAt(at);
+        }
+
+        private AlienView view(int id, long at) {
+            Chain<AlienView> chain = views.get(id);
+            if (chain != null) {
+                return chain.valueAt(at);
+            }
+            Alien alien = store.get(id);
+            return alien == null ? null : AlienView.of(id, alien);
+        }
+
+        private List<AlienView[]> diff(long from, long to) {
+            List<AlienView[]> changes = new ArrayList<>();
+            for (Chain<AlienView> chain : views.values()) {
+                AlienView before = chain.valueAt(from);
+                AlienView after = chain.valueAt(to);
+                if (before != after) {
+                    changes.add(new AlienView[]{before, after});
+                }
+            }
+            return changes;
+        }
+
+        private Section change(String first, String second) {
+            lock();
+            try {
+                pin(first);
+                if (second != null && !second.equals(first)) {
+                    pin(second);
+                }
+            } catch (RuntimeException e) {
+                unlock();
+                throw e;
+            }
+            return this::unlock;
+        }
+
+        /**
+         * Pin an alien's view and id, and the views of its parent and children, as the store has
+         * them before the change
+         */
+        private void pin(String name) {
+            if (name == null) {
+                return;
+            }
+            Alien alien = store.get(name);
+            if (ids.putIfAbsent(name, new Chain<>(BEFORE, alien == null ? null : alien.getId(), null)) == null) {
+                pinnedNames.add(name);
+            }
+            if (alien != null) {
+                pin(alien);
+                for (Alien relative : new Alien[]{alien.getParent(), alien.getChildOne(), alien.getChildTwo()}) {
+                    // Relatives are copies, without their own relatives
+                    Alien live = relative == null ? null : store.get(relative.getName());
+                    if (live != null) {
+                        pin(live);
+                    }
+                }
+            }
+        }
+
+        private void pin(Alien alien) {
+            if (views.putIfAbsent(alien.getId(), new Chain<>(BEFORE, AlienView.of(alien.getId(), alien), null)) == null) {
+                pinnedIds.add(alien.getId());
+            }
+        }
+
+        private Section replace() {
+            if (owner == Thread.currentThread()) {
+                depth++;
+                return this::unlock;
+            }
+            synchronized (this) {
+                replacing++;
+                boolean interrupted = false;
+                while (!held.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            lock();
+            return () -> {
+                unlock();
+                synchronized (this) {
+                    replacing--;
+                    notifyAll();
+                }
+            };
+        }
+
+        private Held hold() {
+            LazySnapshot colony;
+            synchronized (this) {
+                boolean interrupted = false;
+                while (replacing > 0 && owner != Thread.currentThread()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                colony = latest;
+                held.merge(colony.version, 1, Integer::sum);
+            }
+            return new Held(colony, () -> release(colony.version));
+        }
+
+        private synchronized void release(long version) {
+            held.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+            notifyAll();
+        }
+
+        private void lock() {
+            if (owner == Thread.currentThread()) {
+                depth++;
+                return;
+            }
+            long writeStamp = gate.writeLock();
+            stamp = writeStamp;
+            owner = Thread.currentThread();
+            depth = 1;
+        }
+
+        private void unlock() {
+            if (--depth > 0) {
+                return;
+            }
+            // Pins the change did not replace are as the store has them
+            for (Integer id : pinnedIds) {
+                Chain<AlienView> chain = views.get(id);
+                if (chain != null && chain.version == BEFORE) {
+                    views.remove(id);
+                }
+            }
+            for (String name : pinnedNames) {
+                Chain<Integer> chain = ids.get(name);
+                if (chain != null && chain.version == BEFORE) {
+                    ids.remove(name);
+                }
+            }
+            pinnedIds.clear();
+            pinnedNames.clear();
+            owner = null;
+            gate.unlockWrite(stamp);
+        }
+
+        private void checkOwner() {
+            if (owner != Thread.currentThread()) {
+                throw new IllegalStateException("Colony changed outside a change section");
+            }
+        }
+
+        /**
+         * Start the chains again from the colony as the store has it
+         */
+        private LazySnapshot started(LazySnapshot colony) {
+            views.clear();
+            ids.clear();
+            versions.clear();
+            changed.clear();
+            versions.put(colony.version, colony);
+            since = colony.since;
+            latest = colony;
+            return colony;
+        }
+
+        /**
+         * Add a version's changes to the chains, then trim them
+         */
+        private LazySnapshot publish(LazySnapshot colony, Map<Integer, AlienView> edited, Map<String, Integer> names) {
+            checkOwner();
+            long version = colony.version;
+            for (Map.Entry<Integer, AlienView> view : edited.entrySet()) {
+                views.put(view.getKey(), new Chain<>(version, view.getValue(), views.get(view.getKey())));
+            }
+            for (Map.Entry<String, Integer> id : names.entrySet()) {
+                ids.put(id.getKey(), new Chain<>(version, id.getValue(), ids.get(id.getKey())));
+            }
+            versions.put(version, colony);
+            versions.remove(version - retained - 1);
+            latest = colony;
+            changed.add(new Changed(version, new ArrayList<>(edited.keySet()), new ArrayList<>(names.keySet())));
+            trim(version);
+            return colony;
+        }
+
+        /**
+         * Drop what no version kept or held reads any more
+         */
+        private void trim(long version) {
+            long oldest = version - retained;
+            synchronized (this) {
+                if (!held.isEmpty()) {
+                    oldest = Math.min(oldest, held.firstKey());
+                }
+            }
+            while (!changed.isEmpty() && changed.peekFirst().version <= oldest) {
+                Changed change = changed.pollFirst();
+                for (Integer id : change.ids) {
+                    trim(views, id, oldest);
+                }
+                for (String name : change.names) {
+                    trim(ids, name, oldest);
+                }
+            }
+        }
+
+        /**
+         * A chain with nothing newer than the oldest version is as the store has it
+         */
+        private static <K, V> void trim(Map<K, Chain<V>> chains, K key, long oldest) {
+            Chain<V> chain = chains.get(key);
+            if (chain == null) {
+                return;
+            }
+            if (chain.version <= oldest) {
+                chains.remove(key);
+            } else {
+                chains.put(key, chain.cut(oldest));
+            }
+        }
+    }
+}
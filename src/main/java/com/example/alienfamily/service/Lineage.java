@@ -0,0 +1,19 @@
+package com.example.alienfamily.service;
+
+/**
+ * One page of an alien's ancestors or descendants, walked when it is visited.
+ *
+ * Nothing is held in memory beyond the alien being visited, so a page can be streamed to a
+ * client however long the lineage is.
+ */
+@FunctionalInterface
+public interface Lineage {
+
+    /**
+     * Walk the page, passing each alien to the visitor in order
+     *
+     * @param visitor
+     * @return the number of aliens visited
+     */
+    int forEach(LineageVisitor visitor);
+}
@@ -0,0 +1,494 @@
+package com.example.alienfamily.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Lineage index over the colony, answering "is X descended from Y", and how many generations
+ * apart, in time logarithmic in the number of deleted aliens and "nearest common ancestor" in
+ * logarithmic time, kept up to date as aliens are added.
+ *
+ * Each alien is a node numbered by its id, see ColonySnapshot, so the index holds no names and
+ * renaming an alien does not touch it. Its lineage is held three ways:
+ *  - Interval labels. Every node has an entry and an exit token in one ordered list, with a
+ *    node's descendants' tokens nested between its own, as in an Euler tour. Tokens carry long
+ *    labels in list order, so X is below Y when X's entry label falls inside Y's two labels.
+ *    A new child's tokens go just before its parent's exit token. When two neighbouring labels
+ *    leave no room, the smallest surrounding label range that is sparse enough is relabelled
+ *    evenly (order maintenance, amortised logarithmic).
+ *  - Jump pointers. Every node has its parent and one jump pointer further up, sized in a skew
+ *    binary pattern, so any ancestor and the common ancestor are reached in logarithmic steps.
+ *    This is binary lifting with one jump per node instead of a table of log n.
+ *  - Cuts. A deleted alien no longer has its children, so their lineages are cut off from its
+ *    ancestors, as in AlienService#getAncestors. The tree of nodes is never changed, instead a
+ *    deleted alien's two tokens go into a treap ordered by label, its entry counting +1 and its
+ *    exit -1. The sum of the tokens before a node is then the number of deleted aliens above it,
+ *    so a lineage is unbroken between two aliens when they have the same sum. Relabelling keeps
+ *    the token order, so the treap stays ordered, and deleting an alien is logarithmic however
+ *    many descendants it has.
+ *
+ * Guarded by a read write lock, so queries run in parallel with each other.
+ */
+final class LineageIndex {
+
+    private static final int NONE = -1;
+
+    /**
+     * Labels are in [0, UNIVERSE)
+     */
+    private static final long UNIVERSE = 1L << 62;
+
+    private static final int LABEL_BITS = 62;
+
+    /**
+     * Most tokens a label range of size 2^i may hold before it is relabelled, growing slower
+     * than the range so that large ranges are kept sparse
+     */
+    private static final double[] DENSITY = new double[LABEL_BITS + 1];
+
+    static {
+        for (int i = 0; i <= LABEL_BITS; i++) {
+            DENSITY[i] = Math.max(2.0, Math.pow(1.4, i));
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Number of live aliens
+     */
+    private int size;
+
+    // Per node, including deleted aliens
+
+    private boolean[] live = new boolean[16];
+    private int[] parent = new int[16];
+    private int[] jump = new int[16];
+    private int[] depth = new int[16];
+
+    // Per token, 2 * node for entry and 2 * node + 1 for exit
+
+    private long[] label = new long[32];
+    private int[] next = new int[32];
+    private int[] prev = new int[32];
+    private int head = NONE;
+    private int tail = NONE;
+
+    // Treap of deleted aliens' tokens, per token
+
+    private int[] left = new int[32];
+    private int[] right = new int[32];
+    private int[] cuts = new int[32];
+    private int root = NONE;
+
+    /**
+     * Tokens at or after the label split on, see split
+     */
+    private int splitHigh;
+
+    /**
+     * Replace the index with one of a colony loaded from elsewhere.
+     *
+     * A parent is always given its id before its children, see ColonyStore, so the aliens are
+     * added in id order, each below its parent, without holding the colony's lineages anywhere
+     * but in the index.
+     *
+     * @param ids - every live alien's id
+     * @param parents - each alien's live parent's id, NONE if it has none
+     */
+    void reload(BitSet ids, IntUnaryOperator parents) {
+        lock.writeLock().lock();
+        try {
+            clearNodes();
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                int parentId = parents.applyAsInt(id);
+                if (parentId != NONE && (parentId > id || !isLive(parentId))) {
+                    throw new IllegalStateException("Alien " + id + " has parent " + parentId + ", which is not in the lineage index");
+                }
+                addNode(id, parentId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the index with a new colony's first alien
+     *
+     * @param id
+     */
+    void start(int id) {
+        lock.writeLock().lock();
+        try {
+            clearNodes();
+            addNode(id, NONE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empty the index
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            clearNodes();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a newborn alien below its parent, or an imported alien
+     *
+     * @param parentId - NONE for an alien with no live parent
+     * @param id
+     */
+    void add(int parentId, int id) {
+        lock.writeLock().lock();
+        try {
+            if (parentId != NONE && !isLive(parentId)) {
+                throw new IllegalStateException("Alien " + parentId + " is not in the lineage index");
+            }
+            addNode(id, parentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Delete an alien, cutting its children's lineages off from its ancestors
+     *
+     * @param id
+     */
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (!isLive(id)) {
+                return;
+            }
+            live[id] = false;
+            size--;
+            root = insertCut(root, entry(id));
+            root = insertCut(root, exit(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The labels answer in constant time whether the alien is below the ancestor, the cuts above
+     * each are then counted in the treap, logarithmic in the number of deleted aliens.
+     *
+     * @param x - the alien's id
+     * @param y - the ancestor's id
+     * @return true if the alien is a descendant of the ancestor, in an unbroken lineage
+     */
+    boolean isDescendant(int x, int y) {
+        lock.readLock().lock();
+        try {
+            return below(x, y);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Generations between an alien and its ancestor, found as for isDescendant
+     *
+     * @param x - the alien's id
+     * @param y - the ancestor's id
+     * @return the depth of the alien below the ancestor, or -1 if it is not a descendant
+     */
+    int generations(int x, int y) {
+        lock.readLock().lock();
+        try {
+            return below(x, y) ? depth[x] - depth[y] : NONE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Nearest common ancestor of two aliens, which is one of them if the other is its descendant
+     *
+     * @param x - the first alien's id
+     * @param y - the second alien's id
+     * @return the ancestor's id, or -1 if they are not related
+     */
+    int commonAncestor(int x, int y) {
+        lock.readLock().lock();
+        try {
+            if (!isLive(x) || !isLive(y)) {
+                return NONE;
+            }
+            int cut = cutsAbove(x);
+            if (cut != cutsAbove(y)) {
+                return NONE;
+            }
+            int a = x;
+            int b = y;
+            if (depth[a] < depth[b]) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            // Climb to the same depth, jumping whenever the jump does not overshoot
+            while (depth[a] > depth[b]) {
+                a = depth[jump[a]] >= depth[b] ? jump[a] : parent[a];
+            }
+            // Jumps at the same depth land at the same depth, so climb together
+            while (a != b) {
+                if (parent[a] == a) {
+                    // Tops of separate lineages
+                    return NONE;
+                }
+                if (jump[a] != jump[b]) {
+                    a = jump[a];
+                    b = jump[b];
+                } else {
+                    a = parent[a];
+                    b = parent[b];
+                }
+            }
+            // A deleted alien, or one above it, is no ancestor of its descendants
+            return isLive(a) && cutsAbove(a) == cut ? a : NONE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of live aliens in the index
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether x is below y in an unbroken lineage, the caller must hold the read lock
+     */
+    private boolean below(int x, int y) {
+        if (!isLive(x) || !isLive(y) || x == y) {
+            return false;
+        }
+        long at = label[entry(x)];
+        return label[entry(y)] < at && at < label[exit(y)] && cutsAbove(x) == cutsAbove(y);
+    }
+
+    private boolean isLive(int node) {
+        return node >= 0 && node < live.length && live[node];
+    }
+
+    /**
+     * Drop every node, the caller must hold the write lock
+     */
+    private void clearNodes() {
+        Arrays.fill(live, false);
+        size = 0;
+        head = NONE;
+        tail = NONE;
+        root = NONE;
+    }
+
+    /**
+     * Add a node below a parent, or at the top of a new lineage, the caller must hold the write lock
+     */
+    private void addNode(int x, int p) {
+        ensureCapacity(x + 1);
+        if (live[x]) {
+            throw new IllegalStateException("Alien " + x + " is already in the lineage index");
+        }
+        live[x] = true;
+        size++;
+        if (p == NONE) {
+            parent[x] = x;
+            jump[x] = x;
+            depth[x] = 0;
+            insertAfter(tail, entry(x));
+        } else {
+            parent[x] = p;
+            depth[x] = depth[p] + 1;
+            int j = jump[p];
+            jump[x] = depth[p] - depth[j] == depth[j] - depth[jump[j]] ? jump[j] : p;
+            // Last among the parent's descendants
+            insertAfter(prev[exit(p)], entry(x));
+        }
+        insertAfter(entry(x), exit(x));
+    }
+
+    /**
+     * Link a token into the list after another, NONE for an empty list
+     */
+    private void insertAfter(int before, int token) {
+        if (before != NONE && gapAfter(before) < 2) {
+            relabel(before);
+        }
+        int after = before == NONE ? NONE : next[before];
+        long low = before == NONE ? 0 : label[before];
+        long high = after == NONE ? UNIVERSE : label[after];
+        label[token] = low + (high - low) / 2;
+        prev[token] = before;
+        next[token] = after;
+        if (before != NONE) {
+            next[before] = token;
+        } else {
+            head = token;
+        }
+        if (after != NONE) {
+            prev[after] = token;
+        } else {
+            tail = token;
+        }
+    }
+
+    private long gapAfter(int token) {
+        return (next[token] == NONE ? UNIVERSE : label[next[token]]) - label[token];
+    }
+
+    /**
+     * Spread out the labels around a token, in the smallest aligned label range around it
+     * that is sparse enough, leaving a gap after every token in the range
+     */
+    private void relabel(int token) {
+        int first = token;
+        int last = token;
+        int count = 1;
+        for (int i = 1; i <= LABEL_BITS; i++) {
+            long range = 1L << i;
+            long base = label[token] & -range;
+            while (prev[first] != NONE && label[prev[first]] >= base) {
+                first = prev[first];
+                count++;
+            }
+            while (next[last] != NONE && label[next[last]] < base + range) {
+                last = next[last];
+                count++;
+            }
+            if ((count + 1) * DENSITY[i] <= range) {
+                long gap = range / count;
+                long at = base;
+                for (int t = first; ; t = next[t]) {
+                    label[t] = at;
+                    at += gap;
+                    if (t == last) {
+                        return;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("Lineage index is full");
+    }
+
+    /**
+     * Number of deleted aliens above a node, the sum of the cut tokens labelled before its entry
+     */
+    private int cutsAbove(int node) {
+        long at = label[entry(node)];
+        int sum = 0;
+        int t = root;
+        while (t != NONE) {
+            if (label[t] < at) {
+                sum += cut(left[t]) + weight(t);
+                t = right[t];
+            } else {
+                t = left[t];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Add a token to the treap below a node, returning the new top of that part
+     */
+    private int insertCut(int node, int token) {
+        if (node == NONE || priority(token) > priority(node)) {
+            left[token] = split(node, label[token]);
+            right[token] = splitHigh;
+            update(token);
+            return token;
+        }
+        if (label[token] < label[node]) {
+            left[node] = insertCut(left[node], token);
+        } else {
+            right[node] = insertCut(right[node], token);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Split the treap below a node by label, returning the tokens before the label and leaving
+     * the rest in splitHigh
+     */
+    private int split(int node, long at) {
+        if (node == NONE) {
+            splitHigh = NONE;
+            return NONE;
+        }
+        if (label[node] < at) {
+            right[node] = split(right[node], at);
+            update(node);
+            return node;
+        }
+        int low = split(left[node], at);
+        left[node] = splitHigh;
+        update(node);
+        splitHigh = node;
+        return low;
+    }
+
+    private void update(int token) {
+        cuts[token] = cut(left[token]) + weight(token) + cut(right[token]);
+    }
+
+    private int cut(int token) {
+        return token == NONE ? 0 : cuts[token];
+    }
+
+    private static int weight(int token) {
+        return (token & 1) == 0 ? 1 : -1;
+    }
+
+    /**
+     * Fixed pseudo random treap priority of a token
+     */
+    private static int priority(int token) {
+        int h = token * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (nodeCount <= live.length) {
+            return;
+        }
+        int capacity = Math.max(nodeCount, live.length * 2);
+        live = Arrays.copyOf(live, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        jump = Arrays.copyOf(jump, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        label = Arrays.copyOf(label, capacity * 2);
+        next = Arrays.copyOf(next, capacity * 2);
+        prev = Arrays.copyOf(prev, capacity * 2);
+        left = Arrays.copyOf(left, capacity * 2);
+        right = Arrays.copyOf(right, capacity * 2);
+        cuts = Arrays.copyOf(cuts, capacity * 2);
+    }
+
+    private static int entry(int node) {
+        return node << 1;
+    }
+
+    private static int exit(int node) {
+        return (node << 1) | 1;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+
+/**
+ * Receives the aliens in a lineage one at a time, as it is walked, see Lineage.
+ *
+ * Aliens are passed as their details rather than as Alien objects, so a walk allocates
+ * nothing per alien.
+ */
+@FunctionalInterface
+public interface LineageVisitor {
+
+    /**
+     * Visit one alien in the lineage
+     *
+     * @param name
+     * @param type
+     * @param homePlanet
+     * @param depth - generations between this alien and the alien the walk is for
+     * @return true to carry on, false to stop the walk
+     */
+    boolean visit(String name, AlienType type, String homePlanet, int depth);
+}
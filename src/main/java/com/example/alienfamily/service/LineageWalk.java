@@ -0,0 +1,207 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.alien.AlienView;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.function.Supplier;
+
+/**
+ * A page of ancestors or descendants, walked through the colony's snapshot in chunks.
+ *
+ * Each chunk is walked through one version of the colony, held while the chunk is copied out of
+ * it, see ColonySnapshot#hold, so a chunk never sees a change part way through and a slow client
+ * never holds a version. Relatives are followed by name from view to view, and a parent is only
+ * followed while it still has the alien as its child, as a deleted parent's name may have been
+ * taken since. The next chunk carries on from the last alien of the one before, in the latest
+ * version. If that alien is renamed or deleted in between, the page ends early.
+ */
+final class LineageWalk implements Lineage {
+
+    /**
+     * Aliens copied out of the snapshot at a time
+     */
+    private static final int CHUNK = 256;
+
+    private final Supplier<ColonySnapshot.Held> colony;
+    private final boolean ancestors;
+    private final String from;
+    private final int fromDepth;
+    private final int maxDepth;
+    private final int limit;
+    private final Timer timer;
+
+    /**
+     * @param colony - holds the latest version of the colony
+     * @param ancestors - true to walk up the lineage, false to walk down
+     * @param from - alien to carry on from
+     * @param fromDepth - depth of that alien in the walk
+     * @param maxDepth
+     * @param limit - most aliens to visit
+     * @param timer
+     */
+    LineageWalk(Supplier<ColonySnapshot.Held> colony, boolean ancestors, String from, int fromDepth, int maxDepth, int limit, Timer timer) {
+        this.colony = colony;
+        this.ancestors = ancestors;
+        this.from = from;
+        this.fromDepth = fromDepth;
+        this.maxDepth = maxDepth;
+        this.limit = limit;
+        this.timer = timer;
+    }
+
+    @Override
+    public int forEach(LineageVisitor visitor) {
+        long start = System.nanoTime();
+        try {
+            Chunk chunk = new Chunk(Math.min(CHUNK, limit));
+            String name = from;
+            int depth = fromDepth;
+            int visited = 0;
+            while (visited < limit) {
+                chunk.reset(Math.min(chunk.capacity(), limit - visited));
+                boolean found;
+                try (ColonySnapshot.Held held = colony.get()) {
+                    found = ancestors
+                            ? visitAncestors(held.snapshot(), name, depth, chunk)
+                            : visitDescendants(held.snapshot(), name, depth, chunk);
+                }
+                if (!found) {
+                    break;
+                }
+                for (int i = 0; i < chunk.size; i++) {
+                    visited++;
+                    if (!visitor.visit(chunk.names[i], chunk.types[i], chunk.planets[i], chunk.depths[i])) {
+                        return visited;
+                    }
+                }
+                if (!chunk.isFull()) {
+                    break;
+                }
+                name = chunk.names[chunk.size - 1];
+                depth = chunk.depths[chunk.size - 1];
+            }
+            return visited;
+        } finally {
+            ServiceMetrics.stop(timer, start);
+        }
+    }
+
+    /**
+     * Walk up from an alien, parent first, ending at the first deleted ancestor or after maxDepth
+     * generations
+     *
+     * @param depth - depth of the named alien, its parent is visited at depth + 1
+     * @return false if there is no alien with that name
+     */
+    private boolean visitAncestors(ColonySnapshot snapshot, String name, int depth, LineageVisitor visitor) {
+        AlienView alien = snapshot.get(name);
+        if (alien == null) {
+            return false;
+        }
+        for (AlienView parent = parentOf(snapshot, alien); parent != null && depth < maxDepth; parent = parentOf(snapshot, parent)) {
+            depth++;
+            if (!visitor.visit(parent.getName(), parent.getType(), parent.getHomePlanet(), depth)) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walk down depth first, child one before child two, without recursion or a stack. With depth
+     * n this carries on from the named alien, n generations below where the walk started, to the
+     * end of that walk.
+     *
+     * @param depth - generations between the named alien and the start of the walk
+     * @return false if there is no alien with that name
+     */
+    private boolean visitDescendants(ColonySnapshot snapshot, String name, int depth, LineageVisitor visitor) {
+        AlienView alien = snapshot.get(name);
+        if (alien == null) {
+            return false;
+        }
+        while (true) {
+            AlienView next = depth < maxDepth ? firstChild(snapshot, alien) : null;
+            if (next != null) {
+                depth++;
+            }
+            // No children to visit, climb until an ancestor has a second child still to visit
+            while (next == null && depth > 0) {
+                AlienView parent = parentOf(snapshot, alien);
+                if (parent == null) {
+                    return true;
+                }
+                if (alien.getName().equals(parent.getChildOne()) && parent.getChildTwo() != null) {
+                    next = snapshot.get(parent.getChildTwo());
+                }
+                if (next == null) {
+                    alien = parent;
+                    depth--;
+                }
+            }
+            if (next == null) {
+                return true;
+            }
+            alien = next;
+            if (!visitor.visit(alien.getName(), alien.getType(), alien.getHomePlanet(), depth)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the alien's live parent, or null if it has none
+     */
+    private static AlienView parentOf(ColonySnapshot snapshot, AlienView alien) {
+        AlienView parent = snapshot.get(alien.getParent());
+        return parent != null && parent.hasChild(alien.getName()) ? parent : null;
+    }
+
+    private static AlienView firstChild(ColonySnapshot snapshot, AlienView alien) {
+        AlienView one = snapshot.get(alien.getChildOne());
+        return one != null ? one : snapshot.get(alien.getChildTwo());
+    }
+
+    /**
+     * Aliens copied out of the snapshot, reused for every chunk of a walk
+     */
+    private static final class Chunk implements LineageVisitor {
+        private final String[] names;
+        private final AlienType[] types;
+        private final String[] planets;
+        private final int[] depths;
+        private int size;
+        private int wanted;
+
+        private Chunk(int capacity) {
+            names = new String[capacity];
+            types = new AlienType[capacity];
+            planets = new String[capacity];
+            depths = new int[capacity];
+        }
+
+        private int capacity() {
+            return names.length;
+        }
+
+        private void reset(int wanted) {
+            this.size = 0;
+            this.wanted = wanted;
+        }
+
+        private boolean isFull() {
+            return size == wanted;
+        }
+
+        @Override
+        public boolean visit(String name, AlienType type, String homePlanet, int depth) {
+            names[size] = name;
+            types[size] = type;
+            planets[size] = homePlanet;
+            depths[size] = depth;
+            size++;
+            return size < wanted;
+        }
+    }
+}
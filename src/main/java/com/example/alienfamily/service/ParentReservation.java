@@ -0,0 +1,43 @@
+package com.example.alienfamily.service;
+
+import java.util.List;
+
+/**
+ * Parents reserved for one grower of the colony, see AlienService#reserveParents
+ */
+public class ParentReservation {
+
+    /**
+     * Passed with each child added to the parents, see AlienService#addAlien(String, String, AlienType, String, String)
+     */
+    private final String token;
+
+    /**
+     * When the reservation lapses, in milliseconds since the epoch
+     */
+    private final long expiresAt;
+
+    /**
+     * Alphas that could still have children when reserved, in name order from where the last
+     * reservation left off
+     */
+    private final List<String> parents;
+
+    public ParentReservation(String token, long expiresAt, List<String> parents) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+        this.parents = parents;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public List<String> getParents() {
+        return parents;
+    }
+}
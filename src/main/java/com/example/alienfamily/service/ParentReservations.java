@@ -0,0 +1,107 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.exception.AlienConflictException;
+import com.example.alienfamily.exception.ErrorCode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Parents reserved by growers of the colony, so growers working at once are handed different
+ * parents rather than racing for the same child slots.
+ *
+ * Each parent is reserved for one reservation at a time, and until it expires only children
+ * added with that reservation's token can go to it. Reservations are kept by parent name in a
+ * concurrent map. An expired one is ignored, and dropped when it is next come across, so nothing
+ * has to sweep them. A parent is released early when it has used its last child slot, or is
+ * renamed or deleted.
+ *
+ * Reserving takes no lock on the colony, so a child added without a token just as its parent is
+ * reserved can still take the slot. The reservation then fails at the first add, as an add
+ * without one would have.
+ */
+final class ParentReservations {
+
+    /**
+     * Reservations by parent name
+     */
+    private final Map<String, ParentReservation> reserved = new ConcurrentHashMap<>();
+
+    /**
+     * Milliseconds since the epoch
+     */
+    private final LongSupplier clock;
+
+    ParentReservations(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return the time now, in milliseconds since the epoch
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Reserve a parent, unless another reservation still holds it
+     *
+     * @param parentName
+     * @param reservation
+     * @return true if the parent is now reserved for the reservation
+     */
+    boolean reserve(String parentName, ParentReservation reservation) {
+        long now = now();
+        return reserved.compute(parentName, (name, held) -> held == null || held.getExpiresAt() <= now ? reservation : held) == reservation;
+    }
+
+    /**
+     * @return true if a reservation other than the one with the token holds the parent
+     */
+    boolean isReserved(String parentName, String token) {
+        ParentReservation held = reserved.get(parentName);
+        if (held == null || held.getToken().equals(token)) {
+            return false;
+        }
+        if (held.getExpiresAt() <= now()) {
+            reserved.remove(parentName, held);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check a child can be added to a parent
+     *
+     * @param parentName
+     * @param token - the reservation the child is added with, null for none
+     * @throws AlienConflictException - if the parent is reserved for another reservation
+     */
+    void check(String parentName, String token) {
+        if (isReserved(parentName, token)) {
+            throw new AlienConflictException(ErrorCode.PARENT_RESERVED, "Alien " + parentName + " is reserved by another grower, Child not added.");
+        }
+    }
+
+    /**
+     * Drop any reservation of a parent
+     */
+    void release(String parentName) {
+        reserved.remove(parentName);
+    }
+
+    /**
+     * Drop every reservation, for a colony started or loaded afresh
+     */
+    void clear() {
+        reserved.clear();
+    }
+
+    /**
+     * @return the number of parents reserved, including expired reservations not yet dropped
+     */
+    int size() {
+        return reserved.size();
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.alienfamily.service;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map, as a hash array mapped trie.
+ *
+ * Each level of the trie takes five bits of the key's hash and holds up to 32 entries, packed
+ * by a bitmap so empty slots take no space. A put or remove copies only the path from the root
+ * to the changed entry, at most seven nodes, and shares everything else with the map it was
+ * made from, so a new version costs O(log32 n) however large the map. Keys whose hashes are
+ * equal share a collision node at the bottom.
+ *
+ * Maps are never changed once made, so any number of threads can read them without locks.
+ * Two versions of a map can be compared in time proportional to the changes between them, as
+ * the nodes they share are skipped.
+ *
+ * @param <K> - keys must not be null
+ * @param <V>
+ */
+final class PersistentMap<K, V> {
+
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Deepest shift that still takes bits from a 32 bit hash
+     */
+    private static final int MAX_SHIFT = 30;
+
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param key
+     * @return the value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return (V) root.get(0, hash(key), key);
+    }
+
+    /**
+     * @return a map with the key set to the value, or this map if it already was
+     */
+    PersistentMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(0, hash(key), key, value, added);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without the key, or this map if it was not in it
+     */
+    PersistentMap<K, V> remove(K key) {
+        Node newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentMap<>(newRoot == null ? BitmapNode.EMPTY : newRoot, size - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Visit every entry, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * Visit every key whose value differs between this map and another, in no particular order.
+     * Values are compared by identity.
+     *
+     * @param to - the map to compare with, usually a later version of this one
+     * @param changes - given the value in this map then the value in the other, either may be null
+     */
+    @SuppressWarnings("unchecked")
+    void diff(PersistentMap<K, V> to, Changes<? super K, ? super V> changes) {
+        diff(root, to.root, 0, (Changes<Object, Object>) changes);
+    }
+
+    /**
+     * A key whose value differs between two maps
+     */
+    interface Changes<K, V> {
+
+        /**
+         * @param before - null if the key was added
+         * @param after - null if the key was removed
+         */
+        void changed(K key, V before, V after);
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as HashMap does, so keys that differ only at the end split early
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void diff(Node from, Node to, int shift, Changes<Object, Object> changes) {
+        if (from == to) {
+            return;
+        }
+        if (!(from instanceof BitmapNode) || !(to instanceof BitmapNode)) {
+            diffSlots(null, from, null, to, shift, changes);
+            return;
+        }
+        BitmapNode before = (BitmapNode) from;
+        BitmapNode after = (BitmapNode) to;
+        for (int bits = before.bitmap | after.bitmap; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            Object key1 = null;
+            Object value1 = null;
+            if ((before.bitmap & bit) != 0) {
+                int i = before.index(bit);
+                key1 = before.entries[i];
+                value1 = before.entries[i + 1];
+            }
+            Object key2 = null;
+            Object value2 = null;
+            if ((after.bitmap & bit) != 0) {
+                int i = after.index(bit);
+                key2 = after.entries[i];
+                value2 = after.entries[i + 1];
+            }
+            if (key1 == null && key2 == null && value1 != null && value2 != null) {
+                // Both are nodes for the next level, which share whatever did not change
+                diff((Node) value1, (Node) value2, shift + BITS, changes);
+            } else if (key1 != null && key1.equals(key2)) {
+                if (value1 != value2) {
+                    changes.changed(key1, value1, value2);
+                }
+            } else {
+                diffSlots(key1, value1, key2, value2, shift + BITS, changes);
+            }
+        }
+    }
+
+    /**
+     * Compare two slots of different shapes by looking up each side's keys in the other. A slot
+     * is a key and value, a null key and a node, or a null key and null value if it is empty.
+     */
+    private static void diffSlots(Object key1, Object value1, Object key2, Object value2, int shift, Changes<Object, Object> changes) {
+        forEachIn(key1, value1, (key, before) -> {
+            Object after = find(key2, value2, shift, key);
+            if (after != before) {
+                changes.changed(key, before, after);
+            }
+        });
+        forEachIn(key2, value2, (key, after) -> {
+            if (find(key1, value1, shift, key) == null) {
+                changes.changed(key, null, after);
+            }
+        });
+    }
+
+    private static void forEachIn(Object slotKey, Object slotValue, BiConsumer<Object, Object> action) {
+        if (slotKey != null) {
+            action.accept(slotKey, slotValue);
+        } else if (slotValue != null) {
+            ((Node) slotValue).forEach(action);
+        }
+    }
+
+    private static Object find(Object slotKey, Object slotValue, int shift, Object key) {
+        if (slotKey != null) {
+            return slotKey.equals(key) ? slotValue : null;
+        }
+        return slotValue == null ? null : ((Node) slotValue).get(shift, hash(key), key);
+    }
+
+    private abstract static class Node {
+
+        abstract Object get(int shift, int hash, Object key);
+
+        /**
+         * @return the changed node, or this node if nothing changed
+         */
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return the changed node, this node if the key was not in it, or null if it is now empty
+         */
+        abstract Node remove(int shift, int hash, Object key);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * Up to 32 entries, each a key and value or, with a null key, a node for the next level
+     */
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        /**
+         * Key then value or node, for each bit set in the bitmap in order
+         */
+        private final Object[] entries;
+
+        private BitmapNode(int bitmap, Object[] entries) {
+            this.bitmap = bitmap;
+            this.entries = entries;
+        }
+
+        private static int bit(int shift, int hash) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = index(bit);
+            Object current = entries[i];
+            if (current == null) {
+                return ((Node) entries[i + 1]).get(shift + BITS, hash, key);
+            }
+            return key.equals(current) ? entries[i + 1] : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(shift, hash);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[entries.length + 2];
+                System.arraycopy(entries, 0, copy, 0, i);
+                copy[i] = key;
+                copy[i + 1] = value;
+                System.arraycopy(entries, i, copy, i + 2, entries.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object currentKey = entries[i];
+            Object current = entries[i + 1];
+            if (currentKey == null) {
+                Node child = (Node) current;
+                Node newChild = child.put(shift + BITS, hash, key, value, added);
+                return newChild == child ? this : with(i + 1, newChild);
+            }
+            if (key.equals(currentKey)) {
+                return current == value ? this : with(i + 1, value);
+            }
+            // Two keys in one slot, push both down a level
+            added[0] = true;
+            Node child = pair(shift + BITS, PersistentMap.hash(currentKey), currentKey, current, hash, key, value);
+            Object[] copy = entries.clone();
+            copy[i] = null;
+            copy[i + 1] = child;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object current = entries[i];
+            if (current == null) {
+                Node child = (Node) entries[i + 1];
+                Node newChild = child.remove(shift + BITS, hash, key);
+                if (newChild == child) {
+                    return this;
+                }
+                return newChild == null ? without(bit, i) : with(i + 1, newChild);
+            }
+            return key.equals(current) ? without(bit, i) : this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (entries[i] == null) {
+                    ((Node) entries[i + 1]).forEach(action);
+                } else {
+                    action.accept(entries[i], entries[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode with(int i, Object value) {
+            Object[] copy = entries.clone();
+            copy[i] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private BitmapNode without(int bit, int i) {
+            if (entries.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[entries.length - 2];
+            System.arraycopy(entries, 0, copy, 0, i);
+            System.arraycopy(entries, i + 2, copy, i, entries.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        /**
+         * A node holding two keys that shared a slot one level up
+         */
+        private static Node pair(int shift, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            if (shift > MAX_SHIFT) {
+                return new CollisionNode(new Object[]{key1, value1, key2, value2});
+            }
+            int bit1 = bit(shift, hash1);
+            int bit2 = bit(shift, hash2);
+            if (bit1 == bit2) {
+                return new BitmapNode(bit1, new Object[]{null, pair(shift + BITS, hash1, key1, value1, hash2, key2, value2)});
+            }
+            Object[] entries = Integer.compareUnsigned(bit1, bit2) < 0 ? new Object[]{key1, value1, key2, value2} : new Object[]{key2, value2, key1, value1};
+            return new BitmapNode(bit1 | bit2, entries);
+        }
+    }
+
+    /**
+     * Keys whose hashes are the same, searched in turn
+     */
+    private static final class CollisionNode extends Node {
+
+        private final Object[] entries;
+
+        private CollisionNode(Object[] entries) {
+            this.entries = entries;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (key.equals(entries[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : entries[i + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int i = indexOf(key);
+            Object[] copy;
+            if (i < 0) {
+                copy = new Object[entries.length + 2];
+                System.arraycopy(entries, 0, copy, 0, entries.length);
+                copy[entries.length] = key;
+                copy[entries.length + 1] = value;
+                added[0] = true;
+            } else if (entries[i + 1] == value) {
+                return this;
+            } else {
+                copy = entries.clone();
+                copy[i + 1] = value;
+            }
+            return new CollisionNode(copy);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            if (entries.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[entries.length - 2];
+            System.arraycopy(entries, 0, copy, 0, i);
+            System.arraycopy(entries, i + 2, copy, i, entries.length - i - 2);
+            return new CollisionNode(copy);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < entries.length; i += 2) {
+                action.accept(entries[i], entries[i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.alienfamily.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the Alien Service.
+ *
+ * A timer with a percentile histogram per service method, tagged by method, and gauges for the
+ * colony size, alpha count, remaining child slots and version. Every meter is also tagged with
+ * the colony id, so colonies sharing a registry each have their own, and a colony's meters are
+ * removed when it is dropped.
+ *
+ * Timers are registered once, so timing a call is two clock reads and a lock free histogram
+ * update, with no lookups or allocation. Gauges are only read when the registry is scraped.
+ */
+final class ServiceMetrics {
+
+    static final String COLONY_TAG = "colony";
+
+    final Timer startColony;
+    final Timer addAlien;
+    final Timer getAlien;
+    final Timer getAlienId;
+    final Timer getAlienJson;
+    final Timer updateAlien;
+    final Timer deleteAlien;
+    final Timer applyBatch;
+    final Timer ancestors;
+    final Timer descendants;
+    final Timer isDescendant;
+    final Timer commonAncestor;
+    final Timer listAliens;
+    final Timer findFreeParents;
+    final Timer reserveParents;
+    final Timer exportColony;
+    final Timer importColony;
+    final Timer diff;
+
+    private final MeterRegistry registry;
+
+    /**
+     * Every meter registered, to remove
+     */
+    private final List<Meter> meters = new ArrayList<>();
+
+    /**
+     * @param registry
+     * @param alienService
+     * @param colonyId - tagged on every meter
+     */
+    ServiceMetrics(MeterRegistry registry, AlienService alienService, String colonyId) {
+        this.registry = registry;
+        startColony = timer(colonyId, "startColony");
+        addAlien = timer(colonyId, "addAlien");
+        getAlien = timer(colonyId, "getAlien");
+        getAlienId = timer(colonyId, "getAlienId");
+        getAlienJson = timer(colonyId, "getAlienJson");
+        updateAlien = timer(colonyId, "updateAlien");
+        deleteAlien = timer(colonyId, "deleteAlien");
+        applyBatch = timer(colonyId, "applyBatch");
+        ancestors = timer(colonyId, "ancestors");
+        descendants = timer(colonyId, "descendants");
+        isDescendant = timer(colonyId, "isDescendant");
+        commonAncestor = timer(colonyId, "commonAncestor");
+        listAliens = timer(colonyId, "listAliens");
+        findFreeParents = timer(colonyId, "findFreeParents");
+        reserveParents = timer(colonyId, "reserveParents");
+        exportColony = timer(colonyId, "exportColony");
+        importColony = timer(colonyId, "importColony");
+        diff = timer(colonyId, "diff");
+        meters.add(Gauge.builder("alienfamily.colony.size", alienService, AlienService::getColonySize)
+                .description("Aliens in the colony")
+                .tag(COLONY_TAG, colonyId)
+                .register(registry));
+        meters.add(Gauge.builder("alienfamily.colony.alphas", alienService, AlienService::getAlphaCount)
+                .description("Alpha aliens in the colony")
+                .tag(COLONY_TAG, colonyId)
+                .register(registry));
+        meters.add(Gauge.builder("alienfamily.colony.child.slots", alienService, AlienService::getRemainingChildSlots)
+                .description("Children the aliens in the colony can still have")
+                .tag(COLONY_TAG, colonyId)
+                .register(registry));
+        meters.add(Gauge.builder("alienfamily.colony.version", alienService, AlienService::getVersion)
+                .description("Changes to the colony since the service started")
+                .tag(COLONY_TAG, colonyId)
+                .register(registry));
+    }
+
+    /**
+     * Remove every meter from the registry, so a dropped colony is no longer reported or held
+     * on to by its gauges
+     */
+    void remove() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+    }
+
+    /**
+     * Record the time since start, from System.nanoTime
+     */
+    static void stop(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String colonyId, String method) {
+        Timer timer = Timer.builder("alienfamily.service")
+                .description("Alien Service calls")
+                .tag(COLONY_TAG, colonyId)
+                .tag("method", method)
+                .publishPercentileHistogram()
+                .register(registry);
+        meters.add(timer);
+        return timer;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.alienfamily.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks, striped by alien name.
+ *
+ * Writes lock the stripes of every alien they touch (e.g. parent and child) so that
+ * unrelated lineages can be updated in parallel. Stripes are always taken in index
+ * order so two writers can never deadlock.
+ */
+class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param stripeCount - rounded up to a power of two
+     */
+    StripedLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Lock the stripes for two names, e.g. a parent and child or an old and new name
+     *
+     * @param first
+     * @param second
+     */
+    void lock(String first, String second) {
+        int a = stripeFor(first);
+        int b = stripeFor(second);
+        stripes[Math.min(a, b)].lock();
+        if (a != b) {
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    /**
+     * Unlock the stripes taken by {@link #lock(String, String)}
+     *
+     * @param first
+     * @param second
+     */
+    void unlock(String first, String second) {
+        int a = stripeFor(first);
+        int b = stripeFor(second);
+        if (a != b) {
+            stripes[Math.max(a, b)].unlock();
+        }
+        stripes[Math.min(a, b)].unlock();
+    }
+
+    private int stripeFor(String name) {
+        if (name == null) {
+            return 0;
+        }
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,552 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache of the aliens most used, in front of a slower store such as the mapped
+ * store, so the aliens most looked up are served from the heap and the rest stay where they are.
+ *
+ * The cache is bounded by an estimate of the bytes its aliens take, see #weigh, and evicts with
+ * W-TinyLFU: new aliens go into a small LRU window, about 1% of the cache, and when they leave it
+ * they are only admitted to the main cache if they have been used more often lately than the
+ * alien they would evict, as counted by a FrequencySketch. The main cache is a segmented LRU,
+ * aliens used again while on probation move to a protected segment of up to 80% of it. Aliens
+ * used once in a while, such as those walked through by a listing, so pass through the window
+ * without evicting the few that are used all the time.
+ *
+ * Every write through the cache drops the aliens it touches, the alien and its parent and
+ * children, as the store's aliens carry copies of their relatives. An alien being loaded while
+ * one is written is returned but not cached, so a load that started before a write never puts
+ * an alien as it was before the write back in the cache.
+ *
+ * Aliens are shared between callers, as the hash store's are, so the usual rule applies: change
+ * them through the store, never only on the Alien. Lookups by id and listing
+ * every alien go straight to the store. All access to the cache is synchronized, loads are made outside the
+ * lock.
+ */
+public class CachingColonyStore implements ColonyStore, Closeable {
+
+    /**
+     * Estimated bytes of a cache entry besides its alien: the node and its map entry
+     */
+    private static final int ENTRY_BYTES = 96;
+
+    /**
+     * Estimated bytes of an Alien besides its strings
+     */
+    private static final int ALIEN_BYTES = 56;
+
+    /**
+     * Estimated bytes of a String besides its characters
+     */
+    private static final int STRING_BYTES = 40;
+
+    /**
+     * Aliens of an average weight expected in the cache when full, to size the sketch
+     */
+    private static final int AVERAGE_BYTES = 256;
+
+    private final ColonyStore store;
+
+    private final long maxBytes;
+
+    private final long windowMax;
+
+    private final long protectedMax;
+
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    private final FrequencySketch sketch;
+
+    // Queues, least recently used first
+
+    private final Queue window = new Queue();
+
+    private final Queue probation = new Queue();
+
+    private final Queue protectedQueue = new Queue();
+
+    private long bytes;
+
+    /**
+     * Writes through the cache so far, a load made across a write is not cached
+     */
+    private long writes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * @param store - the store to cache
+     * @param maxBytes - estimated bytes of aliens to keep, see #weigh
+     */
+    public CachingColonyStore(ColonyStore store, long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one byte: " + maxBytes);
+        }
+        this.store = store;
+        this.maxBytes = maxBytes;
+        this.windowMax = Math.max(1, maxBytes / 100);
+        this.protectedMax = (maxBytes - windowMax) * 4 / 5;
+        this.sketch = new FrequencySketch(maxBytes / AVERAGE_BYTES);
+    }
+
+    /**
+     * @return the store cached
+     */
+    public ColonyStore getStore() {
+        return store;
+    }
+
+    @Override
+    public Alien get(String name) {
+        if (name == null) {
+            return null;
+        }
+        long stamp;
+        synchronized (this) {
+            sketch.increment(name);
+            Node node = nodes.get(name);
+            if (node != null) {
+                hits++;
+                used(node);
+                return node.alien;
+            }
+            misses++;
+            stamp = writes;
+        }
+        Alien alien = store.get(name);
+        if (alien != null) {
+            synchronized (this) {
+                if (writes == stamp && !nodes.containsKey(name)) {
+                    insert(name, alien);
+                }
+            }
+        }
+        return alien;
+    }
+
+    @Override
+    public Alien get(int id) {
+        return store.get(id);
+    }
+
+    @Override
+    public boolean isCompact() {
+        return store.isCompact();
+    }
+
+    @Override
+    public boolean contains(String name) {
+        synchronized (this) {
+            if (name != null && nodes.containsKey(name)) {
+                return true;
+            }
+        }
+        return store.contains(name);
+    }
+
+    @Override
+    public void add(Alien alien) {
+        try {
+            store.add(alien);
+        } finally {
+            invalidate(alien.getName(), alien.getParent() == null ? null : alien.getParent().getName());
+        }
+    }
+
+    @Override
+    public Alien remove(String name) {
+        Alien removed = null;
+        try {
+            removed = store.remove(name);
+        } finally {
+            if (removed != null) {
+                invalidateFamily(removed);
+            } else {
+                invalidate(name);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void rename(Alien alien, String newName) {
+        String oldName = alien.getName();
+        try {
+            store.rename(alien, newName);
+        } finally {
+            invalidate(oldName, newName);
+            invalidateFamily(alien);
+        }
+    }
+
+    @Override
+    public void setHomePlanet(Alien alien, String homePlanet) {
+        try {
+            store.setHomePlanet(alien, homePlanet);
+        } finally {
+            invalidateFamily(alien);
+        }
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+
+    @Override
+    public int nextId() {
+        return store.nextId();
+    }
+
+    @Override
+    public int takeId() {
+        return store.takeId();
+    }
+
+    @Override
+    public void advanceIds(int nextId) {
+        store.advanceIds(nextId);
+    }
+
+    @Override
+    public long alphaCount() {
+        return store.alphaCount();
+    }
+
+    @Override
+    public long remainingChildSlots() {
+        return store.remainingChildSlots();
+    }
+
+    @Override
+    public void clear() {
+        try {
+            store.clear();
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public Collection<Alien> aliens() {
+        return store.aliens();
+    }
+
+    @Override
+    public void forEachAlien(Consumer<Alien> action) {
+        store.forEachAlien(action);
+    }
+
+    @Override
+    public void load(List<Alien> aliens) {
+        try {
+            store.load(aliens);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void restore(Alien alien, int slot) {
+        try {
+            store.restore(alien, slot);
+        } finally {
+            invalidate(alien.getName(), alien.getParent() == null ? null : alien.getParent().getName());
+        }
+    }
+
+    /**
+     * Close the store cached, if it holds anything open
+     */
+    @Override
+    public void close() throws IOException {
+        if (store instanceof Closeable) {
+            ((Closeable) store).close();
+        }
+    }
+
+    /**
+     * Register the cache's meters:
+     *  - alienfamily.cache.gets: lookups, tagged by result, hit or miss
+     *  - alienfamily.cache.evictions: aliens evicted, or not admitted, to stay within the limit
+     *  - alienfamily.cache.size: aliens cached
+     *  - alienfamily.cache.weight: estimated bytes of the aliens cached
+     *
+     * @param registry
+     */
+    public void registerMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("alienfamily.cache.gets", this, CachingColonyStore::getHits)
+                .description("Colony cache lookups")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("alienfamily.cache.gets", this, CachingColonyStore::getMisses)
+                .description("Colony cache lookups")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("alienfamily.cache.evictions", this, CachingColonyStore::getEvictions)
+                .description("Aliens evicted from the colony cache")
+                .register(registry);
+        Gauge.builder("alienfamily.cache.size", this, CachingColonyStore::getCachedCount)
+                .description("Aliens in the colony cache")
+                .register(registry);
+        Gauge.builder("alienfamily.cache.weight", this, CachingColonyStore::getCachedBytes)
+                .description("Estimated size of the aliens in the colony cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of aliens cached
+     */
+    public synchronized int getCachedCount() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the estimated bytes of the aliens cached
+     */
+    public synchronized long getCachedBytes() {
+        return bytes;
+    }
+
+    /**
+     * Estimate the heap an alien takes in the cache, with the copies of its relatives it carries
+     */
+    static int weigh(Alien alien) {
+        int weight = ENTRY_BYTES + alienBytes(alien);
+        if (alien.getParent() != null) {
+            weight += alienBytes(alien.getParent());
+        }
+        for (int slot = 1; slot <= 2; slot++) {
+            Alien child = alien.getChild(slot);
+            if (child != null) {
+                weight += alienBytes(child);
+            }
+        }
+        return weight;
+    }
+
+    private static int alienBytes(Alien alien) {
+        return ALIEN_BYTES + stringBytes(alien.getName()) + stringBytes(alien.getHomePlanet());
+    }
+
+    private static int stringBytes(String string) {
+        return string == null ? 0 : STRING_BYTES + 2 * string.length();
+    }
+
+    /**
+     * Move an alien up its queue on a hit, or from probation to the protected segment
+     */
+    private void used(Node node) {
+        if (node.queue == probation) {
+            probation.unlink(node);
+            protectedQueue.append(node);
+            // Demote the least recently used protected aliens to make room
+            while (protectedQueue.bytes > protectedMax) {
+                Node demoted = protectedQueue.first;
+                protectedQueue.unlink(demoted);
+                probation.append(demoted);
+            }
+        } else {
+            node.queue.moveToEnd(node);
+        }
+    }
+
+    private void insert(String name, Alien alien) {
+        int weight = weigh(alien);
+        if (weight > maxBytes - windowMax) {
+            // Could never be admitted
+            return;
+        }
+        Node node = new Node(name, alien, weight);
+        nodes.put(name, node);
+        window.append(node);
+        bytes += weight;
+        evict();
+    }
+
+    /**
+     * Move aliens past the window to probation, then evict until the cache is within its limit,
+     * keeping whichever of each new candidate and the least recently used alien on probation has
+     * been used more often
+     */
+    private void evict() {
+        Node candidate = null;
+        while (window.bytes > windowMax) {
+            Node node = window.first;
+            window.unlink(node);
+            probation.append(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+        while (bytes > maxBytes) {
+            Node victim = probation.first != null ? probation.first : protectedQueue.first != null ? protectedQueue.first : window.first;
+            if (candidate == null || candidate == victim) {
+                if (candidate == victim) {
+                    candidate = candidate.next;
+                }
+                evict(victim);
+            } else if (sketch.frequency(candidate.name) > sketch.frequency(victim.name)) {
+                evict(victim);
+            } else {
+                Node rejected = candidate;
+                candidate = candidate.next;
+                evict(rejected);
+            }
+        }
+    }
+
+    private void evict(Node node) {
+        remove(node);
+        evictions++;
+    }
+
+    private void remove(Node node) {
+        node.queue.unlink(node);
+        nodes.remove(node.name);
+        bytes -= node.weight;
+    }
+
+    private synchronized void invalidate(String... names) {
+        writes++;
+        for (String name : names) {
+            Node node = name == null ? null : nodes.get(name);
+            if (node != null) {
+                remove(node);
+            }
+        }
+    }
+
+    /**
+     * Drop an alien and its relatives, which carry copies of it
+     */
+    private void invalidateFamily(Alien alien) {
+        List<String> names = new ArrayList<>(4);
+        names.add(alien.getName());
+        if (alien.getParent() != null) {
+            names.add(alien.getParent().getName());
+        }
+        alien.forEachChild(child -> names.add(child.getName()));
+        invalidate(names.toArray(new String[0]));
+    }
+
+    private synchronized void invalidateAll() {
+        writes++;
+        nodes.clear();
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+        bytes = 0;
+    }
+
+    private static final class Node {
+
+        private final String name;
+
+        private final Alien alien;
+
+        private final int weight;
+
+        private Queue queue;
+
+        private Node previous;
+
+        private Node next;
+
+        private Node(String name, Alien alien, int weight) {
+            this.name = name;
+            this.alien = alien;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Doubly linked LRU queue of nodes, with their total weight
+     */
+    private static final class Queue {
+
+        private Node first;
+
+        private Node last;
+
+        private long bytes;
+
+        void append(Node node) {
+            node.queue = this;
+            node.previous = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            bytes += node.weight;
+        }
+
+        void unlink(Node node) {
+            if (node.previous == null) {
+                first = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            node.queue = null;
+            bytes -= node.weight;
+        }
+
+        void moveToEnd(Node node) {
+            if (node != last) {
+                unlink(node);
+                append(node);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage abstraction for the aliens in a colony.
+ *
+ * Implementations index aliens by name so that lookups, uniqueness checks and
+ * parent resolution do not need to scan the whole colony.
+ *
+ * Aliens returned by a store are not necessarily the objects the store holds, a store may
+ * rebuild them from a more compact form. Changes must therefore be made through the store
+ * (rename, setHomePlanet) or recorded by it (add, remove), never only on the Alien.
+ *
+ * The store gives each alien its id, see Alien#getId, and keeps it with the alien. Ids are
+ * given out from 0 up and never given again, even once the alien is deleted or the colony
+ * cleared, and a parent's id is always lower than its children's.
+ */
+public interface ColonyStore {
+
+    /**
+     * Find an alien by name
+     *
+     * @param name
+     * @return the alien, or null if there is no alien with that name
+     */
+    Alien get(String name);
+
+    /**
+     * Find an alien by id. This scans the colony, compact stores override it with an index of
+     * their ids, see isCompact.
+     *
+     * @param id
+     * @return the alien, or null if no alien in the colony has that id
+     */
+    default Alien get(int id) {
+        for (Alien alien : aliens()) {
+            if (alien.getId() == id) {
+                return alien;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether an alien with the given name is in the colony
+     *
+     * @param name
+     * @return
+     */
+    boolean contains(String name);
+
+    /**
+     * Add an alien to the colony, keyed by its current name.
+     *
+     * The alien is either the first in the colony or has just been born to its parent
+     * through Alien.addChild, and the store records it as the parent's newest child.
+     *
+     * An alien without an id is given the next one. An alien with an id, replayed from a log,
+     * keeps it, and later aliens are given ids after it.
+     *
+     * @param alien
+     * @throws com.example.alienfamily.exception.AlienException - if an alien with that name already exists
+     */
+    void add(Alien alien);
+
+    /**
+     * Remove an alien from the colony, and from its parent's children.
+     *
+     * Children of the removed alien keep their reference to it.
+     *
+     * @param name
+     * @return the removed alien, or null if there is no alien with that name
+     */
+    Alien remove(String name);
+
+    /**
+     * Rename an alien, keeping the name index consistent.
+     *
+     * The alien is only re-indexed once the new name has been accepted.
+     *
+     * @param alien
+     * @param newName
+     * @throws com.example.alienfamily.exception.AlienException - if the new name is invalid or already taken
+     */
+    void rename(Alien alien, String newName);
+
+    /**
+     * Change an alien's home planet
+     *
+     * @param alien
+     * @param homePlanet
+     * @throws com.example.alienfamily.exception.AlienException - if the planet is invalid
+     */
+    void setHomePlanet(Alien alien, String homePlanet);
+
+    /**
+     * A compact store holds the colony in a fraction of the memory the same aliens take as
+     * objects, so the service reads aliens from the store rather than keeping a copy of the colony
+     * on the heap, see ColonySnapshot. A compact store finds aliens by id without a scan.
+     *
+     * @return true if the store holds the colony more compactly than as Alien objects
+     */
+    default boolean isCompact() {
+        return false;
+    }
+
+    /**
+     * @return the number of aliens in the colony
+     */
+    int size();
+
+    /**
+     * @return true if there are no aliens in the colony
+     */
+    boolean isEmpty();
+
+    /**
+     * @return the number of alphas in the colony
+     */
+    long alphaCount();
+
+    /**
+     * @return the number of children the aliens in the colony can still have, two for each alpha
+     * less the children it has had
+     */
+    long remainingChildSlots();
+
+    /**
+     * @return the id the next new alien will be given
+     */
+    int nextId();
+
+    /**
+     * Give out the next id to an alien about to be added with it, so the alien can be logged
+     * with its id before it is added
+     *
+     * @return the id, which is never given out again
+     */
+    int takeId();
+
+    /**
+     * Give out ids from at least the given one from now on, so ids used by a colony this one
+     * was loaded from are not given to new aliens
+     *
+     * @param nextId
+     */
+    void advanceIds(int nextId);
+
+    /**
+     * Remove every alien from the colony. Ids already given out are not given again.
+     */
+    void clear();
+
+    /**
+     * @return a read only view of every alien in the colony
+     */
+    Collection<Alien> aliens();
+
+    /**
+     * Visit every alien in the colony one at a time, in no particular order, without building a
+     * collection of them. Stores that rebuild aliens rebuild each one only for its visit. The
+     * action must not change the colony.
+     *
+     * @param action
+     */
+    void forEachAlien(Consumer<Alien> action);
+
+    /**
+     * Replace the colony with aliens restored from a checkpoint.
+     *
+     * Aliens are linked to their parent and children by reference, and parents come before
+     * their children. A parent that is not in the list is a deleted alien, kept only as the
+     * parent of its children. Aliens keep their ids, see add.
+     *
+     * @param aliens
+     */
+    void load(List<Alien> aliens);
+
+    /**
+     * Add one alien restored from an export, see AlienService#importColony.
+     *
+     * Aliens are restored parents first, one at a time, so a colony can be loaded without holding
+     * it all in memory twice. The alien has its details and lifetime child count but no children
+     * yet. With slot 1 or 2 its parent names a live alien already restored, and the alien goes into
+     * that child slot of the store's own copy of the parent. With slot 0 its parent, if any, is a
+     * deleted alien kept only as the parent. The alien keeps its id or is given one, see add.
+     *
+     * @param alien
+     * @param slot - the parent's child slot the alien was born into, 0 if it has no live parent
+     * @throws com.example.alienfamily.exception.AlienException - if an alien with that name already exists,
+     * the live parent does not exist, or the slot is not one the parent has had a child in and left empty
+     */
+    void restore(Alien alien, int slot);
+}
@@ -0,0 +1,306 @@
+package com.example.alienfamily.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Colony store for very large colonies, holding aliens in columns of primitive arrays.
+ *
+ * Each alien is a row. Parent and child links are row ids, the type is a byte, liveness and
+ * the lifetime child count are bits in a flag byte, and home planets are interned into a
+ * dictionary so each distinct planet is held once. Names are unique, so the name column is
+ * its own dictionary, with an open addressing index of row ids to look names up.
+ *
+ * Approximate footprint per alien, not counting the name string:
+ *  - alien id: 4 bytes
+ *  - parent, first child, second child rows: 12 bytes
+ *  - type and flags: 2 bytes
+ *  - home planet id and name reference: 8 bytes
+ *  - name index slot, at most half full: 8 bytes
+ *  - id index entry: 4 bytes
+ *
+ * That is about 38 bytes, or about 90 bytes with a short name, so 10M aliens need roughly 0.9GB.
+ * The same colony as Alien objects in a HashColonyStore needs 160 bytes or more per alien (the
+ * alien, its child counter, a map node and the name), roughly 1.6GB before any cached JSON.
+ *
+ * Aliens returned by this store are rebuilt from the columns on every call, see RowColonyStore.
+ */
+public class CompactColonyStore extends RowColonyStore {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int[] ids;
+    private int[] parents;
+    private int[] childOnes;
+    private int[] childTwos;
+    private int[] planets;
+    private byte[] types;
+    private byte[] flags;
+    private String[] names;
+
+    private int rows;
+
+    private int live;
+
+    private int alphas;
+
+    private long freeSlots;
+
+    /**
+     * Kept when the store is reset, ids are never given out twice
+     */
+    private int nextId;
+
+    /**
+     * Open addressing name index. Each slot holds row id + 1, 0 is empty.
+     */
+    private int[] nameIndex;
+
+    /**
+     * Row of each live alien by id, + 1, 0 for none
+     */
+    private int[] idRows;
+
+    /**
+     * Interned home planets
+     */
+    private final Map<String, Integer> planetIds = new HashMap<>();
+    private final List<String> planetNames = new ArrayList<>();
+
+    public CompactColonyStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity - expected number of aliens, the store grows as needed
+     */
+    public CompactColonyStore(int initialCapacity) {
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    @Override
+    int rows() {
+        return rows;
+    }
+
+    @Override
+    int newRow() {
+        if (rows == names.length) {
+            grow();
+        }
+        return rows++;
+    }
+
+    @Override
+    int live() {
+        return live;
+    }
+
+    @Override
+    void setLive(int live) {
+        this.live = live;
+    }
+
+    @Override
+    int alphas() {
+        return alphas;
+    }
+
+    @Override
+    void setAlphas(int alphas) {
+        this.alphas = alphas;
+    }
+
+    @Override
+    long freeSlots() {
+        return freeSlots;
+    }
+
+    @Override
+    void setFreeSlots(long freeSlots) {
+        this.freeSlots = freeSlots;
+    }
+
+    @Override
+    int nextFreeId() {
+        return nextId;
+    }
+
+    @Override
+    void setNextFreeId(int nextId) {
+        this.nextId = nextId;
+    }
+
+    @Override
+    int rowId(int row) {
+        return ids[row];
+    }
+
+    @Override
+    void setRowId(int row, int id) {
+        ids[row] = id;
+    }
+
+    @Override
+    int parent(int row) {
+        return parents[row];
+    }
+
+    @Override
+    void setParent(int row, int parent) {
+        parents[row] = parent;
+    }
+
+    @Override
+    int childOne(int row) {
+        return childOnes[row];
+    }
+
+    @Override
+    void setChildOne(int row, int child) {
+        childOnes[row] = child;
+    }
+
+    @Override
+    int childTwo(int row) {
+        return childTwos[row];
+    }
+
+    @Override
+    void setChildTwo(int row, int child) {
+        childTwos[row] = child;
+    }
+
+    @Override
+    byte type(int row) {
+        return types[row];
+    }
+
+    @Override
+    void setType(int row, byte type) {
+        types[row] = type;
+    }
+
+    @Override
+    byte flags(int row) {
+        return flags[row];
+    }
+
+    @Override
+    void setFlags(int row, byte flags) {
+        this.flags[row] = flags;
+    }
+
+    @Override
+    String name(int row) {
+        return names[row];
+    }
+
+    @Override
+    void setName(int row, String name) {
+        names[row] = name;
+    }
+
+    @Override
+    String planet(int row) {
+        return planets[row] == NONE ? null : planetNames.get(planets[row]);
+    }
+
+    @Override
+    void setPlanet(int row, String planet) {
+        planets[row] = intern(planet);
+    }
+
+    @Override
+    int indexCapacity() {
+        return nameIndex.length;
+    }
+
+    @Override
+    int indexSlot(int slot) {
+        return nameIndex[slot];
+    }
+
+    @Override
+    void setIndexSlot(int slot, int entry) {
+        nameIndex[slot] = entry;
+    }
+
+    @Override
+    void newIndex(int capacity) {
+        nameIndex = new int[capacity];
+    }
+
+    @Override
+    int idEntry(int id) {
+        return id < idRows.length ? idRows[id] : 0;
+    }
+
+    @Override
+    void setIdEntry(int id, int entry) {
+        if (id >= idRows.length) {
+            if (entry == 0) {
+                return;
+            }
+            idRows = Arrays.copyOf(idRows, Math.max(id + 1, idRows.length + (idRows.length >> 1) + 1));
+        }
+        idRows[id] = entry;
+    }
+
+    @Override
+    void newIdIndex() {
+        idRows = new int[names.length];
+    }
+
+    @Override
+    void reset() {
+        planetIds.clear();
+        planetNames.clear();
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    private int intern(String planet) {
+        if (planet == null) {
+            return NONE;
+        }
+        Integer id = planetIds.get(planet);
+        if (id == null) {
+            id = planetNames.size();
+            planetNames.add(planet);
+            planetIds.put(planet, id);
+        }
+        return id;
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        parents = new int[capacity];
+        childOnes = new int[capacity];
+        childTwos = new int[capacity];
+        planets = new int[capacity];
+        types = new byte[capacity];
+        flags = new byte[capacity];
+        names = new String[capacity];
+        nameIndex = new int[Integer.highestOneBit(capacity - 1) << 2];
+        idRows = new int[capacity];
+        rows = 0;
+        live = 0;
+        alphas = 0;
+        freeSlots = 0;
+    }
+
+    private void grow() {
+        int capacity = names.length + (names.length >> 1) + 1;
+        ids = Arrays.copyOf(ids, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        childOnes = Arrays.copyOf(childOnes, capacity);
+        childTwos = Arrays.copyOf(childTwos, capacity);
+        planets = Arrays.copyOf(planets, capacity);
+        types = Arrays.copyOf(types, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        names = Arrays.copyOf(names, capacity);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.alienfamily.store;
+
+/**
+ * Approximate count of how often each key has been used recently, for the cache's admission
+ * policy, see CachingColonyStore.
+ *
+ * A count-min sketch of 4 bit counters, sixteen to a long. Each key has four counters, picked by
+ * hashing it with four seeds, and its frequency is the smallest of the four, so collisions can only
+ * overestimate. Counters stop at 15, and once there have been ten uses per long every counter is
+ * halved, so keys that were used heavily a long time ago give way to those used now.
+ *
+ * Memory is fixed by the number of keys expected, 8 bytes per key. Not thread safe, callers
+ * serialise access.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * Clears the bit each counter would shift into from the counter above when halved
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final int MAX_LENGTH = 1 << 24;
+
+    private final long[] table;
+
+    private final int mask;
+
+    /**
+     * Uses counted before the counters are halved
+     */
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * @param expected - keys expected to be in use at once
+     */
+    FrequencySketch(long expected) {
+        int length = Integer.highestOneBit((int) Math.max(16, Math.min(expected, MAX_LENGTH)) - 1) << 1;
+        table = new long[length];
+        mask = length - 1;
+        sampleSize = 10 * length;
+    }
+
+    /**
+     * @return the estimated uses of the key since the counters were last halved, at most 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = hash(hash, i);
+            int shift = offset(h);
+            frequency = Math.min(frequency, (int) ((table[index(h)] >>> shift) & 15L));
+        }
+        return frequency;
+    }
+
+    /**
+     * Count a use of the key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = hash(hash, i);
+            int index = index(h);
+            int shift = offset(h);
+            if (((table[index] >>> shift) & 15L) != 15L) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halve every counter
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static long hash(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h + (h >>> 32);
+    }
+
+    private int index(long h) {
+        return (int) h & mask;
+    }
+
+    /**
+     * Bit offset of the counter within its long, from bits the index does not use
+     */
+    private static int offset(long h) {
+        return (int) (h >>> 56 & 15L) << 2;
+    }
+
+    /**
+     * Spread the bits of a weak hash, such as a short string's
+     */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienConflictException;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.ErrorCode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Default colony store.
+ *
+ * Aliens are held in a hash map keyed by name, giving constant time lookup,
+ * uniqueness checks and parent resolution.
+ *
+ * The map is concurrent so reads never block. Callers are expected to serialise
+ * writes that touch the same name, see AlienService.
+ */
+public class HashColonyStore implements ColonyStore {
+
+    /**
+     * Aliens in the colony, keyed by name
+     */
+    private final Map<String, Alien> aliensByName = new ConcurrentHashMap<>();
+
+    /**
+     * Next id to give out
+     */
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Alphas in the colony, kept up to date by each change rather than counted when read
+     */
+    private final LongAdder alphaCount = new LongAdder();
+
+    /**
+     * Children the aliens in the colony can still have
+     */
+    private final LongAdder remainingChildSlots = new LongAdder();
+
+    @Override
+    public Alien get(String name) {
+        return name == null ? null : aliensByName.get(name);
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return name != null && aliensByName.containsKey(name);
+    }
+
+    @Override
+    public void add(Alien alien) {
+        if (aliensByName.containsKey(alien.getName())) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + alien.getName() + " already exists. Aliens must have unique names.");
+        }
+        identify(alien);
+        if (aliensByName.putIfAbsent(alien.getName(), alien) != null) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + alien.getName() + " already exists. Aliens must have unique names.");
+        }
+        count(alien, 1);
+        if (alien.getParent() != null) {
+            // The parent has used a slot
+            remainingChildSlots.decrement();
+        }
+    }
+
+    @Override
+    public Alien remove(String name) {
+        Alien alien = name == null ? null : aliensByName.remove(name);
+        if (alien != null) {
+            count(alien, -1);
+            if (alien.getParent() != null) {
+                alien.getParent().removeChild(alien);
+            }
+        }
+        return alien;
+    }
+
+    @Override
+    public void rename(Alien alien, String newName) {
+        String oldName = alien.getName();
+        if (oldName.equals(newName)) {
+            return;
+        }
+        if (aliensByName.containsKey(newName)) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + newName + " already exists. Aliens must have unique names.");
+        }
+        // Set the name first, the alien validates it and may refuse
+        alien.setName(newName);
+        // Index under the new name before dropping the old one, so concurrent readers always find the alien
+        aliensByName.put(newName, alien);
+        aliensByName.remove(oldName);
+    }
+
+    @Override
+    public void setHomePlanet(Alien alien, String homePlanet) {
+        alien.setHomePlanet(homePlanet);
+    }
+
+    @Override
+    public int size() {
+        return aliensByName.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return aliensByName.isEmpty();
+    }
+
+    @Override
+    public int nextId() {
+        return nextId.get();
+    }
+
+    @Override
+    public int takeId() {
+        return nextId.getAndIncrement();
+    }
+
+    @Override
+    public void advanceIds(int nextId) {
+        this.nextId.accumulateAndGet(nextId, Math::max);
+    }
+
+    @Override
+    public long alphaCount() {
+        return alphaCount.sum();
+    }
+
+    @Override
+    public long remainingChildSlots() {
+        return remainingChildSlots.sum();
+    }
+
+    @Override
+    public void clear() {
+        aliensByName.clear();
+        alphaCount.reset();
+        remainingChildSlots.reset();
+    }
+
+    @Override
+    public Collection<Alien> aliens() {
+        return Collections.unmodifiableCollection(aliensByName.values());
+    }
+
+    @Override
+    public void forEachAlien(Consumer<Alien> action) {
+        aliensByName.values().forEach(action);
+    }
+
+    @Override
+    public void load(List<Alien> aliens) {
+        clear();
+        for (Alien alien : aliens) {
+            identify(alien);
+            aliensByName.put(alien.getName(), alien);
+            count(alien, 1);
+        }
+    }
+
+    @Override
+    public void restore(Alien alien, int slot) {
+        String name = alien.getName();
+        if (aliensByName.containsKey(name)) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + name + " already exists. Aliens must have unique names.");
+        }
+        if (slot != 0) {
+            String parentName = alien.getParent().getName();
+            Alien parent = aliensByName.get(parentName);
+            if (parent == null) {
+                throw new AlienNotFoundException(ErrorCode.PARENT_NOT_FOUND, "Alien " + parentName + " does not exist, Child not added.");
+            }
+            alien.setParent(parent);
+            parent.restoreChild(alien, slot);
+        }
+        identify(alien);
+        aliensByName.put(name, alien);
+        count(alien, 1);
+    }
+
+    /**
+     * Give an alien the next id, or move the next id past the one it has
+     */
+    private void identify(Alien alien) {
+        if (alien.getId() < 0) {
+            alien.setId(nextId.getAndIncrement());
+        } else {
+            advanceIds(alien.getId() + 1);
+        }
+    }
+
+    /**
+     * Count an alpha and its remaining slots into or out of the colony
+     */
+    private void count(Alien alien, int sign) {
+        if (AlienType.ALPHA.equals(alien.getType())) {
+            alphaCount.add(sign);
+            remainingChildSlots.add(sign * alien.getRemainingChildSlots());
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.alienfamily.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Colony store that persists the colony off heap, in memory mapped files.
+ *
+ * Four files are kept in the colony directory:
+ *  - colony.dat: a header followed by one fixed width record per alien
+ *  - strings.dat: a heap of names and home planets, each a 2 byte length and UTF-8 bytes
+ *  - index.dat: the index generation, then the open addressing name index, one int per slot
+ *  - ids.dat: the index generation, then the id index, the record of each live alien + 1 by id
+ *
+ * Record layout, 32 bytes:
+ *  0 flags, 1 type, 4 parent row, 8 first child row, 12 second child row,
+ *  16 name offset, 20 name hash, 24 home planet offset (-1 for none), 28 alien id
+ *
+ * On startup the files are mapped, not read, so the colony can be served straight away
+ * however large it is. The operating system pages records in as they are used. The header
+ * keeps the counts of live aliens, alphas and free child slots, so they are not counted either.
+ *
+ * Writes go to the page cache and reach disk when the operating system flushes them, or on
+ * close. They are not atomic, a crash part way through a write may leave the files inconsistent.
+ * The header has a clean flag, cleared while the store is open and set once it is flushed on
+ * close, and a generation, bumped on every open and copied to the start of index.dat and ids.dat.
+ * When the store was not closed cleanly, or either index is from another generation, the indexes
+ * and the counts are rebuilt from the records in one pass, as they may not match the records.
+ * Each file is limited to 2GB, about 60M aliens.
+ *
+ * Aliens returned by this store are rebuilt from their record on every call, see RowColonyStore.
+ */
+public class MappedColonyStore extends RowColonyStore implements Closeable {
+
+    private static final int MAGIC = 0x414C4E43;
+    private static final int FORMAT = 4;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_FORMAT = 4;
+    private static final int HEADER_ROWS = 8;
+    private static final int HEADER_LIVE = 12;
+    private static final int HEADER_STRINGS_END = 16;
+    private static final int HEADER_INDEX_CAPACITY = 20;
+    private static final int HEADER_INDEX_GENERATION = 24;
+    private static final int HEADER_CLEAN = 32;
+    private static final int HEADER_ALPHAS = 36;
+    private static final int HEADER_FREE_SLOTS = 40;
+    private static final int HEADER_NEXT_ID = 48;
+
+    private static final int INDEX_HEADER_SIZE = 8;
+    private static final int INDEX_GENERATION = 0;
+
+    private static final int RECORD_SIZE = 32;
+    private static final int FLAGS = 0;
+    private static final int TYPE = 1;
+    private static final int PARENT = 4;
+    private static final int CHILD_ONE = 8;
+    private static final int CHILD_TWO = 12;
+    private static final int NAME = 16;
+    private static final int NAME_HASH = 20;
+    private static final int PLANET = 24;
+    private static final int ID = 28;
+
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_STRINGS = 64 * 1024;
+
+    private final FileChannel colonyFile;
+    private final FileChannel stringsFile;
+    private final FileChannel indexFile;
+    private final FileChannel idsFile;
+
+    private MappedByteBuffer colony;
+    private MappedByteBuffer strings;
+    private MappedByteBuffer index;
+    private MappedByteBuffer ids;
+
+    /**
+     * Open the colony in the given directory, creating an empty one if there is none
+     *
+     * @param directory
+     */
+    public MappedColonyStore(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            colonyFile = open(directory.resolve("colony.dat"));
+            stringsFile = open(directory.resolve("strings.dat"));
+            indexFile = open(directory.resolve("index.dat"));
+            idsFile = open(directory.resolve("ids.dat"));
+            boolean existing = colonyFile.size() >= HEADER_SIZE;
+            colony = map(colonyFile, Math.max(colonyFile.size(), HEADER_SIZE + (long) INITIAL_ROWS * RECORD_SIZE));
+            strings = map(stringsFile, Math.max(stringsFile.size(), INITIAL_STRINGS));
+            long generation = 0;
+            if (existing) {
+                if (colony.getInt(HEADER_MAGIC) != MAGIC || colony.getInt(HEADER_FORMAT) != FORMAT) {
+                    throw new IllegalStateException("Not a colony file: " + directory.resolve("colony.dat"));
+                }
+                generation = colony.getLong(HEADER_INDEX_GENERATION);
+                boolean clean = colony.getInt(HEADER_CLEAN) != 0;
+                long indexSize = INDEX_HEADER_SIZE + (long) indexCapacity() * Integer.BYTES;
+                if (clean && indexFile.size() == indexSize && idsFile.size() > INDEX_HEADER_SIZE) {
+                    index = map(indexFile, indexSize);
+                    ids = map(idsFile, idsFile.size());
+                }
+                if (index == null || index.getLong(INDEX_GENERATION) != generation || ids.getLong(INDEX_GENERATION) != generation) {
+                    // Indexes missing, from another run or maybe not written out, rebuild them
+                    // and the counts from the records
+                    rebuildIndex(recoveryCapacity());
+                }
+            } else {
+                colony.putInt(HEADER_MAGIC, MAGIC);
+                colony.putInt(HEADER_FORMAT, FORMAT);
+                reset();
+            }
+            generation++;
+            colony.putLong(HEADER_INDEX_GENERATION, generation);
+            index.putLong(INDEX_GENERATION, generation);
+            ids.putLong(INDEX_GENERATION, generation);
+            colony.putInt(HEADER_CLEAN, 0);
+            index.force();
+            ids.force();
+            colony.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open colony in " + directory, e);
+        }
+    }
+
+    @Override
+    int rows() {
+        return colony.getInt(HEADER_ROWS);
+    }
+
+    @Override
+    int newRow() {
+        int row = rows();
+        long needed = HEADER_SIZE + (long) (row + 1) * RECORD_SIZE;
+        if (needed > colony.capacity()) {
+            colony = remap(colonyFile, needed);
+        }
+        colony.putInt(HEADER_ROWS, row + 1);
+        return row;
+    }
+
+    @Override
+    int live() {
+        return colony.getInt(HEADER_LIVE);
+    }
+
+    @Override
+    void setLive(int live) {
+        colony.putInt(HEADER_LIVE, live);
+    }
+
+    @Override
+    int alphas() {
+        return colony.getInt(HEADER_ALPHAS);
+    }
+
+    @Override
+    void setAlphas(int alphas) {
+        colony.putInt(HEADER_ALPHAS, alphas);
+    }
+
+    @Override
+    long freeSlots() {
+        return colony.getLong(HEADER_FREE_SLOTS);
+    }
+
+    @Override
+    void setFreeSlots(long freeSlots) {
+        colony.putLong(HEADER_FREE_SLOTS, freeSlots);
+    }
+
+    @Override
+    int nextFreeId() {
+        return colony.getInt(HEADER_NEXT_ID);
+    }
+
+    @Override
+    void setNextFreeId(int nextId) {
+        colony.putInt(HEADER_NEXT_ID, nextId);
+    }
+
+    @Override
+    int rowId(int row) {
+        return colony.getInt(record(row) + ID);
+    }
+
+    @Override
+    void setRowId(int row, int id) {
+        colony.putInt(record(row) + ID, id);
+    }
+
+    @Override
+    int parent(int row) {
+        return colony.getInt(record(row) + PARENT);
+    }
+
+    @Override
+    void setParent(int row, int parent) {
+        colony.putInt(record(row) + PARENT, parent);
+    }
+
+    @Override
+    int childOne(int row) {
+        return colony.getInt(record(row) + CHILD_ONE);
+    }
+
+    @Override
+    void setChildOne(int row, int child) {
+        colony.putInt(record(row) + CHILD_ONE, child);
+    }
+
+    @Override
+    int childTwo(int row) {
+        return colony.getInt(record(row) + CHILD_TWO);
+    }
+
+    @Override
+    void setChildTwo(int row, int child) {
+        colony.putInt(record(row) + CHILD_TWO, child);
+    }
+
+    @Override
+    byte type(int row) {
+        return colony.get(record(row) + TYPE);
+    }
+
+    @Override
+    void setType(int row, byte type) {
+        colony.put(record(row) + TYPE, type);
+    }
+
+    @Override
+    byte flags(int row) {
+        return colony.get(record(row) + FLAGS);
+    }
+
+    @Override
+    void setFlags(int row, byte flags) {
+        colony.put(record(row) + FLAGS, flags);
+    }
+
+    @Override
+    String name(int row) {
+        return readString(colony.getInt(record(row) + NAME));
+    }
+
+    @Override
+    void setName(int row, String name) {
+        colony.putInt(record(row) + NAME, writeString(name));
+        colony.putInt(record(row) + NAME_HASH, name.hashCode());
+    }
+
+    @Override
+    int nameHash(int row) {
+        return colony.getInt(record(row) + NAME_HASH);
+    }
+
+    @Override
+    String planet(int row) {
+        return readString(colony.getInt(record(row) + PLANET));
+    }
+
+    @Override
+    void setPlanet(int row, String planet) {
+        colony.putInt(record(row) + PLANET, writeString(planet));
+    }
+
+    @Override
+    int indexCapacity() {
+        return colony.getInt(HEADER_INDEX_CAPACITY);
+    }
+
+    @Override
+    int indexSlot(int slot) {
+        return index.getInt(INDEX_HEADER_SIZE + slot * Integer.BYTES);
+    }
+
+    @Override
+    void setIndexSlot(int slot, int entry) {
+        index.putInt(INDEX_HEADER_SIZE + slot * Integer.BYTES, entry);
+    }
+
+    @Override
+    void newIndex(int capacity) {
+        try {
+            // Truncate so the remapped index starts out zeroed
+            indexFile.truncate(0);
+            index = map(indexFile, INDEX_HEADER_SIZE + (long) capacity * Integer.BYTES);
+            index.putLong(INDEX_GENERATION, colony.getLong(HEADER_INDEX_GENERATION));
+            colony.putInt(HEADER_INDEX_CAPACITY, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not resize colony index", e);
+        }
+    }
+
+    @Override
+    int idEntry(int id) {
+        long offset = INDEX_HEADER_SIZE + (long) id * Integer.BYTES;
+        return offset + Integer.BYTES <= ids.capacity() ? ids.getInt((int) offset) : 0;
+    }
+
+    @Override
+    void setIdEntry(int id, int entry) {
+        long needed = INDEX_HEADER_SIZE + (long) (id + 1) * Integer.BYTES;
+        if (needed > ids.capacity()) {
+            if (entry == 0) {
+                return;
+            }
+            ids = remap(idsFile, needed);
+        }
+        ids.putInt(INDEX_HEADER_SIZE + id * Integer.BYTES, entry);
+    }
+
+    @Override
+    void newIdIndex() {
+        try {
+            // Truncate so the remapped index starts out zeroed
+            idsFile.truncate(0);
+            ids = map(idsFile, INDEX_HEADER_SIZE + (long) INITIAL_ROWS * Integer.BYTES);
+            ids.putLong(INDEX_GENERATION, colony.getLong(HEADER_INDEX_GENERATION));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reset colony id index", e);
+        }
+    }
+
+    /**
+     * Keeps the next id, ids are never given out twice
+     */
+    @Override
+    void reset() {
+        colony.putInt(HEADER_ROWS, 0);
+        colony.putInt(HEADER_LIVE, 0);
+        colony.putInt(HEADER_ALPHAS, 0);
+        colony.putLong(HEADER_FREE_SLOTS, 0);
+        colony.putInt(HEADER_STRINGS_END, 0);
+        newIndex(2 * INITIAL_ROWS);
+        newIdIndex();
+    }
+
+    /**
+     * Write everything to disk
+     */
+    public synchronized void flush() {
+        colony.force();
+        strings.force();
+        index.force();
+        ids.force();
+    }
+
+    /**
+     * Flush and close the colony files, marking them clean once everything is on disk
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        colony.putInt(HEADER_CLEAN, 1);
+        colony.force();
+        colonyFile.close();
+        stringsFile.close();
+        indexFile.close();
+        idsFile.close();
+    }
+
+    /**
+     * Index capacity for a rebuild after a crash, when the live count may be stale, big enough
+     * for every row
+     */
+    private int recoveryCapacity() {
+        int capacity = Math.max(indexCapacity(), 2 * INITIAL_ROWS);
+        while (capacity < 2L * rows()) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int record(int row) {
+        return HEADER_SIZE + row * RECORD_SIZE;
+    }
+
+    private String readString(int offset) {
+        if (offset == NONE) {
+            return null;
+        }
+        int length = strings.getShort(offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = strings.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append a string to the string heap. Old values are not reclaimed.
+     *
+     * @return its offset, or NONE for null
+     */
+    private int writeString(String string) {
+        if (string == null) {
+            return NONE;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        int offset = colony.getInt(HEADER_STRINGS_END);
+        long needed = (long) offset + 2 + bytes.length;
+        if (needed > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Colony string heap is full");
+        }
+        if (needed > strings.capacity()) {
+            strings = remap(stringsFile, needed);
+        }
+        strings.putShort(offset, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            strings.put(offset + 2 + i, bytes[i]);
+        }
+        colony.putInt(HEADER_STRINGS_END, (int) needed);
+        return offset;
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static MappedByteBuffer map(FileChannel file, long size) throws IOException {
+        return file.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Map a larger region of a file, at least doubling it
+     */
+    private static MappedByteBuffer remap(FileChannel file, long needed) {
+        try {
+            long size = Math.min(Integer.MAX_VALUE, Math.max(needed, file.size() * 2));
+            if (needed > size) {
+                throw new IllegalStateException("Colony file is full");
+            }
+            return map(file, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow colony file", e);
+        }
+    }
+}
@@ -0,0 +1,558 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienConflictException;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.exception.QuotaExceededException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Base class for colony stores that hold aliens as rows of primitive fields rather than Alien objects.
+ *
+ * Each alien is a row, which keeps the alien's id, see ColonyStore. Parent and child links are
+ * row numbers, liveness and the lifetime child count are bits in a flag byte, and a name index
+ * maps names to rows using open addressing over an int table. An id index maps the ids of live
+ * aliens to their rows, one int per id. Subclasses decide where the rows and the indexes live.
+ *
+ * Deleted rows are kept, so their children can still show them as parent, but they are
+ * dropped from the name and id indexes.
+ *
+ * Aliens returned by these stores are rebuilt from their row on every call, with their parent
+ * and children as shallow copies (details only). All access is synchronized.
+ */
+abstract class RowColonyStore implements ColonyStore {
+
+    static final int NONE = -1;
+
+    static final byte LIVE = 1;
+    static final byte HAD_ONE = 2;
+    static final byte HAD_TWO = 4;
+
+    private static final AlienType[] TYPES = AlienType.values();
+
+    // Row storage
+
+    /**
+     * @return rows used, including deleted rows
+     */
+    abstract int rows();
+
+    /**
+     * Allocate a new row, growing the storage if needed
+     *
+     * @return the new row id
+     */
+    abstract int newRow();
+
+    /**
+     * @return live aliens, all of which are in the name index
+     */
+    abstract int live();
+
+    abstract void setLive(int live);
+
+    /**
+     * @return live alphas
+     */
+    abstract int alphas();
+
+    abstract void setAlphas(int alphas);
+
+    /**
+     * @return children the live aliens can still have
+     */
+    abstract long freeSlots();
+
+    abstract void setFreeSlots(long freeSlots);
+
+    /**
+     * @return the next alien id to give out
+     */
+    abstract int nextFreeId();
+
+    abstract void setNextFreeId(int nextId);
+
+    /**
+     * @return the alien id of the row, -1 for a deleted parent that never had one here
+     */
+    abstract int rowId(int row);
+
+    abstract void setRowId(int row, int id);
+
+    abstract int parent(int row);
+
+    abstract void setParent(int row, int parent);
+
+    abstract int childOne(int row);
+
+    abstract void setChildOne(int row, int child);
+
+    abstract int childTwo(int row);
+
+    abstract void setChildTwo(int row, int child);
+
+    abstract byte type(int row);
+
+    abstract void setType(int row, byte type);
+
+    abstract byte flags(int row);
+
+    abstract void setFlags(int row, byte flags);
+
+    abstract String name(int row);
+
+    abstract void setName(int row, String name);
+
+    abstract String planet(int row);
+
+    abstract void setPlanet(int row, String planet);
+
+    /**
+     * Hash of the row's name, subclasses may store it rather than recompute it
+     */
+    int nameHash(int row) {
+        return name(row).hashCode();
+    }
+
+    // Name index storage
+
+    /**
+     * @return number of slots in the name index, a power of two
+     */
+    abstract int indexCapacity();
+
+    abstract int indexSlot(int slot);
+
+    abstract void setIndexSlot(int slot, int entry);
+
+    /**
+     * Replace the name index with an empty one of the given capacity
+     */
+    abstract void newIndex(int capacity);
+
+    // Id index storage
+
+    /**
+     * @return the row of the live alien with this id + 1, or 0 if there is none
+     */
+    abstract int idEntry(int id);
+
+    /**
+     * Set the entry for an id, growing the id index if needed
+     */
+    abstract void setIdEntry(int id, int entry);
+
+    /**
+     * Replace the id index with an empty one
+     */
+    abstract void newIdIndex();
+
+    /**
+     * Drop every row and empty the name and id indexes
+     */
+    abstract void reset();
+
+    @Override
+    public synchronized Alien get(String name) {
+        int row = find(name);
+        return row == NONE ? null : restore(row);
+    }
+
+    @Override
+    public synchronized Alien get(int id) {
+        int entry = id < 0 ? 0 : idEntry(id);
+        return entry == 0 ? null : restore(entry - 1);
+    }
+
+    /**
+     * Rows take a fraction of the memory of Alien objects, see CompactColonyStore
+     */
+    @Override
+    public boolean isCompact() {
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(String name) {
+        return find(name) != NONE;
+    }
+
+    @Override
+    public synchronized void add(Alien alien) {
+        String name = alien.getName();
+        if (find(name) != NONE) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + name + " already exists. Aliens must have unique names.");
+        }
+        int parent = NONE;
+        if (alien.getParent() != null) {
+            parent = find(alien.getParent().getName());
+            if (parent == NONE) {
+                throw new AlienNotFoundException(ErrorCode.PARENT_NOT_FOUND, "Alien " + alien.getParent().getName() + " does not exist, Child not added.");
+            }
+            if ((flags(parent) & HAD_TWO) != 0) {
+                throw new QuotaExceededException("Alien " + name(parent) + " has already had two children");
+            }
+        }
+
+        int row = newRow(alien, parent, LIVE);
+
+        // Record as the parent's newest child
+        if (parent != NONE) {
+            if ((flags(parent) & HAD_ONE) == 0) {
+                setChildOne(parent, row);
+                setFlags(parent, (byte) (flags(parent) | HAD_ONE));
+            } else {
+                setChildTwo(parent, row);
+                setFlags(parent, (byte) (flags(parent) | HAD_TWO));
+            }
+            setFreeSlots(freeSlots() - 1);
+        }
+        setLive(live() + 1);
+        count(row, 1);
+        index(row);
+    }
+
+    @Override
+    public synchronized Alien remove(String name) {
+        int row = find(name);
+        if (row == NONE) {
+            return null;
+        }
+        Alien removed = restore(row);
+        unindex(row);
+        setIdEntry(rowId(row), 0);
+        setFlags(row, (byte) (flags(row) & ~LIVE));
+        setLive(live() - 1);
+        count(row, -1);
+        // Unlink from the parent, which may itself have been deleted
+        int parent = parent(row);
+        if (parent != NONE) {
+            if (childOne(parent) == row) {
+                setChildOne(parent, NONE);
+            }
+            if (childTwo(parent) == row) {
+                setChildTwo(parent, NONE);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void rename(Alien alien, String newName) {
+        String oldName = alien.getName();
+        if (oldName.equals(newName)) {
+            return;
+        }
+        int row = find(oldName);
+        if (row == NONE) {
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + oldName + " not updated as they do not exist");
+        }
+        if (find(newName) != NONE) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + newName + " already exists. Aliens must have unique names.");
+        }
+        // Set the name first, the alien validates it and may refuse
+        alien.setName(newName);
+        unindex(row);
+        setName(row, newName);
+        index(row);
+    }
+
+    @Override
+    public synchronized void setHomePlanet(Alien alien, String homePlanet) {
+        int row = find(alien.getName());
+        if (row == NONE) {
+            throw new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien " + alien.getName() + " not updated as they do not exist");
+        }
+        alien.setHomePlanet(homePlanet);
+        setPlanet(row, homePlanet);
+    }
+
+    @Override
+    public synchronized int size() {
+        return live();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return live() == 0;
+    }
+
+    @Override
+    public synchronized int nextId() {
+        return nextFreeId();
+    }
+
+    @Override
+    public synchronized int takeId() {
+        int id = nextFreeId();
+        setNextFreeId(id + 1);
+        return id;
+    }
+
+    @Override
+    public synchronized void advanceIds(int nextId) {
+        setNextFreeId(Math.max(nextFreeId(), nextId));
+    }
+
+    @Override
+    public synchronized long alphaCount() {
+        return alphas();
+    }
+
+    @Override
+    public synchronized long remainingChildSlots() {
+        return freeSlots();
+    }
+
+    @Override
+    public synchronized void clear() {
+        reset();
+    }
+
+    /**
+     * Rebuilds every live alien, so only suitable for small colonies and testing
+     */
+    @Override
+    public synchronized Collection<Alien> aliens() {
+        List<Alien> aliens = new ArrayList<>(live());
+        for (int row = 0; row < rows(); row++) {
+            if ((flags(row) & LIVE) != 0) {
+                aliens.add(restore(row));
+            }
+        }
+        return aliens;
+    }
+
+    @Override
+    public synchronized void forEachAlien(Consumer<Alien> action) {
+        for (int row = 0; row < rows(); row++) {
+            if ((flags(row) & LIVE) != 0) {
+                action.accept(restore(row));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void load(List<Alien> aliens) {
+        reset();
+        Map<Alien, Integer> rowsByAlien = new IdentityHashMap<>(aliens.size());
+        for (Alien alien : aliens) {
+            Alien parentAlien = alien.getParent();
+            int parent = NONE;
+            if (parentAlien != null) {
+                Integer parentRow = rowsByAlien.get(parentAlien);
+                if (parentRow == null) {
+                    // A deleted parent, kept as a row outside the name index
+                    parentRow = newRow(parentAlien, NONE, 0);
+                    rowsByAlien.put(parentAlien, parentRow);
+                }
+                parent = parentRow;
+            }
+            int row = newRow(alien, parent, LIVE);
+            rowsByAlien.put(alien, row);
+            // Deleted parents have already been unlinked from their children
+            if (parent != NONE && (flags(parent) & LIVE) != 0) {
+                if (parentAlien.getChildOne() == alien) {
+                    setChildOne(parent, row);
+                } else {
+                    setChildTwo(parent, row);
+                }
+            }
+            setLive(live() + 1);
+            count(row, 1);
+            index(row);
+        }
+    }
+
+    @Override
+    public synchronized void restore(Alien alien, int slot) {
+        String name = alien.getName();
+        if (find(name) != NONE) {
+            throw new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien " + name + " already exists. Aliens must have unique names.");
+        }
+        Alien parentAlien = alien.getParent();
+        int parent = NONE;
+        if (slot != 0) {
+            parent = find(parentAlien.getName());
+            if (parent == NONE) {
+                throw new AlienNotFoundException(ErrorCode.PARENT_NOT_FOUND, "Alien " + parentAlien.getName() + " does not exist, Child not added.");
+            }
+            Alien.checkRestoredSlot(name(parent), TYPES[type(parent)], childrenHad(parent),
+                    (slot == 1 ? childOne(parent) : childTwo(parent)) != NONE, slot);
+        } else if (parentAlien != null) {
+            // A deleted parent, kept as a row outside the name index
+            parent = newRow(parentAlien, NONE, 0);
+        }
+        int row = newRow(alien, parent, LIVE);
+        if (slot == 1) {
+            setChildOne(parent, row);
+        } else if (slot == 2) {
+            setChildTwo(parent, row);
+        }
+        setLive(live() + 1);
+        count(row, 1);
+        index(row);
+    }
+
+    /**
+     * Fill in a new row from an alien's details
+     */
+    private int newRow(Alien alien, int parent, int live) {
+        int row = newRow();
+        if (live != 0 && alien.getId() < 0) {
+            alien.setId(nextFreeId());
+        }
+        if (alien.getId() >= 0) {
+            advanceIds(alien.getId() + 1);
+        }
+        setRowId(row, alien.getId());
+        if (live != 0) {
+            setIdEntry(alien.getId(), row + 1);
+        }
+        setName(row, alien.getName());
+        setType(row, (byte) alien.getType().ordinal());
+        setPlanet(row, alien.getHomePlanet());
+        setParent(row, parent);
+        setChildOne(row, NONE);
+        setChildTwo(row, NONE);
+        setFlags(row, (byte) (live | hadFlags(alien.getChildrenHad())));
+        return row;
+    }
+
+    /**
+     * Rebuild an alien with shallow copies of its relatives
+     */
+    private Alien restore(int row) {
+        Alien alien = Alien.restore(name(row), TYPES[type(row)], planet(row),
+                shallow(parent(row)), shallow(childOne(row)), shallow(childTwo(row)), childrenHad(row));
+        alien.setId(rowId(row));
+        return alien;
+    }
+
+    /**
+     * Rebuild an alien's details without its relatives
+     */
+    private Alien shallow(int row) {
+        if (row == NONE) {
+            return null;
+        }
+        Alien alien = Alien.restore(name(row), TYPES[type(row)], planet(row), null, null, null, childrenHad(row));
+        alien.setId(rowId(row));
+        return alien;
+    }
+
+    /**
+     * Count a live alpha and its remaining slots into or out of the colony
+     */
+    private void count(int row, int sign) {
+        if (TYPES[type(row)] == AlienType.ALPHA) {
+            setAlphas(alphas() + sign);
+            setFreeSlots(freeSlots() + sign * (2 - childrenHad(row)));
+        }
+    }
+
+    private int childrenHad(int row) {
+        byte flags = flags(row);
+        return (flags & HAD_TWO) != 0 ? 2 : (flags & HAD_ONE) != 0 ? 1 : 0;
+    }
+
+    private static int hadFlags(int childrenHad) {
+        return childrenHad >= 2 ? HAD_ONE | HAD_TWO : childrenHad == 1 ? HAD_ONE : 0;
+    }
+
+    /**
+     * @return the row of the live alien with this name, or NONE
+     */
+    int find(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        int mask = indexCapacity() - 1;
+        for (int i = slot(name.hashCode(), mask); ; i = (i + 1) & mask) {
+            int entry = indexSlot(i);
+            if (entry == 0) {
+                return NONE;
+            }
+            if (name.equals(name(entry - 1))) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Add a live row to the name index, growing the index if it would be over half full
+     */
+    private void index(int row) {
+        if (live() * 2 > indexCapacity()) {
+            // Rebuild from the live rows, which include this one
+            rebuildIndex(indexCapacity() << 1);
+            return;
+        }
+        insert(row);
+    }
+
+    /**
+     * Replace the name index with one of the given capacity holding every live row, rebuild the
+     * id index, and recount the live rows, alphas and free slots
+     */
+    void rebuildIndex(int capacity) {
+        newIndex(capacity);
+        newIdIndex();
+        setLive(0);
+        setAlphas(0);
+        setFreeSlots(0);
+        for (int row = 0; row < rows(); row++) {
+            if ((flags(row) & LIVE) != 0) {
+                insert(row);
+                setIdEntry(rowId(row), row + 1);
+                setLive(live() + 1);
+                count(row, 1);
+            }
+        }
+    }
+
+    private void insert(int row) {
+        int mask = indexCapacity() - 1;
+        int i = slot(nameHash(row), mask);
+        while (indexSlot(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        setIndexSlot(i, row + 1);
+    }
+
+    /**
+     * Remove a row from the name index, shifting later entries in the probe sequence back
+     * so that lookups never stop early at the gap
+     */
+    private void unindex(int row) {
+        int mask = indexCapacity() - 1;
+        int hole = slot(nameHash(row), mask);
+        while (indexSlot(hole) != row + 1) {
+            hole = (hole + 1) & mask;
+        }
+        setIndexSlot(hole, 0);
+        for (int i = (hole + 1) & mask; indexSlot(i) != 0; i = (i + 1) & mask) {
+            int entry = indexSlot(i);
+            int home = slot(nameHash(entry - 1), mask);
+            // Move the entry into the hole unless its home slot lies cyclically in (hole, i]
+            boolean stays = hole <= i ? (home > hole && home <= i) : (home > hole || home <= i);
+            if (!stays) {
+                setIndexSlot(hole, entry);
+                setIndexSlot(i, 0);
+                hole = i;
+            }
+        }
+    }
+
+    private static int slot(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.alienfamily.transfer;
+
+import com.example.alienfamily.alien.AlienType;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a colony export written by BinaryColonyWriter. Each record is read whole into one
+ * reused buffer before it is decoded, so a truncated record is never half decoded.
+ */
+final class BinaryColonyReader implements ColonyReader {
+
+    private static final AlienType[] TYPES = AlienType.values();
+
+    private final DataInputStream in;
+
+    private final byte[] buffer = new byte[BinaryColonyWriter.MAX_RECORD_SIZE];
+
+    private boolean started;
+
+    private int nextId = -1;
+
+    BinaryColonyReader(InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    @Override
+    public ColonyRecord read() throws IOException {
+        if (!started) {
+            readHeader();
+            started = true;
+        }
+        int first = in.read();
+        if (first < 0) {
+            // The end of the last record
+            if (nextId < 0) {
+                throw new IOException("Export ends without its next id");
+            }
+            return null;
+        }
+        try {
+            int length = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+            if (length == 0 && nextId < 0) {
+                nextId = in.readInt();
+                if (in.read() >= 0) {
+                    throw new IOException("Export carries on after its end");
+                }
+                return null;
+            }
+            if (length <= 0 || length > buffer.length || nextId >= 0) {
+                throw new IOException("Bad record length " + length);
+            }
+            in.readFully(buffer, 0, length);
+            return decode(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+        } catch (EOFException e) {
+            throw new IOException("Export ends part way through a record");
+        }
+    }
+
+    @Override
+    public int getNextId() {
+        return nextId;
+    }
+
+    private void readHeader() throws IOException {
+        try {
+            if (in.readInt() == BinaryColonyWriter.MAGIC && in.readInt() == BinaryColonyWriter.FORMAT) {
+                return;
+            }
+        } catch (EOFException e) {
+            // Too short to be one
+        }
+        throw new IOException("Not a binary colony export");
+    }
+
+    private static ColonyRecord decode(DataInputStream record) throws IOException {
+        String name = record.readUTF();
+        AlienType type = type(record.readByte());
+        String homePlanet = readString(record);
+        int childrenHad = record.readByte();
+        String parent = readString(record);
+        int slot = record.readByte();
+        AlienType parentType = null;
+        String parentHomePlanet = null;
+        if (parent != null && slot == 0) {
+            parentType = type(record.readByte());
+            parentHomePlanet = readString(record);
+        }
+        int id = record.readInt();
+        if (record.available() > 0) {
+            throw new IOException("Record for " + name + " is longer than its fields");
+        }
+        return new ColonyRecord(name, type, homePlanet, childrenHad, parent, slot, parentType, parentHomePlanet, id);
+    }
+
+    private static AlienType type(byte ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= TYPES.length) {
+            throw new IOException("Unknown alien type " + ordinal);
+        }
+        return TYPES[ordinal];
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
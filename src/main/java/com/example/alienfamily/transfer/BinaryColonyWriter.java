@@ -0,0 +1,78 @@
+package com.example.alienfamily.transfer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a colony export in binary.
+ *
+ * A header (magic and format) is followed by one record per alien: the length of the rest of the
+ * record, then name, type, home planet, lifetime child count, parent and slot, for a deleted
+ * parent its type and home planet, and the alien's id. Strings that may be null have a presence
+ * flag, as in the colony log. The export ends with a length of 0 and the colony's next id.
+ */
+final class BinaryColonyWriter implements ColonyWriter {
+
+    static final int MAGIC = 0x414C4358;
+    static final int FORMAT = 2;
+
+    /**
+     * Longest record body, far more than the longest names and planets need
+     */
+    static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+
+    /**
+     * Each record is built here first, to find its length
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+    private final DataOutputStream record = new DataOutputStream(buffer);
+
+    BinaryColonyWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(FORMAT);
+    }
+
+    @Override
+    public void write(ColonyRecord alien) throws IOException {
+        buffer.reset();
+        record.writeUTF(alien.getName());
+        record.writeByte(alien.getType().ordinal());
+        writeString(record, alien.getHomePlanet());
+        record.writeByte(alien.getChildrenHad());
+        writeString(record, alien.getParent());
+        record.writeByte(alien.getSlot());
+        if (alien.hasDeletedParent()) {
+            record.writeByte(alien.getParentType().ordinal());
+            writeString(record, alien.getParentHomePlanet());
+        }
+        record.writeInt(alien.getId());
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+    }
+
+    @Override
+    public void end(int nextId) throws IOException {
+        out.writeInt(0);
+        out.writeInt(nextId);
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.alienfamily.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Formats for exporting and importing a colony.
+ *
+ * Both hold one record per live alien, parents before their children, and are written and read
+ * a record at a time so a colony of any size streams through a fixed amount of memory.
+ */
+public enum ColonyFormat {
+
+    /**
+     * Newline delimited JSON, one alien per line:
+     * {"id":1,"name":"Zelda","type":"BETA","homePlanet":"Zorg","childrenHad":0,"parent":"Vexorg","slot":1}
+     * then a last line with the colony's next id, {"nextId":2}
+     */
+    NDJSON("application/x-ndjson") {
+        @Override
+        public ColonyWriter writer(OutputStream out) throws IOException {
+            return new NdjsonColonyWriter(out);
+        }
+
+        @Override
+        public ColonyReader reader(InputStream in) throws IOException {
+            return new NdjsonColonyReader(in);
+        }
+    },
+
+    /**
+     * A header, then length prefixed binary records, see BinaryColonyWriter
+     */
+    BINARY("application/octet-stream") {
+        @Override
+        public ColonyWriter writer(OutputStream out) throws IOException {
+            return new BinaryColonyWriter(out);
+        }
+
+        @Override
+        public ColonyReader reader(InputStream in) {
+            return new BinaryColonyReader(in);
+        }
+    };
+
+    private final String contentType;
+
+    ColonyFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param out - left open when the writer is done
+     * @return a writer for an export in this format
+     * @throws IOException
+     */
+    public abstract ColonyWriter writer(OutputStream out) throws IOException;
+
+    /**
+     * @param in - left open when the reader is done
+     * @return a reader for an export in this format
+     * @throws IOException
+     */
+    public abstract ColonyReader reader(InputStream in) throws IOException;
+}
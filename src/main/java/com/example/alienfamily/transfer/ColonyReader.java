@@ -0,0 +1,20 @@
+package com.example.alienfamily.transfer;
+
+import java.io.IOException;
+
+/**
+ * Reads a colony export one alien at a time, see ColonyFormat
+ */
+public interface ColonyReader {
+
+    /**
+     * @return the next alien, or null at the end of the export
+     * @throws IOException - if the export cannot be read or is malformed
+     */
+    ColonyRecord read() throws IOException;
+
+    /**
+     * @return the next id of the exported colony, once read has returned null
+     */
+    int getNextId();
+}
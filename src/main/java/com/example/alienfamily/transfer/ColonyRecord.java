@@ -0,0 +1,118 @@
+package com.example.alienfamily.transfer;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+
+/**
+ * One alien in a colony export.
+ *
+ * An alien with a live parent records which of the parent's child slots it was born into, 1 or 2.
+ * An alien whose parent has been deleted has slot 0 and records the parent's type and home planet,
+ * as a checkpoint does, since the parent is not in the export itself.
+ *
+ * Each alien carries its id, so it keeps it when the export is imported.
+ */
+public final class ColonyRecord {
+
+    private final String name;
+    private final AlienType type;
+    private final String homePlanet;
+    private final int childrenHad;
+    private final String parent;
+    private final int slot;
+    private final AlienType parentType;
+    private final String parentHomePlanet;
+    private final int id;
+
+    /**
+     * @param name
+     * @param type
+     * @param homePlanet - may be null
+     * @param childrenHad - children the alien has had in its lifetime
+     * @param parent - the parent's name, null for an alien with no parent
+     * @param slot - the live parent's child slot, 0 if the parent was deleted or there is none
+     * @param parentType - the deleted parent's type, otherwise null
+     * @param parentHomePlanet - the deleted parent's home planet, otherwise null
+     * @param id - the alien's id
+     */
+    public ColonyRecord(String name, AlienType type, String homePlanet, int childrenHad,
+                        String parent, int slot, AlienType parentType, String parentHomePlanet, int id) {
+        this.name = name;
+        this.type = type;
+        this.homePlanet = homePlanet;
+        this.childrenHad = childrenHad;
+        this.parent = parent;
+        this.slot = slot;
+        this.parentType = parentType;
+        this.parentHomePlanet = parentHomePlanet;
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AlienType getType() {
+        return type;
+    }
+
+    public String getHomePlanet() {
+        return homePlanet;
+    }
+
+    public int getChildrenHad() {
+        return childrenHad;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public AlienType getParentType() {
+        return parentType;
+    }
+
+    public String getParentHomePlanet() {
+        return parentHomePlanet;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the alien's parent has been deleted
+     */
+    public boolean hasDeletedParent() {
+        return parent != null && slot == 0;
+    }
+
+    /**
+     * The alien to restore into a colony store with its slot, see ColonyStore.restore. A deleted
+     * parent is a copy with its type and home planet. A live parent has only its name, the store
+     * links the alien to its own copy.
+     *
+     * @return the alien, with its id if the record has one
+     */
+    public Alien toAlien() {
+        Alien parentAlien = null;
+        if (hasDeletedParent()) {
+            parentAlien = Alien.restore(parent, parentType, parentHomePlanet, null, null, null, 0);
+        } else if (slot != 0) {
+            parentAlien = Alien.restore(parent, AlienType.ALPHA, null, null, null, null, 0);
+        }
+        Alien alien = Alien.restore(name, type, homePlanet, parentAlien, null, null, childrenHad);
+        alien.setId(id);
+        return alien;
+    }
+
+    @Override
+    public String toString() {
+        return "ColonyRecord{id=" + id + ", name=" + name + ", type=" + type + ", homePlanet=" + homePlanet + ", childrenHad=" + childrenHad
+                + ", parent=" + parent + ", slot=" + slot + "}";
+    }
+}
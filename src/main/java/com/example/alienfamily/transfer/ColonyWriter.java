@@ -0,0 +1,31 @@
+package com.example.alienfamily.transfer;
+
+import java.io.IOException;
+
+/**
+ * Writes a colony export one alien at a time, see ColonyFormat
+ */
+public interface ColonyWriter {
+
+    /**
+     * @param record
+     * @throws IOException
+     */
+    void write(ColonyRecord record) throws IOException;
+
+    /**
+     * Write the end of the export, then flush
+     *
+     * @param nextId - the next id the colony would give out, so the colony it is imported into
+     * does not give out ids its aliens had before
+     * @throws IOException
+     */
+    void end(int nextId) throws IOException;
+
+    /**
+     * Write out anything buffered. The underlying stream is left open.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException;
+}
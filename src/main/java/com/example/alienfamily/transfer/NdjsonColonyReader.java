@@ -0,0 +1,133 @@
+package com.example.alienfamily.transfer;
+
+import com.example.alienfamily.alien.AlienType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a colony export written by NdjsonColonyWriter, one object at a time from a streaming
+ * parser. Unknown fields are skipped. Every alien must have an id, and the export must end with
+ * the colony's next id.
+ */
+final class NdjsonColonyReader implements ColonyReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private final JsonParser json;
+
+    private int nextId = -1;
+
+    NdjsonColonyReader(InputStream in) throws IOException {
+        this.json = JSON_FACTORY.createParser(in);
+    }
+
+    @Override
+    public ColonyRecord read() throws IOException {
+        JsonToken token = json.nextToken();
+        if (token == null) {
+            if (nextId < 0) {
+                throw new JsonParseException(json, "Export ends without its next id");
+            }
+            return null;
+        }
+        if (nextId >= 0) {
+            throw new JsonParseException(json, "Export carries on after its end");
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(json, "Expected an alien, found " + token);
+        }
+        String name = null;
+        AlienType type = null;
+        String homePlanet = null;
+        int childrenHad = 0;
+        String parent = null;
+        int slot = 0;
+        AlienType parentType = null;
+        String parentHomePlanet = null;
+        int id = -1;
+        int end = -1;
+        while ((token = json.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            json.nextToken();
+            switch (field) {
+                case "id":
+                    id = json.getIntValue();
+                    break;
+                case "nextId":
+                    end = json.getIntValue();
+                    break;
+                case "name":
+                    name = text();
+                    break;
+                case "type":
+                    type = type();
+                    break;
+                case "homePlanet":
+                    homePlanet = text();
+                    break;
+                case "childrenHad":
+                    childrenHad = json.getIntValue();
+                    break;
+                case "parent":
+                    parent = text();
+                    break;
+                case "slot":
+                    slot = json.getIntValue();
+                    break;
+                case "parentType":
+                    parentType = type();
+                    break;
+                case "parentHomePlanet":
+                    parentHomePlanet = text();
+                    break;
+                default:
+                    json.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(json, "Unexpected end of alien");
+        }
+        if (end >= 0 && name == null) {
+            nextId = end;
+            return read();
+        }
+        if (id < 0) {
+            throw new JsonParseException(json, "Alien " + name + " has no id");
+        }
+        return new ColonyRecord(name, type, homePlanet, childrenHad, parent, slot, parentType, parentHomePlanet, id);
+    }
+
+    @Override
+    public int getNextId() {
+        return nextId;
+    }
+
+    private String text() throws IOException {
+        JsonToken token = json.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            throw new JsonParseException(json, "Expected a string, found " + token);
+        }
+        return json.getText();
+    }
+
+    private AlienType type() throws IOException {
+        String type = text();
+        if (type == null) {
+            return null;
+        }
+        try {
+            return AlienType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(json, "Unknown alien type " + type);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.alienfamily.transfer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a colony export as newline delimited JSON. Fields that are null or do not apply are left out.
+ * The last line holds the colony's next id, {"nextId":n}, rather than an alien.
+ */
+final class NdjsonColonyWriter implements ColonyWriter {
+
+    /**
+     * Lines are separated by hand, and the stream is left for the caller to close
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .setRootValueSeparator(null);
+
+    private final JsonGenerator json;
+
+    NdjsonColonyWriter(OutputStream out) throws IOException {
+        this.json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    @Override
+    public void write(ColonyRecord record) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", record.getId());
+        json.writeStringField("name", record.getName());
+        json.writeStringField("type", record.getType().name());
+        if (record.getHomePlanet() != null) {
+            json.writeStringField("homePlanet", record.getHomePlanet());
+        }
+        json.writeNumberField("childrenHad", record.getChildrenHad());
+        if (record.getParent() != null) {
+            json.writeStringField("parent", record.getParent());
+            if (record.hasDeletedParent()) {
+                json.writeStringField("parentType", record.getParentType().name());
+                if (record.getParentHomePlanet() != null) {
+                    json.writeStringField("parentHomePlanet", record.getParentHomePlanet());
+                }
+            } else {
+                json.writeNumberField("slot", record.getSlot());
+            }
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    @Override
+    public void end(int nextId) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("nextId", nextId);
+        json.writeEndObject();
+        json.writeRaw('\n');
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        json.flush();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.alienfamily.wal;
+
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.transfer.ColonyFormat;
+import com.example.alienfamily.transfer.ColonyReader;
+import com.example.alienfamily.transfer.ColonyRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Snapshot of a colony, taken so the colony log can be truncated.
+ *
+ * The file holds a header (magic, format and the sequence number of the last logged change it
+ * includes) followed by the colony as a binary export, see ColonyFormat, so each alien comes
+ * after its live parent and keeps its id, and the export ends with the next id. The colony is
+ * written from a snapshot rather than the store, so it can be written while the colony changes.
+ */
+final class ColonyCheckpoint {
+
+    private static final int MAGIC = 0x414C4350;
+    private static final int FORMAT = 3;
+
+    private ColonyCheckpoint() {
+    }
+
+    /**
+     * Write a checkpoint of the colony, replacing any earlier one
+     *
+     * @param file
+     * @param lsn - sequence number of the last change included
+     * @param colony - the colony as of that change
+     */
+    static void write(Path file, long lsn, ColonyLog.Snapshot colony) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(lsn);
+            colony.writeTo(ColonyFormat.BINARY.writer(out));
+            out.flush();
+            stream.getFD().sync();
+        }
+        // Only replace the previous checkpoint once this one is complete
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The rename itself is only durable once the directory is
+        ColonyLog.syncDirectory(file.getParent());
+    }
+
+    /**
+     * Replace the colony with the one in a checkpoint
+     *
+     * @param file
+     * @param colony
+     * @return sequence number of the last change included
+     */
+    static long read(Path file, ColonyStore colony) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException("Not a colony checkpoint: " + file);
+            }
+            long lsn = in.readLong();
+            colony.clear();
+            ColonyReader reader = ColonyFormat.BINARY.reader(in);
+            for (ColonyRecord record = reader.read(); record != null; record = reader.read()) {
+                colony.restore(record.toAlien(), record.getSlot());
+            }
+            colony.advanceIds(reader.getNextId());
+            return lsn;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.example.alienfamily.wal;
+
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.transfer.ColonyWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead log of changes to a colony.
+ *
+ * Every successful change is appended as a LogRecord, numbered with a log sequence number (LSN).
+ * On startup the colony is rebuilt from the last checkpoint and the records logged after it.
+ *
+ * Group commit: appending only writes the record to the file. Callers then wait for it to be
+ * durable, and the first caller to wait syncs the file for everyone who has appended so far.
+ * Callers arriving during a sync wait for the next one, so a burst of concurrent writes costs
+ * a few syncs rather than one each. The durability window is how long the syncing caller waits
+ * for others to join its group, trading write latency for fewer syncs.
+ *
+ * Checkpoints: once enough records have been logged, the log is rotated, sealing the records
+ * so far in a segment and carrying on in a new file, and a snapshot of the colony as of the
+ * last sealed record is written to a checkpoint in the background. Writes carry on meanwhile,
+ * and the segments the checkpoint covers are deleted once it is written, so replay time stays
+ * bounded however long the service runs. A crash part way through is safe, the segments are
+ * only deleted once the checkpoint has replaced the last one, and records already in the
+ * checkpoint are skipped on replay.
+ *
+ * Files in the log directory:
+ *  - colony.log: the records since the last rotation, see LogRecord for the encoding
+ *  - colony.log.N: sealed records up to sequence number N, not yet in a checkpoint
+ *  - colony.checkpoint: the last checkpoint, see ColonyCheckpoint
+ */
+public class ColonyLog implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColonyLog.class);
+
+    /**
+     * Longest record body accepted on replay, anything longer is a torn or corrupt length
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private static final String LOG = "colony.log";
+
+    private final Path directory;
+
+    private final Path logFile;
+
+    private final Path checkpointFile;
+
+    /**
+     * The file being appended to, replaced when the log is rotated
+     */
+    private FileChannel log;
+
+    private final long durabilityWindowMillis;
+
+    private final int checkpointInterval;
+
+    /**
+     * Guards appends, the LSN sequence and rotation
+     */
+    private final Object appendLock = new Object();
+
+    private long lastLsn;
+
+    private int sinceCheckpoint;
+
+    private boolean checkpointPending;
+
+    /**
+     * Guards writing checkpoints
+     */
+    private final Object checkpointLock = new Object();
+
+    private long checkpointLsn = -1;
+
+    private final ExecutorService checkpointer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "colony-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Guards the group commit state below
+     */
+    private final Object syncLock = new Object();
+
+    private long durableLsn;
+
+    private boolean syncing;
+
+    private long syncs;
+
+    /**
+     * Open the colony log in the given directory, creating it if there is none
+     *
+     * @param directory
+     * @param durabilityWindowMillis - how long a sync waits for more writes to join it, 0 to sync at once
+     * @param checkpointInterval - records to log between checkpoints
+     */
+    public ColonyLog(Path directory, long durabilityWindowMillis, int checkpointInterval) {
+        this.directory = directory;
+        this.logFile = directory.resolve(LOG);
+        this.checkpointFile = directory.resolve("colony.checkpoint");
+        try {
+            Files.createDirectories(directory);
+            this.log = open(logFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open colony log in " + directory, e);
+        }
+        this.durabilityWindowMillis = durabilityWindowMillis;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Rebuild a colony from the last checkpoint, the sealed segments and the log, ready for new
+     * records to be appended.
+     *
+     * Without a checkpoint the log is replayed onto an empty colony. Without either, the colony
+     * is left as it is, and the caller should checkpoint it so a persistent store keeps its
+     * aliens when the log is first enabled.
+     *
+     * A torn record at the end of the log, from a crash part way through a write, is dropped.
+     *
+     * @param colony
+     * @param replay - applies one logged change to the colony
+     * @return true if there was neither a checkpoint nor any logged change
+     */
+    public boolean recover(ColonyStore colony, Consumer<LogRecord> replay) {
+        synchronized (appendLock) {
+            try {
+                long fromLsn = Files.exists(checkpointFile) ? ColonyCheckpoint.read(checkpointFile, colony) : -1;
+                synchronized (checkpointLock) {
+                    checkpointLsn = fromLsn;
+                }
+                lastLsn = Math.max(fromLsn, 0);
+                for (Path segment : segments()) {
+                    if (sealedLsn(segment) <= fromLsn) {
+                        // Already in the checkpoint
+                        Files.delete(segment);
+                        continue;
+                    }
+                    try (FileChannel sealed = FileChannel.open(segment, StandardOpenOption.READ)) {
+                        if (replay(sealed, fromLsn, colony, replay) < sealed.size()) {
+                            LOGGER.warn("Colony log segment {} ends with an incomplete record", segment.getFileName());
+                        }
+                    }
+                }
+                long position = replay(log, fromLsn, colony, replay);
+                if (position < log.size()) {
+                    LOGGER.warn("Dropping {} bytes of incomplete records from the colony log", log.size() - position);
+                    log.truncate(position);
+                }
+                log.position(position);
+                long replayed = lastLsn - Math.max(fromLsn, 0);
+                sinceCheckpoint = (int) replayed;
+                synchronized (syncLock) {
+                    durableLsn = lastLsn;
+                }
+                LOGGER.info("Colony recovered, {} logged changes replayed", replayed);
+                return fromLsn < 0 && lastLsn == 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not recover colony from its log", e);
+            }
+        }
+    }
+
+    /**
+     * Replay the records in one log file that are not in the checkpoint
+     *
+     * @param file
+     * @param fromLsn - sequence number of the last change in the checkpoint, -1 if there is none
+     * @return the end of the last whole record
+     */
+    private long replay(FileChannel file, long fromLsn, ColonyStore colony, Consumer<LogRecord> replay) throws IOException {
+        long position = 0;
+        file.position(0);
+        // Not closed, that would close the file
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file), 64 * 1024));
+        byte[] body;
+        while ((body = read(in)) != null) {
+            position += LogRecord.HEADER_SIZE + body.length;
+            LogRecord record = LogRecord.decode(new DataInputStream(new ByteArrayInputStream(body)));
+            if (record.getLsn() <= fromLsn) {
+                continue;
+            }
+            if (fromLsn < 0 && lastLsn == 0) {
+                // No checkpoint, the log holds the whole colony
+                colony.clear();
+            }
+            replay.accept(record);
+            lastLsn = record.getLsn();
+        }
+        return position;
+    }
+
+    /**
+     * Read the next record
+     *
+     * @return the record body, or null at the end of the log or at a torn or corrupt record
+     */
+    private static byte[] read(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int crc = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            if (LogRecord.crc(body, 0, length) != crc) {
+                return null;
+            }
+            return body;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Append a record to the log. It is not durable until awaitDurable returns.
+     *
+     * Callers must append changes that touch the same aliens in the order they were made.
+     *
+     * @param record
+     * @return the record's log sequence number
+     */
+    public long append(LogRecord record) {
+        synchronized (appendLock) {
+            long lsn = lastLsn + 1;
+            ByteBuffer buffer = record.encode(lsn);
+            try {
+                while (buffer.hasRemaining()) {
+                    log.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write to colony log", e);
+            }
+            lastLsn = lsn;
+            sinceCheckpoint++;
+            return lsn;
+        }
+    }
+
+    /**
+     * Wait until the record with the given sequence number, and all before it, are on disk
+     *
+     * @param lsn
+     */
+    public void awaitDurable(long lsn) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                synchronized (syncLock) {
+                    while (durableLsn < lsn && syncing) {
+                        try {
+                            syncLock.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (durableLsn >= lsn) {
+                        return;
+                    }
+                    // Lead the next group
+                    syncing = true;
+                }
+                interrupted |= sync();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Sync everything appended so far, after waiting for the durability window
+     *
+     * @return true if interrupted while waiting
+     */
+    private boolean sync() {
+        boolean interrupted = false;
+        long upTo = 0;
+        try {
+            if (durabilityWindowMillis > 0) {
+                try {
+                    Thread.sleep(durabilityWindowMillis);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            FileChannel file;
+            synchronized (appendLock) {
+                upTo = lastLsn;
+                file = log;
+            }
+            // The log is only rotated between syncs
+            file.force(false);
+        } catch (IOException e) {
+            upTo = 0;
+            throw new UncheckedIOException("Could not sync colony log", e);
+        } finally {
+            synchronized (syncLock) {
+                durableLsn = Math.max(durableLsn, upTo);
+                syncing = false;
+                syncs++;
+                syncLock.notifyAll();
+            }
+        }
+        return interrupted;
+    }
+
+    /**
+     * @return true once enough records have been logged since the last checkpoint, and the
+     * checkpoint before is no longer being written
+     */
+    public boolean isCheckpointDue() {
+        synchronized (appendLock) {
+            return sinceCheckpoint >= checkpointInterval && !checkpointPending;
+        }
+    }
+
+    /**
+     * Seal the records logged so far in a segment and carry on in a new file, so a checkpoint of
+     * the colony as it is now can be written while new records are appended.
+     *
+     * The caller must stop the colony changing until this returns, and take a snapshot of it
+     * to checkpoint.
+     *
+     * @return sequence number of the last record sealed, which the checkpoint includes
+     */
+    public long rotate() {
+        boolean interrupted = false;
+        long sealed = 0;
+        synchronized (syncLock) {
+            // Lead the next group, so no sync is under way on the file being sealed
+            while (syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            syncing = true;
+        }
+        try {
+            synchronized (appendLock) {
+                if (log.size() > 0) {
+                    log.force(false);
+                    log.close();
+                    Files.move(logFile, segment(lastLsn), StandardCopyOption.ATOMIC_MOVE);
+                    log = open(logFile);
+                    syncDirectory(directory);
+                }
+                sinceCheckpoint = 0;
+                sealed = lastLsn;
+                return sealed;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rotate colony log", e);
+        } finally {
+            synchronized (syncLock) {
+                durableLsn = Math.max(durableLsn, sealed);
+                syncing = false;
+                syncLock.notifyAll();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Write a checkpoint of the colony and delete the segments it includes, see rotate
+     *
+     * @param lsn - sequence number of the last change included, as returned by rotate
+     * @param colony - the colony as of that change
+     */
+    public void checkpoint(long lsn, Snapshot colony) {
+        try {
+            synchronized (checkpointLock) {
+                write(lsn, colony);
+            }
+        } finally {
+            colony.release();
+        }
+    }
+
+    /**
+     * Write a checkpoint of the colony on the checkpoint thread, see checkpoint. A checkpoint of
+     * the same or a later change written meanwhile replaces it, and a failed checkpoint is logged
+     * and taken again once the next one is due.
+     *
+     * @param lsn - sequence number of the last change included, as returned by rotate
+     * @param colony - the colony as of that change, which must not change as it is written. It is
+     * released once written, or once it is known it will not be.
+     */
+    public void checkpointInBackground(long lsn, Snapshot colony) {
+        synchronized (appendLock) {
+            checkpointPending = true;
+        }
+        try {
+            checkpointer.execute(() -> {
+                try {
+                    synchronized (checkpointLock) {
+                        if (lsn > checkpointLsn) {
+                            write(lsn, colony);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Could not checkpoint colony at {}", lsn, e);
+                } finally {
+                    colony.release();
+                    checkpointDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closing, the sealed segments are replayed instead
+            colony.release();
+            checkpointDone();
+        }
+    }
+
+    private void checkpointDone() {
+        synchronized (appendLock) {
+            checkpointPending = false;
+        }
+    }
+
+    /**
+     * Write a checkpoint, the caller must hold the checkpoint lock
+     */
+    private void write(long lsn, Snapshot colony) {
+        try {
+            ColonyCheckpoint.write(checkpointFile, lsn, colony);
+            checkpointLsn = lsn;
+            for (Path segment : segments()) {
+                if (sealedLsn(segment) <= lsn) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not checkpoint colony", e);
+        }
+        LOGGER.debug("Colony checkpointed at {}", lsn);
+    }
+
+    /**
+     * @return the sealed segments, oldest first
+     */
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().matches("colony\\.log\\.\\d+")).forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(sealedLsn(a), sealedLsn(b)));
+        return segments;
+    }
+
+    private Path segment(long lsn) {
+        return directory.resolve(LOG + "." + lsn);
+    }
+
+    private static long sealedLsn(Path segment) {
+        return Long.parseLong(segment.getFileName().toString().substring(LOG.length() + 1));
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Sync a directory, so files renamed into it stay renamed after a crash. Skipped where
+     * directories cannot be opened to sync, as on Windows.
+     *
+     * @param directory
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of syncs so far, each covering a group of appends
+     */
+    long getSyncs() {
+        synchronized (syncLock) {
+            return syncs;
+        }
+    }
+
+    /**
+     * Wait for a checkpoint being written, then sync and close the log
+     */
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            if (log.isOpen()) {
+                log.force(true);
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * A colony to checkpoint, written as an export would be, ending with the next id
+     */
+    @FunctionalInterface
+    public interface Snapshot {
+
+        void writeTo(ColonyWriter writer) throws IOException;
+
+        /**
+         * Let go of anything held to keep the colony as it was, called once the checkpoint has
+         * been written or skipped
+         */
+        default void release() {
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.alienfamily.wal;
+
+import com.example.alienfamily.alien.AlienType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A change to the colony, as written to the colony log.
+ *
+ * Which fields are used depends on the operation:
+ *  - START uses name, homePlanet and id
+ *  - ADD uses parentName, name (the child), type, homePlanet and id
+ *  - UPDATE uses name (the old name), newName and homePlanet (the new planet)
+ *  - DELETE uses name
+ *  - IMPORT uses none, it marks the colony being replaced by an import, which is kept by the
+ *    checkpoint taken once the import is loaded rather than by records
+ *
+ * Encoded as an int length and an int CRC32 of the body, followed by the body:
+ * the log sequence number, the operation and the fields, strings as modified UTF-8, then the
+ * new alien's id.
+ */
+public class LogRecord {
+
+    /**
+     * Logged colony operations
+     */
+    public enum Op {
+        START, ADD, UPDATE, DELETE, IMPORT
+    }
+
+    /**
+     * Header before each record body, length and CRC
+     */
+    static final int HEADER_SIZE = 8;
+
+    private static final AlienType[] TYPES = AlienType.values();
+    private static final Op[] OPS = Op.values();
+
+    private final Op op;
+    private final String name;
+    private final String parentName;
+    private final String newName;
+    private final String homePlanet;
+    private final AlienType type;
+    private final int id;
+
+    private long lsn;
+
+    private LogRecord(Op op, String name, String parentName, String newName, String homePlanet, AlienType type, int id) {
+        this.op = op;
+        this.name = name;
+        this.parentName = parentName;
+        this.newName = newName;
+        this.homePlanet = homePlanet;
+        this.type = type;
+        this.id = id;
+    }
+
+    /**
+     * @param id - the first alien's id
+     * @see com.example.alienfamily.service.AlienService#startColony(String, String)
+     */
+    public static LogRecord start(String name, String birthPlanet, int id) {
+        return new LogRecord(Op.START, name, null, null, birthPlanet, null, id);
+    }
+
+    /**
+     * @param id - the child's id
+     * @see com.example.alienfamily.service.AlienService#addAlien(String, String, AlienType, String)
+     */
+    public static LogRecord add(String parentName, String childName, AlienType type, String homePlanet, int id) {
+        return new LogRecord(Op.ADD, childName, parentName, null, homePlanet, type, id);
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#updateAlien(String, String, String)
+     */
+    public static LogRecord update(String oldName, String newName, String newPlanet) {
+        return new LogRecord(Op.UPDATE, oldName, null, newName, newPlanet, null, -1);
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#deleteAlien(String)
+     */
+    public static LogRecord delete(String name) {
+        return new LogRecord(Op.DELETE, name, null, null, null, null, -1);
+    }
+
+    /**
+     * @see com.example.alienfamily.service.AlienService#importColony(com.example.alienfamily.transfer.ColonyReader)
+     */
+    public static LogRecord imported() {
+        return new LogRecord(Op.IMPORT, null, null, null, null, null, -1);
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getParentName() {
+        return parentName;
+    }
+
+    public String getNewName() {
+        return newName;
+    }
+
+    public String getHomePlanet() {
+        return homePlanet;
+    }
+
+    public AlienType getType() {
+        return type;
+    }
+
+    /**
+     * @return the new alien's id, or -1 for a change that adds none
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the record's position in the log, set once it has been written or read
+     */
+    public long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * Encode this record with the given sequence number, header included
+     */
+    ByteBuffer encode(long lsn) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream body = new DataOutputStream(bytes);
+            // Room for the header, filled in below
+            body.writeLong(0);
+            body.writeLong(lsn);
+            body.writeByte(op.ordinal());
+            writeString(body, name);
+            writeString(body, parentName);
+            writeString(body, newName);
+            writeString(body, homePlanet);
+            body.writeByte(type == null ? -1 : type.ordinal());
+            body.writeInt(id);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            buffer.putInt(0, buffer.capacity() - HEADER_SIZE);
+            buffer.putInt(4, crc(buffer.array(), HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+            this.lsn = lsn;
+            return buffer;
+        } catch (IOException e) {
+            // Not thrown by in-memory streams
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode a record body
+     *
+     * @param body - the bytes after the header, already checked against its CRC
+     */
+    static LogRecord decode(DataInputStream body) throws IOException {
+        long lsn = body.readLong();
+        Op op = OPS[body.readByte()];
+        String name = readString(body);
+        String parentName = readString(body);
+        String newName = readString(body);
+        String homePlanet = readString(body);
+        byte type = body.readByte();
+        int id = body.readInt();
+        LogRecord record = new LogRecord(op, name, parentName, newName, homePlanet, type < 0 ? null : TYPES[type], id);
+        record.lsn = lsn;
+        return record;
+    }
+
+    static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.alienfamily.reactive;
+
+import com.example.alienfamily.exception.AlienResponseEntityExceptionHandler;
+import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.service.ColonyRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the reactive endpoints answer as AlienController does
+ */
+public class AlienRouterTest {
+
+    private AlienService alienService;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    public void createClient() {
+        alienService = new AlienService();
+        AlienHandler handler = new AlienHandler(new ReactiveAlienService(new ColonyRegistry(alienService)),
+                new AlienResponseEntityExceptionHandler(new SimpleMeterRegistry()), 1);
+        client = WebTestClient.bindToRouterFunction(new AlienRouter().alienRoutes(handler)).build();
+    }
+
+    /**
+     * Test to start a colony, add, get, update and delete aliens
+     */
+    @Test
+    public void endpointsTest() {
+        client.post().uri("/aliencolony/start?name=Vexorg&homePlanet=Omicron").exchange().expectStatus().isOk();
+        client.post().uri("/aliencolony/addAlien?parentName=Vexorg&childName=Proxigord&type=BETA&homePlanet=Omicron")
+                .exchange().expectStatus().isOk();
+
+        String proxigord = client.get().uri("/aliencolony/getAlien?name=Proxigord").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        assertTrue(proxigord.contains("Proxigord") && proxigord.contains("BETA") && proxigord.contains("Vexorg"));
+        client.get().uri("/aliencolony/getAlien?name=Proxigord").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(String.class).isEqualTo("{\"name\":\"Proxigord\",\"type\":\"BETA\",\"homePlanet\":\"Omicron\",\"parent\":\"Vexorg\",\"children\":[]}");
+
+        client.post().uri("/aliencolony/updateAlien?oldName=Proxigord&newName=Frank&newPlanet=Grimsby").exchange().expectStatus().isOk();
+        client.delete().uri("/aliencolony/deleteAlien?name=Frank").exchange().expectStatus().isOk();
+        assertEquals(1, alienService.getColonySize());
+    }
+
+    /**
+     * Test errors have the same status and body as from AlienController
+     */
+    @Test
+    public void errorsTest() {
+        client.get().uri("/aliencolony/getAlien?name=Proxigord").exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(String.class).isEqualTo("{\"code\":\"COLONY_NOT_STARTED\",\"message\":\"No aliens! Please start a new colony.\"}");
+        client.post().uri("/aliencolony/start?name=Vexorg&homePlanet=Omicron").exchange().expectStatus().isOk();
+        client.get().uri("/aliencolony/getAlien?name=Proxigord").exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("{\"code\":\"ALIEN_NOT_FOUND\",\"message\":\"Alien Proxigord not found\"}");
+        client.post().uri("/aliencolony/addAlien?parentName=Vexorg&childName=Vexorg&type=BETA&homePlanet=Omicron")
+                .exchange().expectStatus().isEqualTo(409);
+        client.post().uri("/aliencolony/addAlien?parentName=Vexorg&childName=Frank&type=DELTA&homePlanet=Omicron")
+                .exchange().expectStatus().isBadRequest();
+        client.post().uri("/aliencolony/start?name=Vexorg").exchange().expectStatus().isBadRequest();
+        client.get().uri("/aliencolony/getAlien?name=Vexorg&colonyId=../default").exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("{\"code\":\"INVALID_COLONY\",\"message\":\"Colony ids are 1 to 64 letters, digits, '-' or '_'\"}");
+    }
+
+    /**
+     * Test a named colony is kept apart from the default one
+     */
+    @Test
+    public void colonyTest() {
+        client.post().uri("/aliencolony/start?name=Vexorg&homePlanet=Omicron").exchange().expectStatus().isOk();
+        client.post().uri("/aliencolony/start?name=Mork&homePlanet=Ork&colonyId=ork-1").exchange().expectStatus().isOk();
+        client.get().uri("/aliencolony/getAlien?name=Mork&colonyId=ork-1").exchange().expectStatus().isOk();
+        client.get().uri("/aliencolony/getAlien?name=Mork").exchange().expectStatus().isNotFound();
+    }
+}
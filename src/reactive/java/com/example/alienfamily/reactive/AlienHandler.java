@@ -0,0 +1,182 @@
+package com.example.alienfamily.reactive;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.controller.RequestLog;
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.AlienResponseEntityExceptionHandler;
+import com.example.alienfamily.exception.ErrorResponse;
+import com.example.alienfamily.service.ColonyRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handlers for the reactive endpoints, taking the same parameters and giving the same
+ * responses and errors as AlienController.
+ *
+ * Parameters are read from the query string only, not from form bodies.
+ */
+@Component
+@Profile("reactive")
+public class AlienHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlienHandler.class);
+
+    private final ReactiveAlienService alienService;
+
+    private final AlienResponseEntityExceptionHandler errors;
+
+    /**
+     * Logs a sample of the requests, see RequestLog
+     */
+    private final RequestLog requestLog;
+
+    /**
+     * Constructor for Spring autowiring
+     *
+     * @param alienService
+     * @param errors - maps Alien Exceptions to responses, as for AlienController
+     * @param sampleRate - fraction of requests logged, from alienfamily.logging.request-sample-rate
+     */
+    public AlienHandler(ReactiveAlienService alienService, AlienResponseEntityExceptionHandler errors,
+                        @Value(RequestLog.SAMPLE_RATE) double sampleRate) {
+        this.alienService = alienService;
+        this.errors = errors;
+        this.requestLog = new RequestLog(LOGGER, sampleRate);
+    }
+
+    /**
+     * @see com.example.alienfamily.controller.AlienController#start(String, String, String)
+     */
+    public Mono<ServerResponse> start(ServerRequest request) {
+        String name = required(request, "name");
+        String homePlanet = required(request, "homePlanet");
+        String colonyId = colonyId(request);
+        requestLog.info("Colony {} starting with alien {}", colonyId, name);
+        return ok(alienService.startColony(colonyId, name, homePlanet));
+    }
+
+    /**
+     * @see com.example.alienfamily.controller.AlienController#addAlien(String, String, AlienType, String, String, String)
+     */
+    public Mono<ServerResponse> addAlien(ServerRequest request) {
+        String parentName = required(request, "parentName");
+        String childName = required(request, "childName");
+        AlienType type = type(required(request, "type"));
+        String homePlanet = required(request, "homePlanet");
+        String reservation = request.queryParam("reservation").orElse(null);
+        requestLog.info("Adding alien {} as child of {}", childName, parentName);
+        return ok(alienService.addAlien(colonyId(request), parentName, childName, type, homePlanet, reservation));
+    }
+
+    /**
+     * As text, or as JSON for clients that prefer application/json
+     *
+     * @see com.example.alienfamily.controller.AlienController#getAlien(String, Long, String)
+     * @see com.example.alienfamily.controller.AlienController#getAlienJson(String, Long, String)
+     */
+    public Mono<ServerResponse> getAlien(ServerRequest request) {
+        String name = required(request, "name");
+        Long asOf = asOf(request);
+        if (wantsJson(request)) {
+            requestLog.info("Getting alien {} as JSON", name);
+            return alienService.getAlienJson(colonyId(request), name, asOf)
+                    .flatMap(json -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).syncBody(json))
+                    .onErrorResume(AlienException.class, this::error);
+        }
+        requestLog.info("Getting alien {}", name);
+        return alienService.getAlien(colonyId(request), name, asOf)
+                .flatMap(alien -> ServerResponse.ok().contentType(MediaType.TEXT_PLAIN).syncBody(alien))
+                .onErrorResume(AlienException.class, this::error);
+    }
+
+    /**
+     * @see com.example.alienfamily.controller.AlienController#updateAlien(String, String, String, String)
+     */
+    public Mono<ServerResponse> updateAlien(ServerRequest request) {
+        String oldName = required(request, "oldName");
+        String newName = required(request, "newName");
+        String newPlanet = required(request, "newPlanet");
+        requestLog.info("Updating alien {} with new name {} and new planet {}", oldName, newName, newPlanet);
+        return ok(alienService.updateAlien(colonyId(request), oldName, newName, newPlanet));
+    }
+
+    /**
+     * @see com.example.alienfamily.controller.AlienController#deleteAlien(String, String)
+     */
+    public Mono<ServerResponse> deleteAlien(ServerRequest request) {
+        String name = required(request, "name");
+        requestLog.info("Deleting alien {}", name);
+        return ok(alienService.deleteAlien(colonyId(request), name));
+    }
+
+    private Mono<ServerResponse> ok(Mono<Void> call) {
+        return call.then(ServerResponse.ok().build())
+                .onErrorResume(AlienException.class, this::error);
+    }
+
+    private Mono<ServerResponse> error(AlienException ae) {
+        ResponseEntity<ErrorResponse> response = errors.handle(ae);
+        return ServerResponse.status(response.getStatusCode())
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody(response.getBody());
+    }
+
+    /**
+     * A missing parameter is a bad request, as with @RequestParam
+     */
+    private static String required(ServerRequest request, String name) {
+        return request.queryParam(name)
+                .orElseThrow(() -> new ServerWebInputException("Required String parameter '" + name + "' is not present"));
+    }
+
+    private static String colonyId(ServerRequest request) {
+        return request.queryParam("colonyId").orElse(ColonyRegistry.DEFAULT);
+    }
+
+    /**
+     * The colony version to read as of, null for the latest
+     */
+    private static Long asOf(ServerRequest request) {
+        String asOf = request.queryParam("asOf").orElse(null);
+        try {
+            return asOf == null ? null : Long.valueOf(asOf);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Colony version " + asOf + " is not a number");
+        }
+    }
+
+    private static AlienType type(String type) {
+        try {
+            return AlienType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Unknown alien type " + type);
+        }
+    }
+
+    /**
+     * Whether the most specific type the client accepts is JSON, so clients that accept
+     * anything still get text
+     */
+    private static boolean wantsJson(ServerRequest request) {
+        List<MediaType> accept = new ArrayList<>(request.headers().accept());
+        MediaType.sortBySpecificityAndQuality(accept);
+        for (MediaType type : accept) {
+            if (type.isConcrete()) {
+                return type.isCompatibleWith(MediaType.APPLICATION_JSON);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.alienfamily.reactive;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.DELETE;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Functional routes for the colony on WebFlux and Netty, used in place of AlienController
+ * with the reactive profile.
+ *
+ * Requests are served on a few event loop threads rather than a thread each, so the number
+ * of open connections is not limited by threads. Build with the alien-family-reactive Maven
+ * profile and run with spring.profiles.active=reactive.
+ */
+@Configuration
+@Profile("reactive")
+public class AlienRouter {
+
+    /**
+     * The colony endpoints, at the same paths as AlienController
+     *
+     * @param handler
+     * @return
+     */
+    @Bean
+    public RouterFunction<ServerResponse> alienRoutes(AlienHandler handler) {
+        return route(POST("/aliencolony/start"), handler::start)
+                .andRoute(POST("/aliencolony/addAlien"), handler::addAlien)
+                .andRoute(GET("/aliencolony/getAlien"), handler::getAlien)
+                .andRoute(POST("/aliencolony/updateAlien"), handler::updateAlien)
+                .andRoute(DELETE("/aliencolony/deleteAlien"), handler::deleteAlien);
+    }
+}
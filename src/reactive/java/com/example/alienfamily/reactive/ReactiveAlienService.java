@@ -0,0 +1,157 @@
+package com.example.alienfamily.reactive;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.service.ColonyRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Non-blocking facade over the colonies, for the reactive endpoints.
+ *
+ * Reads of a colony in memory take no locks and do no I/O, so they run on the calling event
+ * loop thread with no hand off. Writes can wait for the colony lock or a log sync, and the
+ * first call to a colony can create it or bring it back from disk, so those run on a
+ * scheduler for blocking work and never hold up an event loop.
+ *
+ * Errors are signalled as Alien Exceptions, as from the Alien Service.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveAlienService {
+
+    /**
+     * Threads for calls that may block, unless alienfamily.reactive.blocking-threads is set
+     */
+    public static final int DEFAULT_BLOCKING_THREADS = 32;
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final ColonyRegistry colonies;
+
+    /**
+     * Where calls that may block are run
+     */
+    private final Scheduler blocking;
+
+    /**
+     * Constructor for Spring autowiring
+     *
+     * Blocking calls run on a fixed pool of threads, so a burst of writes queues for a thread
+     * rather than starting a thread each, as the elastic scheduler would.
+     *
+     * @param colonies
+     * @param threads - threads for calls that may block, from alienfamily.reactive.blocking-threads
+     */
+    @Autowired
+    public ReactiveAlienService(ColonyRegistry colonies,
+                                @Value("${alienfamily.reactive.blocking-threads:" + DEFAULT_BLOCKING_THREADS + "}") int threads) {
+        this(colonies, Schedulers.fromExecutorService(Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "alien-blocking-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        })));
+    }
+
+    /**
+     * Constructor, with the default number of threads for calls that may block
+     *
+     * @param colonies
+     */
+    public ReactiveAlienService(ColonyRegistry colonies) {
+        this(colonies, DEFAULT_BLOCKING_THREADS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param colonies
+     * @param blocking - where calls that may block are run
+     */
+    public ReactiveAlienService(ColonyRegistry colonies, Scheduler blocking) {
+        this.colonies = colonies;
+        this.blocking = blocking;
+    }
+
+    /**
+     * @see AlienService#startColony(String, String)
+     */
+    public Mono<Void> startColony(String colonyId, String name, String homePlanet) {
+        return write(colonyId, alienService -> {
+            alienService.startColony(name, homePlanet);
+            return null;
+        });
+    }
+
+    /**
+     * @param reservation - token of the reservation holding the parent, null for none
+     * @see AlienService#addAlien(String, String, AlienType, String, String)
+     */
+    public Mono<Void> addAlien(String colonyId, String parentName, String childName, AlienType type, String homePlanet, String reservation) {
+        return write(colonyId, alienService -> {
+            alienService.addAlien(parentName, childName, type, homePlanet, reservation);
+            return null;
+        });
+    }
+
+    /**
+     * @param asOf - colony version, null for the latest
+     * @see AlienService#getAlien(String)
+     * @see AlienService#getAlien(String, long)
+     */
+    public Mono<String> getAlien(String colonyId, String name, Long asOf) {
+        return read(colonyId, alienService -> asOf == null ? alienService.getAlien(name) : alienService.getAlien(name, asOf));
+    }
+
+    /**
+     * @param asOf - colony version, null for the latest
+     * @see AlienService#getAlienJson(String)
+     * @see AlienService#getAlienJson(String, long)
+     */
+    public Mono<byte[]> getAlienJson(String colonyId, String name, Long asOf) {
+        return read(colonyId, alienService -> asOf == null ? alienService.getAlienJson(name) : alienService.getAlienJson(name, asOf));
+    }
+
+    /**
+     * @see AlienService#updateAlien(String, String, String)
+     */
+    public Mono<Void> updateAlien(String colonyId, String oldName, String newName, String newPlanet) {
+        return write(colonyId, alienService -> {
+            alienService.updateAlien(oldName, newName, newPlanet);
+            return null;
+        });
+    }
+
+    /**
+     * @see AlienService#deleteAlien(String)
+     */
+    public Mono<Void> deleteAlien(String colonyId, String name) {
+        return write(colonyId, alienService -> {
+            alienService.deleteAlien(name);
+            return null;
+        });
+    }
+
+    /**
+     * Run a read on the caller's thread if the colony is in memory
+     */
+    private <T> Mono<T> read(String colonyId, Function<AlienService, T> call) {
+        return Mono.defer(() -> {
+            Mono<T> read = Mono.fromCallable(() -> colonies.call(colonyId, call));
+            return colonies.isLoaded(colonyId) ? read : read.subscribeOn(blocking);
+        });
+    }
+
+    private <T> Mono<T> write(String colonyId, Function<AlienService, T> call) {
+        return Mono.fromCallable(() -> colonies.call(colonyId, call)).subscribeOn(blocking);
+    }
+}
@@ -3,6 +3,8 @@ package com.example.alienfamily.alien;
 import com.example.alienfamily.exception.AlienException;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -186,6 +188,37 @@ public class AlienTest {
         assertEquals("Alien Adam has already had two children", ace.getMessage());
     }
 
+    /**
+     * Test children can be read by slot and visited, and are matched by reference
+     */
+    @Test
+    public void childSlotTest() {
+        Alien adam = Alien.initialise("Adam", AlienType.ALPHA, "Omicron");
+        Alien vexorg = adam.addChild("Vexorg", AlienType.ALPHA, "Omicron");
+        Alien braxtarg = adam.addChild("Braxtarg", AlienType.GAMMA, "Persei");
+        assertSame(adam, vexorg.getParent());
+        assertSame(vexorg, adam.getChild(1));
+        assertSame(braxtarg, adam.getChild(2));
+        assertThrows(IllegalArgumentException.class, () -> adam.getChild(3));
+
+        List<Alien> visited = new ArrayList<>();
+        adam.forEachChild(visited::add);
+        assertEquals(Arrays.asList(vexorg, braxtarg), visited);
+        braxtarg.forEachChild(visited::add);
+        assertEquals(2, visited.size());
+
+        // A different alien with a child's name is not that child
+        Alien impostor = Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+        assertTrue(adam.hasChild(vexorg));
+        assertFalse(adam.hasChild(impostor));
+        adam.removeChild(impostor);
+        assertSame(vexorg, adam.getChild(1));
+        adam.removeChild(vexorg);
+        assertNull(adam.getChild(1));
+        assertFalse(adam.hasChild(vexorg));
+        assertTrue(adam.hasChild(braxtarg));
+    }
+
     private void assertAlien(Alien alien, String expectedName, AlienType expectedType, String expectedPlanet) {
         assertEquals(expectedName, alien.getName());
         assertEquals(expectedType, alien.getType());
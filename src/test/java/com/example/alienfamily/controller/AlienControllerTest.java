@@ -2,15 +2,38 @@ package com.example.alienfamily.controller;
 
 import com.example.alienfamily.alien.AlienType;
 import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.service.ColonyDiff;
+import com.example.alienfamily.service.ColonyOpResult;
+import com.example.alienfamily.service.ColonyRegistry;
+import com.example.alienfamily.transfer.ColonyFormat;
+import com.example.alienfamily.transfer.ColonyReader;
+import com.example.alienfamily.transfer.ColonyRecord;
+import com.example.alienfamily.transfer.ColonyWriter;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -28,7 +51,7 @@ public class AlienControllerTest {
     @Test
     public void startControllerTest() {
         AlienController controller = new AlienController(alienService);
-        ResponseEntity<Void> response = controller.start("Vexorg", "Omicron");
+        ResponseEntity<Void> response = controller.start("Vexorg", "Omicron", ColonyRegistry.DEFAULT);
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
@@ -38,7 +61,7 @@ public class AlienControllerTest {
     @Test
     public void addAlienTest() {
         AlienController controller = new AlienController(alienService);
-        ResponseEntity<Void> response = controller.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Persei");
+        ResponseEntity<Void> response = controller.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Persei", null, ColonyRegistry.DEFAULT);
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
@@ -48,7 +71,7 @@ public class AlienControllerTest {
     @Test
     public void updateAlienTest() {
         AlienController controller = new AlienController(alienService);
-        ResponseEntity<Void> response = controller.updateAlien("Braxtarg", "Frank", "Grimsby");
+        ResponseEntity<Void> response = controller.updateAlien("Braxtarg", "Frank", "Grimsby", ColonyRegistry.DEFAULT);
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
@@ -59,17 +82,137 @@ public class AlienControllerTest {
     public void getAlienTest() {
         when(alienService.getAlien(anyString())).thenReturn("Some details about an alien");
         AlienController controller = new AlienController(alienService);
-        String alien = controller.getAlien("Vexorg");
+        String alien = controller.getAlien("Vexorg", null, ColonyRegistry.DEFAULT);
         assertEquals("Some details about an alien", alien);
     }
 
+    /**
+     * Test to get an alien as of an earlier version of the colony
+     */
+    @Test
+    public void getAlienAsOfTest() {
+        when(alienService.getAlien("Vexorg", 3L)).thenReturn("Some details about an alien, as it was");
+        AlienController controller = new AlienController(alienService);
+        assertEquals("Some details about an alien, as it was", controller.getAlien("Vexorg", 3L, ColonyRegistry.DEFAULT));
+    }
+
+    /**
+     * Test to compare two versions of the colony
+     */
+    @Test
+    public void diffTest() {
+        ColonyDiff diff = new ColonyDiff(3, 4, Collections.emptyList());
+        when(alienService.diff(3, 4)).thenReturn(diff);
+        AlienController controller = new AlienController(alienService);
+        assertSame(diff, controller.diff(3, 4, ColonyRegistry.DEFAULT));
+    }
+
+    /**
+     * Test to get an alien as JSON
+     */
+    @Test
+    public void getAlienJsonTest() {
+        byte[] json = "{\"name\":\"Vexorg\"}".getBytes();
+        when(alienService.getAlienJson(anyString())).thenReturn(json);
+        AlienController controller = new AlienController(alienService);
+        ResponseEntity<byte[]> response = controller.getAlienJson("Vexorg", null, ColonyRegistry.DEFAULT);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertSame(json, response.getBody());
+    }
+
     /**
      * Test to delete an alien
      */
     @Test
     public void deleteAlienTest() {
         AlienController controller = new AlienController(alienService);
-        ResponseEntity<Void> response = controller.deleteAlien("Vexorg");
+        ResponseEntity<Void> response = controller.deleteAlien("Vexorg", ColonyRegistry.DEFAULT);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    /**
+     * Test to apply a batch, and that a failed atomic batch is a bad request
+     */
+    @Test
+    public void batchTest() throws IOException {
+        byte[] ops = "[{\"op\":\"DELETE\",\"name\":\"Vexorg\"}]".getBytes(StandardCharsets.UTF_8);
+        when(alienService.applyBatch(anyList(), anyBoolean())).thenReturn(
+                Collections.singletonList(new ColonyOpResult(0, true, null)),
+                Arrays.asList(new ColonyOpResult(0, false, "Alien Vexorg not removed as it does not exist.")));
+        AlienController controller = new AlienController(alienService);
+        ResponseEntity<StreamingResponseBody> response = controller.batch(new ByteArrayInputStream(ops), false, ColonyRegistry.DEFAULT);
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals("[{\"index\":0,\"success\":true,\"error\":null}]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        response = controller.batch(new ByteArrayInputStream(ops), true, ColonyRegistry.DEFAULT);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    /**
+     * Test a lineage is streamed as newline delimited JSON
+     */
+    @Test
+    public void ancestorsTest() throws IOException {
+        when(alienService.getAncestors(anyString(), isNull(), anyInt(), anyInt())).thenReturn(visitor -> {
+            visitor.visit("Braxtarg", AlienType.ALPHA, "Persei", 1);
+            visitor.visit("Vexorg", AlienType.ALPHA, null, 2);
+            return 2;
+        });
+        AlienController controller = new AlienController(alienService);
+        ResponseEntity<StreamingResponseBody> response = controller.ancestors("Quarnix", null, Integer.MAX_VALUE, 100, ColonyRegistry.DEFAULT);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(AlienController.NDJSON, response.getHeaders().getContentType());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals("{\"name\":\"Braxtarg\",\"type\":\"ALPHA\",\"homePlanet\":\"Persei\",\"depth\":1}\n"
+                + "{\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"homePlanet\":null,\"depth\":2}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test ancestry and common ancestor queries
+     */
+    @Test
+    public void lineageIndexTest() {
+        when(alienService.isDescendant("Braxtarg", "Vexorg")).thenReturn(true);
+        when(alienService.getCommonAncestor("Braxtarg", "Proxigord")).thenReturn("Vexorg");
+        AlienController controller = new AlienController(alienService);
+        assertEquals(true, controller.isDescendant("Braxtarg", "Vexorg", ColonyRegistry.DEFAULT));
+        assertEquals("Vexorg", controller.commonAncestor("Braxtarg", "Proxigord", ColonyRegistry.DEFAULT));
+    }
+
+    /**
+     * Test an export is streamed in the format asked for, and an import is read from the body
+     */
+    @Test
+    public void transferTest() throws IOException {
+        when(alienService.exportColony(any(ColonyWriter.class))).thenAnswer(invocation -> {
+            ColonyWriter writer = invocation.getArgument(0);
+            writer.write(new ColonyRecord("Vexorg", AlienType.ALPHA, null, 0, null, 0, null, null, 0));
+            writer.end(1);
+            return 1;
+        });
+        when(alienService.importColony(any(ColonyReader.class))).thenReturn(1);
+        AlienController controller = new AlienController(alienService);
+        ResponseEntity<StreamingResponseBody> response = controller.exportColony(ColonyFormat.NDJSON, ColonyRegistry.DEFAULT);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(AlienController.NDJSON, response.getHeaders().getContentType());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertEquals("{\"id\":0,\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"childrenHad\":0}\n{\"nextId\":1}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(1, controller.importColony(ColonyFormat.NDJSON, new ByteArrayInputStream(out.toByteArray()), ColonyRegistry.DEFAULT));
+    }
+
+    /**
+     * Test a named colony is kept apart from the default one
+     */
+    @Test
+    public void colonyTest() {
+        AlienController controller = new AlienController(alienService);
+        controller.start("Vexorg", "Omicron", "omicron-7");
+        controller.addAlien("Vexorg", "Braxtarg", AlienType.BETA, "Persei", null, "omicron-7");
+        assertEquals(true, controller.isDescendant("Braxtarg", "Vexorg", "omicron-7"));
+        verifyZeroInteractions(alienService);
     }
 }
@@ -0,0 +1,71 @@
+package com.example.alienfamily.controller;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.service.ColonyOp;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test batches are read one operation at a time, and refused once they are too long
+ */
+public class BatchReaderTest {
+
+    /**
+     * Test each kind of operation is read, skipping fields it does not know
+     */
+    @Test
+    public void readTest() throws IOException {
+        List<ColonyOp> ops = read("[{\"op\":\"ADD\",\"parentName\":\"Vexorg\",\"childName\":\"Braxtarg\",\"type\":\"ALPHA\","
+                + "\"homePlanet\":null,\"reservation\":\"abc\",\"colour\":{\"shade\":[1,2]}},"
+                + "{\"op\":\"UPDATE\",\"oldName\":\"Braxtarg\",\"newName\":\"Frank\",\"newPlanet\":\"Grimsby\"},"
+                + "{\"op\":\"DELETE\",\"name\":\"Frank\"},{}]", 10);
+        assertEquals(4, ops.size());
+        ColonyOp add = ops.get(0);
+        assertEquals(ColonyOp.Op.ADD, add.getOp());
+        assertEquals("Vexorg", add.getParentName());
+        assertEquals("Braxtarg", add.getChildName());
+        assertEquals(AlienType.ALPHA, add.getType());
+        assertNull(add.getHomePlanet());
+        assertEquals("abc", add.getReservation());
+        assertEquals("Frank", ops.get(1).getNewName());
+        assertEquals("Grimsby", ops.get(1).getNewPlanet());
+        assertEquals("Frank", ops.get(2).getName());
+        // Left for the service to report as UNKNOWN_OPERATION
+        assertNull(ops.get(3).getOp());
+        assertTrue(read("[]", 10).isEmpty());
+    }
+
+    /**
+     * Test a batch over the limit, or that is not an array of operations, is INVALID_BATCH
+     */
+    @Test
+    public void invalidTest() throws IOException {
+        assertEquals(2, read("[{\"op\":\"DELETE\",\"name\":\"A\"},{\"op\":\"DELETE\",\"name\":\"B\"}]", 2).size());
+        // Refused at the third, without reading on
+        assertInvalid("[{\"op\":\"DELETE\"},{\"op\":\"DELETE\"},{\"op\":\"DELETE\"},{\"op\":");
+        assertInvalid("{\"op\":\"DELETE\",\"name\":\"A\"}");
+        assertInvalid("[{\"op\":\"DELETE\"},3]");
+        assertInvalid("[{\"op\":\"REMOVE\",\"name\":\"A\"}]");
+        assertInvalid("[{\"op\":\"ADD\",\"type\":\"OMEGA\"}]");
+        assertInvalid("[{\"op\":\"DELETE\",\"name\":[\"A\"]}]");
+        assertInvalid("[{\"op\":\"DELETE\"");
+        assertInvalid("");
+    }
+
+    private static void assertInvalid(String body) {
+        AlienValidationException e = assertThrows(AlienValidationException.class, () -> read(body, 2));
+        assertEquals(ErrorCode.INVALID_BATCH, e.getCode());
+    }
+
+    private static List<ColonyOp> read(String body, int max) throws IOException {
+        return BatchReader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), max);
+    }
+}
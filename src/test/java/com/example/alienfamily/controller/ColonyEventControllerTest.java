@@ -0,0 +1,227 @@
+package com.example.alienfamily.controller;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.service.AlienService;
+import com.example.alienfamily.service.ColonyRegistry;
+import com.example.alienfamily.store.HashColonyStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test colony events are streamed to consumers, from where they left off
+ */
+public class ColonyEventControllerTest {
+
+    /**
+     * Test a consumer hears of each change in order, from when it starts following
+     */
+    @Test
+    public void followTest() throws InterruptedException {
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        ColonyRegistry colonies = new ColonyRegistry(alienService);
+        ColonyEventController controller = new ColonyEventController(colonies, new SimpleMeterRegistry(), 2, 60, 60);
+        CapturingStream emitter = follow(controller, colonies, alienService.getEvents().getLastSequence());
+        assertEquals(1, controller.getConsumerCount());
+
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        alienService.updateAlien("Braxtarg", "Frank", "Grimsby");
+        alienService.deleteAlien("Frank");
+
+        assertEquals("ALIEN_ADDED", emitter.next());
+        assertEquals("ALIEN_RENAMED", emitter.next());
+        assertEquals("PLANET_CHANGED", emitter.next());
+        assertEquals("ALIEN_DELETED", emitter.next());
+        Map<?, ?> renamed = emitter.events.get(1);
+        assertEquals("ALIEN_RENAMED", renamed.get("type"));
+        assertEquals("Braxtarg", renamed.get("oldName"));
+        assertEquals("Frank", renamed.get("name"));
+        assertEquals("Grimsby", emitter.events.get(2).get("homePlanet"));
+        controller.close();
+    }
+
+    /**
+     * Test a consumer following from an earlier position is sent what it missed first
+     */
+    @Test
+    public void resumeTest() throws InterruptedException {
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        long started = alienService.getEvents().getLastSequence();
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.BETA, "Omicron");
+        ColonyRegistry colonies = new ColonyRegistry(alienService);
+        ColonyEventController controller = new ColonyEventController(colonies, new SimpleMeterRegistry(), 2, 60, 60);
+
+        CapturingStream emitter = follow(controller, colonies, started);
+        assertEquals("ALIEN_ADDED", emitter.next());
+        assertEquals("ALIEN_ADDED", emitter.next());
+        assertEquals("Proxigord", emitter.events.get(1).get("name"));
+        assertEquals(started + 2, ((Number) emitter.events.get(1).get("sequence")).longValue());
+
+        alienService.deleteAlien("Proxigord");
+        assertEquals("ALIEN_DELETED", emitter.next());
+        controller.close();
+    }
+
+    /**
+     * Test a consumer too slow to keep up with the event buffer is told to read the colony
+     * again and disconnected, without holding up the writers
+     */
+    @Test
+    public void slowConsumerTest() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AlienService alienService = new AlienService(new HashColonyStore(), null, registry, AlienService.DEFAULT_VERSIONS, 4);
+        alienService.startColony("Vexorg", "Omicron");
+        ColonyRegistry colonies = new ColonyRegistry(alienService);
+        ColonyEventController controller = new ColonyEventController(colonies, registry, 2, 60, 60);
+        CapturingStream emitter = follow(controller, colonies, alienService.getEvents().getLastSequence());
+        emitter.ready = false;
+
+        for (int i = 0; i < 20; i++) {
+            alienService.updateAlien("Vexorg", null, "Planet" + i);
+        }
+        emitter.drain();
+
+        String name;
+        do {
+            name = emitter.next();
+        } while (!ColonyEventController.RESYNC.equals(name));
+        // Completed and closed by the sender once the RESYNC event is sent
+        await(() -> controller.getConsumerCount() == 0);
+        assertTrue(emitter.closed);
+        assertEquals(0, alienService.getEvents().getListenerCount());
+        assertEquals(1.0, registry.get("alienfamily.events.resyncs").counter().count());
+        controller.close();
+    }
+
+    /**
+     * Test a consumer that never reads holds no sender thread, so others sharing the only one
+     * still hear of every change, and that it is disconnected once it has not read for the
+     * write timeout
+     */
+    @Test
+    public void unreadConsumerTest() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        ColonyRegistry colonies = new ColonyRegistry(alienService);
+        ColonyEventController controller = new ColonyEventController(colonies, registry, 1, 60, 500, TimeUnit.MILLISECONDS);
+        CapturingStream unread = follow(controller, colonies, alienService.getEvents().getLastSequence());
+        unread.ready = false;
+        CapturingStream reader = follow(controller, colonies, alienService.getEvents().getLastSequence());
+
+        for (int i = 0; i < 300; i++) {
+            alienService.updateAlien("Vexorg", null, "Planet" + i);
+        }
+        for (int i = 0; i < 300; i++) {
+            assertEquals("PLANET_CHANGED", reader.next());
+        }
+        assertEquals(2, controller.getConsumerCount());
+        assertFalse(unread.closed);
+
+        Thread.sleep(600);
+        alienService.updateAlien("Vexorg", null, "Omicron");
+        assertEquals("PLANET_CHANGED", reader.next());
+        await(() -> controller.getConsumerCount() == 1);
+        assertTrue(unread.closed);
+        assertTrue(unread.names.isEmpty());
+        assertEquals(1.0, registry.get("alienfamily.events.write.timeouts").counter().count());
+        controller.close();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+            Thread.sleep(10);
+        }
+    }
+
+    private static CapturingStream follow(ColonyEventController controller, ColonyRegistry colonies, long from) {
+        CapturingStream stream = new CapturingStream();
+        ColonyRegistry.Pin pin = colonies.pin(ColonyRegistry.DEFAULT);
+        controller.follow(stream, pin, pin.service().getEvents(), from);
+        return stream;
+    }
+
+    /**
+     * Records the events written to it. While not ready nothing may be written, as with a
+     * connection the consumer is not reading.
+     */
+    private static final class CapturingStream implements EventStream {
+
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final BlockingQueue<String> names = new LinkedBlockingQueue<>();
+
+        private final List<Map<?, ?>> events = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile Listener listener;
+
+        private volatile boolean ready = true;
+
+        private volatile boolean closed;
+
+        @Override
+        public void start(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void write(byte[] bytes) throws IOException {
+            assertTrue(ready, "Written while not ready");
+            String frame = new String(bytes, StandardCharsets.UTF_8);
+            int start = frame.indexOf("event:") + "event:".length();
+            int data = frame.indexOf("data:") + "data:".length();
+            events.add(MAPPER.readValue(frame.substring(data, frame.indexOf('\n', data)), Map.class));
+            names.add(frame.substring(start, frame.indexOf('\n', start)));
+        }
+
+        @Override
+        public void flush() {
+            assertTrue(ready, "Flushed while not ready");
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        /**
+         * Become ready, as a connection does once the consumer reads
+         */
+        void drain() {
+            ready = true;
+            listener.onWritable();
+        }
+
+        /**
+         * The name of the next event sent, waiting for it
+         */
+        String next() throws InterruptedException {
+            String name = names.poll(10, TimeUnit.SECONDS);
+            assertTrue(name != null, "No event sent");
+            return name;
+        }
+    }
+}
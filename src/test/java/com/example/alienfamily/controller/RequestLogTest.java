@@ -0,0 +1,61 @@
+package com.example.alienfamily.controller;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test requests are logged for the sample asked for
+ */
+public class RequestLogTest {
+
+    /**
+     * Test every request is logged at rate 1, none at rate 0, and none with INFO off
+     */
+    @Test
+    public void rateTest() {
+        Logger logger = (Logger) LoggerFactory.getLogger(RequestLogTest.class.getName() + ".rate");
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+
+        new RequestLog(logger, 1).info("Adding alien {} as child of {}", "Braxtarg", "Vexorg");
+        assertEquals(1, appender.list.size());
+        assertEquals("Adding alien Braxtarg as child of Vexorg", appender.list.get(0).getFormattedMessage());
+
+        RequestLog none = new RequestLog(logger, 0);
+        for (int i = 0; i < 100; i++) {
+            none.info("Deleting alien {}", "Vexorg");
+        }
+        assertEquals(1, appender.list.size());
+
+        logger.setLevel(Level.WARN);
+        new RequestLog(logger, 1).info("Listing aliens");
+        assertEquals(1, appender.list.size());
+        logger.detachAppender(appender);
+    }
+
+    /**
+     * Test about the fraction of requests asked for is sampled
+     */
+    @Test
+    public void sampleTest() {
+        RequestLog requestLog = new RequestLog((Logger) LoggerFactory.getLogger(RequestLogTest.class), 0.1);
+        int sampled = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (requestLog.sampled()) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 9_000 && sampled < 11_000, "Sampled " + sampled);
+
+        assertThrows(IllegalArgumentException.class, () -> new RequestLog((Logger) LoggerFactory.getLogger(RequestLogTest.class), 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new RequestLog((Logger) LoggerFactory.getLogger(RequestLogTest.class), Double.NaN));
+    }
+}
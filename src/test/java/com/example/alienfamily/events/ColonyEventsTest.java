@@ -0,0 +1,88 @@
+package com.example.alienfamily.events;
+
+import com.example.alienfamily.alien.AlienType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the event buffer
+ */
+public class ColonyEventsTest {
+
+    /**
+     * Test events are numbered in order and read from any position still in the buffer
+     */
+    @Test
+    public void readTest() {
+        ColonyEvents events = new ColonyEvents(4);
+        assertEquals(0, events.getLastSequence());
+        assertTrue(events.read(0, 10).isEmpty());
+
+        events.started("Vexorg", "Omicron");
+        events.added("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        events.renamed("Braxtarg", "Frank");
+        assertEquals(3, events.getLastSequence());
+
+        List<ColonyEvent> all = events.read(0, 10);
+        assertEquals(3, all.size());
+        ColonyEvent added = all.get(1);
+        assertEquals(2, added.getSequence());
+        assertEquals(ColonyEventType.ALIEN_ADDED, added.getType());
+        assertEquals("Braxtarg", added.getName());
+        assertEquals("Vexorg", added.getParent());
+        assertEquals(AlienType.ALPHA, added.getAlienType());
+        assertEquals("Zorg", added.getHomePlanet());
+        ColonyEvent renamed = all.get(2);
+        assertEquals("Frank", renamed.getName());
+        assertEquals("Braxtarg", renamed.getOldName());
+
+        List<ColonyEvent> page = events.read(1, 1);
+        assertEquals(1, page.size());
+        assertSame(added, page.get(0));
+        assertTrue(events.read(3, 10).isEmpty());
+        // Not yet happened
+        assertNull(events.read(4, 10));
+    }
+
+    /**
+     * Test a position whose next event has been dropped from the ring can no longer be read
+     */
+    @Test
+    public void overrunTest() {
+        ColonyEvents events = new ColonyEvents(4);
+        for (int i = 0; i < 10; i++) {
+            events.planetChanged("Vexorg", "Planet" + i);
+        }
+        // Events 7 to 10 are kept
+        assertNull(events.read(5, 10));
+        List<ColonyEvent> kept = events.read(6, 10);
+        assertEquals(4, kept.size());
+        assertEquals(7, kept.get(0).getSequence());
+        assertEquals("Planet9", kept.get(3).getHomePlanet());
+    }
+
+    /**
+     * Test listeners hear of every append until removed, and epochs differ between buffers
+     */
+    @Test
+    public void listenerTest() {
+        ColonyEvents events = new ColonyEvents(4);
+        AtomicInteger heard = new AtomicInteger();
+        Runnable listener = heard::incrementAndGet;
+        events.addListener(listener);
+        events.deleted("Vexorg");
+        events.imported();
+        assertEquals(2, heard.get());
+        assertEquals(1, events.getListenerCount());
+        events.removeListener(listener);
+        events.deleted("Braxtarg");
+        assertEquals(2, heard.get());
+        assertEquals(0, events.getListenerCount());
+
+        assertNotEquals(events.getEpoch(), new ColonyEvents(4).getEpoch());
+    }
+}
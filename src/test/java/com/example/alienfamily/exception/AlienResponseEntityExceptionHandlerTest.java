@@ -0,0 +1,75 @@
+package com.example.alienfamily.exception;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the exception handler
+ */
+public class AlienResponseEntityExceptionHandlerTest {
+
+    /**
+     * Test each type of exception is mapped to its HTTP code and counted by error code
+     */
+    @Test
+    public void handleAlienExceptionTest() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AlienResponseEntityExceptionHandler handler = new AlienResponseEntityExceptionHandler(registry);
+
+        ResponseEntity<ErrorResponse> notFound = handler.handleNotFound(new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien Mr Pants not found"));
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+        assertEquals(ErrorCode.ALIEN_NOT_FOUND, notFound.getBody().getCode());
+        assertEquals("Alien Mr Pants not found", notFound.getBody().getMessage());
+
+        assertEquals(HttpStatus.NOT_FOUND, handler.handleNotFound(new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien Mr Pants not removed as it does not exist.")).getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, handler.handleConflict(new AlienConflictException(ErrorCode.ALIEN_ALREADY_EXISTS, "Alien Vexorg already exists. Aliens must have unique names.")).getStatusCode());
+
+        ResponseEntity<ErrorResponse> quota = handler.handleConflict(new QuotaExceededException("Alien Vexorg has already had two children"));
+        assertEquals(HttpStatus.CONFLICT, quota.getStatusCode());
+        assertEquals(ErrorCode.CHILD_QUOTA_EXCEEDED, quota.getBody().getCode());
+
+        assertEquals(HttpStatus.BAD_REQUEST, handler.handleInvalid(new AlienValidationException(ErrorCode.INVALID_ALIEN, "Aliens must have a name and a type")).getStatusCode());
+
+        assertEquals(2, count(registry, "alien_not_found"));
+        assertEquals(1, count(registry, "alien_already_exists"));
+        assertEquals(1, count(registry, "child_quota_exceeded"));
+        assertEquals(1, count(registry, "invalid_alien"));
+        assertEquals(0, count(registry, "colony_not_started"));
+    }
+
+    /**
+     * Test any Alien Exception is mapped as by its own handler, for endpoints outside Spring MVC
+     */
+    @Test
+    public void handleTest() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AlienResponseEntityExceptionHandler handler = new AlienResponseEntityExceptionHandler(registry);
+        assertEquals(HttpStatus.NOT_FOUND, handler.handle(new AlienNotFoundException(ErrorCode.PARENT_NOT_FOUND, "Alien Vexorg does not exist")).getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, handler.handle(new AlienConflictException(ErrorCode.COLONY_NOT_STARTED, "The colony has not been started")).getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, handler.handle(new QuotaExceededException("Alien Vexorg has already had two children")).getStatusCode());
+
+        ResponseEntity<ErrorResponse> invalid = handler.handle(new AlienValidationException(ErrorCode.INVALID_COLONY, "Colony ids are 1 to 64 letters, digits, '-' or '_'"));
+        assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+        assertEquals(ErrorCode.INVALID_COLONY, invalid.getBody().getCode());
+        assertEquals(1, count(registry, "invalid_colony"));
+    }
+
+    /**
+     * Test Alien Exceptions do not capture a stack trace
+     */
+    @Test
+    public void stacklessTest() {
+        AlienException ae = new AlienNotFoundException(ErrorCode.ALIEN_NOT_FOUND, "Alien Mr Pants not found");
+        assertEquals(0, ae.getStackTrace().length);
+        assertEquals("Alien Mr Pants not found", ae.getMessage());
+    }
+
+    private double count(MeterRegistry registry, String cause) {
+        return registry.get("alienfamily.errors").tag("cause", cause).counter().count();
+    }
+}
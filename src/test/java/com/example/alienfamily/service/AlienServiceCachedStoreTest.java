@@ -0,0 +1,16 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.store.CachingColonyStore;
+import com.example.alienfamily.store.CompactColonyStore;
+
+/**
+ * Runs the Alien Service tests against a small cache in front of the compact colony store, so
+ * aliens are evicted as well as invalidated
+ */
+public class AlienServiceCachedStoreTest extends AlienServiceTest {
+
+    @Override
+    protected AlienService newAlienService() {
+        return new AlienService(new CachingColonyStore(new CompactColonyStore(), 4096));
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.store.CompactColonyStore;
+
+/**
+ * Runs the Alien Service tests against the compact colony store
+ */
+public class AlienServiceCompactStoreTest extends AlienServiceTest {
+
+    @Override
+    protected AlienService newAlienService() {
+        return new AlienService(new CompactColonyStore());
+    }
+}
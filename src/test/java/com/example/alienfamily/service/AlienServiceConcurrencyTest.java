@@ -0,0 +1,217 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.store.CompactColonyStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Multi-threaded stress tests for the Alien Service.
+ *
+ * Hammers a small colony from many threads and then checks the colony invariants still hold.
+ */
+public class AlienServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    /**
+     * Test that many threads racing to add to one parent only ever get two children
+     */
+    @Test
+    public void twoChildQuotaTest() throws InterruptedException {
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+
+        runConcurrently(THREADS, thread -> {
+            try {
+                alienService.addAlien("Vexorg", "Child" + thread, AlienType.ALPHA, "Omicron");
+                added.incrementAndGet();
+            } catch (AlienException ae) {
+                assertEquals("Alien Vexorg has already had two children", ae.getMessage());
+                refused.incrementAndGet();
+            }
+        });
+
+        assertEquals(2, added.get());
+        assertEquals(THREADS - 2, refused.get());
+        assertEquals(3, alienService.getAlienColony().size());
+        assertColonyInvariants(alienService);
+    }
+
+    /**
+     * Test random adds, renames, deletes and gets from many threads, then check the colony is consistent
+     */
+    @Test
+    public void mixedWorkloadTest() throws InterruptedException {
+        AlienService alienService = new AlienService();
+        alienService.startColony("A0", "Omicron");
+        AtomicInteger adds = new AtomicInteger();
+        AtomicInteger deletes = new AtomicInteger();
+        int namespace = 400;
+
+        runConcurrently(THREADS, thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 2_000; i++) {
+                String name = "A" + random.nextInt(namespace);
+                String other = "A" + random.nextInt(namespace);
+                try {
+                    switch (random.nextInt(4)) {
+                        case 0:
+                        case 1:
+                            alienService.addAlien(name, other, random.nextBoolean() ? AlienType.ALPHA : AlienType.BETA, "Omicron");
+                            adds.incrementAndGet();
+                            break;
+                        case 2:
+                            alienService.updateAlien(name, other, "Persei");
+                            break;
+                        default:
+                            if (!"A0".equals(name)) {
+                                alienService.deleteAlien(name);
+                                deletes.incrementAndGet();
+                            }
+                    }
+                    alienService.getAlien(other);
+                } catch (AlienException ae) {
+                    // Expected, lots of collisions in a small namespace
+                }
+            }
+        });
+
+        assertEquals(1 + adds.get() - deletes.get(), alienService.getAlienColony().size());
+        assertColonyInvariants(alienService);
+    }
+
+    /**
+     * Test readers never see a rename part way through, while a writer renames and moves an
+     * alien back and forth in single updates
+     */
+    @Test
+    public void snapshotReadTest() throws InterruptedException {
+        AlienService alienService = new AlienService();
+        renameWhileReading(alienService);
+        assertColonyInvariants(alienService);
+    }
+
+    /**
+     * Test the same on a compact store, whose readers read the store itself while it is renamed
+     */
+    @Test
+    public void lazySnapshotReadTest() throws InterruptedException {
+        AlienService alienService = new AlienService(new CompactColonyStore());
+        renameWhileReading(alienService);
+        for (Alien alien : alienService.getAlienColony()) {
+            assertEquals(alien.toString(), alienService.getAlien(alien.getName()));
+        }
+    }
+
+    private void renameWhileReading(AlienService alienService) throws InterruptedException {
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Omicron");
+        alienService.addAlien("Braxtarg", "Quarnix", AlienType.BETA, "Omicron");
+        AtomicInteger reads = new AtomicInteger();
+
+        runConcurrently(4, thread -> {
+            if (thread == 0) {
+                for (int i = 0; i < 5_000; i++) {
+                    alienService.updateAlien("Braxtarg", "Zorblax", "Persei");
+                    alienService.updateAlien("Zorblax", "Braxtarg", "Omicron");
+                }
+                return;
+            }
+            for (int i = 0; i < 20_000; i++) {
+                String parent = alienService.getAlien("Vexorg");
+                assertTrue(parent.contains("Child1: Braxtarg") || parent.contains("Child1: Zorblax"), parent);
+                String child = alienService.getAlien("Quarnix");
+                assertTrue(child.contains("Parent: Braxtarg") || child.contains("Parent: Zorblax"), child);
+                for (String name : new String[]{"Braxtarg", "Zorblax"}) {
+                    try {
+                        String alien = alienService.getAlien(name);
+                        assertEquals(name.equals("Braxtarg"), alien.contains("Home: Omicron"), alien);
+                        assertTrue(alien.contains("Child1: Quarnix"), alien);
+                        reads.incrementAndGet();
+                    } catch (AlienException ae) {
+                        // Renamed meanwhile
+                    }
+                }
+            }
+        });
+
+        assertTrue(reads.get() > 0);
+    }
+
+    /**
+     * Check every alien is indexed under its own name and read as it is, no alpha has had more
+     * than two children, and parent/child links agree for every alien still in the colony
+     */
+    private void assertColonyInvariants(AlienService alienService) {
+        List<Alien> colony = alienService.getAlienColony();
+        Set<String> names = new HashSet<>();
+        for (Alien alien : colony) {
+            assertTrue(names.add(alien.getName()), "Duplicate alien " + alien.getName());
+        }
+        for (Alien alien : colony) {
+            // The snapshot the service reads from must have caught up with every change
+            assertEquals(alien.toString(), alienService.getAlien(alien.getName()));
+            if (AlienType.ALPHA.equals(alien.getType())) {
+                List<Alien> children = alien.getChildren();
+                assertTrue(children.size() <= 2);
+                if (children.size() == 2) {
+                    assertNotSame(children.get(0), children.get(1));
+                }
+                for (Alien child : children) {
+                    assertSame(alien, child.getParent());
+                }
+            }
+            Alien parent = alien.getParent();
+            if (parent != null && colony.contains(parent)) {
+                assertTrue(parent.hasChild(alien.getName()), alien.getName() + " missing from parent " + parent.getName());
+            }
+        }
+    }
+
+    private interface Task {
+        void run(int thread);
+    }
+
+    /**
+     * Run the task on the given number of threads, all released at the same moment
+     */
+    private void runConcurrently(int threads, Task task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty(), "Worker failed: " + failures);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.transfer.ColonyFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static com.example.alienfamily.service.ColonyFixtures.assertError;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test aliens are given ids that outlast renames, and can be read by them
+ */
+public class AlienServiceIdTest {
+
+    /**
+     * Test ids are given out in order, kept through renames and never given out again
+     */
+    @Test
+    public void idTest() {
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.BETA, "Zorg");
+        int vexorg = alienService.getAlienId("Vexorg");
+        int braxtarg = alienService.getAlienId("Braxtarg");
+        int zelda = alienService.getAlienId("Zelda");
+        assertEquals(vexorg + 1, braxtarg);
+        assertEquals(vexorg + 2, zelda);
+        assertEquals(alienService.getAlien("Braxtarg"), alienService.getAlienById(braxtarg));
+        assertArrayEquals(alienService.getAlienJson("Braxtarg"), alienService.getAlienJsonById(braxtarg));
+
+        long before = alienService.getVersion();
+        alienService.updateAlien("Braxtarg", "Frank", "Grimsby");
+        assertEquals(braxtarg, alienService.getAlienId("Frank"));
+        assertTrue(alienService.getAlienById(braxtarg).contains("Name: Frank"));
+        assertTrue(alienService.getAlienById(braxtarg, before).contains("Name: Braxtarg"));
+        assertTrue(new String(alienService.getAlienJsonById(braxtarg, before)).contains("\"homePlanet\":\"Zorg\""));
+        // Lineage queries follow the ids, not the names
+        assertTrue(alienService.isDescendant("Zelda", "Frank"));
+        assertEquals("Frank", alienService.getCommonAncestor("Zelda", "Frank"));
+
+        alienService.deleteAlien("Zelda");
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlienById(zelda));
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlienId("Zelda"));
+        alienService.addAlien("Frank", "Zelda", AlienType.GAMMA, "Zorg");
+        assertNotEquals(zelda, alienService.getAlienId("Zelda"));
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlienById(-1));
+    }
+
+    /**
+     * Test aliens keep their ids through an export and import, and ids given out since the
+     * export are not given out again
+     */
+    @Test
+    public void importTest() throws IOException {
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        int braxtarg = alienService.getAlienId("Braxtarg");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        alienService.exportColony(ColonyFormat.NDJSON.writer(out));
+
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.BETA, "Omicron");
+        int proxigord = alienService.getAlienId("Proxigord");
+        alienService.importColony(ColonyFormat.NDJSON.reader(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(braxtarg, alienService.getAlienId("Braxtarg"));
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlienById(proxigord));
+        assertTrue(alienService.isDescendant("Braxtarg", "Vexorg"));
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.BETA, "Zorg");
+        assertTrue(alienService.getAlienId("Zelda") > proxigord);
+
+        int zelda = alienService.getAlienId("Zelda");
+
+        // A new service takes the ids as they were exported, and carries on after them
+        for (ColonyFormat format : ColonyFormat.values()) {
+            ByteArrayOutputStream export = new ByteArrayOutputStream();
+            alienService.exportColony(format.writer(export));
+            AlienService imported = new AlienService();
+            imported.importColony(format.reader(new ByteArrayInputStream(export.toByteArray())));
+            assertEquals(braxtarg, imported.getAlienId("Braxtarg"));
+            assertEquals(zelda, imported.getAlienId("Zelda"));
+            imported.addAlien("Braxtarg", "Frank", AlienType.BETA, "Zorg");
+            assertEquals(zelda + 1, imported.getAlienId("Frank"));
+        }
+
+        // Ids are unique, and each alien's comes after its parent's
+        String twice = "{\"id\":0,\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"childrenHad\":0}\n{\"id\":0,\"name\":\"Mork\",\"type\":\"ALPHA\",\"childrenHad\":0}\n";
+        checkRefused(twice);
+        String before = "{\"id\":1,\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"childrenHad\":1}\n{\"id\":0,\"name\":\"Mork\",\"type\":\"ALPHA\",\"childrenHad\":0,\"parent\":\"Vexorg\",\"slot\":1}\n";
+        checkRefused(before);
+
+        AlienService notStarted = new AlienService();
+        assertError(ErrorCode.COLONY_NOT_STARTED, () -> notStarted.getAlienById(0));
+    }
+
+    private static void checkRefused(String ndjson) {
+        AlienException e = assertThrows(AlienException.class, () -> new AlienService().importColony(ColonyFormat.NDJSON.reader(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)))));
+        assertEquals(ErrorCode.INVALID_IMPORT, e.getCode(), ndjson);
+    }
+}
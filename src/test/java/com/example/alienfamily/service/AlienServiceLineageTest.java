@@ -0,0 +1,257 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.example.alienfamily.service.ColonyFixtures.STORES;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test ancestor and descendant pages, on either store
+ */
+public class AlienServiceLineageTest {
+
+    private static final int ALL = Integer.MAX_VALUE;
+
+    /**
+     * Test descendants are walked depth first, within the depth limit and in pages
+     */
+    @Test
+    public void descendantsTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = buildColony(store.get());
+
+            assertEquals(Arrays.asList("Braxtarg:1", "Quarnix:2", "Zelda:2", "Tanqahorn:3", "Proxigord:1", "Sequanda:2"),
+                    names(alienService.getDescendants("Vexorg", null, ALL, 100)));
+            assertEquals(Arrays.asList("Braxtarg:1", "Proxigord:1"), names(alienService.getDescendants("Vexorg", null, 1, 100)));
+            assertEquals(Arrays.asList("Braxtarg:1", "Quarnix:2", "Zelda:2", "Proxigord:1", "Sequanda:2"),
+                    names(alienService.getDescendants("Vexorg", null, 2, 100)));
+            assertEquals(Arrays.asList("Tanqahorn:1"), names(alienService.getDescendants("Zelda", null, ALL, 100)));
+            assertEquals(Collections.emptyList(), names(alienService.getDescendants("Tanqahorn", null, ALL, 100)));
+
+            // Pages carry on from the last alien of the one before
+            assertEquals(Arrays.asList("Braxtarg:1", "Quarnix:2"), names(alienService.getDescendants("Vexorg", null, ALL, 2)));
+            assertEquals(Arrays.asList("Zelda:2", "Tanqahorn:3"), names(alienService.getDescendants("Vexorg", "Quarnix", ALL, 2)));
+            assertEquals(Arrays.asList("Proxigord:1", "Sequanda:2"), names(alienService.getDescendants("Vexorg", "Tanqahorn", ALL, 2)));
+            assertEquals(Collections.emptyList(), names(alienService.getDescendants("Vexorg", "Sequanda", ALL, 2)));
+            assertEquals(Arrays.asList("Sequanda:2"), names(alienService.getDescendants("Vexorg", "Proxigord", ALL, 2)));
+
+            // A deleted child leaves its slot empty, and its own children are no longer reached
+            alienService.deleteAlien("Braxtarg");
+            assertEquals(Arrays.asList("Proxigord:1", "Sequanda:2"), names(alienService.getDescendants("Vexorg", null, ALL, 100)));
+            assertEquals(Arrays.asList("Tanqahorn:1"), names(alienService.getDescendants("Zelda", null, ALL, 100)));
+        }
+    }
+
+    /**
+     * Test ancestors are walked parent first, within the depth limit and in pages
+     */
+    @Test
+    public void ancestorsTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = buildColony(store.get());
+
+            assertEquals(Arrays.asList("Zelda:1", "Braxtarg:2", "Vexorg:3"), names(alienService.getAncestors("Tanqahorn", null, ALL, 100)));
+            assertEquals(Arrays.asList("Zelda:1", "Braxtarg:2"), names(alienService.getAncestors("Tanqahorn", null, 2, 100)));
+            assertEquals(Collections.emptyList(), names(alienService.getAncestors("Vexorg", null, ALL, 100)));
+
+            assertEquals(Arrays.asList("Zelda:1"), names(alienService.getAncestors("Tanqahorn", null, ALL, 1)));
+            assertEquals(Arrays.asList("Braxtarg:2"), names(alienService.getAncestors("Tanqahorn", "Zelda", ALL, 1)));
+            assertEquals(Arrays.asList("Vexorg:3"), names(alienService.getAncestors("Tanqahorn", "Braxtarg", ALL, 5)));
+
+            // The lineage ends at a deleted ancestor, even when a new alien takes its name
+            alienService.deleteAlien("Braxtarg");
+            alienService.addAlien("Proxigord", "Braxtarg", AlienType.BETA, null);
+            assertEquals(Arrays.asList("Zelda:1"), names(alienService.getAncestors("Tanqahorn", null, ALL, 100)));
+        }
+    }
+
+    /**
+     * Test a lineage far deeper than the call stack could recurse, in pages
+     */
+    @Test
+    public void deepLineageTest() {
+        int generations = 100_000;
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = new AlienService(store.get());
+            alienService.startColony("A0", "Omicron");
+            for (int i = 1; i <= generations; i++) {
+                alienService.addAlien("A" + (i - 1), "A" + i, AlienType.ALPHA, null);
+            }
+
+            int count = 0;
+            String after = null;
+            List<String> page;
+            do {
+                page = names(alienService.getAncestors("A" + generations, after, ALL, AlienService.MAX_PAGE));
+                for (String entry : page) {
+                    count++;
+                    assertEquals("A" + (generations - count) + ":" + count, entry);
+                }
+                after = page.isEmpty() ? null : page.get(page.size() - 1).split(":")[0];
+            } while (page.size() == AlienService.MAX_PAGE);
+            assertEquals(generations, count);
+
+            int[] visited = {0};
+            alienService.getDescendants("A0", null, ALL, AlienService.MAX_PAGE).forEach((name, type, homePlanet, depth) -> {
+                visited[0]++;
+                assertEquals("A" + depth, name);
+                return true;
+            });
+            assertEquals(AlienService.MAX_PAGE, visited[0]);
+            assertEquals(Arrays.asList("A99999:99999", "A100000:100000"), names(alienService.getDescendants("A0", "A99998", ALL, 10)));
+        }
+    }
+
+    /**
+     * Test ancestry and common ancestors, across renames and deletes
+     */
+    @Test
+    public void lineageIndexTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = buildColony(store.get());
+
+            assertTrue(alienService.isDescendant("Tanqahorn", "Vexorg"));
+            assertTrue(alienService.isDescendant("Tanqahorn", "Zelda"));
+            assertFalse(alienService.isDescendant("Tanqahorn", "Proxigord"));
+            assertFalse(alienService.isDescendant("Vexorg", "Tanqahorn"));
+            assertFalse(alienService.isDescendant("Vexorg", "Vexorg"));
+            assertEquals("Braxtarg", alienService.getCommonAncestor("Tanqahorn", "Quarnix"));
+            assertEquals("Vexorg", alienService.getCommonAncestor("Tanqahorn", "Sequanda"));
+            assertEquals("Zelda", alienService.getCommonAncestor("Zelda", "Tanqahorn"));
+
+            alienService.updateAlien("Braxtarg", "Frank", null);
+            assertEquals("Frank", alienService.getCommonAncestor("Tanqahorn", "Quarnix"));
+
+            // Deleting cuts the lineage, as for ancestors
+            alienService.deleteAlien("Frank");
+            assertFalse(alienService.isDescendant("Tanqahorn", "Vexorg"));
+            assertTrue(alienService.isDescendant("Tanqahorn", "Zelda"));
+            AlienNotFoundException ae = assertThrows(AlienNotFoundException.class, () -> alienService.getCommonAncestor("Tanqahorn", "Quarnix"));
+            assertEquals(ErrorCode.NO_COMMON_ANCESTOR, ae.getCode());
+            assertThrows(AlienNotFoundException.class, () -> alienService.isDescendant("Frank", "Vexorg"));
+
+            // A new colony starts a new index
+            alienService.startColony("Vexorg", "Omicron");
+            alienService.addAlien("Vexorg", "Zelda", AlienType.ALPHA, null);
+            assertTrue(alienService.isDescendant("Zelda", "Vexorg"));
+        }
+    }
+
+    /**
+     * Test a service opened on a colony already in its store builds a lineage index that matches
+     * the one kept up to date, with deleted parents
+     */
+    @Test
+    public void rebuiltIndexTest() {
+        List<String> names = Arrays.asList("Vexorg", "Proxigord", "Zelda", "Tanqahorn", "Sequanda", "Quarnix", "Braxtarg");
+        for (Supplier<ColonyStore> stores : STORES) {
+            ColonyStore store = stores.get();
+            AlienService alienService = buildColony(store);
+            alienService.deleteAlien("Braxtarg");
+            // A new alien with a deleted alien's name is not its children's parent
+            alienService.addAlien("Proxigord", "Braxtarg", AlienType.BETA, null);
+
+            AlienService reopened = new AlienService(store);
+            for (String x : names) {
+                for (String y : names) {
+                    assertEquals(alienService.isDescendant(x, y), reopened.isDescendant(x, y), x + " below " + y);
+                }
+            }
+            assertTrue(reopened.isDescendant("Tanqahorn", "Zelda"));
+            assertFalse(reopened.isDescendant("Tanqahorn", "Vexorg"));
+            assertTrue(reopened.isDescendant("Braxtarg", "Vexorg"));
+            assertEquals("Proxigord", reopened.getCommonAncestor("Sequanda", "Braxtarg"));
+            AlienNotFoundException ae = assertThrows(AlienNotFoundException.class, () -> reopened.getCommonAncestor("Zelda", "Sequanda"));
+            assertEquals(ErrorCode.NO_COMMON_ANCESTOR, ae.getCode());
+        }
+    }
+
+    /**
+     * Test a page is walked through the version it is visited in, and nothing is held while the
+     * visitor runs, so changes made meanwhile neither wait for it nor are seen part way through
+     */
+    @Test
+    public void changeWhileVisitingTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = buildColony(store.get());
+            Lineage page = alienService.getDescendants("Vexorg", null, ALL, 100);
+            alienService.updateAlien("Quarnix", "Mork", null);
+            List<String> names = new ArrayList<>();
+            page.forEach((name, type, homePlanet, depth) -> {
+                names.add(name + ":" + depth);
+                if (name.equals("Braxtarg")) {
+                    alienService.deleteAlien("Sequanda");
+                }
+                return true;
+            });
+            // The chunk was walked before Sequanda was deleted
+            assertEquals(Arrays.asList("Braxtarg:1", "Mork:2", "Zelda:2", "Tanqahorn:3", "Proxigord:1", "Sequanda:2"), names);
+
+            // A page whose cursor has since gone ends early
+            Lineage next = alienService.getAncestors("Tanqahorn", "Zelda", ALL, 100);
+            alienService.updateAlien("Zelda", "Frank", null);
+            assertEquals(Collections.emptyList(), names(next));
+            assertEquals(Arrays.asList("Frank:1", "Braxtarg:2", "Vexorg:3"), names(alienService.getAncestors("Tanqahorn", null, ALL, 100)));
+
+            // Starting a colony does not wait for a page being visited
+            alienService.getAncestors("Tanqahorn", null, ALL, 100).forEach((name, type, homePlanet, depth) -> {
+                if (depth == 1) {
+                    alienService.startColony("Mork", "Ork");
+                }
+                return true;
+            });
+            assertEquals(1, alienService.getAlienColony().size());
+        }
+    }
+
+    /**
+     * Test unknown aliens, cursors outside the lineage and bad limits are refused before the walk
+     */
+    @Test
+    public void badPageTest() {
+        AlienService alienService = buildColony(new HashColonyStore());
+        assertThrows(AlienNotFoundException.class, () -> alienService.getAncestors("Mr Pants", null, ALL, 100));
+        assertThrows(AlienNotFoundException.class, () -> alienService.getDescendants("Mr Pants", null, ALL, 100));
+        assertThrows(AlienValidationException.class, () -> alienService.getAncestors("Tanqahorn", "Proxigord", ALL, 100));
+        assertThrows(AlienValidationException.class, () -> alienService.getAncestors("Tanqahorn", "Vexorg", 2, 100));
+        assertThrows(AlienValidationException.class, () -> alienService.getAncestors("Tanqahorn", "Tanqahorn", ALL, 100));
+        assertThrows(AlienValidationException.class, () -> alienService.getDescendants("Braxtarg", "Sequanda", ALL, 100));
+        assertThrows(AlienValidationException.class, () -> alienService.getDescendants("Vexorg", null, ALL, 0));
+        assertThrows(AlienValidationException.class, () -> alienService.getDescendants("Vexorg", null, ALL, AlienService.MAX_PAGE + 1));
+        assertThrows(AlienValidationException.class, () -> alienService.getAncestors("Vexorg", null, 0, 100));
+    }
+
+    /**
+     * Vexorg has Braxtarg and Proxigord, Braxtarg has Quarnix and Zelda, Zelda has Tanqahorn, Proxigord has Sequanda
+     */
+    private static AlienService buildColony(ColonyStore store) {
+        AlienService alienService = new AlienService(store);
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Persei");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, null);
+        alienService.addAlien("Braxtarg", "Quarnix", AlienType.BETA, null);
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.ALPHA, null);
+        alienService.addAlien("Zelda", "Tanqahorn", AlienType.BETA, null);
+        alienService.addAlien("Proxigord", "Sequanda", AlienType.GAMMA, null);
+        return alienService;
+    }
+
+    private static List<String> names(Lineage lineage) {
+        List<String> names = new ArrayList<>();
+        int visited = lineage.forEach((name, type, homePlanet, depth) -> names.add(name + ":" + depth));
+        assertEquals(names.size(), visited);
+        return names;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.example.alienfamily.service.ColonyFixtures.STORES;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test colony listings, on either store
+ */
+public class AlienServiceListTest {
+
+    /**
+     * Test each filter, alone and together
+     */
+    @Test
+    public void filterTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = buildColony(store.get());
+
+            assertEquals(Arrays.asList("Braxtarg", "Proxigord", "Quarnix", "Sequanda", "Vexorg", "Zelda"), list(alienService, null, null, null, null));
+            assertEquals(Arrays.asList("Braxtarg", "Proxigord", "Vexorg", "Zelda"), list(alienService, AlienType.ALPHA, null, null, null));
+            assertEquals(Arrays.asList("Quarnix"), list(alienService, AlienType.BETA, null, null, null));
+            assertEquals(Arrays.asList("Braxtarg", "Zelda"), list(alienService, null, "Zorg", null, null));
+            assertEquals(Arrays.asList("Proxigord", "Sequanda"), list(alienService, null, "Omicron", null, null));
+            assertEquals(Arrays.asList("Vexorg"), list(alienService, null, "Persei", null, null));
+            assertEquals(Collections.emptyList(), list(alienService, null, "Grimsby", null, null));
+            assertEquals(Arrays.asList("Proxigord", "Zelda"), list(alienService, null, null, true, null));
+            assertEquals(Arrays.asList("Braxtarg", "Quarnix", "Sequanda", "Vexorg"), list(alienService, null, null, false, null));
+            assertEquals(Arrays.asList("Zelda"), list(alienService, AlienType.ALPHA, "Zorg", true, null));
+            assertEquals(Collections.emptyList(), list(alienService, AlienType.BETA, null, true, null));
+            assertEquals(Arrays.asList("Quarnix", "Zelda"), list(alienService, null, null, null, "Braxtarg"));
+            assertEquals(Arrays.asList("Zelda"), list(alienService, AlienType.ALPHA, null, null, "Braxtarg"));
+
+            AlienPage page = alienService.listAliens(AlienType.ALPHA, "Zorg", null, null, null, 100);
+            AlienSummary braxtarg = page.getAliens().get(0);
+            assertEquals("Braxtarg", braxtarg.getName());
+            assertEquals(AlienType.ALPHA, braxtarg.getType());
+            assertEquals("Zorg", braxtarg.getHomePlanet());
+            assertEquals("Vexorg", braxtarg.getParent());
+            assertEquals(0, braxtarg.getRemainingChildSlots());
+            assertNull(page.getNext());
+        }
+    }
+
+    /**
+     * Test the indexes follow adds, renames, moves and deletes
+     */
+    @Test
+    public void changeTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = buildColony(store.get());
+
+            // Zelda's second child uses up her slots
+            alienService.addAlien("Zelda", "Tanqahorn", AlienType.GAMMA, "Zorg");
+            assertEquals(Arrays.asList("Zelda"), list(alienService, AlienType.ALPHA, "Zorg", true, null));
+            alienService.addAlien("Zelda", "Mork", AlienType.BETA, null);
+            assertEquals(Collections.emptyList(), list(alienService, AlienType.ALPHA, "Zorg", true, null));
+            assertEquals(Arrays.asList("Braxtarg", "Zelda"), list(alienService, AlienType.ALPHA, "Zorg", false, null));
+            assertEquals(Arrays.asList("Mork", "Quarnix"), list(alienService, AlienType.BETA, null, null, null));
+
+            alienService.updateAlien("Zelda", "Frank", "Grimsby");
+            assertEquals(Arrays.asList("Braxtarg", "Tanqahorn"), list(alienService, null, "Zorg", null, null));
+            assertEquals(Arrays.asList("Frank"), list(alienService, null, "Grimsby", null, null));
+            assertEquals(Arrays.asList("Braxtarg", "Frank", "Proxigord", "Vexorg"), list(alienService, AlienType.ALPHA, null, null, null));
+            alienService.updateAlien("Frank", null, "Zorg");
+            assertEquals(Arrays.asList("Braxtarg", "Frank", "Tanqahorn"), list(alienService, null, "Zorg", null, null));
+            alienService.updateAlien("Frank", "Zelda", null);
+            assertEquals(Arrays.asList("Braxtarg", "Tanqahorn", "Zelda"), list(alienService, null, "Zorg", null, null));
+
+            alienService.deleteAlien("Braxtarg");
+            assertEquals(Arrays.asList("Tanqahorn", "Zelda"), list(alienService, null, "Zorg", null, null));
+            assertEquals(Arrays.asList("Proxigord", "Vexorg", "Zelda"), list(alienService, AlienType.ALPHA, null, null, null));
+
+            alienService.startColony("Vexorg", "Omicron");
+            assertEquals(Arrays.asList("Vexorg"), list(alienService, null, null, null, null));
+            assertEquals(Collections.emptyList(), list(alienService, null, "Zorg", null, null));
+        }
+    }
+
+    /**
+     * Test a listing is paged with cursors, and a restart rebuilds the indexes
+     */
+    @Test
+    public void pageTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            ColonyStore colony = store.get();
+            AlienService alienService = new AlienService(colony);
+            alienService.startColony("A0000", "Zorg");
+            for (int i = 1; i < 1000; i++) {
+                alienService.addAlien(String.format("A%04d", (i - 1) / 2), String.format("A%04d", i), AlienType.ALPHA, i % 3 == 0 ? "Zorg" : "Omicron");
+            }
+            for (AlienService service : Arrays.asList(alienService, new AlienService(colony))) {
+                List<String> names = new ArrayList<>();
+                String after = null;
+                int pages = 0;
+                do {
+                    AlienPage page = service.listAliens(AlienType.ALPHA, "Zorg", true, null, after, 50);
+                    for (AlienSummary alien : page.getAliens()) {
+                        names.add(alien.getName());
+                    }
+                    after = page.getNext();
+                    pages++;
+                } while (after != null);
+                // Leaves are A0499 to A0999, a third of them on Zorg
+                List<String> expected = new ArrayList<>();
+                for (int i = 501; i < 1000; i += 3) {
+                    expected.add(String.format("A%04d", i));
+                }
+                assertEquals(expected, names);
+                assertEquals(4, pages);
+            }
+        }
+    }
+
+    /**
+     * Test unknown parents and bad limits are refused
+     */
+    @Test
+    public void badListTest() {
+        AlienService alienService = buildColony(new HashColonyStore());
+        assertThrows(AlienNotFoundException.class, () -> alienService.listAliens(null, null, null, "Mr Pants", null, 100));
+        assertThrows(AlienValidationException.class, () -> alienService.listAliens(null, null, null, null, null, 0));
+        assertThrows(AlienValidationException.class, () -> alienService.listAliens(null, null, null, null, null, AlienService.MAX_PAGE + 1));
+    }
+
+    /**
+     * Vexorg (Persei) has Braxtarg (Zorg) and Proxigord (Omicron), Braxtarg has Quarnix and Zelda (Zorg), Proxigord has Sequanda (Omicron)
+     */
+    private static AlienService buildColony(ColonyStore store) {
+        AlienService alienService = new AlienService(store);
+        alienService.startColony("Vexorg", "Persei");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        alienService.addAlien("Braxtarg", "Quarnix", AlienType.BETA, null);
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.ALPHA, "Zorg");
+        alienService.addAlien("Proxigord", "Sequanda", AlienType.GAMMA, "Omicron");
+        return alienService;
+    }
+
+    private static List<String> list(AlienService alienService, AlienType type, String homePlanet, Boolean freeSlots, String parent) {
+        List<String> names = new ArrayList<>();
+        for (AlienSummary alien : alienService.listAliens(type, homePlanet, freeSlots, parent, null, 100).getAliens()) {
+            names.add(alien.getName());
+        }
+        return names;
+    }
+}
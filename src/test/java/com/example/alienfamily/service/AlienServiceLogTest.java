@@ -0,0 +1,229 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienConflictException;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.CompactColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import com.example.alienfamily.transfer.ColonyFormat;
+import com.example.alienfamily.wal.ColonyLog;
+import com.example.alienfamily.wal.LogRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the colony is recovered from its log after a restart
+ */
+public class AlienServiceLogTest {
+
+    private Path directory;
+
+    private final List<ColonyLog> logs = new ArrayList<>();
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("colony-log");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        for (ColonyLog log : logs) {
+            log.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Test every kind of change is replayed, with and without checkpoints, into either store
+     */
+    @Test
+    public void recoverTest() throws IOException {
+        for (int checkpointInterval : new int[]{1_000, 3}) {
+            for (Supplier<ColonyStore> store : Arrays.<Supplier<ColonyStore>>asList(HashColonyStore::new, CompactColonyStore::new)) {
+                AlienService alienService = restart(store.get(), checkpointInterval);
+                buildColony(alienService);
+                String expected = describe(alienService);
+
+                AlienService recovered = restart(store.get(), checkpointInterval);
+                assertEquals(expected, describe(recovered));
+                // Lifetime child quotas survive too
+                assertThrows(RuntimeException.class, () -> recovered.addAlien("Vexorg", "Tanqahorn", AlienType.BETA, null));
+                recovered.addAlien("Quarnix", "Tanqahorn", AlienType.BETA, null);
+
+                AlienService again = restart(store.get(), checkpointInterval);
+                assertTrue(again.getAlien("Quarnix").contains("Tanqahorn"));
+                assertThrows(RuntimeException.class, () -> again.addAlien("Quarnix", "Sequanda", AlienType.BETA, null));
+
+                // Start afresh for the next store
+                again.startColony("Vexorg", "Omicron");
+            }
+        }
+    }
+
+    /**
+     * Test concurrent writers are all recovered
+     */
+    @Test
+    public void concurrentRecoverTest() throws Exception {
+        AlienService alienService = restart(new HashColonyStore(), 50);
+        alienService.startColony("A0", "Omicron");
+        int aliens = 1_000;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // Each generation only depends on the one before
+            for (int first = 1; first < aliens; first = first * 2 + 1) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = first; i < Math.min(aliens, first * 2 + 1); i++) {
+                    int child = i;
+                    futures.add(executor.submit(() -> alienService.addAlien("A" + ((child - 1) / 2), "A" + child, AlienType.ALPHA, "Persei")));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        AlienService recovered = restart(new HashColonyStore(), 50);
+        assertEquals(aliens, recovered.getAlienColony().size());
+        assertTrue(recovered.getAlien("A499").contains("A999"));
+    }
+
+    /**
+     * Test an import is checkpointed, and a failed import goes back to the logged colony
+     */
+    @Test
+    public void importTest() throws IOException {
+        for (Supplier<ColonyStore> store : Arrays.<Supplier<ColonyStore>>asList(HashColonyStore::new, CompactColonyStore::new)) {
+            AlienService alienService = restart(store.get(), 1_000);
+            buildColony(alienService);
+            String expected = describe(alienService);
+            ByteArrayOutputStream export = new ByteArrayOutputStream();
+            alienService.exportColony(ColonyFormat.BINARY.writer(export));
+
+            alienService.startColony("Mork", "Ork");
+            alienService.importColony(ColonyFormat.BINARY.reader(new ByteArrayInputStream(export.toByteArray())));
+            AlienService recovered = restart(store.get(), 1_000);
+            assertEquals(expected, describe(recovered));
+
+            recovered.addAlien("Quarnix", "Tanqahorn", AlienType.BETA, null);
+            String bad = "{\"id\":0,\"name\":\"Mork\",\"type\":\"ALPHA\"}\n{\"id\":1,\"name\":\"Mork\",\"type\":\"ALPHA\"}";
+            assertThrows(AlienConflictException.class, () -> recovered.importColony(ColonyFormat.NDJSON.reader(new ByteArrayInputStream(bad.getBytes(StandardCharsets.UTF_8)))));
+            assertTrue(recovered.getAlien("Quarnix").contains("Tanqahorn"));
+            assertFalse(recovered.getAlienColony().stream().anyMatch(alien -> alien.getName().equals("Mork")));
+            assertEquals(5, recovered.getAlienColony().size());
+            assertTrue(recovered.isDescendant("Tanqahorn", "Quarnix"));
+
+            // Start afresh for the next store
+            recovered.startColony("Vexorg", "Omicron");
+        }
+    }
+
+    /**
+     * Test a change that cannot be logged is not made, so nothing is seen that recovery would lose
+     */
+    @Test
+    public void unloggedChangeTest() throws IOException {
+        for (Supplier<ColonyStore> store : Arrays.<Supplier<ColonyStore>>asList(HashColonyStore::new, CompactColonyStore::new)) {
+            AlienService alienService = restart(store.get(), 1_000);
+            buildColony(alienService);
+            String expected = describe(alienService);
+            long version = alienService.getVersion();
+            logs.get(logs.size() - 1).close();
+
+            assertThrows(UncheckedIOException.class, () -> alienService.addAlien("Quarnix", "Tanqahorn", AlienType.BETA, null));
+            assertThrows(UncheckedIOException.class, () -> alienService.updateAlien("Quarnix", "Mork", "Ork"));
+            assertThrows(UncheckedIOException.class, () -> alienService.deleteAlien("Frank"));
+            assertThrows(UncheckedIOException.class, () -> alienService.startColony("Mork", "Ork"));
+            assertEquals(expected, describe(alienService));
+            assertEquals(version, alienService.getVersion());
+
+            AlienService recovered = restart(store.get(), 1_000);
+            assertEquals(expected, describe(recovered));
+            // Quarnix's child slot was not used up
+            recovered.addAlien("Quarnix", "Tanqahorn", AlienType.BETA, null);
+
+            // Start afresh for the next store
+            recovered.startColony("Vexorg", "Omicron");
+        }
+    }
+
+    /**
+     * Test an import that was logged but never checkpointed, as after a crash part way through
+     * loading it, is dropped on recovery
+     */
+    @Test
+    public void unfinishedImportTest() throws IOException {
+        AlienService alienService = restart(new HashColonyStore(), 1_000);
+        buildColony(alienService);
+        String expected = describe(alienService);
+        ColonyLog log = logs.get(logs.size() - 1);
+        log.awaitDurable(log.append(LogRecord.imported()));
+
+        AlienService recovered = restart(new HashColonyStore(), 1_000);
+        assertEquals(expected, describe(recovered));
+        recovered.addAlien("Quarnix", "Tanqahorn", AlienType.BETA, null);
+
+        AlienService again = restart(new HashColonyStore(), 1_000);
+        assertTrue(again.getAlien("Quarnix").contains("Tanqahorn"));
+    }
+
+    private void buildColony(AlienService alienService) {
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.BETA, "Persei");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        alienService.addAlien("Proxigord", "Venkagard", AlienType.GAMMA, null);
+        alienService.addAlien("Proxigord", "Zorblax", AlienType.ALPHA, "Molita");
+        alienService.addAlien("Zorblax", "Quarnix", AlienType.ALPHA, "Molita");
+        alienService.updateAlien("Proxigord", "Frank", "Grimsby");
+        alienService.deleteAlien("Braxtarg");
+        alienService.deleteAlien("Venkagard");
+        // Quarnix keeps its deleted parent, and a new alien takes the deleted parent's name
+        alienService.deleteAlien("Zorblax");
+        alienService.applyBatch(Arrays.asList(
+                ColonyOp.add("Quarnix", "Zorblax", AlienType.GAMMA, "Persei"),
+                ColonyOp.update("Quarnix", null, "Omicron")));
+    }
+
+    private String describe(AlienService alienService) {
+        StringBuilder colony = new StringBuilder();
+        for (String name : new String[]{"Vexorg", "Frank", "Zorblax", "Quarnix"}) {
+            colony.append(alienService.getAlienId(name)).append(alienService.getAlien(name)).append(new String(alienService.getAlienJson(name)));
+        }
+        return colony.append(alienService.getAlienColony().size()).toString();
+    }
+
+    private AlienService restart(ColonyStore store, int checkpointInterval) throws IOException {
+        if (!logs.isEmpty()) {
+            logs.get(logs.size() - 1).close();
+        }
+        ColonyLog log = new ColonyLog(directory, 0, checkpointInterval);
+        logs.add(log);
+        return new AlienService(store, log);
+    }
+}
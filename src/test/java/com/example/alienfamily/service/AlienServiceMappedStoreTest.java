@@ -0,0 +1,49 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.store.MappedColonyStore;
+import org.junit.jupiter.api.AfterEach;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs the Alien Service tests against the memory mapped colony store
+ */
+public class AlienServiceMappedStoreTest extends AlienServiceTest {
+
+    private final List<MappedColonyStore> stores = new ArrayList<>();
+    private final List<Path> directories = new ArrayList<>();
+
+    @Override
+    protected AlienService newAlienService() {
+        try {
+            Path directory = Files.createTempDirectory("colony");
+            MappedColonyStore store = new MappedColonyStore(directory);
+            directories.add(directory);
+            stores.add(store);
+            return new AlienService(store);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AfterEach
+    public void deleteColonies() throws IOException {
+        for (MappedColonyStore store : stores) {
+            store.close();
+        }
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.store.HashColonyStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the Alien Service timers and colony gauges
+ */
+public class AlienServiceMetricsTest {
+
+    /**
+     * Test each call is timed, including calls that fail
+     */
+    @Test
+    public void timerTest() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AlienService alienService = new AlienService(new HashColonyStore(), null, registry);
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        alienService.getAlien("Proxigord");
+        assertThrows(AlienException.class, () -> alienService.getAlien("Mr Pants"));
+        alienService.getAlienJson("Proxigord");
+        alienService.updateAlien("Proxigord", "Frank", null);
+        alienService.deleteAlien("Frank");
+        alienService.applyBatch(Arrays.asList(ColonyOp.delete("Mr Pants")));
+
+        assertEquals(1, timer(registry, "startColony"));
+        assertEquals(1, timer(registry, "addAlien"));
+        assertEquals(2, timer(registry, "getAlien"));
+        assertEquals(1, timer(registry, "getAlienJson"));
+        assertEquals(1, timer(registry, "updateAlien"));
+        assertEquals(1, timer(registry, "deleteAlien"));
+        assertEquals(1, timer(registry, "applyBatch"));
+    }
+
+    /**
+     * Test the gauges follow adds, deletes and restarts
+     */
+    @Test
+    public void gaugeTest() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AlienService alienService = new AlienService(new HashColonyStore(), null, registry);
+        assertGauges(registry, 0, 0, 0);
+
+        alienService.startColony("Vexorg", "Omicron");
+        assertGauges(registry, 1, 1, 2);
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.BETA, "Persei");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        alienService.addAlien("Proxigord", "Tanqahorn", AlienType.ALPHA, "Persei");
+        assertGauges(registry, 4, 3, 3);
+
+        // A failed add changes nothing
+        assertThrows(AlienException.class, () -> alienService.addAlien("Vexorg", "Zorblax", AlienType.ALPHA, null));
+        assertGauges(registry, 4, 3, 3);
+
+        // Proxigord's remaining slot goes with it, the slot it used stays used
+        alienService.deleteAlien("Proxigord");
+        alienService.deleteAlien("Braxtarg");
+        assertGauges(registry, 2, 2, 2);
+
+        alienService.applyBatch(Arrays.asList(ColonyOp.add("Tanqahorn", "Zorblax", AlienType.GAMMA, null)));
+        assertGauges(registry, 3, 2, 1);
+
+        alienService.startColony("Vexorg", "Omicron");
+        assertGauges(registry, 1, 1, 2);
+    }
+
+    /**
+     * Test colonies sharing a registry each have their own meters, and lose them when dropped
+     */
+    @Test
+    public void colonyTagTest() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AlienService defaultColony = new AlienService(new HashColonyStore(), null, registry);
+        AlienService omicron = new AlienService(new HashColonyStore(), null, registry,
+                AlienService.DEFAULT_VERSIONS, AlienService.DEFAULT_EVENTS, "omicron");
+        defaultColony.startColony("Vexorg", "Omicron");
+        omicron.startColony("Vexorg", "Omicron");
+        omicron.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+
+        assertEquals(0, registry.get("alienfamily.service").tag("colony", ColonyRegistry.DEFAULT).tag("method", "addAlien").timer().count());
+        assertEquals(1, registry.get("alienfamily.service").tag("colony", "omicron").tag("method", "addAlien").timer().count());
+        assertEquals(1, registry.get("alienfamily.colony.size").tag("colony", ColonyRegistry.DEFAULT).gauge().value());
+        assertEquals(2, registry.get("alienfamily.colony.size").tag("colony", "omicron").gauge().value());
+
+        omicron.removeMeters();
+        assertNull(registry.find("alienfamily.colony.size").tag("colony", "omicron").gauge());
+        assertNull(registry.find("alienfamily.service").tag("colony", "omicron").timer());
+        assertEquals(1, registry.get("alienfamily.colony.size").tag("colony", ColonyRegistry.DEFAULT).gauge().value());
+    }
+
+    private void assertGauges(MeterRegistry registry, int size, int alphas, int slots) {
+        assertEquals(size, registry.get("alienfamily.colony.size").gauge().value());
+        assertEquals(alphas, registry.get("alienfamily.colony.alphas").gauge().value());
+        assertEquals(slots, registry.get("alienfamily.colony.child.slots").gauge().value());
+    }
+
+    private long timer(MeterRegistry registry, String method) {
+        return registry.get("alienfamily.service").tag("method", method).timer().count();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.ErrorCode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.alienfamily.service.ColonyFixtures.assertError;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test growers can find and reserve parents with free child slots
+ */
+public class AlienServiceReservationTest {
+
+    /**
+     * Test only alphas with free slots are found, carrying on from where the last search stopped
+     */
+    @Test
+    public void findTest() {
+        AlienService alienService = newColony();
+        assertEquals(Arrays.asList("Braxtarg", "Proxigord"), alienService.findFreeParents(10));
+        // Carries on after the last found, round to the start
+        assertEquals(Arrays.asList("Braxtarg"), alienService.findFreeParents(1));
+        assertEquals(Arrays.asList("Proxigord", "Braxtarg"), alienService.findFreeParents(2));
+
+        // Full alphas are no longer free
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.GAMMA, "Zorg");
+        alienService.addAlien("Braxtarg", "Frank", AlienType.BETA, "Zorg");
+        assertEquals(Arrays.asList("Proxigord"), alienService.findFreeParents(10));
+
+        assertError(ErrorCode.INVALID_PAGE, () -> alienService.findFreeParents(0));
+        assertError(ErrorCode.COLONY_NOT_STARTED, () -> new AlienService().findFreeParents(1));
+    }
+
+    /**
+     * Test reserved parents are handed to one grower only, and only take children added with
+     * its reservation
+     */
+    @Test
+    public void reserveTest() {
+        AlienService alienService = newColony();
+        ParentReservation first = alienService.reserveParents(1, 60_000);
+        ParentReservation second = alienService.reserveParents(2, 60_000);
+        assertEquals(Arrays.asList("Braxtarg"), first.getParents());
+        assertEquals(Arrays.asList("Proxigord"), second.getParents());
+        assertNotEquals(first.getToken(), second.getToken());
+        assertTrue(alienService.findFreeParents(10).isEmpty());
+        assertTrue(alienService.reserveParents(1, 60_000).getParents().isEmpty());
+
+        assertError(ErrorCode.PARENT_RESERVED, () -> alienService.addAlien("Braxtarg", "Zelda", AlienType.GAMMA, "Zorg"));
+        assertError(ErrorCode.PARENT_RESERVED, () -> alienService.addAlien("Braxtarg", "Zelda", AlienType.GAMMA, "Zorg", second.getToken()));
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.GAMMA, "Zorg", first.getToken());
+        alienService.addAlien("Braxtarg", "Frank", AlienType.GAMMA, "Zorg", first.getToken());
+        assertEquals(6, alienService.getColonySize());
+
+        assertError(ErrorCode.INVALID_RESERVATION, () -> alienService.reserveParents(1, 0));
+        assertError(ErrorCode.INVALID_RESERVATION, () -> alienService.reserveParents(1, AlienService.MAX_RESERVATION + 1));
+        assertError(ErrorCode.INVALID_PAGE, () -> alienService.reserveParents(AlienService.MAX_PAGE + 1, 1000));
+    }
+
+    /**
+     * Test reservations lapse, and a renamed parent is released
+     */
+    @Test
+    public void expiryTest() throws InterruptedException {
+        AlienService alienService = newColony();
+        ParentReservation lapsing = alienService.reserveParents(3, 1);
+        assertEquals(2, lapsing.getParents().size());
+        Thread.sleep(20);
+        assertEquals(2, alienService.findFreeParents(10).size());
+        alienService.addAlien("Braxtarg", "Zelda", AlienType.GAMMA, "Zorg");
+
+        assertEquals(2, alienService.reserveParents(3, 60_000).getParents().size());
+        alienService.updateAlien("Proxigord", "Tanqahorn", null);
+        assertEquals(Arrays.asList("Tanqahorn"), alienService.findFreeParents(10));
+        alienService.addAlien("Tanqahorn", "Frank", AlienType.BETA, "Zorg");
+    }
+
+    /**
+     * Test batches honour reservations, and an atomic batch adding to a reserved parent is not applied
+     */
+    @Test
+    public void batchTest() {
+        AlienService alienService = newColony();
+        ParentReservation reservation = alienService.reserveParents(1, 60_000);
+        assertEquals(Arrays.asList("Braxtarg"), reservation.getParents());
+
+        List<ColonyOp> ops = new ArrayList<>();
+        ops.add(ColonyOp.add("Proxigord", "Zelda", AlienType.GAMMA, "Zorg"));
+        ops.add(ColonyOp.add("Braxtarg", "Frank", AlienType.GAMMA, "Zorg"));
+        List<ColonyOpResult> results = alienService.applyBatch(ops, true);
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(4, alienService.getColonySize());
+
+        ops.get(1).setReservation(reservation.getToken());
+        results = alienService.applyBatch(ops, true);
+        assertTrue(results.get(1).isSuccess());
+        assertEquals(6, alienService.getColonySize());
+    }
+
+    /**
+     * Vexorg with alphas Braxtarg and Proxigord, and Proxigord's beta Venkagard, leaving
+     * Braxtarg and Proxigord with free slots
+     */
+    private static AlienService newColony() {
+        AlienService alienService = new AlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Zorg");
+        alienService.addAlien("Proxigord", "Venkagard", AlienType.BETA, "Zorg");
+        return alienService;
+    }
+}
@@ -4,6 +4,9 @@ import com.example.alienfamily.alien.AlienType;
 import com.example.alienfamily.exception.AlienException;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -11,6 +14,15 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class AlienServiceTest {
 
+    /**
+     * Create the service under test, subclasses override to test other colony stores
+     *
+     * @return
+     */
+    protected AlienService newAlienService() {
+        return new AlienService();
+    }
+
     /**
      * Test to ensure colony can only be started with a new alien with a non-null name
      *
@@ -18,7 +30,7 @@ public class AlienServiceTest {
      */
     @Test
     public void startColonyTest() {
-        AlienService alienService = new AlienService();
+        AlienService alienService = newAlienService();
         AlienException ae = assertThrows(AlienException.class, () -> {
            alienService.addAlien(null, null, null, null);
         });
@@ -54,7 +66,7 @@ public class AlienServiceTest {
     @Test
     public void retrieveAlienTest() {
         // Create multi-generational Alien Colony
-        AlienService alienService = new AlienService();
+        AlienService alienService = newAlienService();
         alienService.startColony("Vexorg", "Omicron");
         alienService.addAlien("Vexorg", "Braxtarg", AlienType.BETA, "Persei");
         alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
@@ -67,6 +79,8 @@ public class AlienServiceTest {
         assertTrue(tanqahorn.contains("Tanqahorn") && tanqahorn.contains("Proxigord") && tanqahorn.contains("ALPHA") && tanqahorn.contains("Persei"));
         String venkagard = alienService.getAlien("Venkagard");
         assertTrue(venkagard.contains("Venkagard") && venkagard.contains("Proxigord") && venkagard.contains("GAMMA") && venkagard.contains("Molita"));
+        String proxigord = new String(alienService.getAlienJson("Proxigord"));
+        assertEquals("{\"name\":\"Proxigord\",\"type\":\"ALPHA\",\"homePlanet\":\"Omicron\",\"parent\":\"Vexorg\",\"children\":[\"Venkagard\",\"Tanqahorn\"]}", proxigord);
     }
 
     /**
@@ -82,7 +96,7 @@ public class AlienServiceTest {
      */
     @Test
     public void addAlienTest() {
-        AlienService alienService = new AlienService();
+        AlienService alienService = newAlienService();
         alienService.startColony("Vexorg", "Omicron");
         AlienException ae = assertThrows(AlienException.class, () -> {
             alienService.addAlien(null, null, null, null);
@@ -125,7 +139,7 @@ public class AlienServiceTest {
     @Test
     public void updateAlienTest() {
         // Create multi-generational Alien Colony
-        AlienService alienService = new AlienService();
+        AlienService alienService = newAlienService();
         alienService.startColony("Vexorg", "Omicron");
         alienService.addAlien("Vexorg", "Braxtarg", AlienType.BETA, "Persei");
         alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
@@ -165,7 +179,7 @@ public class AlienServiceTest {
      */
     @Test
     public void deleteAlienTest() {
-        AlienService alienService = new AlienService();
+        AlienService alienService = newAlienService();
         alienService.startColony("Vexorg", "Omicron");
 
         // delete First alien and try to add another
@@ -209,4 +223,93 @@ public class AlienServiceTest {
         String venkagard = alienService.getAlien("Venkagard");
         assertTrue(venkagard.contains("Venkagard") && venkagard.contains("Proxigord"));
     }
+
+    /**
+     * Test for deleting an alien whose parent has already been deleted
+     *
+     * Check the orphan can still be deleted and its siblings keep their deleted parent record
+     */
+    @Test
+    public void deleteOrphanTest() {
+        AlienService alienService = newAlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        alienService.addAlien("Proxigord", "Venkagard", AlienType.GAMMA, "Molita");
+        alienService.addAlien("Proxigord", "Tanqahorn", AlienType.ALPHA, "Persei");
+
+        alienService.deleteAlien("Proxigord");
+        assertDoesNotThrow(() -> alienService.deleteAlien("Tanqahorn"));
+        assertEquals(2, alienService.getAlienColony().size());
+        AlienException ae = assertThrows(AlienException.class, () -> alienService.getAlien("Tanqahorn"));
+        assertEquals("Alien Tanqahorn not found", ae.getMessage());
+        String venkagard = alienService.getAlien("Venkagard");
+        assertTrue(venkagard.contains("Venkagard") && venkagard.contains("Proxigord"));
+    }
+
+    /**
+     * Test for applying a batch of operations
+     *
+     * Check operations apply in order, later operations see earlier ones, and failures are reported and skipped
+     */
+    @Test
+    public void applyBatchTest() {
+        AlienService alienService = newAlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        List<ColonyOpResult> results = alienService.applyBatch(Arrays.asList(
+                ColonyOp.add("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron"),
+                ColonyOp.add("Proxigord", "Venkagard", AlienType.GAMMA, "Molita"),
+                ColonyOp.add("Mr Pants", "Braxtarg", AlienType.BETA, "Persei"),
+                ColonyOp.update("Proxigord", "Frank", "Grimsby"),
+                ColonyOp.delete("Venkagard")));
+
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isSuccess() && results.get(1).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+        assertEquals("Alien Mr Pants does not exist, Child not added.", results.get(2).getError());
+        assertTrue(results.get(3).isSuccess() && results.get(4).isSuccess());
+        assertEquals(2, alienService.getAlienColony().size());
+        String frank = alienService.getAlien("Frank");
+        assertTrue(frank.contains("Grimsby") && !frank.contains("Venkagard"));
+    }
+
+    /**
+     * Test for all-or-nothing batches
+     *
+     * Check nothing is applied if any operation would fail, including the two child rule across the batch
+     */
+    @Test
+    public void applyAtomicBatchTest() {
+        AlienService alienService = newAlienService();
+        alienService.startColony("Vexorg", "Omicron");
+        List<ColonyOpResult> results = alienService.applyBatch(Arrays.asList(
+                ColonyOp.add("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron"),
+                ColonyOp.add("Vexorg", "Braxtarg", AlienType.BETA, "Persei"),
+                ColonyOp.delete("Braxtarg"),
+                ColonyOp.add("Vexorg", "Tanqahorn", AlienType.ALPHA, "Persei")), true);
+
+        assertEquals(4, results.size());
+        assertFalse(results.get(3).isSuccess());
+        assertEquals("Alien Vexorg has already had two children", results.get(3).getError());
+        assertFalse(results.get(0).isSuccess());
+        assertEquals("Not applied, operation 3 failed", results.get(0).getError());
+        assertEquals(1, alienService.getAlienColony().size());
+
+        results = alienService.applyBatch(Arrays.asList(
+                ColonyOp.add("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron"),
+                ColonyOp.update("Proxigord", "Frank", null),
+                ColonyOp.add("Frank", "Braxtarg", AlienType.BETA, "Persei"),
+                ColonyOp.add("Braxtarg", "Tanqahorn", AlienType.ALPHA, "Persei")), true);
+        assertEquals("Only Alpha aliens can reproduce. Braxtarg is of type BETA", results.get(3).getError());
+        assertEquals(1, alienService.getAlienColony().size());
+
+        results = alienService.applyBatch(Arrays.asList(
+                ColonyOp.add("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron"),
+                ColonyOp.update("Proxigord", "Frank", null),
+                ColonyOp.add("Frank", "Braxtarg", AlienType.BETA, "Persei")), true);
+        for (ColonyOpResult result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(3, alienService.getAlienColony().size());
+        assertTrue(alienService.getAlien("Braxtarg").contains("Frank"));
+    }
 }
@@ -0,0 +1,258 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienConflictException;
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.exception.QuotaExceededException;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import com.example.alienfamily.transfer.ColonyFormat;
+import com.example.alienfamily.transfer.ColonyRecord;
+import com.example.alienfamily.transfer.ColonyWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static com.example.alienfamily.service.ColonyFixtures.STORES;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test colony export and import, in each format and between either store
+ */
+public class AlienServiceTransferTest {
+
+    private static final String[] NAMES = {"Vexorg", "Frank", "Zorblax", "Quarnix", "Tanqahorn"};
+
+    /**
+     * Test a colony comes back the same, with deleted parents and lifetime child counts
+     */
+    @Test
+    public void roundTripTest() throws IOException {
+        for (ColonyFormat format : ColonyFormat.values()) {
+            for (Supplier<ColonyStore> from : STORES) {
+                for (Supplier<ColonyStore> to : STORES) {
+                    AlienService alienService = buildColony(from.get());
+                    byte[] export = export(alienService, format);
+
+                    AlienService imported = new AlienService(to.get());
+                    imported.startColony("Mork", "Ork");
+                    assertEquals(5, imported.importColony(format.reader(new ByteArrayInputStream(export))));
+                    assertEquals(describe(alienService), describe(imported));
+                    assertArrayEquals(export, export(imported, format));
+                    assertFalse(imported.isDescendant("Quarnix", "Frank"));
+                    assertEquals("Quarnix", imported.getCommonAncestor("Quarnix", "Tanqahorn"));
+                    assertEquals(Arrays.asList("Tanqahorn"), names(imported.listAliens(AlienType.ALPHA, null, true, null, null, 100)));
+
+                    // Lifetime child quotas come too
+                    assertThrows(QuotaExceededException.class, () -> imported.addAlien("Vexorg", "Mork", AlienType.BETA, null));
+                    imported.addAlien("Tanqahorn", "Mork", AlienType.BETA, null);
+                    assertTrue(imported.isDescendant("Mork", "Quarnix"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test every alien is exported after its live parent
+     */
+    @Test
+    public void parentsFirstTest() throws IOException {
+        AlienService alienService = new AlienService();
+        alienService.startColony("A0", "Omicron");
+        // Each alien is born to a random alpha that can still have children
+        Random random = new Random(42);
+        List<String> parents = new ArrayList<>(Collections.singletonList("A0"));
+        Map<String, Integer> children = new HashMap<>();
+        for (int i = 1; i < 200; i++) {
+            String parent = parents.get(random.nextInt(parents.size()));
+            alienService.addAlien(parent, "A" + i, AlienType.ALPHA, null);
+            if (children.merge(parent, 1, Integer::sum) == 2) {
+                parents.remove(parent);
+            }
+            parents.add("A" + i);
+        }
+        String[] lines = new String(export(alienService, ColonyFormat.NDJSON), StandardCharsets.UTF_8).split("\n");
+        assertEquals(201, lines.length);
+        assertEquals("{\"nextId\":200}", lines[200]);
+        Set<String> seen = new HashSet<>();
+        for (String line : Arrays.asList(lines).subList(0, 200)) {
+            int parent = line.indexOf("\"parent\":\"");
+            if (parent >= 0) {
+                assertTrue(seen.contains(line.substring(parent + 10, line.indexOf('"', parent + 10))), line);
+            }
+            int name = line.indexOf("\"name\":\"") + 8;
+            seen.add(line.substring(name, line.indexOf('"', name)));
+        }
+    }
+
+    /**
+     * Test an import that breaks the colony's rules is refused and leaves the colony empty
+     */
+    @Test
+    public void badImportTest() {
+        String vexorg = "{\"id\":0,\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"childrenHad\":1}\n";
+        checkRefused(AlienConflictException.class, ErrorCode.ALIEN_ALREADY_EXISTS, vexorg + vexorg.replace("\"id\":0", "\"id\":1"));
+        checkRefused(AlienNotFoundException.class, ErrorCode.PARENT_NOT_FOUND, "{\"id\":1,\"name\":\"Zelda\",\"type\":\"BETA\",\"childrenHad\":0,\"parent\":\"Vexorg\",\"slot\":1}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT,
+                vexorg + "{\"id\":1,\"name\":\"Zelda\",\"type\":\"BETA\",\"childrenHad\":0,\"parent\":\"Vexorg\",\"slot\":2}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT,
+                vexorg + "{\"id\":1,\"name\":\"Zelda\",\"type\":\"BETA\",\"parent\":\"Vexorg\",\"slot\":1}{\"id\":2,\"name\":\"Quarnix\",\"type\":\"BETA\",\"parent\":\"Vexorg\",\"slot\":1}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT, "{\"id\":0,\"name\":\"Zelda\",\"type\":\"BETA\",\"childrenHad\":1}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_ALIEN, "{\"id\":0,\"name\":\"Zelda\"}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT, "{\"id\":0,\"name\":\"Zelda\",\"type\":\"DELTA\"}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT, vexorg + "{\"name\":\"Zel");
+        // Every alien has an id, and the export ends with the next id
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT, "{\"name\":\"Vexorg\",\"type\":\"ALPHA\",\"childrenHad\":0}\n{\"nextId\":1}");
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT, vexorg);
+        checkRefused(AlienValidationException.class, ErrorCode.INVALID_IMPORT, "[]");
+    }
+
+    /**
+     * Test a truncated binary export is refused
+     */
+    @Test
+    public void truncatedBinaryTest() throws IOException {
+        byte[] export = export(buildColony(new HashColonyStore()), ColonyFormat.BINARY);
+        AlienService alienService = new AlienService();
+        AlienValidationException e = assertThrows(AlienValidationException.class,
+                () -> alienService.importColony(ColonyFormat.BINARY.reader(new ByteArrayInputStream(Arrays.copyOf(export, export.length - 3)))));
+        assertEquals(ErrorCode.INVALID_IMPORT, e.getCode());
+        assertEquals(0, alienService.getColonySize());
+        assertThrows(AlienValidationException.class,
+                () -> alienService.importColony(ColonyFormat.BINARY.reader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}))));
+    }
+
+    private static void checkRefused(Class<? extends AlienException> type, ErrorCode code, String ndjson) {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = new AlienService(store.get());
+            alienService.startColony("Mork", "Ork");
+            AlienException e = assertThrows(type, () -> alienService.importColony(ColonyFormat.NDJSON.reader(
+                    new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)))));
+            assertEquals(code, e.getCode(), ndjson);
+            assertEquals(0, alienService.getColonySize());
+            assertEquals(0, alienService.getAlphaCount());
+            assertEquals(0, alienService.getRemainingChildSlots());
+        }
+    }
+
+    /**
+     * Test an export is written from the colony as it was when it started, without holding up
+     * writes made while it streams, on either store
+     */
+    @Test
+    public void exportWhileWritingTest() throws Exception {
+        for (Supplier<ColonyStore> store : STORES) {
+            // Without earlier versions, so the export's version is only kept as it holds it
+            AlienService alienService = buildColony(new AlienService(store.get(), null, new SimpleMeterRegistry(), 0, AlienService.DEFAULT_EVENTS));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ColonyWriter ndjson = ColonyFormat.NDJSON.writer(out);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                alienService.exportColony(new ColonyWriter() {
+                    @Override
+                    public void write(ColonyRecord record) throws IOException {
+                        if ("Vexorg".equals(record.getName())) {
+                            try {
+                                executor.submit(() -> {
+                                    alienService.updateAlien("Quarnix", null, "Persei");
+                                    alienService.deleteAlien("Quarnix");
+                                    alienService.addAlien("Tanqahorn", "Mork", AlienType.BETA, null);
+                                }).get(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                                throw new AssertionError("Writes waited for the export", e);
+                            }
+                        }
+                        ndjson.write(record);
+                    }
+
+                    @Override
+                    public void end(int nextId) throws IOException {
+                        ndjson.end(nextId);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        ndjson.flush();
+                    }
+                });
+            } finally {
+                executor.shutdown();
+            }
+            String export = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            assertTrue(export.contains("\"name\":\"Quarnix\""), export);
+            assertFalse(export.contains("Mork"), export);
+
+            // A deleted parent is exported with its details as they were when it was deleted
+            export = new String(export(alienService, ColonyFormat.NDJSON), StandardCharsets.UTF_8);
+            assertTrue(export.contains("\"name\":\"Tanqahorn\",\"type\":\"ALPHA\",\"childrenHad\":1,\"parent\":\"Quarnix\",\"parentType\":\"ALPHA\",\"parentHomePlanet\":\"Persei\""), export);
+        }
+    }
+
+    /**
+     * Vexorg has Frank, renamed, and a deleted child. Both of Frank's children are deleted, but
+     * Quarnix, child of one of them, keeps its deleted parent, whose name its own child Zorblax
+     * now has. Quarnix also has Tanqahorn.
+     */
+    private static AlienService buildColony(ColonyStore store) {
+        return buildColony(new AlienService(store));
+    }
+
+    private static AlienService buildColony(AlienService alienService) {
+        alienService.startColony("Vexorg", "Omicron");
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.BETA, "Persei");
+        alienService.addAlien("Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        alienService.addAlien("Proxigord", "Venkagard", AlienType.GAMMA, null);
+        alienService.addAlien("Proxigord", "Zorblax", AlienType.ALPHA, "Molita");
+        alienService.addAlien("Zorblax", "Quarnix", AlienType.ALPHA, "Molita");
+        alienService.updateAlien("Proxigord", "Frank", "Grimsby");
+        alienService.deleteAlien("Braxtarg");
+        alienService.deleteAlien("Venkagard");
+        // Quarnix keeps its deleted parent, and a new alien takes the deleted parent's name
+        alienService.deleteAlien("Zorblax");
+        alienService.addAlien("Quarnix", "Zorblax", AlienType.GAMMA, "Persei");
+        alienService.addAlien("Quarnix", "Tanqahorn", AlienType.ALPHA, null);
+        return alienService;
+    }
+
+    private static String describe(AlienService alienService) {
+        StringBuilder colony = new StringBuilder();
+        for (String name : NAMES) {
+            colony.append(alienService.getAlien(name)).append(new String(alienService.getAlienJson(name), StandardCharsets.UTF_8));
+        }
+        return colony.append(alienService.getColonySize())
+                .append(alienService.getAlphaCount())
+                .append(alienService.getRemainingChildSlots()).toString();
+    }
+
+    private static byte[] export(AlienService alienService, ColonyFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        alienService.exportColony(format.writer(out));
+        return out.toByteArray();
+    }
+
+    private static List<String> names(AlienPage page) {
+        return Arrays.asList(page.getAliens().stream().map(AlienSummary::getName).toArray(String[]::new));
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.CompactColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.example.alienfamily.service.ColonyFixtures.STORES;
+import static com.example.alienfamily.service.ColonyFixtures.assertError;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test reads as of earlier versions of the colony, and comparing versions, on either store
+ */
+public class AlienServiceVersionTest {
+
+    /**
+     * Test each change is a version, and aliens read as of a version are as they were then
+     */
+    @Test
+    public void asOfTest() {
+        AlienService alienService = new AlienService();
+        assertEquals(1, alienService.getVersion());
+        alienService.startColony("Vexorg", "Omicron");
+        long started = alienService.getVersion();
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        long added = alienService.getVersion();
+        alienService.updateAlien("Braxtarg", "Frank", "Grimsby");
+        long renamed = alienService.getVersion();
+        alienService.deleteAlien("Frank");
+        long deleted = alienService.getVersion();
+        assertEquals(started + 3, deleted);
+
+        assertFalse(alienService.getAlien("Vexorg", started).contains("Child1"));
+        assertTrue(alienService.getAlien("Vexorg", added).contains("Child1: Braxtarg"));
+        assertTrue(alienService.getAlien("Vexorg", renamed).contains("Child1: Frank"));
+        assertFalse(alienService.getAlien("Vexorg", deleted).contains("Child1"));
+        assertTrue(alienService.getAlien("Braxtarg", added).contains("Home: Zorg"));
+        assertTrue(alienService.getAlien("Frank", renamed).contains("Home: Grimsby"));
+        assertEquals("{\"name\":\"Braxtarg\",\"type\":\"ALPHA\",\"homePlanet\":\"Zorg\",\"parent\":\"Vexorg\",\"children\":[]}",
+                new String(alienService.getAlienJson("Braxtarg", added)));
+
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlien("Braxtarg", renamed));
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlien("Frank", deleted));
+        assertError(ErrorCode.COLONY_NOT_STARTED, () -> alienService.getAlien("Vexorg", 0));
+        assertError(ErrorCode.VERSION_NOT_FOUND, () -> alienService.getAlien("Vexorg", deleted + 1));
+        assertError(ErrorCode.VERSION_NOT_FOUND, () -> alienService.getAlien("Vexorg", -1));
+
+        // Failed changes are not versions
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.deleteAlien("Mr Pants"));
+        assertEquals(deleted, alienService.getVersion());
+    }
+
+    /**
+     * Test only the configured number of earlier versions are kept
+     */
+    @Test
+    public void retainedTest() {
+        AlienService alienService = new AlienService(new HashColonyStore(), null, new SimpleMeterRegistry(), 3, AlienService.DEFAULT_EVENTS);
+        alienService.startColony("Vexorg", "Omicron");
+        for (int i = 0; i < 10; i++) {
+            alienService.updateAlien("Vexorg", null, "Planet" + i);
+        }
+        long version = alienService.getVersion();
+        assertEquals(version - 3, alienService.getOldestVersion());
+        assertTrue(alienService.getAlien("Vexorg", version - 3).contains("Home: Planet6"));
+        assertError(ErrorCode.VERSION_NOT_FOUND, () -> alienService.getAlien("Vexorg", version - 4));
+
+        AlienService unversioned = new AlienService(new HashColonyStore(), null, new SimpleMeterRegistry(), 0, AlienService.DEFAULT_EVENTS);
+        unversioned.startColony("Vexorg", "Omicron");
+        long latest = unversioned.getVersion();
+        assertEquals(latest, unversioned.getOldestVersion());
+        assertTrue(unversioned.getAlien("Vexorg", latest).contains("Home: Omicron"));
+        assertError(ErrorCode.VERSION_NOT_FOUND, () -> unversioned.getAlien("Vexorg", latest - 1));
+    }
+
+    /**
+     * Test a diff lists each alien that differs, in name order, and nothing that was put back
+     */
+    @Test
+    public void diffTest() {
+        for (Supplier<ColonyStore> store : STORES) {
+            AlienService alienService = new AlienService(store.get());
+            alienService.startColony("Vexorg", "Omicron");
+            alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+            alienService.addAlien("Braxtarg", "Zelda", AlienType.BETA, "Zorg");
+            long from = alienService.getVersion();
+            alienService.updateAlien("Braxtarg", "Frank", null);
+            alienService.updateAlien("Vexorg", null, "Persei");
+            alienService.updateAlien("Vexorg", null, "Omicron");
+            alienService.addAlien("Vexorg", "Proxigord", AlienType.BETA, "Omicron");
+            long to = alienService.getVersion();
+
+            ColonyDiff diff = alienService.diff(from, to);
+            assertEquals(from, diff.getFrom());
+            assertEquals(to, diff.getTo());
+            assertEquals(Arrays.asList("Frank", "Proxigord", "Vexorg", "Zelda"), names(diff));
+            // Braxtarg was renamed, which is one change to the same alien
+            AlienChange frank = diff.getChanges().get(0);
+            assertEquals(alienService.getAlienId("Frank"), frank.getId());
+            assertEquals("Braxtarg", frank.getBefore().getName());
+            assertEquals("Frank", frank.getAfter().getName());
+            assertEquals("Zorg", frank.getAfter().getHomePlanet());
+            AlienChange proxigord = diff.getChanges().get(1);
+            assertNull(proxigord.getBefore());
+            assertEquals("Frank", diff.getChanges().get(3).getAfter().getParent());
+            // Vexorg is back on Omicron, but has a new child so has still changed
+            assertEquals(1, diff.getChanges().get(2).getBefore().getRemainingChildSlots());
+            assertEquals(0, diff.getChanges().get(2).getAfter().getRemainingChildSlots());
+
+            // Backwards, every change is reversed
+            ColonyDiff back = alienService.diff(to, from);
+            assertEquals(names(diff).subList(1, 4), names(back).subList(1, 4));
+            assertEquals("Braxtarg", back.getChanges().get(0).getName());
+            assertNull(back.getChanges().get(1).getAfter());
+
+            // A planet moved and moved back is no change
+            assertTrue(alienService.diff(to - 3, to - 1).getChanges().isEmpty());
+            assertTrue(alienService.diff(to, to).getChanges().isEmpty());
+            assertError(ErrorCode.VERSION_NOT_FOUND, () -> alienService.diff(from, to + 1));
+        }
+    }
+
+    /**
+     * Test a compact store's versions are read from the store and the changes kept, which are
+     * only held for as long as a version reads them
+     */
+    @Test
+    public void lazyVersionsTest() {
+        AlienService alienService = new AlienService(new CompactColonyStore(), null, new SimpleMeterRegistry(), 3, AlienService.DEFAULT_EVENTS);
+        alienService.startColony("Vexorg", "Omicron");
+        long started = alienService.getVersion();
+        alienService.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        alienService.updateAlien("Braxtarg", "Frank", "Grimsby");
+        long renamed = alienService.getVersion();
+        assertEquals(started, alienService.getOldestVersion());
+        assertFalse(alienService.getAlien("Vexorg", started).contains("Child1"));
+        assertTrue(alienService.getAlien("Braxtarg", started + 1).contains("Home: Zorg"));
+        assertTrue(alienService.getAlien("Vexorg", renamed).contains("Child1: Frank"));
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> alienService.getAlien("Frank", started + 1));
+        // Versions from before the colony was started are not kept
+        assertError(ErrorCode.VERSION_NOT_FOUND, () -> alienService.getAlien("Vexorg", started - 1));
+
+        for (int i = 0; i < 10; i++) {
+            alienService.updateAlien("Vexorg", null, "Planet" + i);
+        }
+        long version = alienService.getVersion();
+        assertEquals(version - 3, alienService.getOldestVersion());
+        assertTrue(alienService.getAlien("Vexorg", version - 3).contains("Home: Planet6"));
+        assertError(ErrorCode.VERSION_NOT_FOUND, () -> alienService.getAlien("Vexorg", version - 4));
+        assertEquals(Arrays.asList("Vexorg"), names(alienService.diff(version - 3, version)));
+        // Only Vexorg has changed since the oldest version, Frank is read from the store
+        assertEquals(1, ((LazySnapshot) alienService.getSnapshot()).changesHeld());
+        assertTrue(alienService.getAlien("Frank").contains("Home: Grimsby"));
+        assertTrue(alienService.getAlien("Frank", version - 3).contains("Parent: Vexorg"));
+
+        AlienService unversioned = new AlienService(new CompactColonyStore(), null, new SimpleMeterRegistry(), 0, AlienService.DEFAULT_EVENTS);
+        unversioned.startColony("Vexorg", "Omicron");
+        unversioned.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        unversioned.deleteAlien("Braxtarg");
+        assertEquals(0, ((LazySnapshot) unversioned.getSnapshot()).changesHeld());
+        assertError(ErrorCode.ALIEN_NOT_FOUND, () -> unversioned.getAlien("Braxtarg"));
+        assertTrue(unversioned.getAlien("Vexorg").contains("Home: Omicron"));
+    }
+
+    private static List<String> names(ColonyDiff diff) {
+        List<String> names = new ArrayList<>();
+        for (AlienChange change : diff.getChanges()) {
+            names.add(change.getName());
+        }
+        return names;
+    }
+}
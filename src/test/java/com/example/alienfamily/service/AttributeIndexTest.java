@@ -0,0 +1,45 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the attribute index drops planets once their last alien leaves
+ */
+public class AttributeIndexTest {
+
+    /**
+     * Test moving and removing aliens drops the planets left empty
+     */
+    @Test
+    public void emptyPlanetTest() {
+        AttributeIndex index = new AttributeIndex();
+        index.add("Vexorg", AlienType.ALPHA, "Omicron", true);
+        index.add("Zelda", AlienType.BETA, "Omicron", false);
+        index.add("Braxtarg", AlienType.GAMMA, "Rigel", false);
+        assertEquals(2, index.planetCount());
+
+        index.move(AlienType.ALPHA, true, "Vexorg", "Omicron", "Vexorg", "Kepler");
+        index.move(AlienType.BETA, false, "Zelda", "Omicron", "Zelda", "Kepler");
+        assertEquals(2, index.planetCount());
+        assertEquals(Collections.emptyList(), index.find(AttributeIndex.ALL, "Omicron", false, null, 10));
+        assertEquals(Arrays.asList("Vexorg", "Zelda"), index.find(AttributeIndex.ALL, "Kepler", false, null, 10));
+
+        index.slotsFull("Vexorg", "Kepler");
+        index.remove("Braxtarg", AlienType.GAMMA, "Rigel", false);
+        assertEquals(1, index.planetCount());
+
+        index.remove("Vexorg", AlienType.ALPHA, "Kepler", false);
+        index.remove("Zelda", AlienType.BETA, "Kepler", false);
+        assertEquals(0, index.planetCount());
+        assertEquals(Collections.emptyList(), index.find(AttributeIndex.ALL, "Kepler", false, null, 10));
+
+        index.add("Zelda", AlienType.BETA, "Kepler", false);
+        assertEquals(Collections.singletonList("Zelda"), index.find(AttributeIndex.ALL, "Kepler", false, null, 10));
+    }
+}
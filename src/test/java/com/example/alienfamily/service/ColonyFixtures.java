@@ -0,0 +1,39 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.exception.AlienException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.store.ColonyStore;
+import com.example.alienfamily.store.CompactColonyStore;
+import com.example.alienfamily.store.HashColonyStore;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Helpers shared by the service tests
+ */
+final class ColonyFixtures {
+
+    /**
+     * The in-memory stores, which tests of the service's reads run against in turn
+     */
+    static final List<Supplier<ColonyStore>> STORES = Arrays.<Supplier<ColonyStore>>asList(HashColonyStore::new, CompactColonyStore::new);
+
+    private ColonyFixtures() {
+    }
+
+    /**
+     * Assert a call fails with the given error code
+     *
+     * @param code
+     * @param call
+     */
+    static void assertError(ErrorCode code, Runnable call) {
+        AlienException ae = assertThrows(AlienException.class, call::run);
+        assertEquals(code, ae.getCode());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.alienfamily.service;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienNotFoundException;
+import com.example.alienfamily.exception.AlienValidationException;
+import com.example.alienfamily.exception.ErrorCode;
+import com.example.alienfamily.store.MappedColonyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test colonies are kept apart, created when first called, and evicted to disk when idle
+ */
+public class ColonyRegistryTest {
+
+    private Path directory;
+
+    private final List<ColonyRegistry> registries = new ArrayList<>();
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("colonies");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        for (ColonyRegistry registry : registries) {
+            registry.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Test colonies with the same aliens do not see each other's changes
+     */
+    @Test
+    public void isolationTest() {
+        AlienService defaultColony = new AlienService();
+        ColonyRegistry registry = new ColonyRegistry(defaultColony);
+        assertEquals(1, registry.size());
+        for (String colonyId : new String[]{ColonyRegistry.DEFAULT, "omicron", "persei"}) {
+            registry.run(colonyId, colony -> {
+                colony.startColony("Vexorg", "Omicron");
+                colony.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, colonyId);
+            });
+        }
+        assertEquals(3, registry.size());
+        registry.run("omicron", colony -> colony.deleteAlien("Braxtarg"));
+        registry.run("persei", colony -> colony.updateAlien("Braxtarg", "Frank", "Grimsby"));
+
+        assertThrows(AlienNotFoundException.class, () -> registry.call("omicron", colony -> colony.getAlien("Braxtarg")));
+        assertTrue(registry.<Boolean>call("persei", colony -> colony.isDescendant("Frank", "Vexorg")));
+        assertTrue(defaultColony.isDescendant("Braxtarg", "Vexorg"));
+        assertEquals(2, defaultColony.getColonySize());
+    }
+
+    /**
+     * Test a colony id that cannot name a file is refused
+     */
+    @Test
+    public void invalidColonyTest() {
+        ColonyRegistry registry = new ColonyRegistry(new AlienService());
+        for (String colonyId : new String[]{"", "../default", "omicron persei", null, new String(new char[65]).replace('\0', 'x')}) {
+            AlienValidationException e = assertThrows(AlienValidationException.class, () -> registry.call(colonyId, AlienService::getColonySize));
+            assertEquals(ErrorCode.INVALID_COLONY, e.getCode());
+        }
+        assertEquals(1, registry.size());
+    }
+
+    /**
+     * Test idle colonies are evicted to disk and brought back when next called, apart from the
+     * default and pinned colonies
+     */
+    @Test
+    public void evictionTest() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        ColonyRegistry registry = newRegistry(meters);
+        registry.run("omicron", this::buildColony);
+        registry.run(ColonyRegistry.DEFAULT, this::buildColony);
+        try (ColonyRegistry.Pin pin = registry.pin("persei")) {
+            buildColony(pin.service());
+            registry.evictIdle();
+            assertEquals(2, registry.size());
+            assertTrue(Files.exists(directory.resolve("omicron").resolve("evicted.colony")));
+            assertTrue(pin.service().isDescendant("Zorblax", "Vexorg"));
+        }
+        registry.evictIdle();
+        assertEquals(1, registry.size());
+        assertEquals(2, meters.get("alienfamily.colonies.evictions").counter().count());
+
+        for (String colonyId : new String[]{"omicron", "persei"}) {
+            assertEquals("Braxtarg", registry.call(colonyId, colony -> colony.getCommonAncestor("Braxtarg", "Zorblax")));
+            assertEquals(2L, (long) registry.call(colonyId, AlienService::getRemainingChildSlots));
+        }
+        assertFalse(Files.exists(directory.resolve("omicron").resolve("evicted.colony")));
+        assertEquals(3, meters.get("alienfamily.colonies").gauge().value());
+    }
+
+    /**
+     * Test colonies are kept on disk when the registry is closed, and brought back by the next
+     */
+    @Test
+    public void closeTest() {
+        ColonyRegistry registry = newRegistry(new SimpleMeterRegistry());
+        registry.run("omicron", this::buildColony);
+        registry.close();
+
+        ColonyRegistry reopened = newRegistry(new SimpleMeterRegistry());
+        assertEquals(3L, (long) reopened.call("omicron", AlienService::getColonySize));
+        reopened.run("omicron", colony -> colony.addAlien("Braxtarg", "Quarnix", AlienType.GAMMA, null));
+        assertEquals(0L, (long) reopened.call("persei", AlienService::getColonySize));
+    }
+
+    private void buildColony(AlienService colony) {
+        colony.startColony("Vexorg", "Omicron");
+        colony.addAlien("Vexorg", "Braxtarg", AlienType.ALPHA, "Persei");
+        colony.addAlien("Braxtarg", "Zorblax", AlienType.BETA, null);
+    }
+
+    /**
+     * A registry that evicts on demand, with colonies in memory mapped stores
+     */
+    private ColonyRegistry newRegistry(SimpleMeterRegistry meters) {
+        ColonyRegistry registry = new ColonyRegistry(new AlienService(), (colonyId, resources) -> {
+            MappedColonyStore store = new MappedColonyStore(directory.resolve(colonyId).resolve("store"));
+            resources.add(store);
+            return new AlienService(store);
+        }, directory, 0, meters);
+        registries.add(registry);
+        return registry;
+    }
+}
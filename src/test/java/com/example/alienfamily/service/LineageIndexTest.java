@@ -0,0 +1,120 @@
+package com.example.alienfamily.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the lineage index against a plain walk up parent links
+ */
+public class LineageIndexTest {
+
+    /**
+     * Test random adds and deletes give the same answers as walking the lineage
+     */
+    @Test
+    public void randomColonyTest() {
+        Random random = new Random(42);
+        LineageIndex index = new LineageIndex();
+        // Parent of each live alien, null at the top of a lineage
+        Map<Integer, Integer> parents = new HashMap<>();
+        List<Integer> live = new ArrayList<>();
+        index.start(0);
+        parents.put(0, null);
+        live.add(0);
+        int born = 1;
+        for (int step = 0; step < 5_000; step++) {
+            if (random.nextInt(10) < 7 || live.size() < 3) {
+                int parent = live.get(random.nextInt(live.size()));
+                int child = born++;
+                index.add(parent, child);
+                parents.put(child, parent);
+                live.add(child);
+            } else {
+                Integer id = live.remove(random.nextInt(live.size()));
+                index.remove(id);
+                parents.remove(id);
+                parents.replaceAll((child, parent) -> id.equals(parent) ? null : parent);
+            }
+            for (int query = 0; query < 5; query++) {
+                Integer x = live.get(random.nextInt(live.size()));
+                Integer y = random.nextBoolean() ? live.get(random.nextInt(live.size())) : parents.get(x);
+                if (y == null) {
+                    continue;
+                }
+                assertEquals(ancestors(parents, x).contains(y), index.isDescendant(x, y), x + " below " + y);
+                Integer common = commonAncestor(parents, x, y);
+                assertEquals(common == null ? -1 : common, index.commonAncestor(x, y), x + " and " + y);
+            }
+        }
+        assertEquals(live.size(), index.size());
+        assertFalse(index.isDescendant(born, 0));
+        assertEquals(-1, index.commonAncestor(0, -1));
+    }
+
+    /**
+     * Test a lineage deep enough to need the labels spread out many times
+     */
+    @Test
+    public void deepLineageTest() {
+        int generations = 100_000;
+        LineageIndex index = new LineageIndex();
+        index.start(a(0));
+        for (int i = 1; i <= generations; i++) {
+            index.add(a(i - 1), a(i));
+            // A second child at every generation, inserted in the same place
+            index.add(a(i - 1), b(i));
+        }
+        assertTrue(index.isDescendant(a(generations), a(0)));
+        assertTrue(index.isDescendant(b(generations), a(generations / 2)));
+        assertFalse(index.isDescendant(a(generations / 2), a(generations)));
+        assertFalse(index.isDescendant(a(generations), b(generations / 2)));
+        assertEquals(a(generations - 1), index.commonAncestor(a(generations), b(generations)));
+        assertEquals(a(1), index.commonAncestor(a(generations), b(2)));
+        assertEquals(a(77), index.commonAncestor(a(77), b(generations)));
+
+        // Deleting an alien cuts the lineage below it
+        index.remove(a(50000));
+        assertFalse(index.isDescendant(a(generations), a(0)));
+        assertTrue(index.isDescendant(a(generations), a(50001)));
+        assertEquals(-1, index.commonAncestor(a(generations), b(50000)));
+    }
+
+    /**
+     * Ids for deepLineageTest, A0, B1, A1, B2, A2...
+     */
+    private static int a(int generation) {
+        return 2 * generation;
+    }
+
+    private static int b(int generation) {
+        return 2 * generation - 1;
+    }
+
+    private static Set<Integer> ancestors(Map<Integer, Integer> parents, Integer id) {
+        Set<Integer> ancestors = new HashSet<>();
+        for (Integer parent = parents.get(id); parent != null; parent = parents.get(parent)) {
+            ancestors.add(parent);
+        }
+        return ancestors;
+    }
+
+    private static Integer commonAncestor(Map<Integer, Integer> parents, Integer first, Integer second) {
+        Set<Integer> firsts = ancestors(parents, first);
+        firsts.add(first);
+        for (Integer id = second; id != null; id = parents.get(id)) {
+            if (firsts.contains(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+}
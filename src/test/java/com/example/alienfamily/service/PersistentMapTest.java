@@ -0,0 +1,145 @@
+package com.example.alienfamily.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the persistent map against a HashMap
+ */
+public class PersistentMapTest {
+
+    /**
+     * Test random puts and removes give the same entries as a HashMap, and never change an
+     * earlier version of the map
+     */
+    @Test
+    public void randomMapTest() {
+        Random random = new Random(42);
+        PersistentMap<String, Integer> map = PersistentMap.empty();
+        Map<String, Integer> expected = new HashMap<>();
+        List<PersistentMap<String, Integer>> versions = new ArrayList<>();
+        List<Map<String, Integer>> expectedVersions = new ArrayList<>();
+        for (int step = 0; step < 20_000; step++) {
+            String name = "A" + random.nextInt(3_000);
+            if (random.nextInt(3) > 0) {
+                map = map.put(name, step);
+                expected.put(name, step);
+            } else {
+                map = map.remove(name);
+                expected.remove(name);
+            }
+            if (step % 1_000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+        assertMap(expected, map);
+        for (int i = 0; i < versions.size(); i++) {
+            assertMap(expectedVersions.get(i), versions.get(i));
+        }
+    }
+
+    /**
+     * Test comparing two versions finds exactly the keys whose values differ
+     */
+    @Test
+    public void diffTest() {
+        Random random = new Random(7);
+        PersistentMap<String, Integer> from = PersistentMap.empty();
+        for (int i = 0; i < 5_000; i++) {
+            from = from.put("A" + i, i);
+        }
+        for (int changes : new int[]{0, 1, 10, 1_000, 10_000}) {
+            PersistentMap<String, Integer> to = from;
+            for (int step = 0; step < changes; step++) {
+                String name = "A" + random.nextInt(6_000);
+                to = random.nextBoolean() ? to.put(name, -step) : to.remove(name);
+            }
+            Map<String, Integer> expectedBefore = new HashMap<>();
+            Map<String, Integer> expectedAfter = new HashMap<>();
+            for (int i = 0; i < 6_000; i++) {
+                String name = "A" + i;
+                Integer before = from.get(name);
+                Integer after = to.get(name);
+                if (before != after) {
+                    expectedBefore.put(name, before);
+                    expectedAfter.put(name, after);
+                }
+            }
+            Map<String, Integer> before = new HashMap<>();
+            Map<String, Integer> after = new HashMap<>();
+            from.diff(to, (name, was, now) -> {
+                assertFalse(before.containsKey(name), "Changed twice " + name);
+                before.put(name, was);
+                after.put(name, now);
+            });
+            assertEquals(expectedBefore, before);
+            assertEquals(expectedAfter, after);
+        }
+    }
+
+    /**
+     * Test names with the same hash share a node, and can each be found, replaced and removed
+     */
+    @Test
+    public void collisionTest() {
+        // "Aa" and "BB" have the same hash, as do any names made of them
+        PersistentMap<String, String> map = PersistentMap.empty();
+        List<String> names = new ArrayList<>();
+        for (String first : new String[]{"Aa", "BB"}) {
+            for (String second : new String[]{"Aa", "BB"}) {
+                names.add(first + second);
+            }
+        }
+        for (String name : names) {
+            map = map.put(name, name);
+        }
+        assertEquals(4, map.size());
+        for (String name : names) {
+            assertEquals(name, map.get(name));
+        }
+        map = map.put("AaBB", "Vexorg");
+        assertEquals(4, map.size());
+        assertEquals("Vexorg", map.get("AaBB"));
+
+        PersistentMap<String, String> removed = map.remove("BBAa");
+        assertEquals(3, removed.size());
+        assertNull(removed.get("BBAa"));
+        assertEquals("BBAa", map.get("BBAa"));
+        assertSame(removed, removed.remove("BBAa"));
+        for (String name : names) {
+            removed = removed.remove(name);
+        }
+        assertEquals(0, removed.size());
+        assertNull(removed.get("AaAa"));
+    }
+
+    /**
+     * Test a change that makes no difference gives back the same map
+     */
+    @Test
+    public void unchangedTest() {
+        String value = "Omicron";
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty().put("Vexorg", value);
+        assertSame(map, map.put("Vexorg", value));
+        assertSame(map, map.remove("Braxtarg"));
+        assertNull(map.get("Braxtarg"));
+    }
+
+    private static <V> void assertMap(Map<String, V> expected, PersistentMap<String, V> map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<String, V> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Map<String, V> visited = new HashMap<>();
+        map.forEach((name, value) -> assertTrue(visited.put(name, value) == null, "Visited twice " + name));
+        assertEquals(expected, visited);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the caching colony store
+ */
+public class CachingColonyStoreTest {
+
+    /**
+     * Test aliens are read through the cache, and counted as hits and misses
+     */
+    @Test
+    public void readThroughTest() {
+        CachingColonyStore store = new CachingColonyStore(new CompactColonyStore(), 1 << 20);
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        addChild(store, "Vexorg", "Braxtarg", AlienType.BETA, "Zorg");
+
+        Alien vexorg = store.get("Vexorg");
+        assertSame(vexorg, store.get("Vexorg"));
+        assertEquals("Braxtarg", store.get("Vexorg").getChildOne().getName());
+        assertNull(store.get("Proxigord"));
+        assertTrue(store.contains("Vexorg"));
+        assertFalse(store.contains("Proxigord"));
+        assertEquals(2, store.getHits());
+        // Adding Braxtarg read Vexorg, then dropped it as its children changed
+        assertEquals(3, store.getMisses());
+        assertEquals(1, store.getCachedCount());
+        assertEquals(CachingColonyStore.weigh(vexorg), store.getCachedBytes());
+        assertEquals(2, store.size());
+    }
+
+    /**
+     * Test writes drop the aliens they touch, so relatives are never read as they were
+     */
+    @Test
+    public void invalidationTest() {
+        CachingColonyStore store = new CachingColonyStore(new CompactColonyStore(), 1 << 20);
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        addChild(store, "Vexorg", "Braxtarg", AlienType.ALPHA, "Zorg");
+        store.get("Vexorg");
+        store.get("Braxtarg");
+
+        // Adding a child changes the parent
+        addChild(store, "Braxtarg", "Zelda", AlienType.BETA, "Zorg");
+        assertEquals("Zelda", store.get("Braxtarg").getChildOne().getName());
+        assertEquals(1, store.get("Braxtarg").getRemainingChildSlots());
+
+        // A rename changes the copies the parent and children carry
+        store.get("Zelda");
+        store.rename(store.get("Braxtarg"), "Frank");
+        assertNull(store.get("Braxtarg"));
+        assertEquals("Frank", store.get("Frank").getName());
+        assertEquals("Frank", store.get("Vexorg").getChildOne().getName());
+        assertEquals("Frank", store.get("Zelda").getParent().getName());
+
+        store.setHomePlanet(store.get("Frank"), "Grimsby");
+        assertEquals("Grimsby", store.get("Frank").getHomePlanet());
+        assertEquals("Grimsby", store.get("Zelda").getParent().getHomePlanet());
+
+        assertEquals("Zelda", store.remove("Zelda").getName());
+        assertNull(store.get("Zelda"));
+        assertFalse(store.contains("Zelda"));
+        assertNull(store.get("Frank").getChildOne());
+
+        store.clear();
+        assertEquals(0, store.getCachedCount());
+        assertEquals(0, store.getCachedBytes());
+        assertNull(store.get("Vexorg"));
+    }
+
+    /**
+     * Test the cache keeps within its size, and an alien used all the time stays cached while
+     * many used once pass through
+     */
+    @Test
+    public void evictionTest() {
+        Alien sample = Alien.initialise("Alien00", AlienType.ALPHA, "Omicron");
+        long maxBytes = 20 * (long) CachingColonyStore.weigh(sample);
+        CachingColonyStore store = new CachingColonyStore(new CompactColonyStore(), maxBytes);
+        store.add(Alien.initialise("Vexorg", AlienType.BETA, "Omicron"));
+        store.add(Alien.initialise("Alien00", AlienType.ALPHA, "Omicron"));
+        for (int i = 1; i < 1000; i++) {
+            addChild(store, String.format("Alien%02d", (i - 1) / 2), String.format("Alien%02d", i), AlienType.ALPHA, null);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            store.get("Vexorg");
+            store.get(String.format("Alien%02d", i));
+            assertTrue(store.getCachedBytes() <= maxBytes);
+        }
+        assertTrue(store.getEvictions() > 900);
+        long misses = store.getMisses();
+        assertSame(store.get("Vexorg"), store.get("Vexorg"));
+        assertEquals(misses, store.getMisses());
+        assertTrue(store.getHits() >= 999);
+    }
+
+    /**
+     * Test hits, misses and evictions are registered as meters
+     */
+    @Test
+    public void metricsTest() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingColonyStore store = new CachingColonyStore(new CompactColonyStore(), 1 << 20);
+        store.registerMetrics(registry);
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        store.get("Vexorg");
+        store.get("Vexorg");
+        store.get("Braxtarg");
+
+        assertEquals(1.0, registry.get("alienfamily.cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(2.0, registry.get("alienfamily.cache.gets").tag("result", "miss").functionCounter().count());
+        assertEquals(0.0, registry.get("alienfamily.cache.evictions").functionCounter().count());
+        assertEquals(1.0, registry.get("alienfamily.cache.size").gauge().value());
+        assertEquals(store.getCachedBytes(), (long) registry.get("alienfamily.cache.weight").gauge().value());
+    }
+
+    private static void addChild(ColonyStore store, String parent, String name, AlienType type, String homePlanet) {
+        store.add(store.get(parent).addChild(name, type, homePlanet));
+    }
+}
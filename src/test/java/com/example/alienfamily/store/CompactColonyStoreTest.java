@@ -0,0 +1,118 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the compact colony store
+ */
+public class CompactColonyStoreTest {
+
+    /**
+     * Test aliens are rebuilt with their relatives and lifetime child count
+     */
+    @Test
+    public void addGetTest() {
+        ColonyStore store = new CompactColonyStore();
+        Alien vexorg = Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+        store.add(vexorg);
+        addChild(store, "Vexorg", "Braxtarg", AlienType.BETA, "Persei");
+        addChild(store, "Vexorg", "Proxigord", AlienType.ALPHA, null);
+        assertEquals(3, store.size());
+
+        Alien restored = store.get("Vexorg");
+        assertNotSame(vexorg, restored);
+        assertEquals("Omicron", restored.getHomePlanet());
+        assertEquals(0, restored.getRemainingChildSlots());
+        assertEquals(2, restored.getChildren().size());
+        assertEquals("Braxtarg", restored.getChildren().get(0).getName());
+        assertEquals("Proxigord", restored.getChildren().get(1).getName());
+        assertEquals("Details of Alien: \n\tName: Vexorg\n\tType: ALPHA\n\tHome: Omicron\n\tChild1: Braxtarg\n\tChild2: Proxigord\n", restored.toString());
+
+        Alien proxigord = store.get("Proxigord");
+        assertEquals("Vexorg", proxigord.getParent().getName());
+        assertNull(proxigord.getHomePlanet());
+        assertEquals(2, proxigord.getRemainingChildSlots());
+
+        AlienException ae = assertThrows(AlienException.class, () -> store.get("Vexorg").addChild("Tanqahorn", AlienType.BETA, "Persei"));
+        assertEquals("Alien Vexorg has already had two children", ae.getMessage());
+        ae = assertThrows(AlienException.class, () -> store.add(Alien.initialise("Braxtarg", AlienType.BETA, "Persei")));
+        assertEquals("Alien Braxtarg already exists. Aliens must have unique names.", ae.getMessage());
+    }
+
+    /**
+     * Test removal unlinks from the parent, and children keep the removed parent
+     */
+    @Test
+    public void removeTest() {
+        ColonyStore store = new CompactColonyStore();
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        addChild(store, "Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        addChild(store, "Proxigord", "Venkagard", AlienType.GAMMA, "Molita");
+
+        assertEquals("Proxigord", store.remove("Proxigord").getName());
+        assertNull(store.remove("Proxigord"));
+        assertFalse(store.contains("Proxigord"));
+        assertEquals(0, store.get("Vexorg").getChildren().size());
+        assertEquals(1, store.get("Vexorg").getRemainingChildSlots());
+        assertEquals("Proxigord", store.get("Venkagard").getParent().getName());
+
+        // A new alien can take the removed name without affecting the old lineage
+        addChild(store, "Vexorg", "Proxigord", AlienType.BETA, "Persei");
+        assertNotNull(store.remove("Venkagard"));
+        assertEquals(BETA_PROXIGORD, store.get("Proxigord").toString());
+    }
+
+    private static final String BETA_PROXIGORD = "Details of Alien: \n\tName: Proxigord\n\tType: BETA\n\tHome: Persei\n\tParent: Vexorg\n";
+
+    /**
+     * Test renames and planet changes are written back, and the index survives growth and churn
+     */
+    @Test
+    public void renameAndChurnTest() {
+        ColonyStore store = new CompactColonyStore(16);
+        store.add(Alien.initialise("A0", AlienType.ALPHA, "Omicron"));
+        for (int i = 1; i < 5_000; i++) {
+            addChild(store, "A" + ((i - 1) / 2), "A" + i, AlienType.ALPHA, "Planet" + (i % 7));
+        }
+        assertEquals(5_000, store.size());
+        for (int i = 0; i < 5_000; i += 3) {
+            store.rename(store.get("A" + i), "B" + i);
+        }
+        for (int i = 1; i < 5_000; i += 6) {
+            assertNotNull(store.remove("A" + i));
+        }
+        for (int i = 0; i < 5_000; i++) {
+            boolean removed = i % 6 == 1;
+            boolean renamed = i % 3 == 0;
+            assertEquals(!removed && !renamed, store.contains("A" + i), "A" + i);
+            assertEquals(renamed, store.contains("B" + i), "B" + i);
+        }
+        // Lookups by id follow renames and removals
+        assertEquals("B3", store.get(3).getName());
+        assertEquals("A2", store.get(2).getName());
+        assertNull(store.get(1));
+        assertNull(store.get(5_000));
+
+        Alien b3 = store.get("B3");
+        store.setHomePlanet(b3, "Grimsby");
+        assertEquals("Grimsby", store.get("B3").getHomePlanet());
+        assertEquals("B3", store.get("A8").getParent().getName());
+
+        AlienException ae = assertThrows(AlienException.class, () -> store.rename(store.get("B3"), "A2"));
+        assertEquals("Alien A2 already exists. Aliens must have unique names.", ae.getMessage());
+
+        store.clear();
+        assertTrue(store.isEmpty());
+        assertNull(store.get("B3"));
+        assertNull(store.get(3));
+    }
+
+    private void addChild(ColonyStore store, String parentName, String childName, AlienType type, String homePlanet) {
+        store.add(store.get(parentName).addChild(childName, type, homePlanet));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.alienfamily.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the frequency sketch behind the cache's admission policy
+ */
+public class FrequencySketchTest {
+
+    /**
+     * Test uses are counted up to 15, and keys never used are rarely overestimated
+     */
+    @Test
+    public void frequencyTest() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(0, sketch.frequency("Vexorg"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("Vexorg");
+        }
+        assertEquals(5, sketch.frequency("Vexorg"));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("Vexorg");
+        }
+        assertEquals(15, sketch.frequency("Vexorg"));
+
+        for (int i = 0; i < 500; i++) {
+            sketch.increment("Alien" + i);
+        }
+        int overestimated = 0;
+        for (int i = 500; i < 1500; i++) {
+            if (sketch.frequency("Alien" + i) > 0) {
+                overestimated++;
+            }
+        }
+        assertTrue(overestimated < 50, "Overestimated " + overestimated);
+    }
+
+    /**
+     * Test counters are halved once enough uses have been counted, so old favourites fade
+     */
+    @Test
+    public void agingTest() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("Vexorg");
+        }
+        assertEquals(15, sketch.frequency("Vexorg"));
+        // 16 longs, halved after 160 additions
+        for (int i = 0; i < 160; i++) {
+            sketch.increment("Alien" + i);
+        }
+        assertTrue(sketch.frequency("Vexorg") <= 7);
+    }
+}
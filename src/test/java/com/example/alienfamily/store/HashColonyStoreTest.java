@@ -0,0 +1,68 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.exception.AlienException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the hash indexed colony store
+ */
+public class HashColonyStoreTest {
+
+    /**
+     * Test aliens can be added, found and removed by name
+     */
+    @Test
+    public void addGetRemoveTest() {
+        ColonyStore store = new HashColonyStore();
+        assertTrue(store.isEmpty());
+        Alien vexorg = Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+        store.add(vexorg);
+        assertEquals(1, store.size());
+        assertTrue(store.contains("Vexorg"));
+        assertSame(vexorg, store.get("Vexorg"));
+        assertNull(store.get("Mr Pants"));
+
+        AlienException ae = assertThrows(AlienException.class, () -> store.add(Alien.initialise("Vexorg", AlienType.BETA, "Persei")));
+        assertEquals("Alien Vexorg already exists. Aliens must have unique names.", ae.getMessage());
+        assertSame(vexorg, store.get("Vexorg"));
+
+        assertSame(vexorg, store.remove("Vexorg"));
+        assertNull(store.remove("Vexorg"));
+        assertTrue(store.isEmpty());
+    }
+
+    /**
+     * Test renaming keeps the index consistent, and refuses names that are taken or invalid
+     */
+    @Test
+    public void renameTest() {
+        ColonyStore store = new HashColonyStore();
+        Alien vexorg = Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron");
+        Alien braxtarg = Alien.initialise("Braxtarg", AlienType.BETA, "Persei");
+        store.add(vexorg);
+        store.add(braxtarg);
+
+        store.rename(vexorg, "Frank");
+        assertEquals("Frank", vexorg.getName());
+        assertSame(vexorg, store.get("Frank"));
+        assertFalse(store.contains("Vexorg"));
+        assertEquals(2, store.size());
+
+        AlienException ae = assertThrows(AlienException.class, () -> store.rename(vexorg, "Braxtarg"));
+        assertEquals("Alien Braxtarg already exists. Aliens must have unique names.", ae.getMessage());
+        assertSame(vexorg, store.get("Frank"));
+
+        ae = assertThrows(AlienException.class, () -> store.rename(vexorg, "Frank with a super long name that is actually way way way over the limit"));
+        assertEquals("Name and home planet cannot be over 50 characters", ae.getMessage());
+        assertSame(vexorg, store.get("Frank"));
+        assertEquals("Frank", vexorg.getName());
+
+        // Renaming to the same name is a no-op
+        store.rename(vexorg, "Frank");
+        assertSame(vexorg, store.get("Frank"));
+    }
+}
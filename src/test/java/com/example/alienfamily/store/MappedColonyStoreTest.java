@@ -0,0 +1,162 @@
+package com.example.alienfamily.store;
+
+import com.example.alienfamily.alien.Alien;
+import com.example.alienfamily.alien.AlienType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the memory mapped colony store
+ */
+public class MappedColonyStoreTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("colony");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        deleteRecursively(directory);
+    }
+
+    /**
+     * Test the colony survives closing and reopening the store
+     */
+    @Test
+    public void reopenTest() throws IOException {
+        MappedColonyStore store = new MappedColonyStore(directory);
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        addChild(store, "Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        addChild(store, "Proxigord", "Venkagard", AlienType.GAMMA, null);
+        addChild(store, "Vexorg", "Braxtarg", AlienType.BETA, "Persei");
+        store.rename(store.get("Proxigord"), "Frank");
+        store.setHomePlanet(store.get("Frank"), "Grimsby");
+        store.remove("Braxtarg");
+        store.close();
+
+        MappedColonyStore reopened = new MappedColonyStore(directory);
+        assertEquals(3, reopened.size());
+        assertFalse(reopened.contains("Proxigord"));
+        assertFalse(reopened.contains("Braxtarg"));
+        Alien frank = reopened.get("Frank");
+        assertEquals("Grimsby", frank.getHomePlanet());
+        assertEquals("Vexorg", frank.getParent().getName());
+        assertEquals("Venkagard", frank.getChildren().get(0).getName());
+        assertNull(reopened.get("Venkagard").getHomePlanet());
+        assertEquals(0, reopened.get("Vexorg").getRemainingChildSlots());
+        assertEquals(1, reopened.get("Vexorg").getChildren().size());
+        assertEquals(2, reopened.alphaCount());
+        assertEquals(1, reopened.remainingChildSlots());
+        assertEquals(1, frank.getId());
+        assertEquals(2, reopened.get("Venkagard").getId());
+        assertEquals("Frank", reopened.get(1).getName());
+        assertNull(reopened.get(3));
+
+        // Carry on growing the colony after a restart, without giving out Braxtarg's id again
+        addChild(reopened, "Frank", "Tanqahorn", AlienType.ALPHA, "Persei");
+        assertEquals(4, reopened.size());
+        assertEquals(4, reopened.get("Tanqahorn").getId());
+        assertEquals("Tanqahorn", reopened.get(4).getName());
+        reopened.close();
+    }
+
+    /**
+     * Test the files and indexes grow, and lost indexes are rebuilt from the records
+     */
+    @Test
+    public void growAndRebuildIndexTest() throws IOException {
+        MappedColonyStore store = new MappedColonyStore(directory);
+        store.add(Alien.initialise("A0", AlienType.ALPHA, "Omicron"));
+        for (int i = 1; i < 5_000; i++) {
+            addChild(store, "A" + ((i - 1) / 2), "A" + i, AlienType.ALPHA, "Planet" + (i % 7));
+        }
+        store.close();
+        Files.delete(directory.resolve("index.dat"));
+        Files.delete(directory.resolve("ids.dat"));
+
+        MappedColonyStore reopened = new MappedColonyStore(directory);
+        assertEquals(5_000, reopened.size());
+        for (int i = 0; i < 5_000; i++) {
+            assertTrue(reopened.contains("A" + i));
+        }
+        assertEquals("A1249", reopened.get("A2499").getParent().getName());
+        assertEquals("A2499", reopened.get(2499).getName());
+
+        reopened.clear();
+        assertTrue(reopened.isEmpty());
+        assertNull(reopened.get("A0"));
+        assertNull(reopened.get(0));
+        reopened.close();
+    }
+
+    /**
+     * Test an index left over from an earlier run is rebuilt even though it is the right size,
+     * as is the index of a store that was not closed
+     */
+    @Test
+    public void staleIndexTest() throws IOException {
+        MappedColonyStore store = new MappedColonyStore(directory);
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        store.close();
+        Path saved = Files.copy(directory.resolve("index.dat"), directory.resolve("index.saved"));
+
+        MappedColonyStore reopened = new MappedColonyStore(directory);
+        addChild(reopened, "Vexorg", "Proxigord", AlienType.ALPHA, "Omicron");
+        reopened.close();
+        Files.copy(saved, directory.resolve("index.dat"), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+        MappedColonyStore restored = new MappedColonyStore(directory);
+        assertTrue(restored.contains("Proxigord"));
+        addChild(restored, "Proxigord", "Venkagard", AlienType.GAMMA, null);
+        restored.flush();
+
+        // Not closed, as after a crash
+        MappedColonyStore crashed = new MappedColonyStore(directory);
+        assertEquals(3, crashed.size());
+        assertTrue(crashed.contains("Venkagard"));
+        assertEquals("Venkagard", crashed.get(2).getName());
+        assertEquals(2, crashed.alphaCount());
+        assertEquals(2, crashed.remainingChildSlots());
+        crashed.close();
+        restored.close();
+    }
+
+    /**
+     * Test a colony file in another format is refused rather than read
+     */
+    @Test
+    public void otherFormatTest() throws IOException {
+        MappedColonyStore store = new MappedColonyStore(directory);
+        store.add(Alien.initialise("Vexorg", AlienType.ALPHA, "Omicron"));
+        store.close();
+        try (java.nio.channels.FileChannel colony = java.nio.channels.FileChannel.open(directory.resolve("colony.dat"), java.nio.file.StandardOpenOption.WRITE)) {
+            colony.write(java.nio.ByteBuffer.wrap(new byte[]{0, 0, 0, 3}), 4);
+        }
+        assertThrows(IllegalStateException.class, () -> new MappedColonyStore(directory));
+    }
+
+    private void addChild(ColonyStore store, String parentName, String childName, AlienType type, String homePlanet) {
+        store.add(store.get(parentName).addChild(childName, type, homePlanet));
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (java.util.stream.Stream<Path> children = Files.list(path)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.alienfamily.wal;
+
+import com.example.alienfamily.alien.AlienType;
+import com.example.alienfamily.store.HashColonyStore;
+import com.example.alienfamily.transfer.ColonyRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the colony log
+ */
+public class ColonyLogTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("colony-log");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Test records are read back as written, and a torn record at the end is dropped
+     */
+    @Test
+    public void tornRecordTest() throws IOException {
+        ColonyLog log = new ColonyLog(directory, 0, 100);
+        log.recover(new HashColonyStore(), record -> fail("Nothing to replay"));
+        log.append(LogRecord.start("Vexorg", "Omicron", 0));
+        log.append(LogRecord.add("Vexorg", "Proxigord", AlienType.ALPHA, null, 1));
+        long lsn = log.append(LogRecord.update("Proxigord", "Frank", "Grimsby"));
+        log.awaitDurable(lsn);
+        log.close();
+
+        // Tear the last record
+        try (FileChannel file = FileChannel.open(directory.resolve("colony.log"), StandardOpenOption.WRITE)) {
+            file.truncate(file.size() - 3);
+        }
+
+        List<LogRecord> replayed = new ArrayList<>();
+        ColonyLog reopened = new ColonyLog(directory, 0, 100);
+        reopened.recover(new HashColonyStore(), replayed::add);
+        assertEquals(2, replayed.size());
+        assertEquals(LogRecord.Op.START, replayed.get(0).getOp());
+        assertEquals("Omicron", replayed.get(0).getHomePlanet());
+        LogRecord add = replayed.get(1);
+        assertEquals(LogRecord.Op.ADD, add.getOp());
+        assertEquals(2, add.getLsn());
+        assertEquals("Vexorg", add.getParentName());
+        assertEquals("Proxigord", add.getName());
+        assertEquals(AlienType.ALPHA, add.getType());
+        assertNull(add.getHomePlanet());
+
+        // The torn record's number is used again
+        assertEquals(3, reopened.append(LogRecord.delete("Proxigord")));
+        reopened.close();
+    }
+
+    /**
+     * Test records already in a checkpoint are not replayed, and the segments it includes are deleted
+     */
+    @Test
+    public void checkpointTest() throws IOException {
+        ColonyLog log = new ColonyLog(directory, 0, 2);
+        assertTrue(log.recover(new HashColonyStore(), record -> fail("Nothing to replay")));
+        log.append(LogRecord.start("Vexorg", "Omicron", 0));
+        assertFalse(log.isCheckpointDue());
+        log.append(LogRecord.update("Vexorg", null, "Persei"));
+        assertTrue(log.isCheckpointDue());
+        long sealed = log.rotate();
+        assertEquals(2, sealed);
+        assertFalse(log.isCheckpointDue());
+        assertEquals(0, Files.size(directory.resolve("colony.log")));
+        assertTrue(Files.exists(directory.resolve("colony.log.2")));
+        assertEquals(3, log.append(LogRecord.delete("Vexorg")));
+        log.checkpoint(sealed, colony("Persei"));
+        assertFalse(Files.exists(directory.resolve("colony.log.2")));
+        log.close();
+
+        HashColonyStore recovered = new HashColonyStore();
+        List<LogRecord> replayed = new ArrayList<>();
+        ColonyLog reopened = new ColonyLog(directory, 0, 2);
+        assertFalse(reopened.recover(recovered, replayed::add));
+        assertEquals("Persei", recovered.get("Vexorg").getHomePlanet());
+        assertEquals(1, recovered.nextId());
+        assertEquals(1, replayed.size());
+        assertEquals(LogRecord.Op.DELETE, replayed.get(0).getOp());
+        reopened.close();
+    }
+
+    /**
+     * Test appends carry on while a checkpoint is written in the background, recovery before it
+     * is written replays the sealed segment, and closing waits for it
+     */
+    @Test
+    public void backgroundCheckpointTest() throws Exception {
+        ColonyLog log = new ColonyLog(directory, 0, 1);
+        log.recover(new HashColonyStore(), record -> fail("Nothing to replay"));
+        log.append(LogRecord.start("Vexorg", "Omicron", 0));
+        long sealed = log.rotate();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ColonyLog.Snapshot omicron = colony("Omicron");
+        log.checkpointInBackground(sealed, writer -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            omicron.writeTo(writer);
+        });
+        writing.await();
+        log.awaitDurable(log.append(LogRecord.update("Vexorg", null, "Persei")));
+        // Not due again until the checkpoint is written
+        assertFalse(log.isCheckpointDue());
+
+        List<LogRecord> early = new ArrayList<>();
+        try (ColonyLog reopened = new ColonyLog(directory, 0, 1)) {
+            reopened.recover(new HashColonyStore(), early::add);
+        }
+        assertEquals(2, early.size());
+        assertEquals(LogRecord.Op.START, early.get(0).getOp());
+
+        release.countDown();
+        log.close();
+        assertFalse(Files.exists(directory.resolve("colony.log.1")));
+        HashColonyStore recovered = new HashColonyStore();
+        List<LogRecord> replayed = new ArrayList<>();
+        try (ColonyLog reopened = new ColonyLog(directory, 0, 1)) {
+            reopened.recover(recovered, replayed::add);
+        }
+        assertEquals("Omicron", recovered.get("Vexorg").getHomePlanet());
+        assertEquals(1, replayed.size());
+        assertEquals(LogRecord.Op.UPDATE, replayed.get(0).getOp());
+    }
+
+    /**
+     * Vexorg on the given planet, as a checkpoint of the colony
+     */
+    private static ColonyLog.Snapshot colony(String homePlanet) {
+        return writer -> {
+            writer.write(new ColonyRecord("Vexorg", AlienType.ALPHA, homePlanet, 0, null, 0, null, null, 0));
+            writer.end(1);
+        };
+    }
+
+    /**
+     * Test concurrent writers share syncs
+     */
+    @Test
+    public void groupCommitTest() throws Exception {
+        ColonyLog log = new ColonyLog(directory, 20, 1_000_000);
+        log.recover(new HashColonyStore(), record -> fail("Nothing to replay"));
+        int writers = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            String name = "A" + i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 10; j++) {
+                        log.awaitDurable(log.append(LogRecord.delete(name)));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Without group commit there would be one sync per record
+        assertTrue(log.getSyncs() < writers * 10 / 2, "Syncs: " + log.getSyncs());
+        log.close();
+
+        List<LogRecord> replayed = new ArrayList<>();
+        new ColonyLog(directory, 0, 1_000_000).recover(new HashColonyStore(), replayed::add);
+        assertEquals(writers * 10, replayed.size());
+    }
+}